@@ -40,4 +40,6 @@ echo "Для выхода введите 'exit'"
 echo "Для справки введите 'help'"
 echo "============================================"
 echo
-java -Dfile.encoding=UTF-8 -jar "target/finance-manager-1.0-SNAPSHOT-jar-with-dependencies.jar"
+# Модуль jdk.incubator.vector включает векторное ядро сумм за период (без него - скалярное);
+# JVM при этом печатает предупреждение "Using incubator modules", это ожидаемо
+java -Dfile.encoding=UTF-8 --add-modules jdk.incubator.vector -jar "target/finance-manager-1.0-SNAPSHOT-jar-with-dependencies.jar"
@@ -1,16 +1,123 @@
 package com.finance;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
 import com.finance.cli.CLIInterface;
+import com.finance.server.CommandServer;
+import com.finance.server.HttpApiServer;
+import com.finance.service.DataStorage;
 import com.finance.service.FinanceManager;
+import com.finance.service.UserRegistry;
 
 public class Main {
+  private static final int DEFAULT_PORT = 7070;
+  private static final int DEFAULT_HTTP_PORT = 8080;
+  private static final int DEFAULT_HTTP_QUEUE = 1024;
+
   public static void main(String[] args) {
     // Устанавливаем кодировку для JVM
     System.setProperty("file.encoding", "UTF-8");
 
+    if (args.length > 0 && args[0].equals("--server")) {
+      runServer(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--http")) {
+      runHttp(args);
+      return;
+    }
+
     // Создаем и запускаем приложение
     FinanceManager financeManager = new FinanceManager();
     CLIInterface cli = new CLIInterface(financeManager);
     cli.start();
   }
+
+  // --server [порт] [рабочих потоков] [адрес]: команды консоли по TCP, см. CommandServer
+  private static void runServer(String[] args) {
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+    int workers = args.length > 2 ? Integer.parseInt(args[2]) : defaultThreads();
+    InetSocketAddress address = bindAddress(args.length > 3 ? args[3] : null, port);
+    UserRegistry registry = new UserRegistry(new DataStorage());
+    CommandServer server = new CommandServer(registry, address, workers);
+    onShutdown(server, registry);
+    System.out.println(
+        "Сервер запущен на порту "
+            + server.start()
+            + ", пользователей: "
+            + registry.size()
+            + ", рабочих потоков: "
+            + workers);
+    awaitShutdown();
+  }
+
+  // --http [порт] [рабочих потоков] [очередь запросов] [адрес]: JSON API, см. HttpApiServer
+  private static void runHttp(String[] args) {
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : defaultThreads();
+    int queue = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HTTP_QUEUE;
+    InetSocketAddress address = bindAddress(args.length > 4 ? args[4] : null, port);
+    // Заголовки и тело ответа уходят отдельными записями в сокет; без TCP_NODELAY вторая ждет
+    // подтверждения первой (алгоритм Нейгла и отложенный ACK), это ~40 мс на каждый запрос в
+    // keep-alive соединении. Настройка читается JDK при создании первого HttpServer в процессе.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    UserRegistry registry = new UserRegistry(new DataStorage());
+    HttpApiServer server = new HttpApiServer(registry, address, threads, queue);
+    onShutdown(server, registry);
+    System.out.println(
+        "HTTP API запущен на порту "
+            + server.start()
+            + ", пользователей: "
+            + registry.size()
+            + ", рабочих потоков: "
+            + threads
+            + ", очередь: "
+            + queue);
+    awaitShutdown();
+  }
+
+  /**
+   * Адрес для приема соединений. По умолчанию только локальный (loopback): сеансы сервера не
+   * шифруются, поэтому внешний адрес, например 0.0.0.0, задается только явно.
+   */
+  private static InetSocketAddress bindAddress(String host, int port) {
+    if (host == null) {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+    try {
+      return new InetSocketAddress(InetAddress.getByName(host), port);
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException("Неизвестный адрес: " + host, e);
+    }
+  }
+
+  private static int defaultThreads() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private static void onShutdown(AutoCloseable server, UserRegistry registry) {
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  try {
+                    server.close();
+                  } catch (Exception e) {
+                    System.err.println("Ошибка остановки сервера: " + e.getMessage());
+                  }
+                  registry.save();
+                }));
+  }
+
+  private static void awaitShutdown() {
+    try {
+      Thread.currentThread().join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
@@ -1,24 +1,52 @@
 package com.finance.cli;
 
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
+import com.finance.core.CategoryPivot;
+import com.finance.core.OperationQuery;
 import com.finance.exception.FinanceException;
 import com.finance.service.FinanceManager;
+import com.finance.service.ReportWriter;
 
 public class CLIInterface {
   private FinanceManager financeManager;
   private Scanner scanner;
+  private final PrintStream out;
   private boolean running;
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+  private static final int DEFAULT_PAGE_SIZE = 20;
+  private static final Map<String, OperationQuery.Sort> SORT_ORDERS =
+      Map.of(
+          "новые", OperationQuery.Sort.NEWEST,
+          "старые", OperationQuery.Sort.OLDEST,
+          "дорогие", OperationQuery.Sort.LARGEST,
+          "дешевые", OperationQuery.Sort.SMALLEST);
 
   public CLIInterface(FinanceManager financeManager) {
+    this(
+        financeManager,
+        new Scanner(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+        System.out);
+  }
+
+  /**
+   * Интерфейс с собственными вводом и выводом, например для сетевого сеанса: подтверждения читаются
+   * из {@code scanner}, весь вывод команд, включая отчеты, идет в {@code out}.
+   */
+  public CLIInterface(FinanceManager financeManager, Scanner scanner, PrintStream out) {
     this.financeManager = financeManager;
     this.running = true;
-    this.scanner = new Scanner(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    this.scanner = scanner;
+    this.out = out;
+    if (out != System.out) {
+      financeManager.setConsole(ReportWriter.console(out));
+    }
   }
 
   // Метод для тестирования - позволяет установить сканер
@@ -39,8 +67,8 @@ public class CLIInterface {
       try {
         showNotifications();
 
-        System.out.print("\n> ");
-        System.out.flush();
+        out.print("\n> ");
+        out.flush();
 
         if (!scanner.hasNextLine()) {
           try {
@@ -51,35 +79,45 @@ public class CLIInterface {
           continue;
         }
 
-        String input = scanner.nextLine().trim();
-
-        if (input.isEmpty()) {
-          continue;
-        }
-
-        String[] parts = input.split("\\s+", 2);
-        String command = parts[0].toLowerCase();
-        String args = parts.length > 1 ? parts[1] : "";
-
-        processCommand(command, args);
-      } catch (FinanceException e) {
-        System.out.println("❌ Ошибка: " + e.getMessage());
-      } catch (NumberFormatException e) {
-        System.out.println("❌ Неверный формат числа");
+        execute(scanner.nextLine());
       } catch (NoSuchElementException e) {
-        System.out.println("Ввод завершен.");
+        out.println("Ввод завершен.");
         running = false;
-      } catch (Exception e) {
-        System.out.println("❌ Неизвестная ошибка: " + e.getMessage());
-        if (e.getCause() != null) {
-          System.out.println("   Причина: " + e.getCause().getMessage());
-        }
       }
     }
 
     scanner.close();
   }
 
+  /**
+   * Выполняет одну строку команды; ошибки печатаются в вывод, как в интерактивном режиме.
+   *
+   * @return false, если команда завершилась ошибкой
+   */
+  public boolean execute(String line) {
+    String input = line.trim();
+    if (input.isEmpty()) {
+      return true;
+    }
+    String[] parts = input.split("\\s+", 2);
+    String command = parts[0].toLowerCase();
+    String args = parts.length > 1 ? parts[1] : "";
+    try {
+      processCommand(command, args);
+      return true;
+    } catch (FinanceException e) {
+      out.println("❌ Ошибка: " + e.getMessage());
+    } catch (NumberFormatException e) {
+      out.println("❌ Неверный формат числа");
+    } catch (Exception e) {
+      out.println("❌ Неизвестная ошибка: " + e.getMessage());
+      if (e.getCause() != null) {
+        out.println("   Причина: " + e.getCause().getMessage());
+      }
+    }
+    return false;
+  }
+
   // public для тестирования
   public void processCommand(String command, String args) {
     switch (command) {
@@ -113,6 +151,18 @@ public class CLIInterface {
       case "stats":
         handleStats(args);
         break;
+      case "top":
+        handleTop(args);
+        break;
+      case "quantiles":
+        handleQuantiles(args);
+        break;
+      case "pivot":
+        handlePivot(args);
+        break;
+      case "archive":
+        handleArchive(args);
+        break;
       case "example_tz":
         handleExampleTZ();
         break;
@@ -122,6 +172,21 @@ public class CLIInterface {
       case "transfer":
         handleTransfer(args);
         break;
+      case "transfers":
+        handleTransfers(args);
+        break;
+      case "transfer_batch":
+        handleTransferBatch(args);
+        break;
+      case "defer":
+        handleDeferredTransfer(args);
+        break;
+      case "settle":
+        handleSettle();
+        break;
+      case "settlement":
+        handleSettlement();
+        break;
       case "add_category":
         handleAddCategory(args);
         break;
@@ -134,11 +199,23 @@ public class CLIInterface {
       case "import":
         handleImport(args);
         break;
+      case "search":
+        handleSearch(args);
+        break;
       case "operations":
         handleOperations(args);
         break;
       case "report":
-        handleReport();
+        handleReport(args);
+        break;
+      case "alerts":
+        handleAlerts();
+        break;
+      case "alert_add":
+        handleAlertAdd(args);
+        break;
+      case "alert_remove":
+        handleAlertRemove(args);
         break;
       case "clear":
         clearScreen();
@@ -150,7 +227,7 @@ public class CLIInterface {
         handleExit();
         break;
       default:
-        System.out.println("❌ Неизвестная команда. Введите 'help' для списка команд.");
+        out.println("❌ Неизвестная команда. Введите 'help' для списка команд.");
     }
 
     showNotifications();
@@ -160,21 +237,21 @@ public class CLIInterface {
   public void showNotifications() {
     List<String> notifications = financeManager.getAndClearNotifications();
     if (!notifications.isEmpty()) {
-      System.out.println();
+      out.println();
       for (String notification : notifications) {
-        System.out.println(notification);
+        out.println(notification);
       }
     }
   }
 
   private void handleLogout() {
     financeManager.logout();
-    System.out.println("✅ Вы вышли из системы");
+    out.println("✅ Вы вышли из системы");
   }
 
   private void handleBalance() {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
     financeManager.showBalance();
@@ -182,26 +259,30 @@ public class CLIInterface {
 
   private void handleBudgets() {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
     financeManager.showBudgets();
   }
 
-  private void handleReport() {
+  private void handleReport(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
-    financeManager.showDetailedReport();
+    if (args.isEmpty()) {
+      financeManager.showDetailedReport();
+    } else {
+      financeManager.saveDetailedReport(args.trim());
+    }
   }
 
   // public для тестирования
   public void handleRegister(String args) {
     String[] parts = args.split("\\s+", 2);
     if (parts.length != 2) {
-      System.out.println("📝 Использование: register <логин> <пароль>");
-      System.out.println("   Пример: register alex 12345");
+      out.println("📝 Использование: register <логин> <пароль>");
+      out.println("   Пример: register alex 12345");
       return;
     }
 
@@ -212,8 +293,8 @@ public class CLIInterface {
   public void handleLogin(String args) {
     String[] parts = args.split("\\s+", 2);
     if (parts.length != 2) {
-      System.out.println("🔑 Использование: login <логин> <пароль>");
-      System.out.println("   Пример: login alex 12345");
+      out.println("🔑 Использование: login <логин> <пароль>");
+      out.println("   Пример: login alex 12345");
       return;
     }
 
@@ -223,14 +304,14 @@ public class CLIInterface {
   // public для тестирования
   public void handleAddIncome(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 3);
     if (parts.length < 2) {
-      System.out.println("📈 Использование: add_income <категория> <сумма> [описание]");
-      System.out.println("   Пример: add_income Зарплата 50000 Октябрьская зарплата");
+      out.println("📈 Использование: add_income <категория> <сумма> [описание]");
+      out.println("   Пример: add_income Зарплата 50000 Октябрьская зарплата");
       return;
     }
 
@@ -241,21 +322,21 @@ public class CLIInterface {
 
       financeManager.addIncome(category, amount, description);
     } catch (NumberFormatException e) {
-      System.out.println("❌ Неверный формат суммы");
+      out.println("❌ Неверный формат суммы");
     }
   }
 
   // public для тестирования
   public void handleAddExpense(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 3);
     if (parts.length < 2) {
-      System.out.println("📉 Использование: add_expense <категория> <сумма> [описание]");
-      System.out.println("   Пример: add_expense Еда 3000 Продукты");
+      out.println("📉 Использование: add_expense <категория> <сумма> [описание]");
+      out.println("   Пример: add_expense Еда 3000 Продукты");
       return;
     }
 
@@ -266,20 +347,20 @@ public class CLIInterface {
 
       financeManager.addExpense(category, amount, description);
     } catch (NumberFormatException e) {
-      System.out.println("❌ Неверный формат суммы");
+      out.println("❌ Неверный формат суммы");
     }
   }
 
   private void handleSetBudget(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 2);
     if (parts.length != 2) {
-      System.out.println("🎯 Использование: set_budget <категория> <лимит>");
-      System.out.println("   Пример: set_budget Еда 10000");
+      out.println("🎯 Использование: set_budget <категория> <лимит>");
+      out.println("   Пример: set_budget Еда 10000");
       return;
     }
 
@@ -289,20 +370,20 @@ public class CLIInterface {
 
       financeManager.setBudget(category, limit);
     } catch (NumberFormatException e) {
-      System.out.println("❌ Неверный формат лимита");
+      out.println("❌ Неверный формат лимита");
     }
   }
 
   private void handleEditBudget(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 2);
     if (parts.length != 2) {
-      System.out.println("✏️  Использование: edit_budget <категория> <новый_лимит>");
-      System.out.println("   Пример: edit_budget Еда 15000");
+      out.println("✏️  Использование: edit_budget <категория> <новый_лимит>");
+      out.println("   Пример: edit_budget Еда 15000");
       return;
     }
 
@@ -312,28 +393,149 @@ public class CLIInterface {
 
       financeManager.editBudget(category, newLimit);
     } catch (NumberFormatException e) {
-      System.out.println("❌ Неверный формат лимита");
+      out.println("❌ Неверный формат лимита");
     }
   }
 
   private void handleRemoveBudget(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     if (args.isEmpty()) {
-      System.out.println("🗑️  Использование: remove_budget <категория>");
-      System.out.println("   Пример: remove_budget Еда");
+      out.println("🗑️  Использование: remove_budget <категория>");
+      out.println("   Пример: remove_budget Еда");
       return;
     }
 
     financeManager.removeBudget(args);
   }
 
+  private void handleTop(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String[] parts = args.split("\\s+");
+    if (args.isEmpty() || parts.length > 2) {
+      out.println("🏆 Использование: top <N> [доход|расход]");
+      return;
+    }
+
+    boolean income = false;
+    if (parts.length == 2) {
+      String type = parts[1].toLowerCase();
+      if (type.equals("доход") || type.equals("доходы")) {
+        income = true;
+      } else if (!type.equals("расход") && !type.equals("расходы")) {
+        out.println("❌ Тип должен быть 'доход' или 'расход'");
+        return;
+      }
+    }
+
+    try {
+      int limit = Integer.parseInt(parts[0]);
+      if (limit < 1) {
+        out.println("❌ Количество категорий должно быть положительным");
+        return;
+      }
+      financeManager.showTopCategories(limit, income);
+    } catch (NumberFormatException e) {
+      out.println("❌ Неверное количество категорий");
+    }
+  }
+
+  private void handleQuantiles(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String target = args.trim();
+    if (target.equalsIgnoreCase("система")) {
+      financeManager.showSystemQuantiles();
+    } else {
+      financeManager.showQuantiles(target.isEmpty() ? null : target);
+    }
+  }
+
+  private void handlePivot(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    CategoryPivot.Granularity granularity = CategoryPivot.Granularity.MONTH;
+    LocalDate startDate = null;
+    LocalDate endDate = null;
+    String exportFile = null;
+    String format = "csv";
+
+    if (!args.isEmpty()) {
+      for (String part : args.split("\\s+")) {
+        if (part.startsWith("дата:")) {
+          String[] dates = part.substring(5).split("-");
+          try {
+            startDate = LocalDate.parse(dates[0], DATE_FORMATTER);
+            endDate = LocalDate.parse(dates[1], DATE_FORMATTER);
+          } catch (Exception e) {
+            out.println("❌ Неверный формат даты. Используйте дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ");
+            return;
+          }
+        } else if (part.startsWith("экспорт:")) {
+          exportFile = part.substring(8);
+        } else if (part.startsWith("формат:")) {
+          format = part.substring(7).toLowerCase();
+        } else {
+          try {
+            granularity = CategoryPivot.Granularity.fromName(part);
+          } catch (IllegalArgumentException e) {
+            out.println("❌ " + e.getMessage());
+            out.println(
+                "📊 Использование: pivot [день|неделя|месяц|квартал] [дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ]"
+                    + " [экспорт:<файл> формат:csv|json]");
+            return;
+          }
+        }
+      }
+    }
+
+    if (exportFile != null && !exportFile.isEmpty()) {
+      financeManager.exportPivot(granularity, startDate, endDate, exportFile, format);
+    } else {
+      financeManager.showPivot(granularity, startDate, endDate);
+    }
+  }
+
+  private void handleArchive(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String target = args.trim();
+    if (target.isEmpty()) {
+      financeManager.showArchive();
+    } else if (target.startsWith("до:")) {
+      try {
+        financeManager.archiveOperations(LocalDate.parse(target.substring(3), DATE_FORMATTER));
+      } catch (DateTimeParseException e) {
+        out.println("❌ Неверный формат даты. Используйте до:ДД.ММ.ГГГГ");
+      }
+    } else {
+      try {
+        financeManager.archiveOperations(Integer.parseInt(target));
+      } catch (NumberFormatException e) {
+        out.println("📦 Использование: archive [<месяцев> | до:ДД.ММ.ГГГГ]");
+      }
+    }
+  }
+
   private void handleStats(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
@@ -345,7 +547,7 @@ public class CLIInterface {
       String[] parts = args.split("\\s+");
       for (String part : parts) {
         if (part.contains("-")) {
-          String[] dateRange = part.split("-");
+          String[] dateRange = part.replaceFirst("^дата:", "").split("-");
           if (dateRange.length == 2) {
             try {
               startDate = LocalDate.parse(dateRange[0], DATE_FORMATTER);
@@ -367,44 +569,53 @@ public class CLIInterface {
 
   private void handleExampleTZ() {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
-    System.out.println("\n=== ВЫПОЛНЕНИЕ ПРИМЕРА ИЗ ТЕХНИЧЕСКОГО ЗАДАНИЯ ===");
-    System.out.println("Добавляем данные из примера ТЗ:");
+    out.println("\n=== ВЫПОЛНЕНИЕ ПРИМЕРА ИЗ ТЕХНИЧЕСКОГО ЗАДАНИЯ ===");
+    out.println("Добавляем данные из примера ТЗ:");
 
-    System.out.println("\n1. Добавляем доходы:");
+    out.println("\n1. Добавляем доходы:");
     financeManager.addIncome("Зарплата", 20000, "");
     financeManager.addIncome("Зарплата", 40000, "");
     financeManager.addIncome("Бонус", 3000, "");
 
-    System.out.println("\n2. Добавляем расходы:");
+    out.println("\n2. Добавляем расходы:");
     financeManager.addExpense("Еда", 300, "");
     financeManager.addExpense("Еда", 500, "");
     financeManager.addExpense("Развлечения", 3000, "");
     financeManager.addExpense("Коммунальные услуги", 3000, "");
     financeManager.addExpense("Такси", 1500, "");
 
-    System.out.println("\n3. Устанавливаем бюджеты:");
+    out.println("\n3. Устанавливаем бюджеты:");
     financeManager.setBudget("Еда", 4000);
     financeManager.setBudget("Развлечения", 3000);
     financeManager.setBudget("Коммунальные услуги", 2500);
 
-    System.out.println("\n=== РЕЗУЛЬТАТ (как в примере ТЗ) ===");
+    out.println("\n=== РЕЗУЛЬТАТ (как в примере ТЗ) ===");
     financeManager.showExampleFromTZ();
   }
 
   private void handleTransfer(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
-    String[] parts = args.split("\\s+", 3);
-    if (parts.length < 2) {
-      System.out.println("💸 Использование: transfer <логин_получателя> <сумма> [описание]");
-      System.out.println("   Пример: transfer maria 5000 За обед");
+    // Ключ повтора - последнее слово вида ключ:<значение>
+    String key = null;
+    String trimmed = args.trim();
+    int keyStart = trimmed.lastIndexOf("ключ:");
+    if (keyStart >= 0 && (keyStart == 0 || Character.isWhitespace(trimmed.charAt(keyStart - 1)))) {
+      key = trimmed.substring(keyStart + 5);
+      trimmed = trimmed.substring(0, keyStart).trim();
+    }
+    String[] parts = trimmed.split("\\s+", 3);
+    if (parts.length < 2 || (key != null && (key.isEmpty() || key.contains(" ")))) {
+      out.println(
+          "💸 Использование: transfer <логин_получателя> <сумма> [описание] [ключ:<ключ_повтора>]");
+      out.println("   Пример: transfer maria 5000 За обед ключ:обед-0412");
       return;
     }
 
@@ -413,22 +624,84 @@ public class CLIInterface {
       double amount = Double.parseDouble(parts[1]);
       String description = parts.length > 2 ? parts[2] : "";
 
-      financeManager.transfer(toUser, amount, description);
+      financeManager.transfer(toUser, amount, description, key);
     } catch (NumberFormatException e) {
-      System.out.println("❌ Неверный формат суммы");
+      out.println("❌ Неверный формат суммы");
     }
   }
 
+  private void handleTransferBatch(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String filename = args.trim();
+    if (filename.isEmpty()) {
+      out.println("💸 Использование: transfer_batch <файл.csv>");
+      out.println("   Строки файла: получатель,сумма[,описание[,ключ_повтора]]");
+      return;
+    }
+    financeManager.transferBatch(filename);
+  }
+
+  private void handleDeferredTransfer(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String[] parts = args.trim().split("\\s+", 3);
+    if (parts.length < 2) {
+      out.println("⏳ Использование: defer <логин_получателя> <сумма> [описание]");
+      out.println("   Перевод проводится при взаимозачете (команда settle)");
+      return;
+    }
+
+    try {
+      double amount = Double.parseDouble(parts[1]);
+      financeManager.transferDeferred(parts[0], amount, parts.length > 2 ? parts[2] : "");
+    } catch (NumberFormatException e) {
+      out.println("❌ Неверный формат суммы");
+    }
+  }
+
+  private void handleSettle() {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+    financeManager.settle();
+  }
+
+  private void handleSettlement() {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+    financeManager.showSettlement();
+  }
+
+  private void handleTransfers(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String withUser = args.trim();
+    financeManager.showTransfers(withUser.isEmpty() ? null : withUser);
+  }
+
   private void handleAddCategory(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 2);
     if (parts.length < 1) {
-      System.out.println("🏷️  Использование: add_category <название> [описание]");
-      System.out.println("   Пример: add_category Образование Курсы и книги");
+      out.println("🏷️  Использование: add_category <название> [описание]");
+      out.println("   Пример: add_category Образование Курсы и книги");
       return;
     }
 
@@ -440,15 +713,14 @@ public class CLIInterface {
 
   private void handleEditCategory(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 3);
     if (parts.length < 2) {
-      System.out.println(
-          "✏️  Использование: edit_category <старое_название> <новое_название> [описание]");
-      System.out.println("   Пример: edit_category Еда Продукты");
+      out.println("✏️  Использование: edit_category <старое_название> <новое_название> [описание]");
+      out.println("   Пример: edit_category Еда Продукты");
       return;
     }
 
@@ -461,17 +733,17 @@ public class CLIInterface {
 
   private void handleExport(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
     String[] parts = args.split("\\s+", 2);
     if (parts.length < 1) {
-      System.out.println("📤 Использование: export <имя_файла> [формат]");
-      System.out.println("   Примеры:");
-      System.out.println("     export my_data           # Binary формат (.dat)");
-      System.out.println("     export report csv        # CSV формат");
-      System.out.println("     export data json         # JSON формат");
+      out.println("📤 Использование: export <имя_файла> [формат]");
+      out.println("   Примеры:");
+      out.println("     export my_data           # Binary формат (.dat)");
+      out.println("     export report csv        # CSV формат");
+      out.println("     export data json         # JSON формат");
       return;
     }
 
@@ -479,7 +751,7 @@ public class CLIInterface {
     String format = parts.length > 1 ? parts[1] : "binary";
 
     if (!format.equals("binary") && !format.equals("csv") && !format.equals("json")) {
-      System.out.println("❌ Неподдерживаемый формат. Используйте: binary, csv или json");
+      out.println("❌ Неподдерживаемый формат. Используйте: binary, csv или json");
       return;
     }
 
@@ -488,46 +760,55 @@ public class CLIInterface {
 
   private void handleImport(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
-    String[] parts = args.split("\\s+", 2);
+    String[] parts = args.split("\\s+");
     if (parts.length < 1) {
-      System.out.println("📥 Использование: import <имя_файла> [формат]");
-      System.out.println("   Примеры:");
-      System.out.println("     import my_data.dat        # Binary формат");
-      System.out.println("     import data.json          # JSON формат");
+      out.println("📥 Использование: import <имя_файла> [формат] [merge]");
+      out.println("   Примеры:");
+      out.println("     import my_data.dat        # Binary формат");
+      out.println("     import data.json          # JSON формат");
+      out.println("     import report.csv csv     # Добавить операции из CSV");
       return;
     }
 
     String filename = parts[0];
     String format = parts.length > 1 ? parts[1] : "binary";
+    boolean merge = parts.length > 2 && parts[2].equalsIgnoreCase("merge");
+
+    if (!format.equals("binary") && !format.equals("json") && !format.equals("csv")) {
+      out.println("❌ Неподдерживаемый формат. Используйте: binary, json или csv");
+      return;
+    }
 
-    if (!format.equals("binary") && !format.equals("json")) {
-      System.out.println("❌ Неподдерживаемый формат. Используйте: binary или json");
+    // Добавление операций не трогает текущие данные, повторы пропускаются
+    if (merge || format.equals("csv")) {
+      financeManager.importFromFile(filename, format, true);
       return;
     }
 
-    System.out.print("⚠️  Текущие данные будут заменены. Продолжить? (да/нет): ");
-    String confirmation = scanner.nextLine().trim().toLowerCase();
+    out.print("⚠️  Текущие данные будут заменены. Продолжить? (да/нет): ");
+    String confirmation = readAnswer();
 
     if (confirmation.equals("да") || confirmation.equals("yes") || confirmation.equals("y")) {
       financeManager.importFromFile(filename, format);
     } else {
-      System.out.println("❌ Импорт отменен");
+      out.println("❌ Импорт отменен");
     }
   }
 
   private void handleOperations(String args) {
     if (!financeManager.isAuthenticated()) {
-      System.out.println("🔒 Требуется авторизация");
+      out.println("🔒 Требуется авторизация");
       return;
     }
 
-    LocalDate startDate = null;
-    LocalDate endDate = null;
-    String category = null;
+    OperationQuery.Builder query = OperationQuery.builder();
+    StringJoiner text = new StringJoiner(" ");
+    int page = 0;
+    int pageSize = 0;
 
     if (!args.isEmpty()) {
       String[] parts = args.split("\\s+");
@@ -537,110 +818,285 @@ public class CLIInterface {
           String[] dates = dateRange.split("-");
           if (dates.length == 2) {
             try {
-              startDate = LocalDate.parse(dates[0], DATE_FORMATTER);
-              endDate = LocalDate.parse(dates[1], DATE_FORMATTER);
+              query.between(
+                  LocalDate.parse(dates[0], DATE_FORMATTER),
+                  LocalDate.parse(dates[1], DATE_FORMATTER));
             } catch (Exception e) {
-              System.out.println("❌ Неверный формат даты. Используйте дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ");
+              out.println("❌ Неверный формат даты. Используйте дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ");
               return;
             }
           }
         } else if (part.startsWith("категория:")) {
-          category = part.substring(10);
+          for (String category : part.substring(10).split(",")) {
+            query.category(category);
+          }
+        } else if (part.startsWith("тип:")) {
+          String type = part.substring(4).toLowerCase();
+          if (type.startsWith("доход")) {
+            query.type(OperationQuery.Type.INCOME);
+          } else if (type.startsWith("расход")) {
+            query.type(OperationQuery.Type.EXPENSE);
+          } else {
+            out.println("❌ Тип должен быть 'доход' или 'расход'");
+            return;
+          }
+        } else if (part.startsWith("сумма:")) {
+          String[] range = part.substring(6).split("-", -1);
+          try {
+            if (range.length == 1) {
+              double amount = Double.parseDouble(range[0]);
+              query.minAmount(amount).maxAmount(amount);
+            } else if (range.length == 2) {
+              if (!range[0].isEmpty()) {
+                query.minAmount(Double.parseDouble(range[0]));
+              }
+              if (!range[1].isEmpty()) {
+                query.maxAmount(Double.parseDouble(range[1]));
+              }
+            } else {
+              throw new NumberFormatException();
+            }
+          } catch (NumberFormatException e) {
+            out.println(
+                "❌ Неверный диапазон суммы. Используйте сумма:ОТ-ДО, сумма:ОТ- или сумма:-ДО");
+            return;
+          }
+        } else if (part.startsWith("текст:")) {
+          text.add(part.substring(6));
+        } else if (part.startsWith("сортировка:")) {
+          OperationQuery.Sort sort = SORT_ORDERS.get(part.substring(11).toLowerCase());
+          if (sort == null) {
+            out.println("❌ Сортировка: новые, старые, дорогие или дешевые");
+            return;
+          }
+          query.sortBy(sort);
+        } else if (part.startsWith("страница:") || part.startsWith("размер:")) {
+          try {
+            int value = Integer.parseInt(part.substring(part.indexOf(':') + 1));
+            if (value < 1) {
+              throw new NumberFormatException();
+            }
+            if (part.startsWith("страница:")) {
+              page = value;
+            } else {
+              pageSize = value;
+            }
+          } catch (NumberFormatException e) {
+            out.println("❌ Номер страницы и размер должны быть положительными числами");
+            return;
+          }
         }
       }
     }
 
-    financeManager.showOperations(startDate, endDate, category);
+    if (page > 0 || pageSize > 0) {
+      int size = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+      query
+          .offset((int) Math.min((long) (Math.max(page, 1) - 1) * size, Integer.MAX_VALUE))
+          .limit(size);
+    }
+    try {
+      financeManager.showOperations(query.text(text.toString()).build());
+    } catch (IllegalArgumentException e) {
+      out.println("❌ " + e.getMessage());
+    }
+  }
+
+  private void handleSearch(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    if (args.trim().isEmpty()) {
+      out.println("🔍 Использование: search <слова> [ИЛИ <слова>]");
+      out.println("   Пример: search кофе ИЛИ чай*");
+      return;
+    }
+    financeManager.searchOperations(args);
+  }
+
+  private void handleAlerts() {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+    financeManager.showAlertRules();
+  }
+
+  private void handleAlertAdd(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    String[] parts = args.split("\\s+", 4);
+    if (parts.length < 3) {
+      out.println(
+          "🔔 Использование: alert_add <метрика> <условие> <порог> [категория:Имя] [сообщение]");
+      out.println(
+          "   Метрики: баланс, доход, расход, расходы_к_доходам, баланс_к_доходам,"
+              + " расход_категории, бюджет");
+      out.println("   Условия: > >= <");
+      out.println("   Пример: alert_add бюджет >= 50 категория:Еда");
+      return;
+    }
+
+    try {
+      double threshold = Double.parseDouble(parts[2]);
+      String category = null;
+      String message = null;
+      if (parts.length > 3) {
+        String rest = parts[3];
+        if (rest.startsWith("категория:")) {
+          String[] tail = rest.split("\\s+", 2);
+          category = tail[0].substring(10);
+          message = tail.length > 1 ? tail[1] : null;
+        } else {
+          message = rest;
+        }
+      }
+      financeManager.addAlertRule(parts[0], parts[1], threshold, category, message);
+    } catch (NumberFormatException e) {
+      out.println("❌ Неверный формат порога");
+    }
+  }
+
+  private void handleAlertRemove(String args) {
+    if (!financeManager.isAuthenticated()) {
+      out.println("🔒 Требуется авторизация");
+      return;
+    }
+
+    if (args.isEmpty()) {
+      out.println("🗑️  Использование: alert_remove <номер_правила>");
+      return;
+    }
+
+    try {
+      financeManager.removeAlertRule(Long.parseLong(args.trim().replace("#", "")));
+    } catch (NumberFormatException e) {
+      out.println("❌ Неверный номер правила");
+    }
   }
 
   private void handleExit() {
-    System.out.print("\n💾 Сохранить данные перед выходом? (да/нет): ");
-    String answer = scanner.nextLine().trim().toLowerCase();
+    out.print("\n💾 Сохранить данные перед выходом? (да/нет): ");
+    String answer = readAnswer();
 
     if (answer.equals("да") || answer.equals("yes") || answer.equals("y")) {
       financeManager.logout();
     }
 
-    System.out.println("\n👋 Спасибо за использование Finance Manager!");
+    out.println("\n👋 Спасибо за использование Finance Manager!");
     running = false;
   }
 
+  // Ответ на вопрос; без ввода (например, в сетевом сеансе) - пустой, то есть отказ
+  private String readAnswer() {
+    return scanner.hasNextLine() ? scanner.nextLine().trim().toLowerCase() : "";
+  }
+
   private void clearScreen() {
     for (int i = 0; i < 50; i++) {
-      System.out.println();
+      out.println();
     }
   }
 
   private void printWelcome() {
-    System.out.println("══════════════════════════════════════════════");
-    System.out.println("      🏦 FINANCE MANAGER v1.0");
-    System.out.println("   Управление личными финансами");
-    System.out.println("══════════════════════════════════════════════");
+    out.println("══════════════════════════════════════════════");
+    out.println("      🏦 FINANCE MANAGER v1.0");
+    out.println("   Управление личными финансами");
+    out.println("══════════════════════════════════════════════");
   }
 
   private void printHelp() {
-    System.out.println("\n══════════════════════════════════════════════");
-    System.out.println("              СПРАВКА ПО КОМАНДАМ");
-    System.out.println("══════════════════════════════════════════════");
-
-    System.out.println("\n👤 АУТЕНТИФИКАЦИЯ:");
-    System.out.println("  register <логин> <пароль>  - Регистрация нового пользователя");
-    System.out.println("  login <логин> <пароль>     - Вход в систему");
-    System.out.println("  logout                     - Выход из системы");
-
-    System.out.println("\n💰 ОПЕРАЦИИ:");
-    System.out.println("  add_income <кат> <сум> [оп] - Добавить доход");
-    System.out.println("  add_expense <кат> <сум> [оп]- Добавить расход");
-    System.out.println("  transfer <получ> <сум> [оп] - Перевод другому пользователю");
-
-    System.out.println("\n🏷️  КАТЕГОРИИ:");
-    System.out.println("  add_category <имя> [оп]     - Добавить категорию");
-    System.out.println("  edit_category <ст> <нов> [оп] - Изменить категорию");
-
-    System.out.println("\n🎯 БЮДЖЕТЫ:");
-    System.out.println("  set_budget <кат> <лимит>    - Установить бюджет");
-    System.out.println("  edit_budget <кат> <лимит>   - Изменить бюджет");
-    System.out.println("  remove_budget <кат>         - Удалить бюджет");
-
-    System.out.println("\n📊 ОТЧЕТЫ И СТАТИСТИКА:");
-    System.out.println("  balance                    - Показать баланс");
-    System.out.println("  stats [кат1 кат2...]       - Статистика (по категориям)");
-    System.out.println(
-        "  example_tz                 - Выполнить пример из ТЗ и показать результат");
-    System.out.println("  stats дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ - Статистика за период");
-    System.out.println("  budgets                    - Показать все бюджеты");
-    System.out.println("  operations                 - Показать все операции");
-    System.out.println("  operations дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ - Операции за период");
-    System.out.println("  operations категория:Еда   - Операции по категории");
-    System.out.println("  report                     - Детальный отчет");
-
-    System.out.println("\n💾 ИМПОРТ/ЭКСПОРТ (3 формата):");
-    System.out.println("  export <имя> [формат]      - Экспорт данных (binary/csv/json)");
-    System.out.println("  import <имя_файла> [формат]- Импорт данных (binary/json)");
-    System.out.println("  Примеры:");
-    System.out.println("    export data binary       # Binary формат (.dat)");
-    System.out.println("    export report csv        # CSV формат");
-    System.out.println("    export backup json       # JSON формат");
-    System.out.println("    import data.dat binary   # Импорт Binary");
-    System.out.println("    import backup.json json  # Импорт JSON");
-
-    System.out.println("\n⚙️  СИСТЕМНЫЕ:");
-    System.out.println("  clear                      - Очистить экран");
-    System.out.println("  help                       - Показать эту справку");
-    System.out.println("  exit                       - Выход из приложения");
-
-    System.out.println("\n📝 ПРИМЕР ИЗ ТЗ:");
-    System.out.println(
+    out.println("\n══════════════════════════════════════════════");
+    out.println("              СПРАВКА ПО КОМАНДАМ");
+    out.println("══════════════════════════════════════════════");
+
+    out.println("\n👤 АУТЕНТИФИКАЦИЯ:");
+    out.println("  register <логин> <пароль>  - Регистрация нового пользователя");
+    out.println("  login <логин> <пароль>     - Вход в систему");
+    out.println("  logout                     - Выход из системы");
+
+    out.println("\n💰 ОПЕРАЦИИ:");
+    out.println("  add_income <кат> <сум> [оп] - Добавить доход");
+    out.println("  add_expense <кат> <сум> [оп]- Добавить расход");
+    out.println("  transfer <получ> <сум> [оп] - Перевод другому пользователю");
+    out.println("  transfer ... ключ:<ключ>    - Повтор с тем же ключом не переводит дважды");
+    out.println("  transfers [логин]          - Журнал переводов (с пользователем)");
+    out.println("  transfer_batch <файл.csv>  - Пакет переводов: все или ни одного");
+    out.println("  defer <получ> <сум> [оп]   - Отложенный перевод до взаимозачета");
+    out.println("  settle                     - Взаимозачет отложенных переводов");
+    out.println("  settlement                 - Состояние окна отложенных переводов");
+
+    out.println("\n🏷️  КАТЕГОРИИ:");
+    out.println("  add_category <имя> [оп]     - Добавить категорию");
+    out.println("  edit_category <ст> <нов> [оп] - Изменить категорию");
+
+    out.println("\n🎯 БЮДЖЕТЫ:");
+    out.println("  set_budget <кат> <лимит>    - Установить бюджет");
+    out.println("  edit_budget <кат> <лимит>   - Изменить бюджет");
+    out.println("  remove_budget <кат>         - Удалить бюджет");
+
+    out.println("\n📊 ОТЧЕТЫ И СТАТИСТИКА:");
+    out.println("  balance                    - Показать баланс");
+    out.println("  stats [кат1 кат2...]       - Статистика (по категориям)");
+    out.println("  example_tz                 - Выполнить пример из ТЗ и показать результат");
+    out.println("  stats дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ - Статистика за период");
+    out.println("  top <N> [доход|расход]     - Топ-N категорий (по умолчанию расходы)");
+    out.println("  quantiles [кат|система]    - Медиана, p90, p99 размеров расходов");
+    out.println("  pivot [день|неделя|месяц|квартал] [дата:...] - Категории по периодам");
+    out.println("  pivot месяц экспорт:<файл> формат:csv|json - Экспорт сводной таблицы");
+    out.println("  archive                    - Состояние архива операций");
+    out.println("  archive <N>                - В архив: старше N полных месяцев");
+    out.println("  archive до:ДД.ММ.ГГГГ      - В архив: операции раньше даты");
+    out.println("  budgets                    - Показать все бюджеты");
+    out.println("  operations                 - Показать все операции");
+    out.println("  operations дата:ДД.ММ.ГГГГ-ДД.ММ.ГГГГ - Операции за период");
+    out.println("  operations категория:Еда   - Операции по категории");
+    out.println("  operations страница:2 размер:50 - Постраничный вывод, от новых к старым");
+    out.println("  operations категория:Еда,Такси тип:расход сумма:100-500 текст:кофе");
+    out.println("             сортировка:новые|старые|дорогие|дешевые - Условия можно сочетать");
+    out.println("  search <слова>             - Поиск по описанию (ИЛИ, кофе* - по началу)");
+    out.println("  report                     - Детальный отчет");
+    out.println("  report <файл>              - Сохранить детальный отчет в файл");
+
+    out.println("\n🔔 ПРАВИЛА ОПОВЕЩЕНИЙ:");
+    out.println("  alerts                     - Показать правила оповещений");
+    out.println("  alert_add <метр> <усл> <порог> [категория:Имя] [сообщ] - Добавить правило");
+    out.println("  alert_remove <номер>       - Удалить правило");
+
+    out.println("\n💾 ИМПОРТ/ЭКСПОРТ (3 формата):");
+    out.println("  export <имя> [формат]      - Экспорт данных (binary/csv/json)");
+    out.println("  import <имя_файла> [формат]- Импорт данных (binary/json/csv)");
+    out.println("  import <имя> <формат> merge- Добавить операции без повторов");
+    out.println("  Примеры:");
+    out.println("    export data binary       # Binary формат (.dat)");
+    out.println("    export report csv        # CSV формат");
+    out.println("    export backup json       # JSON формат");
+    out.println("    import data.dat binary   # Импорт Binary");
+    out.println("    import backup.json json  # Импорт JSON");
+    out.println("    import report.csv csv    # Операции из CSV, повторы пропускаются");
+
+    out.println("\n⚙️  СИСТЕМНЫЕ:");
+    out.println("  clear                      - Очистить экран");
+    out.println("  help                       - Показать эту справку");
+    out.println("  exit                       - Выход из приложения");
+
+    out.println("\n📝 ПРИМЕР ИЗ ТЗ:");
+    out.println(
         "  example_tz                 - Автоматически добавит данные из ТЗ и покажет результат");
-    System.out.println("  (ТЗ пример: доходы 20000+40000+3000, расходы 300+500+3000+3000+1500)");
-    System.out.println("  (Бюджеты: Еда 4000, Развлечения 3000, Коммунальные услуги 2500)");
+    out.println("  (ТЗ пример: доходы 20000+40000+3000, расходы 300+500+3000+3000+1500)");
+    out.println("  (Бюджеты: Еда 4000, Развлечения 3000, Коммунальные услуги 2500)");
 
-    System.out.println("\n⚠️  Автоматические оповещения:");
-    System.out.println("  • Превышение бюджета");
-    System.out.println("  • 80% использования бюджета");
-    System.out.println("  • Отрицательный баланс");
-    System.out.println("  • Высокий уровень расходов");
+    out.println("\n⚠️  Автоматические оповещения:");
+    out.println("  • Превышение бюджета");
+    out.println("  • 80% использования бюджета");
+    out.println("  • Отрицательный баланс");
+    out.println("  • Высокий уровень расходов");
 
-    System.out.println("══════════════════════════════════════════════");
+    out.println("══════════════════════════════════════════════");
   }
 }
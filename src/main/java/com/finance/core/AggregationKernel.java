@@ -0,0 +1,36 @@
+package com.finance.core;
+
+/**
+ * Ядро агрегатов по столбцам операций: сумма amounts[i] по строкам, где types[i] == type и
+ * fromEpoch <= epochs[i] < toEpoch. Векторная реализация используется, если JVM запущена с модулем
+ * jdk.incubator.vector; иначе - скалярная.
+ */
+interface AggregationKernel {
+  double sum(
+      double[] amounts,
+      byte[] types,
+      long[] epochs,
+      int size,
+      byte type,
+      long fromEpoch,
+      long toEpoch);
+
+  /** Название реализации для отчетов и бенчмарков. */
+  String name();
+
+  static AggregationKernel load() {
+    // Класс векторного ядра ссылается на модуль-инкубатор, поэтому загружается только по имени,
+    // когда модуль есть в загрузочном слое
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (AggregationKernel)
+            Class.forName("com.finance.core.VectorAggregationKernel")
+                .getDeclaredConstructor()
+                .newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // Модуль есть, но векторы недоступны - остается скалярное ядро
+      }
+    }
+    return new ScalarAggregationKernel();
+  }
+}
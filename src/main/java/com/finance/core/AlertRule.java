@@ -0,0 +1,317 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Правило оповещения: метрика кошелька, условие и порог. Каждая метрика объявляет агрегаты, от
+ * которых зависит, поэтому правило перепроверяется только при изменении этих агрегатов.
+ */
+public class AlertRule implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // Ключи агрегатов, от которых зависят правила
+  public static final String BALANCE_KEY = "balance";
+  public static final String INCOME_KEY = "income";
+  public static final String EXPENSE_KEY = "expense";
+  public static final String ANY_CATEGORY_KEY = "category:*";
+
+  public enum Metric {
+    BALANCE("баланс"),
+    TOTAL_INCOME("доход"),
+    TOTAL_EXPENSE("расход"),
+    EXPENSE_RATIO("расходы_к_доходам"),
+    BALANCE_RATIO("баланс_к_доходам"),
+    CATEGORY_EXPENSE("расход_категории"),
+    BUDGET_USAGE("бюджет");
+
+    private final String code;
+
+    Metric(String code) {
+      this.code = code;
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public boolean isCategoryScoped() {
+      return this == CATEGORY_EXPENSE || this == BUDGET_USAGE;
+    }
+
+    public static Metric fromCode(String code) {
+      for (Metric metric : values()) {
+        if (metric.code.equalsIgnoreCase(code) || metric.name().equalsIgnoreCase(code)) {
+          return metric;
+        }
+      }
+      throw new IllegalArgumentException("Неизвестная метрика: " + code);
+    }
+  }
+
+  public enum Condition {
+    ABOVE(">"),
+    AT_LEAST(">="),
+    BELOW("<");
+
+    private final String symbol;
+
+    Condition(String symbol) {
+      this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+      return symbol;
+    }
+
+    public static Condition fromSymbol(String symbol) {
+      for (Condition condition : values()) {
+        if (condition.symbol.equals(symbol) || condition.name().equalsIgnoreCase(symbol)) {
+          return condition;
+        }
+      }
+      throw new IllegalArgumentException("Неизвестное условие: " + symbol);
+    }
+  }
+
+  private long id;
+  private final Metric metric;
+  private final Condition condition;
+  private final double threshold;
+  private final double ceiling;
+  private final String category;
+  private final String message;
+  private NotificationBuffer.Severity severity;
+
+  // Служебные поля движка: порядок правила и отметка последней проверки
+  private transient int ordinal;
+  private transient long evaluatedStamp;
+
+  public AlertRule(
+      Metric metric,
+      Condition condition,
+      double threshold,
+      double ceiling,
+      String category,
+      String message) {
+    if (metric == null || condition == null) {
+      throw new IllegalArgumentException("Метрика и условие правила обязательны");
+    }
+    if (category != null && !metric.isCategoryScoped()) {
+      throw new IllegalArgumentException(
+          "Метрика '" + metric.getCode() + "' не поддерживает категорию");
+    }
+    this.metric = metric;
+    this.condition = condition;
+    this.threshold = threshold;
+    this.ceiling = ceiling;
+    this.category = category;
+    this.message = message;
+  }
+
+  public AlertRule(Metric metric, Condition condition, double threshold, String category) {
+    this(metric, condition, threshold, Double.POSITIVE_INFINITY, category, null);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  void setId(long id) {
+    this.id = id;
+  }
+
+  public Metric getMetric() {
+    return metric;
+  }
+
+  public Condition getCondition() {
+    return condition;
+  }
+
+  public double getThreshold() {
+    return threshold;
+  }
+
+  public double getCeiling() {
+    return ceiling;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public NotificationBuffer.Severity getSeverity() {
+    return severity != null ? severity : NotificationBuffer.Severity.WARNING;
+  }
+
+  public AlertRule setSeverity(NotificationBuffer.Severity severity) {
+    this.severity = severity;
+    return this;
+  }
+
+  // Ключ оповещения: повторные срабатывания правила по той же категории объединяются
+  String notificationKey(String categoryName) {
+    String scope = category != null ? category : categoryName;
+    return "rule:"
+        + id
+        + (metric.isCategoryScoped() && scope != null ? ":" + scope.toLowerCase() : "");
+  }
+
+  int getOrdinal() {
+    return ordinal;
+  }
+
+  void setOrdinal(int ordinal) {
+    this.ordinal = ordinal;
+  }
+
+  // Отмечает правило проверенным в текущем проходе; false, если уже проверено
+  boolean markEvaluated(long stamp) {
+    if (evaluatedStamp == stamp) {
+      return false;
+    }
+    evaluatedStamp = stamp;
+    return true;
+  }
+
+  /** Ключи агрегатов, при изменении которых правило нужно перепроверить. */
+  public List<String> getDependencies() {
+    switch (metric) {
+      case BALANCE:
+        return List.of(BALANCE_KEY);
+      case TOTAL_INCOME:
+        return List.of(INCOME_KEY);
+      case TOTAL_EXPENSE:
+        return List.of(EXPENSE_KEY);
+      case EXPENSE_RATIO:
+        return List.of(INCOME_KEY, EXPENSE_KEY);
+      case BALANCE_RATIO:
+        return List.of(BALANCE_KEY, INCOME_KEY);
+      default:
+        return List.of(category != null ? categoryKey(category) : ANY_CATEGORY_KEY);
+    }
+  }
+
+  public static String categoryKey(String categoryName) {
+    return "category:" + categoryName.toLowerCase();
+  }
+
+  /**
+   * Проверяет правило и возвращает текст оповещения или null, если условие не выполнено.
+   *
+   * @param categoryName категория, агрегаты которой изменились (для правил по категориям)
+   */
+  String evaluate(Wallet wallet, String categoryName) {
+    String scope = category != null ? category : categoryName;
+    if (metric.isCategoryScoped() && scope == null) {
+      return null;
+    }
+    Budget budget = metric == Metric.BUDGET_USAGE ? wallet.getBudget(scope) : null;
+    if (metric == Metric.BUDGET_USAGE && budget == null) {
+      return null;
+    }
+    double value = currentValue(wallet, scope, budget);
+    if (Double.isNaN(value) || !matches(value)) {
+      return null;
+    }
+    return render(wallet, scope, budget, value);
+  }
+
+  private double currentValue(Wallet wallet, String scope, Budget budget) {
+    double income = wallet.getTotalIncome();
+    switch (metric) {
+      case BALANCE:
+        return wallet.getBalance();
+      case TOTAL_INCOME:
+        return income;
+      case TOTAL_EXPENSE:
+        return wallet.getTotalExpense();
+      case EXPENSE_RATIO:
+        return income > 0 ? wallet.getTotalExpense() / income * 100 : Double.NaN;
+      case BALANCE_RATIO:
+        return income > 0 ? wallet.getBalance() / income * 100 : Double.NaN;
+      case CATEGORY_EXPENSE:
+        return wallet.getExpenseByCategory(scope);
+      default:
+        if (budget.getLimit() > 0) {
+          return budget.getSpent() / budget.getLimit() * 100;
+        }
+        return budget.getSpent() > 0 ? Double.POSITIVE_INFINITY : 0.0;
+    }
+  }
+
+  private boolean matches(double value) {
+    if (!(value < ceiling)) {
+      return false;
+    }
+    switch (condition) {
+      case ABOVE:
+        return value > threshold;
+      case AT_LEAST:
+        return value >= threshold;
+      default:
+        return value < threshold;
+    }
+  }
+
+  private String render(Wallet wallet, String scope, Budget budget, double value) {
+    String template = message != null && !message.isEmpty() ? message : defaultMessage();
+    String result =
+        template
+            .replace("{id}", String.valueOf(id))
+            .replace("{value}", String.format("%.1f", value))
+            .replace("{percent}", String.format("%.0f", value))
+            .replace("{balance}", wallet.formatCurrency(wallet.getBalance()));
+    if (scope != null) {
+      Category scopeCategory = wallet.getCategory(scope);
+      result =
+          result.replace("{category}", scopeCategory != null ? scopeCategory.getName() : scope);
+    }
+    if (budget != null) {
+      result =
+          result
+              .replace("{spent}", wallet.formatCurrency(budget.getSpent()))
+              .replace("{limit}", wallet.formatCurrency(budget.getLimit()));
+    }
+    return result;
+  }
+
+  private String defaultMessage() {
+    return "\n🔔 ПРАВИЛО #{id}: "
+        + describe()
+        + " (текущее значение: "
+        + (metric == Metric.BUDGET_USAGE
+                || metric == Metric.EXPENSE_RATIO
+                || metric == Metric.BALANCE_RATIO
+            ? "{value}%"
+            : "{value}")
+        + ")";
+  }
+
+  /** Краткое описание условия правила, например "бюджет[Еда] >= 80.0". */
+  public String describe() {
+    StringBuilder sb = new StringBuilder(metric.getCode());
+    if (metric.isCategoryScoped()) {
+      sb.append('[').append(category != null ? category : "*").append(']');
+    }
+    sb.append(' ')
+        .append(condition.getSymbol())
+        .append(' ')
+        .append(String.format(Locale.US, "%.1f", threshold));
+    if (ceiling != Double.POSITIVE_INFINITY) {
+      sb.append(" и < ").append(String.format(Locale.US, "%.1f", ceiling));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "#" + id + " " + describe();
+  }
+}
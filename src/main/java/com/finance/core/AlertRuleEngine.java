@@ -0,0 +1,185 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Движок правил оповещений кошелька. Правила индексируются по ключам агрегатов, от которых зависят,
+ * поэтому при добавлении операции проверяются только правила затронутых агрегатов, а не все правила
+ * кошелька.
+ */
+public class AlertRuleEngine implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final List<AlertRule> rules;
+  private long nextRuleId;
+
+  // Индекс "ключ агрегата -> правила", строится лениво и не сохраняется
+  private transient Map<String, List<AlertRule>> index;
+  private transient long stamp;
+
+  public AlertRuleEngine() {
+    this.rules = new ArrayList<>();
+    this.nextRuleId = 1;
+  }
+
+  /** Движок со стандартными правилами, ранее зашитыми в Wallet и Budget. */
+  public static AlertRuleEngine withDefaultRules() {
+    AlertRuleEngine engine = new AlertRuleEngine();
+    engine
+        .addRule(
+            new AlertRule(
+                AlertRule.Metric.BUDGET_USAGE,
+                AlertRule.Condition.ABOVE,
+                100,
+                Double.POSITIVE_INFINITY,
+                null,
+                "\n⚠️  ВНИМАНИЕ: Превышен бюджет по категории '{category}'!"
+                    + "\n   Потрачено: {spent}, Лимит: {limit}"))
+        .setSeverity(NotificationBuffer.Severity.WARNING);
+    engine
+        .addRule(
+            new AlertRule(
+                AlertRule.Metric.BUDGET_USAGE,
+                AlertRule.Condition.AT_LEAST,
+                Budget.NEAR_LIMIT_RATIO * 100,
+                100,
+                null,
+                "\nℹ️  ИНФО: Бюджет по категории '{category}' почти исчерпан!"
+                    + "\n   Использовано: {spent} из {limit} ({percent}%)"))
+        .setSeverity(NotificationBuffer.Severity.INFO);
+    engine
+        .addRule(
+            new AlertRule(
+                AlertRule.Metric.BALANCE,
+                AlertRule.Condition.BELOW,
+                0,
+                Double.POSITIVE_INFINITY,
+                null,
+                "\n🚨 КРИТИЧЕСКОЕ ПРЕДУПРЕЖДЕНИЕ: Отрицательный баланс! Расходы превысили доходы!"
+                    + "\n   Текущий баланс: {balance}"))
+        .setSeverity(NotificationBuffer.Severity.CRITICAL);
+    engine
+        .addRule(
+            new AlertRule(
+                AlertRule.Metric.EXPENSE_RATIO,
+                AlertRule.Condition.ABOVE,
+                90,
+                Double.POSITIVE_INFINITY,
+                null,
+                "\n⚠️  ВНИМАНИЕ: Расходы составляют {value}% от доходов!"))
+        .setSeverity(NotificationBuffer.Severity.WARNING);
+    engine
+        .addRule(
+            new AlertRule(
+                AlertRule.Metric.BALANCE_RATIO,
+                AlertRule.Condition.BELOW,
+                10,
+                Double.POSITIVE_INFINITY,
+                null,
+                "\nℹ️  ИНФО: Баланс составляет менее 10% от общего дохода"))
+        .setSeverity(NotificationBuffer.Severity.INFO);
+    return engine;
+  }
+
+  public AlertRule addRule(AlertRule rule) {
+    rule.setId(nextRuleId++);
+    rules.add(rule);
+    index = null;
+    return rule;
+  }
+
+  public boolean removeRule(long id) {
+    boolean removed = rules.removeIf(rule -> rule.getId() == id);
+    if (removed) {
+      index = null;
+    }
+    return removed;
+  }
+
+  public List<AlertRule> getRules() {
+    return Collections.unmodifiableList(rules);
+  }
+
+  /**
+   * Проверяет правила, зависящие от изменившихся агрегатов.
+   *
+   * @param changedKeys ключи изменившихся агрегатов (см. константы {@link AlertRule})
+   * @param categoryName категория, суммы которой изменились, или null
+   * @param sink буфер, в который добавляются оповещения сработавших правил
+   */
+  void evaluate(
+      Wallet wallet, List<String> changedKeys, String categoryName, NotificationBuffer sink) {
+    Map<String, List<AlertRule>> rulesByKey = index();
+    long currentStamp = ++stamp;
+    List<AlertRule> candidates = new ArrayList<>();
+    for (String key : changedKeys) {
+      collect(rulesByKey.get(key), currentStamp, candidates);
+    }
+    if (categoryName != null) {
+      collect(rulesByKey.get(AlertRule.categoryKey(categoryName)), currentStamp, candidates);
+      collect(rulesByKey.get(AlertRule.ANY_CATEGORY_KEY), currentStamp, candidates);
+    }
+    if (candidates.size() > 1) {
+      candidates.sort(Comparator.comparingInt(AlertRule::getOrdinal));
+    }
+    for (AlertRule rule : candidates) {
+      String message = rule.evaluate(wallet, categoryName);
+      if (message != null) {
+        sink.add(rule.notificationKey(categoryName), rule.getSeverity(), message);
+      }
+    }
+  }
+
+  /**
+   * Проверка после пакета изменений: правила изменившихся агрегатов проверяются один раз, правила
+   * категорий - по разу на каждую изменившуюся категорию.
+   */
+  void evaluateBatch(
+      Wallet wallet,
+      Collection<String> changedKeys,
+      Collection<String> categoryNames,
+      NotificationBuffer sink) {
+    List<String> keys = new ArrayList<>(changedKeys);
+    if (categoryNames.isEmpty()) {
+      evaluate(wallet, keys, null, sink);
+      return;
+    }
+    for (String categoryName : categoryNames) {
+      evaluate(wallet, keys, categoryName, sink);
+      keys = List.of();
+    }
+  }
+
+  private static void collect(List<AlertRule> bucket, long currentStamp, List<AlertRule> out) {
+    if (bucket == null) {
+      return;
+    }
+    for (AlertRule rule : bucket) {
+      if (rule.markEvaluated(currentStamp)) {
+        out.add(rule);
+      }
+    }
+  }
+
+  private Map<String, List<AlertRule>> index() {
+    if (index == null) {
+      Map<String, List<AlertRule>> built = new HashMap<>();
+      for (int i = 0; i < rules.size(); i++) {
+        AlertRule rule = rules.get(i);
+        rule.setOrdinal(i);
+        for (String key : rule.getDependencies()) {
+          built.computeIfAbsent(key, k -> new ArrayList<>()).add(rule);
+        }
+      }
+      index = built;
+    }
+    return index;
+  }
+}
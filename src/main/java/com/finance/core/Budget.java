@@ -1,12 +1,13 @@
 package com.finance.core;
 
 import java.io.Serializable;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 public class Budget implements Serializable {
   private static final long serialVersionUID = 1L;
 
+  // Доля лимита, начиная с которой бюджет считается почти исчерпанным
+  public static final double NEAR_LIMIT_RATIO = 0.8;
+
   private Category category;
   private double limit;
   private double spent;
@@ -54,7 +55,7 @@ public class Budget implements Serializable {
   }
 
   public boolean isNearLimit() {
-    return spent >= limit * 0.8 && spent < limit;
+    return spent >= limit * NEAR_LIMIT_RATIO && spent < limit;
   }
 
   public double getUsagePercentage() {
@@ -67,11 +68,7 @@ public class Budget implements Serializable {
 
   // Публичный метод для форматирования валюты
   public String formatCurrency(double amount) {
-    NumberFormat nf = NumberFormat.getNumberInstance(Locale.US);
-    nf.setMinimumFractionDigits(1);
-    nf.setMaximumFractionDigits(1);
-    nf.setGroupingUsed(true);
-    return nf.format(amount);
+    return MoneyFormatter.DEFAULT.format(amount);
   }
 
   @Override
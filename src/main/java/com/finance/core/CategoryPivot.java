@@ -0,0 +1,242 @@
+package com.finance.core;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Сводная таблица "категория x период": суммы доходов и расходов каждой категории по дням, неделям,
+ * месяцам или кварталам. Вся таблица считается одним проходом по дневным сводкам кошелька в массивы
+ * примитивов, без обращения к операциям; строится {@link Wallet#pivot}.
+ */
+public final class CategoryPivot {
+  /** Ограничение на число столбцов, чтобы дневная разбивка за годы не заняла всю память. */
+  static final int MAX_PERIODS = 10_000;
+
+  public enum Granularity {
+    DAY("день", "дни"),
+    WEEK("неделя", "недели"),
+    MONTH("месяц", "месяцы"),
+    QUARTER("квартал", "кварталы");
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MM.yyyy");
+
+    private final String title;
+    private final String pluralTitle;
+
+    Granularity(String title, String pluralTitle) {
+      this.title = title;
+      this.pluralTitle = pluralTitle;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public String getPluralTitle() {
+      return pluralTitle;
+    }
+
+    /** Разбивка по русскому ("месяц") или английскому ("month") названию. */
+    public static Granularity fromName(String name) {
+      for (Granularity granularity : values()) {
+        if (granularity.title.equalsIgnoreCase(name) || granularity.name().equalsIgnoreCase(name)) {
+          return granularity;
+        }
+      }
+      throw new IllegalArgumentException(
+          "Неизвестная разбивка: " + name + " (день, неделя, месяц, квартал)");
+    }
+
+    /** Первый день периода, в который попадает дата; неделя начинается с понедельника. */
+    public LocalDate periodStart(LocalDate date) {
+      switch (this) {
+        case DAY:
+          return date;
+        case WEEK:
+          return date.with(DayOfWeek.MONDAY);
+        case MONTH:
+          return date.withDayOfMonth(1);
+        default:
+          return LocalDate.of(date.getYear(), (date.getMonthValue() - 1) / 3 * 3 + 1, 1);
+      }
+    }
+
+    LocalDate nextPeriod(LocalDate start) {
+      switch (this) {
+        case DAY:
+          return start.plusDays(1);
+        case WEEK:
+          return start.plusWeeks(1);
+        case MONTH:
+          return start.plusMonths(1);
+        default:
+          return start.plusMonths(3);
+      }
+    }
+
+    /** Подпись периода: "05.03.2024", "нед. 04.03.2024", "03.2024", "1 кв. 2024". */
+    public String label(LocalDate start) {
+      switch (this) {
+        case DAY:
+          return start.format(DAY_FORMAT);
+        case WEEK:
+          return "нед. " + start.format(DAY_FORMAT);
+        case MONTH:
+          return start.format(MONTH_FORMAT);
+        default:
+          return ((start.getMonthValue() - 1) / 3 + 1) + " кв. " + start.getYear();
+      }
+    }
+  }
+
+  private final Granularity granularity;
+  private final List<LocalDate> periods;
+  private final List<String> categories;
+  // [категория][период]
+  private final double[][] income;
+  private final double[][] expense;
+
+  private CategoryPivot(
+      Granularity granularity,
+      List<LocalDate> periods,
+      List<String> categories,
+      double[][] income,
+      double[][] expense) {
+    this.granularity = granularity;
+    this.periods = Collections.unmodifiableList(periods);
+    this.categories = Collections.unmodifiableList(categories);
+    this.income = income;
+    this.expense = expense;
+  }
+
+  /**
+   * Таблица по дневным сводкам за период включительно. Без границ периода таблица охватывает период
+   * от первого до последнего дня со сводками.
+   */
+  static CategoryPivot build(
+      DailyRollups rollups, Granularity granularity, LocalDate startDate, LocalDate endDate) {
+    NavigableMap<LocalDate, DailyRollups.Day> days = rollups.range(startDate, endDate);
+    LocalDate first = startDate != null ? startDate : rollups.getFirstDay();
+    LocalDate last = endDate != null ? endDate : rollups.getLastDay();
+    List<LocalDate> periods = new ArrayList<>();
+    if (first != null && last != null) {
+      for (LocalDate start = granularity.periodStart(first);
+          !start.isAfter(last);
+          start = granularity.nextPeriod(start)) {
+        if (periods.size() == MAX_PERIODS) {
+          throw new IllegalArgumentException(
+              "Слишком много периодов (больше " + MAX_PERIODS + "), выберите разбивку крупнее");
+        }
+        periods.add(start);
+      }
+    }
+    int width = periods.size();
+
+    // [номер категории в сводках][период]
+    double[][] incomeRows = new double[rollups.categoryCount()][width];
+    double[][] expenseRows = new double[rollups.categoryCount()][width];
+    int period = 0;
+    LocalDate periodEnd = width > 1 ? periods.get(1) : LocalDate.MAX;
+    for (Map.Entry<LocalDate, DailyRollups.Day> entry : days.entrySet()) {
+      // Дни идут по возрастанию, поэтому номер периода только растет
+      while (!entry.getKey().isBefore(periodEnd)) {
+        period++;
+        periodEnd = period + 1 < width ? periods.get(period + 1) : LocalDate.MAX;
+      }
+      DailyRollups.Day day = entry.getValue();
+      for (int i = 0; i < day.size(); i++) {
+        int cell = day.cell(i);
+        double[][] rows = DailyRollups.isIncome(cell) ? incomeRows : expenseRows;
+        rows[DailyRollups.slotOf(cell)][period] += day.sum(i);
+      }
+    }
+
+    // Строки по убыванию оборота; категории без операций за период не попадают в таблицу
+    List<Integer> slots = new ArrayList<>();
+    for (int slot = 0; slot < rollups.categoryCount(); slot++) {
+      if (sum(incomeRows[slot]) + sum(expenseRows[slot]) > 0) {
+        slots.add(slot);
+      }
+    }
+    slots.sort(
+        Comparator.comparingDouble(
+                (Integer slot) -> -(sum(incomeRows[slot]) + sum(expenseRows[slot])))
+            .thenComparing(slot -> WalletAggregates.key(rollups.categoryName(slot))));
+    List<String> categories = new ArrayList<>();
+    double[][] income = new double[slots.size()][];
+    double[][] expense = new double[slots.size()][];
+    for (int row = 0; row < slots.size(); row++) {
+      int slot = slots.get(row);
+      categories.add(rollups.categoryName(slot));
+      income[row] = incomeRows[slot];
+      expense[row] = expenseRows[slot];
+    }
+    return new CategoryPivot(granularity, periods, categories, income, expense);
+  }
+
+  private static double sum(double[] values) {
+    double sum = 0.0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  public Granularity getGranularity() {
+    return granularity;
+  }
+
+  /** Первые дни периодов по возрастанию. */
+  public List<LocalDate> getPeriods() {
+    return periods;
+  }
+
+  public String getPeriodLabel(int period) {
+    return granularity.label(periods.get(period));
+  }
+
+  /** Категории с операциями, по убыванию суммы доходов и расходов. */
+  public List<String> getCategories() {
+    return categories;
+  }
+
+  public double getIncome(int category, int period) {
+    return income[category][period];
+  }
+
+  public double getExpense(int category, int period) {
+    return expense[category][period];
+  }
+
+  public double getIncomeTotal(int category) {
+    return sum(income[category]);
+  }
+
+  public double getExpenseTotal(int category) {
+    return sum(expense[category]);
+  }
+
+  public double getPeriodIncome(int period) {
+    double sum = 0.0;
+    for (double[] row : income) {
+      sum += row[period];
+    }
+    return sum;
+  }
+
+  public double getPeriodExpense(int period) {
+    double sum = 0.0;
+    for (double[] row : expense) {
+      sum += row[period];
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,264 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Дневные сводки операций: для каждого дня, категории и типа операции - число, сумма, минимум и
+ * максимум. Обновляются при добавлении операции и сохраняются вместе с кошельком, поэтому отчеты за
+ * годы считаются по числу дней, а не по числу операций.
+ */
+public class DailyRollups implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int INCOME = 0;
+  private static final int EXPENSE = 1;
+
+  // Номер категории - позиция в списке названий; ключ - название в нижнем регистре, как в Wallet
+  private final List<String> categoryNames = new ArrayList<>();
+  private final Map<String, Integer> slots = new HashMap<>();
+  private final NavigableMap<LocalDate, Day> days = new TreeMap<>();
+  private long operationCount;
+
+  static DailyRollups rebuild(List<Operation> operations) {
+    DailyRollups rollups = new DailyRollups();
+    for (Operation op : operations) {
+      rollups.add(op);
+    }
+    return rollups;
+  }
+
+  void add(Operation op) {
+    operationCount++;
+    int type;
+    if (op instanceof Income) {
+      type = INCOME;
+    } else if (op instanceof Expense) {
+      type = EXPENSE;
+    } else {
+      return;
+    }
+    String name = op.getCategory().getName();
+    Integer slot = slots.get(WalletAggregates.key(name));
+    if (slot == null) {
+      slot = categoryNames.size();
+      categoryNames.add(name);
+      slots.put(WalletAggregates.key(name), slot);
+    }
+    days.computeIfAbsent(op.getDateTime().toLocalDate(), d -> new Day())
+        .add(slot * 2 + type, op.getAmount());
+  }
+
+  /** Число учтенных операций. */
+  public long getOperationCount() {
+    return operationCount;
+  }
+
+  /** Первый день со сводкой или null, если операций нет. */
+  public LocalDate getFirstDay() {
+    return days.isEmpty() ? null : days.firstKey();
+  }
+
+  public LocalDate getLastDay() {
+    return days.isEmpty() ? null : days.lastKey();
+  }
+
+  /** Сводка по категории за один день; null, если операций этого типа в тот день не было. */
+  public Rollup get(LocalDate day, String categoryName, boolean income) {
+    return get(day, day, categoryName, income);
+  }
+
+  /** Сводка по категории за период включительно; null, если операций не было. */
+  public Rollup get(LocalDate startDate, LocalDate endDate, String categoryName, boolean income) {
+    Integer slot = slots.get(WalletAggregates.key(categoryName));
+    if (slot == null) {
+      return null;
+    }
+    int cell = slot * 2 + (income ? INCOME : EXPENSE);
+    Rollup total = null;
+    for (Day day : range(startDate, endDate).values()) {
+      int i = day.indexOf(cell);
+      if (i >= 0) {
+        Rollup rollup = new Rollup(day.counts[i], day.sums[i], day.mins[i], day.maxs[i]);
+        total = total == null ? rollup : total.merge(rollup);
+      }
+    }
+    return total;
+  }
+
+  /** Итоги за период включительно (любая граница может быть null) без обращения к операциям. */
+  public WalletSummary summarize(LocalDate startDate, LocalDate endDate) {
+    WalletSummary.CategorySums[] bySlot = new WalletSummary.CategorySums[categoryNames.size()];
+    double[] totals = new double[2];
+    int[] counts = new int[2];
+    for (Day day : range(startDate, endDate).values()) {
+      for (int i = 0; i < day.size(); i++) {
+        int cell = day.cells[i];
+        int count = day.counts[i];
+        int slot = cell >> 1;
+        if (bySlot[slot] == null) {
+          bySlot[slot] = new WalletSummary.CategorySums(categoryNames.get(slot));
+        }
+        double sum = day.sums[i];
+        totals[cell & 1] += sum;
+        counts[cell & 1] += count;
+        if ((cell & 1) == INCOME) {
+          bySlot[slot].income += sum;
+          bySlot[slot].incomeCount += count;
+        } else {
+          bySlot[slot].expense += sum;
+          bySlot[slot].expenseCount += count;
+        }
+      }
+    }
+    Map<String, WalletSummary.CategorySums> byCategory = new LinkedHashMap<>();
+    for (WalletSummary.CategorySums sums : bySlot) {
+      if (sums != null) {
+        byCategory.put(WalletAggregates.key(sums.name), sums);
+      }
+    }
+    return new WalletSummary(
+        totals[INCOME], totals[EXPENSE], counts[INCOME], counts[EXPENSE], byCategory);
+  }
+
+  int categoryCount() {
+    return categoryNames.size();
+  }
+
+  String categoryName(int slot) {
+    return categoryNames.get(slot);
+  }
+
+  static int slotOf(int cell) {
+    return cell >> 1;
+  }
+
+  static boolean isIncome(int cell) {
+    return (cell & 1) == INCOME;
+  }
+
+  /** Дни периода включительно по возрастанию; любая граница может быть null. */
+  NavigableMap<LocalDate, Day> range(LocalDate startDate, LocalDate endDate) {
+    if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+      throw new IllegalArgumentException("Начало периода позже его конца");
+    }
+    NavigableMap<LocalDate, Day> range = days;
+    if (startDate != null) {
+      range = range.tailMap(startDate, true);
+    }
+    if (endDate != null) {
+      range = range.headMap(endDate, true);
+    }
+    return Collections.unmodifiableNavigableMap(range);
+  }
+
+  /**
+   * Сводки одного дня; ячейка - номер категории * 2 + тип (0 - доход, 1 - расход). Хранятся только
+   * ячейки с операциями, массивы растут ровно на одну ячейку: в день обычно заняты единицы ячеек, а
+   * дней за годы - тысячи.
+   */
+  static final class Day implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] cells = new int[0];
+    private int[] counts = new int[0];
+    private double[] sums = new double[0];
+    private double[] mins = new double[0];
+    private double[] maxs = new double[0];
+
+    private void add(int cell, double amount) {
+      int i = indexOf(cell);
+      if (i < 0) {
+        i = cells.length;
+        cells = Arrays.copyOf(cells, i + 1);
+        counts = Arrays.copyOf(counts, i + 1);
+        sums = Arrays.copyOf(sums, i + 1);
+        mins = Arrays.copyOf(mins, i + 1);
+        maxs = Arrays.copyOf(maxs, i + 1);
+        cells[i] = cell;
+        mins[i] = amount;
+        maxs[i] = amount;
+      } else {
+        mins[i] = Math.min(mins[i], amount);
+        maxs[i] = Math.max(maxs[i], amount);
+      }
+      counts[i]++;
+      sums[i] += amount;
+    }
+
+    private int indexOf(int cell) {
+      for (int i = 0; i < cells.length; i++) {
+        if (cells[i] == cell) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /** Число занятых ячеек; ячейки дня перебираются по позиции от 0 до size() - 1. */
+    int size() {
+      return cells.length;
+    }
+
+    int cell(int i) {
+      return cells[i];
+    }
+
+    int count(int i) {
+      return counts[i];
+    }
+
+    double sum(int i) {
+      return sums[i];
+    }
+  }
+
+  /** Число, сумма, минимум и максимум операций. */
+  public static final class Rollup {
+    private final int count;
+    private final double sum;
+    private final double min;
+    private final double max;
+
+    Rollup(int count, double sum, double min, double max) {
+      this.count = count;
+      this.sum = sum;
+      this.min = min;
+      this.max = max;
+    }
+
+    Rollup merge(Rollup other) {
+      return new Rollup(
+          count + other.count, sum + other.sum, Math.min(min, other.min), Math.max(max, other.max));
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public double getSum() {
+      return sum;
+    }
+
+    public double getMin() {
+      return min;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    public double getAverage() {
+      return sum / count;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Обратный индекс по описаниям операций: слово (в нижнем регистре, кириллица и латиница) - сжатый
+ * список номеров операций, где оно встречается. Слова хранятся в упорядоченном словаре, поэтому
+ * поиск по префиксу - это просмотр соседних слов, а не всего словаря.
+ *
+ * <p>Запрос: слова через пробел должны встречаться все (И), группы слов разделяются "ИЛИ"/"OR",
+ * слово со звездочкой на конце ("кофе*") ищется по префиксу.
+ */
+class DescriptionIndex implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final long[] EMPTY = new long[0];
+
+  private final TreeMap<String, PostingList> postings = new TreeMap<>();
+
+  static DescriptionIndex rebuild(List<Operation> operations) {
+    DescriptionIndex index = new DescriptionIndex();
+    for (Operation op : operations) {
+      index.add(op);
+    }
+    return index;
+  }
+
+  /** Индексирует описание операции; false, если номер операции меньше уже проиндексированных. */
+  boolean add(Operation op) {
+    boolean ordered = true;
+    for (String token : tokenize(op.getDescription())) {
+      ordered &= postings.computeIfAbsent(token, t -> new PostingList()).add(op.getId());
+    }
+    return ordered;
+  }
+
+  /** Номера операций, подходящих под запрос, по возрастанию. */
+  long[] search(String query) {
+    long[] result = null;
+    List<String> group = new ArrayList<>();
+    for (String term : query.trim().split("\\s+")) {
+      if (term.equalsIgnoreCase("ИЛИ") || term.equalsIgnoreCase("OR")) {
+        result = union(result, searchAll(group));
+        group.clear();
+      } else if (!term.isEmpty()) {
+        group.add(term);
+      }
+    }
+    result = union(result, searchAll(group));
+    return result != null ? result : EMPTY;
+  }
+
+  // Пересечение списков всех слов группы, начиная с самого короткого
+  private long[] searchAll(List<String> terms) {
+    if (terms.isEmpty()) {
+      return null;
+    }
+    List<long[]> lists = new ArrayList<>(terms.size());
+    for (String term : terms) {
+      long[] ids = searchTerm(term);
+      if (ids.length == 0) {
+        return EMPTY;
+      }
+      lists.add(ids);
+    }
+    lists.sort((a, b) -> Integer.compare(a.length, b.length));
+    long[] result = lists.get(0);
+    for (int i = 1; i < lists.size() && result.length > 0; i++) {
+      result = intersect(result, lists.get(i));
+    }
+    return result;
+  }
+
+  private long[] searchTerm(String term) {
+    boolean prefix = term.endsWith("*");
+    List<String> tokens = tokenize(prefix ? term.substring(0, term.length() - 1) : term);
+    if (tokens.isEmpty()) {
+      return EMPTY;
+    }
+    // Слово запроса может распасться на несколько ("wi-fi"), тогда нужны все части
+    long[] result = null;
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      long[] ids;
+      if (prefix && i == tokens.size() - 1) {
+        ids = searchPrefix(token);
+      } else {
+        PostingList list = postings.get(token);
+        ids = list != null ? list.decode() : EMPTY;
+      }
+      result = result == null ? ids : intersect(result, ids);
+    }
+    return result;
+  }
+
+  // Объединение списков всех слов с префиксом: склеить, отсортировать и убрать повторы
+  private long[] searchPrefix(String prefix) {
+    SortedMap<String, PostingList> range = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+    int total = 0;
+    for (PostingList list : range.values()) {
+      total += list.size();
+    }
+    long[] all = new long[total];
+    int n = 0;
+    for (PostingList list : range.values()) {
+      long[] ids = list.decode();
+      System.arraycopy(ids, 0, all, n, ids.length);
+      n += ids.length;
+    }
+    if (range.size() > 1) {
+      Arrays.sort(all);
+      int unique = 0;
+      for (int i = 0; i < all.length; i++) {
+        if (i == 0 || all[i] != all[i - 1]) {
+          all[unique++] = all[i];
+        }
+      }
+      all = Arrays.copyOf(all, unique);
+    }
+    return all;
+  }
+
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    if (text == null) {
+      return tokens;
+    }
+    String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    int start = -1;
+    for (int i = 0; i <= normalized.length(); i++) {
+      boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(normalized.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  private static long[] intersect(long[] a, long[] b) {
+    long[] result = new long[Math.min(a.length, b.length)];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return n == result.length ? result : Arrays.copyOf(result, n);
+  }
+
+  private static long[] union(long[] a, long[] b) {
+    if (a == null || a.length == 0) {
+      return b;
+    }
+    if (b == null || b.length == 0) {
+      return a;
+    }
+    long[] result = new long[a.length + b.length];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < a.length || j < b.length) {
+      long next;
+      if (j == b.length || (i < a.length && a[i] < b[j])) {
+        next = a[i++];
+      } else if (i == a.length || b[j] < a[i]) {
+        next = b[j++];
+      } else {
+        next = a[i++];
+        j++;
+      }
+      result[n++] = next;
+    }
+    return n == result.length ? result : Arrays.copyOf(result, n);
+  }
+}
@@ -0,0 +1,76 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Распределение размеров расходов кошелька: эскизы квантилей по всем расходам, по категориям и по
+ * месяцам. Обновляется при добавлении расхода и сохраняется вместе с кошельком.
+ */
+public class ExpenseDistribution implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final QuantileSketch overall = new QuantileSketch();
+  // Ключ - название категории в нижнем регистре, как в Wallet
+  private final Map<String, QuantileSketch> byCategory = new LinkedHashMap<>();
+  private final Map<String, String> categoryNames = new LinkedHashMap<>();
+  private final NavigableMap<YearMonth, QuantileSketch> byMonth = new TreeMap<>();
+
+  static ExpenseDistribution rebuild(List<Operation> operations) {
+    ExpenseDistribution distribution = new ExpenseDistribution();
+    for (Operation op : operations) {
+      distribution.add(op);
+    }
+    return distribution;
+  }
+
+  void add(Operation op) {
+    if (!(op instanceof Expense)) {
+      return;
+    }
+    String name = op.getCategory().getName();
+    String key = name.toLowerCase();
+    overall.add(op.getAmount());
+    byCategory.computeIfAbsent(key, k -> new QuantileSketch()).add(op.getAmount());
+    categoryNames.putIfAbsent(key, name);
+    byMonth
+        .computeIfAbsent(YearMonth.from(op.getDateTime()), m -> new QuantileSketch())
+        .add(op.getAmount());
+  }
+
+  /** Объединяет распределение другого кошелька с этим (для общей статистики). */
+  public void merge(ExpenseDistribution other) {
+    overall.merge(other.overall);
+    other.byCategory.forEach(
+        (key, sketch) -> byCategory.computeIfAbsent(key, k -> new QuantileSketch()).merge(sketch));
+    other.categoryNames.forEach(categoryNames::putIfAbsent);
+    other.byMonth.forEach(
+        (month, sketch) -> byMonth.computeIfAbsent(month, m -> new QuantileSketch()).merge(sketch));
+  }
+
+  public QuantileSketch getOverall() {
+    return overall;
+  }
+
+  /** Эскиз расходов категории или null, если расходов по ней не было. */
+  public QuantileSketch getCategory(String categoryName) {
+    return byCategory.get(categoryName.toLowerCase());
+  }
+
+  /** Эскизы по категориям с исходными названиями категорий. */
+  public Map<String, QuantileSketch> getByCategory() {
+    Map<String, QuantileSketch> result = new LinkedHashMap<>();
+    byCategory.forEach((key, sketch) -> result.put(categoryNames.get(key), sketch));
+    return result;
+  }
+
+  public NavigableMap<YearMonth, QuantileSketch> getByMonth() {
+    return Collections.unmodifiableNavigableMap(byMonth);
+  }
+}
@@ -0,0 +1,192 @@
+package com.finance.core;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Форматирование денежных сумм с группировкой разрядов, совместимое по результату с
+ * NumberFormat.getNumberInstance(locale), но без создания объектов на каждый вызов. Экземпляры
+ * неизменяемы и потокобезопасны; для каждой локали создаются один раз и кэшируются.
+ */
+public final class MoneyFormatter {
+  private static final ConcurrentHashMap<String, MoneyFormatter> CACHE = new ConcurrentHashMap<>();
+  private static final long[] POW10 = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
+  private static final int MAX_FRACTION_DIGITS = POW10.length - 1;
+  // До этого порога масштабированное значение помещается в long и округляется без BigDecimal
+  private static final double FAST_PATH_LIMIT = 1e13;
+
+  private static final ThreadLocal<StringBuilder> SCRATCH =
+      ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+  /** Формат из ТЗ: локаль US, один знак после запятой, например "1,234.5". */
+  public static final MoneyFormatter DEFAULT = forLocale(Locale.US);
+
+  private final int fractionDigits;
+  private final int groupingSize;
+  private final char groupingSeparator;
+  private final char decimalSeparator;
+  private final char minusSign;
+  private final String nan;
+  private final String infinity;
+
+  private MoneyFormatter(Locale locale, int fractionDigits) {
+    DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+    NumberFormat numberFormat = NumberFormat.getNumberInstance(locale);
+    this.fractionDigits = fractionDigits;
+    this.groupingSize =
+        numberFormat instanceof DecimalFormat
+            ? ((DecimalFormat) numberFormat).getGroupingSize()
+            : 3;
+    this.groupingSeparator = symbols.getGroupingSeparator();
+    this.decimalSeparator = symbols.getDecimalSeparator();
+    this.minusSign = symbols.getMinusSign();
+    this.nan = symbols.getNaN();
+    this.infinity = symbols.getInfinity();
+  }
+
+  public static MoneyFormatter forLocale(Locale locale) {
+    return forLocale(locale, 1);
+  }
+
+  public static MoneyFormatter forLocale(Locale locale, int fractionDigits) {
+    if (fractionDigits < 0 || fractionDigits > MAX_FRACTION_DIGITS) {
+      throw new IllegalArgumentException(
+          "Число знаков после запятой должно быть от 0 до " + MAX_FRACTION_DIGITS);
+    }
+    return CACHE.computeIfAbsent(
+        locale.toLanguageTag() + "/" + fractionDigits,
+        k -> new MoneyFormatter(locale, fractionDigits));
+  }
+
+  public int getFractionDigits() {
+    return fractionDigits;
+  }
+
+  public String format(double amount) {
+    StringBuilder sb = SCRATCH.get();
+    sb.setLength(0);
+    return formatTo(sb, amount).toString();
+  }
+
+  public <A extends Appendable> A formatTo(A out, double amount) throws IOException {
+    if (out instanceof StringBuilder) {
+      formatTo((StringBuilder) out, amount);
+      return out;
+    }
+    StringBuilder sb = SCRATCH.get();
+    sb.setLength(0);
+    formatTo(sb, amount);
+    out.append(sb);
+    return out;
+  }
+
+  /** Дописывает отформатированную сумму в конец sb. */
+  public StringBuilder formatTo(StringBuilder sb, double amount) {
+    if (Double.isNaN(amount)) {
+      return sb.append(nan);
+    }
+    // Как и NumberFormat, сохраняем знак у -0.0 и у отрицательных сумм, округленных до нуля
+    boolean negative = Double.doubleToRawLongBits(amount) < 0;
+    if (negative) {
+      sb.append(minusSign);
+    }
+    double abs = Math.abs(amount);
+    if (Double.isInfinite(abs)) {
+      return sb.append(infinity);
+    }
+    double scale = POW10[fractionDigits];
+    double scaled = abs * scale;
+    if (scaled < FAST_PATH_LIMIT) {
+      // fma вычисляет abs * scale - t с одним округлением, поэтому знак результата точен:
+      // сравниваем точное двоичное значение с границей округления без BigDecimal
+      double floor = Math.floor(scaled);
+      if (Math.fma(abs, scale, -floor) < 0) {
+        floor -= 1;
+      }
+      double diff = Math.fma(abs, scale, -(floor + 0.5));
+      long rounded = (long) floor;
+      if (diff > 0 || (diff == 0 && (rounded & 1) == 1)) {
+        rounded++;
+      }
+      appendScaled(sb, rounded);
+      return sb;
+    }
+    appendSlow(sb, abs);
+    return sb;
+  }
+
+  private void appendSlow(StringBuilder sb, double abs) {
+    // Повторяем DigitList: округляем кратчайшее десятичное представление, а при "ничьей" -
+    // точное двоичное значение по правилу HALF_EVEN
+    BigDecimal shortest = new BigDecimal(Double.toString(abs));
+    BigDecimal rounded;
+    if (shortest.scale() == fractionDigits + 1
+        && shortest.unscaledValue().mod(BigDecimal.TEN.toBigInteger()).intValue() == 5) {
+      rounded = new BigDecimal(abs).setScale(fractionDigits, RoundingMode.HALF_EVEN);
+    } else {
+      rounded = shortest.setScale(fractionDigits, RoundingMode.HALF_EVEN);
+    }
+    String digits = rounded.unscaledValue().toString();
+    int intLength = digits.length() - fractionDigits;
+    if (intLength <= 0) {
+      sb.append('0');
+    } else {
+      for (int i = 0; i < intLength; i++) {
+        if (i > 0 && groupingSize > 0 && (intLength - i) % groupingSize == 0) {
+          sb.append(groupingSeparator);
+        }
+        sb.append(digits.charAt(i));
+      }
+    }
+    if (fractionDigits > 0) {
+      sb.append(decimalSeparator);
+      for (int i = intLength; i < 0; i++) {
+        sb.append('0');
+      }
+      sb.append(digits, Math.max(intLength, 0), digits.length());
+    }
+  }
+
+  // Пишет число value / 10^fractionDigits с группировкой, заполняя буфер с конца
+  private void appendScaled(StringBuilder sb, long value) {
+    long integerPart = value / POW10[fractionDigits];
+    long fractionPart = value % POW10[fractionDigits];
+    int intDigits = digitCount(integerPart);
+    int separators = groupingSize > 0 ? (intDigits - 1) / groupingSize : 0;
+    int length = intDigits + separators + (fractionDigits > 0 ? fractionDigits + 1 : 0);
+    int start = sb.length();
+    sb.setLength(start + length);
+    int pos = start + length - 1;
+    for (int i = 0; i < fractionDigits; i++) {
+      sb.setCharAt(pos--, (char) ('0' + fractionPart % 10));
+      fractionPart /= 10;
+    }
+    if (fractionDigits > 0) {
+      sb.setCharAt(pos--, decimalSeparator);
+    }
+    int written = 0;
+    do {
+      if (written > 0 && groupingSize > 0 && written % groupingSize == 0) {
+        sb.setCharAt(pos--, groupingSeparator);
+      }
+      sb.setCharAt(pos--, (char) ('0' + integerPart % 10));
+      integerPart /= 10;
+      written++;
+    } while (integerPart > 0);
+  }
+
+  private static int digitCount(long value) {
+    int count = 1;
+    while (value >= 10) {
+      value /= 10;
+      count++;
+    }
+    return count;
+  }
+}
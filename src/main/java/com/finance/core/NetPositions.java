@@ -0,0 +1,99 @@
+package com.finance.core;
+
+import java.util.Arrays;
+
+/**
+ * Накопитель сумм по номерам пользователей: открытая адресация на массивах int и double без
+ * упаковки чисел в объекты. Взаимозачет окна складывает в него каждую часть перевода дважды
+ * (отправителю с минусом, получателю с плюсом), поэтому на одно сложение нужен один проход по
+ * массиву ключей без выделения памяти.
+ */
+public final class NetPositions {
+  private static final int EMPTY = -1;
+
+  private int[] keys;
+  private double[] values;
+  private int size;
+
+  public NetPositions() {
+    this(16);
+  }
+
+  public NetPositions(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    keys = new int[capacity];
+    values = new double[capacity];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /** Прибавляет delta к сумме пользователя; номера пользователей неотрицательны. */
+  public void add(int key, double delta) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Номер пользователя не может быть отрицательным: " + key);
+    }
+    int slot = slotOf(key);
+    if (keys[slot] == EMPTY) {
+      keys[slot] = key;
+      if (++size * 2 > keys.length) {
+        grow();
+        slot = slotOf(key);
+      }
+    }
+    values[slot] += delta;
+  }
+
+  /** Сумма пользователя; 0, если сумм по нему не было. */
+  public double get(int key) {
+    if (key < 0) {
+      return 0.0;
+    }
+    int slot = slotOf(key);
+    return keys[slot] == key ? values[slot] : 0.0;
+  }
+
+  /** Число пользователей с суммами (в том числе с нулевым итогом). */
+  public int size() {
+    return size;
+  }
+
+  /** Перебирает пользователей с суммами в порядке слотов. */
+  public void forEach(Entry action) {
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY) {
+        action.accept(keys[i], values[i]);
+      }
+    }
+  }
+
+  // Слот ключа или первый свободный слот после него
+  private int slotOf(int key) {
+    int mask = keys.length - 1;
+    int hash = key * 0x9E3779B9;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    double[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new double[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = slotOf(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /** Пользователь и его сумма. */
+  @FunctionalInterface
+  public interface Entry {
+    void accept(int key, double value);
+  }
+}
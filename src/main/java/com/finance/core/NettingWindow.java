@@ -0,0 +1,96 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Окно отложенных переводов: части переводов между двумя взаимозачетами. Части хранятся в
+ * параллельных массивах примитивов (отправитель и получатель - номера пользователей из {@link
+ * SettlementLog}), поэтому окно на сотни тысяч переводов не создает объекта на перевод.
+ *
+ * <p>Не синхронизировано: окно меняет только {@code DeferredSettlement} под своей блокировкой.
+ */
+public final class NettingWindow {
+  private final long id;
+  private int[] from = new int[16];
+  private int[] to = new int[16];
+  private double[] amounts = new double[16];
+  private long[] times = new long[16];
+  private final List<String> descriptions = new ArrayList<>();
+  private int size;
+  private double turnover;
+  // Исходящие суммы окна по отправителям: резерв, который еще не списан с баланса
+  private final NetPositions outgoing = new NetPositions();
+
+  public NettingWindow(long id) {
+    this.id = id;
+  }
+
+  /** Добавляет часть перевода; время - секунды эпохи UTC. */
+  public void add(int fromUser, int toUser, double amount, long epochSecond, String description) {
+    if (size == from.length) {
+      int capacity = size * 2;
+      from = Arrays.copyOf(from, capacity);
+      to = Arrays.copyOf(to, capacity);
+      amounts = Arrays.copyOf(amounts, capacity);
+      times = Arrays.copyOf(times, capacity);
+    }
+    from[size] = fromUser;
+    to[size] = toUser;
+    amounts[size] = amount;
+    times[size] = epochSecond;
+    descriptions.add(description);
+    size++;
+    turnover += amount;
+    outgoing.add(fromUser, amount);
+  }
+
+  /** Итог окна по пользователям: полученное минус отправленное; сумма итогов равна нулю. */
+  public NetPositions net() {
+    NetPositions net = new NetPositions(outgoing.size() * 2);
+    for (int i = 0; i < size; i++) {
+      net.add(from[i], -amounts[i]);
+      net.add(to[i], amounts[i]);
+    }
+    return net;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Сумма всех частей окна. */
+  public double getTurnover() {
+    return turnover;
+  }
+
+  /** Сколько пользователь отправил в окне. */
+  public double getOutgoing(int user) {
+    return outgoing.get(user);
+  }
+
+  public int getFrom(int i) {
+    return from[i];
+  }
+
+  public int getTo(int i) {
+    return to[i];
+  }
+
+  public double getAmount(int i) {
+    return amounts[i];
+  }
+
+  public long getEpochSecond(int i) {
+    return times[i];
+  }
+
+  public String getDescription(int i) {
+    return descriptions.get(i);
+  }
+}
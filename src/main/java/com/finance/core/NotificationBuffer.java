@@ -0,0 +1,131 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Буфер оповещений фиксированной емкости. Повторы с тем же ключом и важностью не добавляются
+ * заново, а увеличивают счетчик исходной записи; при переполнении вытесняется самая старая запись.
+ * Вставка выполняется за O(1), объем памяти ограничен емкостью.
+ */
+public class NotificationBuffer {
+  public enum Severity {
+    INFO,
+    WARNING,
+    CRITICAL
+  }
+
+  private final Entry[] ring;
+  private final Map<String, Entry> pending;
+  private int head;
+  private int size;
+  private int dropped;
+
+  public NotificationBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Емкость буфера должна быть положительной");
+    }
+    this.ring = new Entry[capacity];
+    this.pending = new HashMap<>();
+  }
+
+  /** Добавляет оповещение, ключом которого служит сам текст. */
+  public void add(String message) {
+    add(message, Severity.INFO, message);
+  }
+
+  public void add(String key, Severity severity, String message) {
+    add(key, severity, message, 1);
+  }
+
+  private void add(String key, Severity severity, String message, int count) {
+    String dedupKey = severity.ordinal() + ":" + key;
+    Entry existing = pending.get(dedupKey);
+    if (existing != null) {
+      existing.count += count;
+      existing.message = message;
+      return;
+    }
+    if (size == ring.length) {
+      pending.remove(ring[head].dedupKey);
+      ring[head] = null;
+      head = (head + 1) % ring.length;
+      size--;
+      dropped++;
+    }
+    Entry entry = new Entry(dedupKey, key, severity, message, count);
+    ring[(head + size) % ring.length] = entry;
+    size++;
+    pending.put(dedupKey, entry);
+  }
+
+  /** Переносит все записи в другой буфер с сохранением ключей и счетчиков повторов. */
+  public void drainTo(NotificationBuffer target) {
+    for (int i = 0; i < size; i++) {
+      Entry entry = ring[(head + i) % ring.length];
+      target.add(entry.key, entry.severity, entry.message, entry.count);
+    }
+    target.dropped += dropped;
+    clear();
+  }
+
+  /** Возвращает тексты оповещений в порядке поступления и очищает буфер. */
+  public List<String> drain() {
+    List<String> result = snapshot();
+    clear();
+    return result;
+  }
+
+  public List<String> snapshot() {
+    List<String> result = new ArrayList<>(size + 1);
+    if (dropped > 0) {
+      result.add("ℹ️  Пропущено старых оповещений: " + dropped);
+    }
+    for (int i = 0; i < size; i++) {
+      Entry entry = ring[(head + i) % ring.length];
+      result.add(
+          entry.count > 1 ? entry.message + "\n   ↻ повторений: " + entry.count : entry.message);
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return size == 0 && dropped == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return ring.length;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      ring[(head + i) % ring.length] = null;
+    }
+    pending.clear();
+    head = 0;
+    size = 0;
+    dropped = 0;
+  }
+
+  private static final class Entry {
+    private final String dedupKey;
+    private final String key;
+    private final Severity severity;
+    private String message;
+    private int count;
+
+    private Entry(String dedupKey, String key, Severity severity, String message, int count) {
+      this.dedupKey = dedupKey;
+      this.key = key;
+      this.severity = severity;
+      this.message = message;
+      this.count = count;
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package com.finance.core;
 
 import java.io.Serializable;
-import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.util.Locale;
 
@@ -12,6 +11,10 @@ public abstract class Operation implements Serializable {
   protected Category category;
   protected LocalDateTime dateTime;
   protected String description;
+  // Порядковый номер операции в кошельке, назначается при добавлении (0 - еще не назначен)
+  protected long id;
+  // Идентификатор операции во внешнем источнике (выписка, поток); null - отпечаток по содержимому
+  protected String sourceId;
 
   protected Operation() {
     this.amount = 0.0;
@@ -35,6 +38,46 @@ public abstract class Operation implements Serializable {
     this(amount, category, description, LocalDateTime.now());
   }
 
+  public long getId() {
+    return id;
+  }
+
+  void assignId(long id) {
+    this.id = id;
+  }
+
+  public String getSourceId() {
+    return sourceId;
+  }
+
+  public void setSourceId(String sourceId) {
+    this.sourceId = sourceId == null || sourceId.isBlank() ? null : sourceId;
+  }
+
+  /**
+   * Устойчивый 64-битный отпечаток для отсева повторов: хеш идентификатора источника, если он
+   * задан, иначе хеш содержимого (тип, категория, сумма в копейках, время, описание). Номер
+   * операции в кошельке в отпечаток не входит, поэтому повторно импортированная операция дает тот
+   * же отпечаток.
+   */
+  public long getFingerprint() {
+    if (sourceId != null) {
+      return OperationFingerprints.hash("id\u0000" + sourceId);
+    }
+    StringBuilder content = new StringBuilder(64);
+    content
+        .append(getClass().getSimpleName())
+        .append('\u0000')
+        .append(category.getName().toLowerCase(Locale.ROOT))
+        .append('\u0000')
+        .append(Math.round(amount * 100))
+        .append('\u0000')
+        .append(dateTime)
+        .append('\u0000')
+        .append(description);
+    return OperationFingerprints.hash(content);
+  }
+
   public double getAmount() {
     return amount;
   }
@@ -65,11 +108,7 @@ public abstract class Operation implements Serializable {
 
   // Метод для форматирования валюты как в ТЗ
   public String formatCurrency(double amount) {
-    NumberFormat nf = NumberFormat.getNumberInstance(Locale.US);
-    nf.setMinimumFractionDigits(1);
-    nf.setMaximumFractionDigits(1);
-    nf.setGroupingUsed(true);
-    return nf.format(amount);
+    return MoneyFormatter.DEFAULT.format(amount);
   }
 
   @Override
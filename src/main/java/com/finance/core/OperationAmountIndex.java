@@ -0,0 +1,110 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Операции, упорядоченные по сумме. Новые операции сначала попадают в небольшой неупорядоченный
+ * хвост и вливаются в отсортированный массив пачкой, когда хвост вырастает, поэтому добавление не
+ * сдвигает весь массив.
+ */
+class OperationAmountIndex {
+  // Совпадает с сортировкой запроса "сначала дешевые", чтобы перебор не требовал пересортировки
+  private static final Comparator<Operation> ORDER = OperationQuery.Sort.SMALLEST.comparator();
+  private static final int MIN_TAIL = 1024;
+
+  private Operation[] sorted;
+  private final List<Operation> tail = new ArrayList<>();
+
+  private OperationAmountIndex(Operation[] sorted) {
+    this.sorted = sorted;
+  }
+
+  static OperationAmountIndex build(List<Operation> operations) {
+    Operation[] sorted = operations.toArray(new Operation[0]);
+    Arrays.sort(sorted, ORDER);
+    return new OperationAmountIndex(sorted);
+  }
+
+  void add(Operation operation) {
+    tail.add(operation);
+    if (tail.size() > Math.max(MIN_TAIL, sorted.length / 16)) {
+      mergeTail();
+    }
+  }
+
+  int size() {
+    return sorted.length + tail.size();
+  }
+
+  /** Число операций с суммой в диапазоне [min, max]. */
+  int count(double min, double max) {
+    int count = upperBound(max) - lowerBound(min);
+    for (Operation op : tail) {
+      if (op.getAmount() >= min && op.getAmount() <= max) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Операции с суммой в диапазоне [min, max], по возрастанию суммы. */
+  List<Operation> range(double min, double max) {
+    mergeTail();
+    int from = lowerBound(min);
+    int to = upperBound(max);
+    return Arrays.asList(sorted).subList(from, Math.max(from, to));
+  }
+
+  private void mergeTail() {
+    if (tail.isEmpty()) {
+      return;
+    }
+    tail.sort(ORDER);
+    Operation[] merged = new Operation[sorted.length + tail.size()];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < sorted.length || j < tail.size()) {
+      if (j == tail.size() || (i < sorted.length && ORDER.compare(sorted[i], tail.get(j)) <= 0)) {
+        merged[n++] = sorted[i++];
+      } else {
+        merged[n++] = tail.get(j++);
+      }
+    }
+    sorted = merged;
+    tail.clear();
+  }
+
+  // Позиция первой операции с суммой не меньше amount
+  private int lowerBound(double amount) {
+    int lo = 0;
+    int hi = sorted.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sorted[mid].getAmount() < amount) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // Позиция первой операции с суммой больше amount
+  private int upperBound(double amount) {
+    int lo = 0;
+    int hi = sorted.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sorted[mid].getAmount() <= amount) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
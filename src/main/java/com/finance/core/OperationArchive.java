@@ -0,0 +1,380 @@
+package com.finance.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Архив старых операций кошелька: неизменяемые сжатые файлы-сегменты, по одному на месяц операций и
+ * запуск архивации. Кошелек хранит только описание архива (сегменты с границами дат и суммами,
+ * итоги по категориям), сами операции читаются с диска, когда запрос заходит в архивный период.
+ */
+public class OperationArchive implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int MAGIC = 0x46534547; // "FSEG"
+  private static final int FORMAT_VERSION = 1;
+
+  private final String directory;
+  private final List<Segment> segments = new ArrayList<>();
+  // Итоги архивных операций по категориям; ключ - название в нижнем регистре, как в Wallet
+  private final Map<String, Totals> totals = new LinkedHashMap<>();
+  // Переименования категорий после архивации: старый ключ -> новое название
+  private final Map<String, String> renames = new LinkedHashMap<>();
+  private LocalDate horizon;
+  private long operationCount;
+  private long lastId;
+
+  OperationArchive(Path directory) {
+    this.directory = directory.toString();
+  }
+
+  /**
+   * Записывает операции в новые сегменты, по одному на месяц. Существующие сегменты не меняются:
+   * поздно добавленные операции прошлых месяцев попадают в отдельный сегмент того же месяца.
+   */
+  void append(List<Operation> operations, LocalDate horizon) {
+    Map<YearMonth, List<Operation>> byMonth = new TreeMap<>();
+    for (Operation op : operations) {
+      byMonth.computeIfAbsent(YearMonth.from(op.getDateTime()), m -> new ArrayList<>()).add(op);
+    }
+    // Сегменты регистрируются только после записи всех файлов: при сбое архив не меняется, а уже
+    // записанные этим вызовом файлы удаляются
+    List<Segment> written = new ArrayList<>(byMonth.size());
+    boolean complete = false;
+    try {
+      Files.createDirectories(Paths.get(directory));
+      for (Map.Entry<YearMonth, List<Operation>> entry : byMonth.entrySet()) {
+        written.add(write(entry.getKey(), entry.getValue()));
+      }
+      complete = true;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось записать архив операций: " + e.getMessage(), e);
+    } finally {
+      if (!complete) {
+        for (Segment segment : written) {
+          try {
+            Files.deleteIfExists(Paths.get(directory, segment.fileName));
+          } catch (IOException ignored) {
+            // Файл без описания в архиве не читается; следующая архивация перезапишет его
+          }
+        }
+      }
+    }
+    segments.addAll(written);
+    for (Operation op : operations) {
+      String name = op.getCategory().getName();
+      Totals categoryTotals =
+          totals.computeIfAbsent(WalletAggregates.key(name), k -> new Totals(name));
+      if (op instanceof Income) {
+        categoryTotals.income += op.getAmount();
+        categoryTotals.incomeCount++;
+      } else if (op instanceof Expense) {
+        categoryTotals.expense += op.getAmount();
+        categoryTotals.expenseCount++;
+      }
+      lastId = Math.max(lastId, op.getId());
+    }
+    operationCount += operations.size();
+    if (this.horizon == null || horizon.isAfter(this.horizon)) {
+      this.horizon = horizon;
+    }
+  }
+
+  private Segment write(YearMonth month, List<Operation> operations) throws IOException {
+    Segment segment = new Segment(month, nextFileName(month), operations);
+    Path target = Paths.get(directory, segment.fileName);
+    Path temp = Paths.get(directory, segment.fileName + ".tmp");
+    try {
+      writeSegment(temp, operations);
+      // Сегмент появляется под своим именем только целиком записанным и больше не перезаписывается
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    return segment;
+  }
+
+  private static void writeSegment(Path temp, List<Operation> operations) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(operations.size());
+      for (Operation op : operations) {
+        out.writeByte(op instanceof Income ? OperationColumns.INCOME : OperationColumns.EXPENSE);
+        out.writeLong(op.getId());
+        out.writeDouble(op.getAmount());
+        out.writeLong(op.getDateTime().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(op.getDateTime().getNano());
+        out.writeUTF(op.getCategory().getName());
+        out.writeUTF(op.getDescription());
+      }
+    }
+  }
+
+  private String nextFileName(YearMonth month) {
+    int sequence = 1;
+    for (Segment segment : segments) {
+      if (segment.month.equals(month)) {
+        sequence++;
+      }
+    }
+    return String.format("%s-%03d.seg.gz", month, sequence);
+  }
+
+  /**
+   * Операции сегментов, пересекающихся с периодом (любая граница может быть null), по возрастанию
+   * номера. Сегменты читаются целиком, поэтому в списке могут быть операции за пределами периода.
+   *
+   * @param categories категория кошелька по названию (с учетом переименований) или null
+   */
+  List<Operation> read(
+      LocalDate startDate, LocalDate endDate, Function<String, Category> categories) {
+    List<Operation> result = new ArrayList<>();
+    for (Segment segment : segments) {
+      if (segment.overlaps(startDate, endDate)) {
+        readSegment(segment, categories, result);
+      }
+    }
+    result.sort(Comparator.comparingLong(Operation::getId));
+    return result;
+  }
+
+  private void readSegment(
+      Segment segment, Function<String, Category> categories, List<Operation> out) {
+    Path path = Paths.get(directory, segment.fileName);
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IllegalStateException("Неизвестный формат сегмента архива: " + path);
+      }
+      int count = in.readInt();
+      Map<String, Category> resolved = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        byte type = in.readByte();
+        long id = in.readLong();
+        double amount = in.readDouble();
+        LocalDateTime dateTime =
+            LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        String name = in.readUTF();
+        Category category = resolved.computeIfAbsent(name, n -> resolve(n, categories));
+        String description = in.readUTF();
+        Operation op =
+            type == OperationColumns.INCOME
+                ? new Income(amount, category, description, dateTime)
+                : new Expense(amount, category, description, dateTime);
+        op.assignId(id);
+        out.add(op);
+      }
+      // Дочитываем поток до конца: GZIP сверяет контрольную сумму только в конце файла
+      if (in.read() != -1) {
+        throw new IllegalStateException("Лишние данные в сегменте архива: " + path);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось прочитать архив операций: " + path, e);
+    }
+  }
+
+  private Category resolve(String name, Function<String, Category> categories) {
+    String current = renames.getOrDefault(WalletAggregates.key(name), name);
+    Category category = categories != null ? categories.apply(current) : null;
+    return category != null ? category : new Category(current, "");
+  }
+
+  /** Сумма доходов или расходов архива за период; сегменты целиком внутри периода не читаются. */
+  double sum(
+      boolean income,
+      LocalDate startDate,
+      LocalDate endDate,
+      Function<String, Category> categories) {
+    double sum = 0.0;
+    for (Segment segment : segments) {
+      if (!segment.overlaps(startDate, endDate)) {
+        continue;
+      }
+      if (segment.within(startDate, endDate)) {
+        sum += income ? segment.income : segment.expense;
+        continue;
+      }
+      List<Operation> operations = new ArrayList<>();
+      readSegment(segment, categories, operations);
+      for (Operation op : operations) {
+        LocalDate date = op.getDateTime().toLocalDate();
+        if ((income ? op instanceof Income : op instanceof Expense)
+            && (startDate == null || !date.isBefore(startDate))
+            && (endDate == null || !date.isAfter(endDate))) {
+          sum += op.getAmount();
+        }
+      }
+    }
+    return sum;
+  }
+
+  /** Запоминает переименование категории: операции в сегментах читаются с новым названием. */
+  void rename(String oldName, String newName) {
+    String oldKey = WalletAggregates.key(oldName);
+    String newKey = WalletAggregates.key(newName);
+    renames.replaceAll((key, name) -> WalletAggregates.key(name).equals(oldKey) ? newName : name);
+    renames.put(oldKey, newName);
+    Totals moved = totals.remove(oldKey);
+    if (moved != null) {
+      Totals target = totals.computeIfAbsent(newKey, k -> new Totals(newName));
+      target.income += moved.income;
+      target.expense += moved.expense;
+      target.incomeCount += moved.incomeCount;
+      target.expenseCount += moved.expenseCount;
+    }
+  }
+
+  boolean overlaps(LocalDate startDate, LocalDate endDate) {
+    for (Segment segment : segments) {
+      if (segment.overlaps(startDate, endDate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  Map<String, Totals> getTotals() {
+    return Collections.unmodifiableMap(totals);
+  }
+
+  long getLastId() {
+    return lastId;
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  /** Операции раньше этой даты на момент последней архивации перенесены в архив. */
+  public LocalDate getHorizon() {
+    return horizon;
+  }
+
+  public long getOperationCount() {
+    return operationCount;
+  }
+
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  public double getTotalIncome() {
+    double sum = 0.0;
+    for (Segment segment : segments) {
+      sum += segment.income;
+    }
+    return sum;
+  }
+
+  public double getTotalExpense() {
+    double sum = 0.0;
+    for (Segment segment : segments) {
+      sum += segment.expense;
+    }
+    return sum;
+  }
+
+  /** Размер файлов сегментов на диске в байтах. */
+  public long getStoredBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      try {
+        bytes += Files.size(Paths.get(directory, segment.fileName));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return bytes;
+  }
+
+  /** Итоги архивных операций одной категории. */
+  static final class Totals implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String name;
+    double income;
+    double expense;
+    int incomeCount;
+    int expenseCount;
+
+    private Totals(String name) {
+      this.name = name;
+    }
+  }
+
+  /** Описание сегмента: месяц, файл, границы дат и суммы для запросов без чтения файла. */
+  private static final class Segment implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final YearMonth month;
+    private final String fileName;
+    private final int count;
+    private final LocalDate firstDay;
+    private final LocalDate lastDay;
+    private final double income;
+    private final double expense;
+
+    private Segment(YearMonth month, String fileName, List<Operation> operations) {
+      this.month = month;
+      this.fileName = fileName;
+      this.count = operations.size();
+      LocalDate first = null;
+      LocalDate last = null;
+      double incomeSum = 0.0;
+      double expenseSum = 0.0;
+      for (Operation op : operations) {
+        LocalDate date = op.getDateTime().toLocalDate();
+        first = first == null || date.isBefore(first) ? date : first;
+        last = last == null || date.isAfter(last) ? date : last;
+        if (op instanceof Income) {
+          incomeSum += op.getAmount();
+        } else if (op instanceof Expense) {
+          expenseSum += op.getAmount();
+        }
+      }
+      this.firstDay = first;
+      this.lastDay = last;
+      this.income = incomeSum;
+      this.expense = expenseSum;
+    }
+
+    private boolean overlaps(LocalDate startDate, LocalDate endDate) {
+      return count > 0
+          && (startDate == null || !lastDay.isBefore(startDate))
+          && (endDate == null || !firstDay.isAfter(endDate));
+    }
+
+    private boolean within(LocalDate startDate, LocalDate endDate) {
+      return (startDate == null || !firstDay.isBefore(startDate))
+          && (endDate == null || !lastDay.isAfter(endDate));
+    }
+  }
+}
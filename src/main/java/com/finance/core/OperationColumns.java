@@ -0,0 +1,71 @@
+package com.finance.core;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Операции кошелька по столбцам примитивов в порядке добавления: суммы, типы и моменты (секунды от
+ * эпохи в местном времени операции). Суммы по типу и периоду считаются одним проходом {@link
+ * AggregationKernel} без обращения к объектам операций.
+ */
+class OperationColumns {
+  static final byte INCOME = 1;
+  static final byte EXPENSE = 2;
+  private static final byte OTHER = 0;
+
+  private static final AggregationKernel KERNEL = AggregationKernel.load();
+
+  private double[] amounts;
+  private byte[] types;
+  private long[] epochs;
+  private int size;
+
+  private OperationColumns(int capacity) {
+    amounts = new double[capacity];
+    types = new byte[capacity];
+    epochs = new long[capacity];
+  }
+
+  static OperationColumns build(List<Operation> operations) {
+    OperationColumns columns = new OperationColumns(Math.max(16, operations.size()));
+    for (Operation op : operations) {
+      columns.append(op);
+    }
+    return columns;
+  }
+
+  void append(Operation op) {
+    if (size == amounts.length) {
+      int capacity = size + (size >> 1);
+      amounts = Arrays.copyOf(amounts, capacity);
+      types = Arrays.copyOf(types, capacity);
+      epochs = Arrays.copyOf(epochs, capacity);
+    }
+    amounts[size] = op.getAmount();
+    types[size] = op instanceof Income ? INCOME : op instanceof Expense ? EXPENSE : OTHER;
+    epochs[size] = epoch(op.getDateTime());
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Сумма операций типа type за период включительно; любая граница может быть null. */
+  double sum(byte type, LocalDate startDate, LocalDate endDate) {
+    long from = startDate != null ? epoch(startDate.atStartOfDay()) : Long.MIN_VALUE;
+    long to = endDate != null ? epoch(endDate.plusDays(1).atStartOfDay()) : Long.MAX_VALUE;
+    return KERNEL.sum(amounts, types, epochs, size, type, from, to);
+  }
+
+  static String kernelName() {
+    return KERNEL.name();
+  }
+
+  private static long epoch(LocalDateTime dateTime) {
+    return dateTime.toEpochSecond(ZoneOffset.UTC);
+  }
+}
@@ -0,0 +1,61 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Позиция в ленте операций: дата и номер последней показанной операции. Следующая страница
+ * начинается сразу за курсором, поэтому листание не зависит от числа уже просмотренных записей.
+ */
+public final class OperationCursor implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final LocalDateTime dateTime;
+  private final long operationId;
+
+  public OperationCursor(LocalDateTime dateTime, long operationId) {
+    this.dateTime = Objects.requireNonNull(dateTime, "Дата курсора обязательна");
+    this.operationId = operationId;
+  }
+
+  public static OperationCursor of(Operation operation) {
+    return new OperationCursor(operation.getDateTime(), operation.getId());
+  }
+
+  public LocalDateTime getDateTime() {
+    return dateTime;
+  }
+
+  public long getOperationId() {
+    return operationId;
+  }
+
+  // Курсор стоит позже операции в порядке (дата, номер)
+  boolean isAfter(Operation operation) {
+    int byTime = dateTime.compareTo(operation.getDateTime());
+    return byTime > 0 || (byTime == 0 && operationId > operation.getId());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof OperationCursor)) {
+      return false;
+    }
+    OperationCursor other = (OperationCursor) o;
+    return operationId == other.operationId && dateTime.equals(other.dateTime);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(dateTime, operationId);
+  }
+
+  @Override
+  public String toString() {
+    return dateTime + "#" + operationId;
+  }
+}
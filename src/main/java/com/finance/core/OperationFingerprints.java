@@ -0,0 +1,140 @@
+package com.finance.core;
+
+/**
+ * Отпечатки операций кошелька для отсева повторов при импорте и приеме потоков. Сначала проверяется
+ * {@link ScalableBloomFilter}: новая операция почти всегда отсеивается им без обращения к точному
+ * множеству. Только на ответ "возможно" смотрится точное множество отпечатков (открытая адресация
+ * по массиву long), так что ложное срабатывание фильтра не приводит к потере операции.
+ *
+ * <p>Точная таблица хранится целиком рядом с фильтром (8 байт на ячейку, заполнено не больше
+ * половины ячеек), поэтому фильтр экономит пробы точной таблицы, а не память: его битовые массивы
+ * добавляются к ней.
+ *
+ * <p>Не сохраняется вместе с кошельком: строится по истории операций при первом обращении.
+ */
+final class OperationFingerprints {
+  private static final int INITIAL_FILTER_CAPACITY = 1024;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final int MIN_TABLE_SIZE = 16;
+  // Ноль в таблице - пустая ячейка; отпечаток 0 хранится отдельно
+  private static final long EMPTY = 0;
+
+  private final ScalableBloomFilter filter =
+      new ScalableBloomFilter(INITIAL_FILTER_CAPACITY, FALSE_POSITIVE_RATE);
+  private long[] table;
+  private int size;
+  private boolean containsZero;
+  private long exactLookups;
+
+  OperationFingerprints(int expected) {
+    int capacity = MIN_TABLE_SIZE;
+    while (capacity < expected * 2L) {
+      capacity <<= 1;
+    }
+    this.table = new long[capacity];
+  }
+
+  static OperationFingerprints build(Iterable<Operation> operations, int expected) {
+    OperationFingerprints fingerprints = new OperationFingerprints(expected);
+    for (Operation operation : operations) {
+      fingerprints.add(operation.getFingerprint());
+    }
+    return fingerprints;
+  }
+
+  boolean contains(long fingerprint) {
+    if (!filter.mightContain(fingerprint)) {
+      return false;
+    }
+    exactLookups++;
+    if (fingerprint == EMPTY) {
+      return containsZero;
+    }
+    int mask = table.length - 1;
+    for (int slot = (int) mix(fingerprint) & mask; ; slot = (slot + 1) & mask) {
+      long stored = table[slot];
+      if (stored == EMPTY) {
+        return false;
+      }
+      if (stored == fingerprint) {
+        return true;
+      }
+    }
+  }
+
+  /** Добавляет отпечаток; false, если он уже был. */
+  boolean add(long fingerprint) {
+    if (fingerprint == EMPTY) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      filter.add(fingerprint);
+      return true;
+    }
+    if ((size + 1) * 2L > table.length) {
+      rehash(table.length * 2);
+    }
+    int mask = table.length - 1;
+    int slot = (int) mix(fingerprint) & mask;
+    while (table[slot] != EMPTY) {
+      if (table[slot] == fingerprint) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = fingerprint;
+    size++;
+    filter.add(fingerprint);
+    return true;
+  }
+
+  int size() {
+    return size + (containsZero ? 1 : 0);
+  }
+
+  /** Сколько проверок дошло до точного множества (фильтр ответил "возможно"). */
+  long getExactLookups() {
+    return exactLookups;
+  }
+
+  ScalableBloomFilter getFilter() {
+    return filter;
+  }
+
+  private void rehash(int capacity) {
+    long[] old = table;
+    table = new long[capacity];
+    int mask = capacity - 1;
+    for (long fingerprint : old) {
+      if (fingerprint != EMPTY) {
+        int slot = (int) mix(fingerprint) & mask;
+        while (table[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+      }
+    }
+  }
+
+  /** 64-битный хеш строки: FNV-1a по символам с перемешиванием результата. */
+  static long hash(CharSequence text) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  /** Финальное перемешивание MurmurHash3: соседние значения дают далекие хеши. */
+  static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,55 @@
+package com.finance.core;
+
+import java.util.List;
+
+/** Страница ленты операций, от новых к старым. */
+public final class OperationPage {
+  private final List<Operation> operations;
+  private final int page;
+  private final int pageSize;
+  private final int totalCount;
+  private final OperationCursor nextCursor;
+
+  OperationPage(
+      List<Operation> operations,
+      int page,
+      int pageSize,
+      int totalCount,
+      OperationCursor nextCursor) {
+    this.operations = List.copyOf(operations);
+    this.page = page;
+    this.pageSize = pageSize;
+    this.totalCount = totalCount;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
+  public int getPage() {
+    return page;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /** Число операций, подходящих под фильтр, на всех страницах. */
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  public int getTotalPages() {
+    return totalCount == 0 ? 0 : (int) ((totalCount + (long) pageSize - 1) / pageSize);
+  }
+
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+
+  /** Курсор для {@link Wallet#getOperationsBefore}, или null, если страница последняя. */
+  public OperationCursor getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,228 @@
+package com.finance.core;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Запрос к операциям кошелька: тип, набор категорий, период, диапазон сумм, слова описания,
+ * сортировка и ограничение числа результатов. Выполняется {@link Wallet#query}, который сам
+ * выбирает индекс для перебора кандидатов.
+ */
+public final class OperationQuery {
+  public enum Type {
+    INCOME,
+    EXPENSE
+  }
+
+  public enum Sort {
+    NEWEST(OperationTimeIndex.ORDER.reversed()),
+    OLDEST(OperationTimeIndex.ORDER),
+    LARGEST(
+        Comparator.comparingDouble(Operation::getAmount)
+            .reversed()
+            .thenComparing(OperationTimeIndex.ORDER.reversed())),
+    SMALLEST(
+        Comparator.comparingDouble(Operation::getAmount)
+            .thenComparing(OperationTimeIndex.ORDER.reversed()));
+
+    private final Comparator<Operation> comparator;
+
+    Sort(Comparator<Operation> comparator) {
+      this.comparator = comparator;
+    }
+
+    public Comparator<Operation> comparator() {
+      return comparator;
+    }
+  }
+
+  private final Type type;
+  private final Set<String> categories;
+  private final LocalDate startDate;
+  private final LocalDate endDate;
+  private final double minAmount;
+  private final double maxAmount;
+  private final String text;
+  private final Sort sort;
+  private final int offset;
+  private final int limit;
+
+  private OperationQuery(Builder builder) {
+    this.type = builder.type;
+    this.categories = Collections.unmodifiableSet(new LinkedHashSet<>(builder.categories));
+    this.startDate = builder.startDate;
+    this.endDate = builder.endDate;
+    this.minAmount = builder.minAmount;
+    this.maxAmount = builder.maxAmount;
+    this.text = builder.text;
+    this.sort = builder.sort;
+    this.offset = builder.offset;
+    this.limit = builder.limit;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Все операции, от новых к старым. */
+  public static OperationQuery all() {
+    return builder().build();
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** Названия категорий в нижнем регистре; пустое множество - любые категории. */
+  public Set<String> getCategories() {
+    return categories;
+  }
+
+  public LocalDate getStartDate() {
+    return startDate;
+  }
+
+  public LocalDate getEndDate() {
+    return endDate;
+  }
+
+  public double getMinAmount() {
+    return minAmount;
+  }
+
+  public double getMaxAmount() {
+    return maxAmount;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public Sort getSort() {
+    return sort;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public boolean hasPeriod() {
+    return startDate != null || endDate != null;
+  }
+
+  public boolean hasAmountRange() {
+    return minAmount > Double.NEGATIVE_INFINITY || maxAmount < Double.POSITIVE_INFINITY;
+  }
+
+  /** Проверяет все условия, кроме слов описания (их проверяет индекс описаний). */
+  boolean matches(Operation op) {
+    if (type == Type.INCOME && !(op instanceof Income)
+        || type == Type.EXPENSE && !(op instanceof Expense)) {
+      return false;
+    }
+    if (!categories.isEmpty()
+        && !categories.contains(WalletAggregates.key(op.getCategory().getName()))) {
+      return false;
+    }
+    if (startDate != null && op.getDateTime().toLocalDate().isBefore(startDate)
+        || endDate != null && op.getDateTime().toLocalDate().isAfter(endDate)) {
+      return false;
+    }
+    return op.getAmount() >= minAmount && op.getAmount() <= maxAmount;
+  }
+
+  public static final class Builder {
+    private Type type;
+    private final Set<String> categories = new LinkedHashSet<>();
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private double minAmount = Double.NEGATIVE_INFINITY;
+    private double maxAmount = Double.POSITIVE_INFINITY;
+    private String text;
+    private Sort sort = Sort.NEWEST;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    private Builder() {}
+
+    public Builder type(Type type) {
+      this.type = type;
+      return this;
+    }
+
+    public Builder category(String category) {
+      if (category != null && !category.isEmpty()) {
+        categories.add(WalletAggregates.key(category));
+      }
+      return this;
+    }
+
+    public Builder categories(Collection<String> names) {
+      names.forEach(this::category);
+      return this;
+    }
+
+    /** Период включительно; любая из границ может быть null. */
+    public Builder between(LocalDate startDate, LocalDate endDate) {
+      this.startDate = startDate;
+      this.endDate = endDate;
+      return this;
+    }
+
+    public Builder minAmount(double minAmount) {
+      this.minAmount = minAmount;
+      return this;
+    }
+
+    public Builder maxAmount(double maxAmount) {
+      this.maxAmount = maxAmount;
+      return this;
+    }
+
+    /** Слова описания в синтаксисе {@link Wallet#searchOperations}. */
+    public Builder text(String text) {
+      this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+      return this;
+    }
+
+    public Builder sortBy(Sort sort) {
+      this.sort = sort;
+      return this;
+    }
+
+    public Builder offset(int offset) {
+      this.offset = offset;
+      return this;
+    }
+
+    public Builder limit(int limit) {
+      this.limit = limit;
+      return this;
+    }
+
+    public OperationQuery build() {
+      if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+        throw new IllegalArgumentException("Начало периода позже его конца");
+      }
+      if (minAmount > maxAmount) {
+        throw new IllegalArgumentException("Минимальная сумма больше максимальной");
+      }
+      if (offset < 0 || limit < 1) {
+        throw new IllegalArgumentException(
+            "Смещение не может быть отрицательным, лимит - меньше 1");
+      }
+      if (sort == null) {
+        throw new IllegalArgumentException("Не указана сортировка");
+      }
+      return new OperationQuery(this);
+    }
+  }
+}
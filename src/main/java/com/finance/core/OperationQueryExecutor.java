@@ -0,0 +1,197 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Выполнение {@link OperationQuery}. Для каждого условия, по которому есть индекс (время,
+ * категории, сумма, слова описания), точно оценивается число кандидатов; перебираются кандидаты
+ * самого избирательного индекса, остальные условия проверяются для каждого из них. Если порядок
+ * индекса совпадает с сортировкой запроса, результаты не сортируются и не накапливаются сверх
+ * лимита. Если период запроса заходит в архив, подходящие операции прочитанных сегментов архива
+ * добавляются к результатам и весь результат сортируется.
+ */
+class OperationQueryExecutor {
+  private enum Access {
+    FULL_SCAN("полный перебор"),
+    TIME("индекс времени"),
+    CATEGORY("индекс категорий"),
+    AMOUNT("индекс сумм"),
+    TEXT("индекс описаний");
+
+    private final String title;
+
+    Access(String title) {
+      this.title = title;
+    }
+  }
+
+  private final Wallet wallet;
+  private final OperationQuery query;
+
+  // Границы периода в индексе времени и отсортированные номера операций, подходящих по словам
+  private int timeFrom;
+  private int timeTo;
+  private long[] textIds;
+
+  OperationQueryExecutor(Wallet wallet, OperationQuery query) {
+    this.wallet = wallet;
+    this.query = query;
+  }
+
+  OperationQueryResult execute() {
+    Access access = Access.FULL_SCAN;
+    int best = wallet.getOperations().size();
+
+    OperationTimeIndex timeIndex = wallet.timeIndex();
+    timeFrom = 0;
+    timeTo = timeIndex.size();
+    if (query.hasPeriod()) {
+      if (query.getStartDate() != null) {
+        timeFrom = timeIndex.lowerBound(query.getStartDate().atStartOfDay());
+      }
+      if (query.getEndDate() != null) {
+        timeTo = timeIndex.lowerBound(query.getEndDate().plusDays(1).atStartOfDay());
+      }
+      int candidates = Math.max(timeTo - timeFrom, 0);
+      if (candidates < best) {
+        access = Access.TIME;
+        best = candidates;
+      }
+    }
+    if (!query.getCategories().isEmpty()) {
+      int candidates = 0;
+      for (String category : query.getCategories()) {
+        candidates += wallet.aggregates().getOperations(category).size();
+      }
+      if (candidates < best) {
+        access = Access.CATEGORY;
+        best = candidates;
+      }
+    }
+    if (query.hasAmountRange()) {
+      int candidates = wallet.amountIndex().count(query.getMinAmount(), query.getMaxAmount());
+      if (candidates < best) {
+        access = Access.AMOUNT;
+        best = candidates;
+      }
+    }
+    if (query.getText() != null) {
+      textIds = wallet.descriptionIndex().search(query.getText());
+      if (textIds.length <= best) {
+        access = Access.TEXT;
+        best = textIds.length;
+      }
+    }
+
+    List<Operation> archived = wallet.archivedOperations(query.getStartDate(), query.getEndDate());
+    Collector collector = new Collector(archived.isEmpty() && isOrderedBy(access));
+    scan(access, collector);
+    String plan = access.title + " (" + best + " кандидатов)";
+    if (!archived.isEmpty()) {
+      scanArchived(archived, collector);
+      plan += " + архив (" + archived.size() + " операций)";
+    }
+    return new OperationQueryResult(collector.result(), collector.matched, plan);
+  }
+
+  // Индексы строятся только по оперативной части, архивные операции проверяются перебором
+  private void scanArchived(List<Operation> archived, Collector out) {
+    long[] archivedTextIds =
+        query.getText() != null ? DescriptionIndex.rebuild(archived).search(query.getText()) : null;
+    for (Operation op : archived) {
+      if (query.matches(op)
+          && (archivedTextIds == null || Arrays.binarySearch(archivedTextIds, op.getId()) >= 0)) {
+        out.add(op);
+      }
+    }
+  }
+
+  // Перебор кандидатов сразу идет в порядке сортировки запроса
+  private boolean isOrderedBy(Access access) {
+    switch (access) {
+      case TIME:
+      case FULL_SCAN:
+        return query.getSort() == OperationQuery.Sort.NEWEST
+            || query.getSort() == OperationQuery.Sort.OLDEST;
+      case AMOUNT:
+        return query.getSort() == OperationQuery.Sort.SMALLEST;
+      default:
+        return false;
+    }
+  }
+
+  private void scan(Access access, Collector out) {
+    switch (access) {
+      case TIME:
+      case FULL_SCAN:
+        OperationTimeIndex timeIndex = wallet.timeIndex();
+        if (query.getSort() == OperationQuery.Sort.OLDEST) {
+          for (int i = timeFrom; i < timeTo; i++) {
+            offer(timeIndex.get(i), out);
+          }
+        } else {
+          for (int i = timeTo - 1; i >= timeFrom; i--) {
+            offer(timeIndex.get(i), out);
+          }
+        }
+        break;
+      case CATEGORY:
+        for (String category : query.getCategories()) {
+          for (Operation op : wallet.aggregates().getOperations(category)) {
+            offer(op, out);
+          }
+        }
+        break;
+      case AMOUNT:
+        for (Operation op :
+            wallet.amountIndex().range(query.getMinAmount(), query.getMaxAmount())) {
+          offer(op, out);
+        }
+        break;
+      default:
+        for (long id : textIds) {
+          Operation op = wallet.findOperation(id);
+          if (op != null) {
+            offer(op, out);
+          }
+        }
+    }
+  }
+
+  private void offer(Operation op, Collector out) {
+    if (query.matches(op) && (textIds == null || Arrays.binarySearch(textIds, op.getId()) >= 0)) {
+      out.add(op);
+    }
+  }
+
+  private final class Collector {
+    private final boolean ordered;
+    private final List<Operation> operations = new ArrayList<>();
+    private int matched;
+
+    private Collector(boolean ordered) {
+      this.ordered = ordered;
+    }
+
+    void add(Operation op) {
+      // В упорядоченном переборе нужен только участок [offset, offset + limit), остальное - счет
+      if (!ordered
+          || matched >= query.getOffset() && matched - query.getOffset() < query.getLimit()) {
+        operations.add(op);
+      }
+      matched++;
+    }
+
+    List<Operation> result() {
+      if (ordered) {
+        return operations;
+      }
+      operations.sort(query.getSort().comparator());
+      int from = Math.min(query.getOffset(), operations.size());
+      int to = (int) Math.min((long) from + query.getLimit(), operations.size());
+      return operations.subList(from, to);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.finance.core;
+
+import java.util.List;
+
+/** Результат {@link OperationQuery}: запрошенный участок и общее число подходящих операций. */
+public final class OperationQueryResult {
+  private final List<Operation> operations;
+  private final int totalCount;
+  private final String plan;
+
+  OperationQueryResult(List<Operation> operations, int totalCount, String plan) {
+    this.operations = List.copyOf(operations);
+    this.totalCount = totalCount;
+    this.plan = plan;
+  }
+
+  /** Операции с учетом сортировки, смещения и лимита запроса. */
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
+  /** Число операций, подходящих под условия, без учета смещения и лимита. */
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  /** Выбранный способ выполнения, например "индекс времени (120 кандидатов)". */
+  public String getPlan() {
+    return plan;
+  }
+}
@@ -0,0 +1,81 @@
+package com.finance.core;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Операции кошелька, упорядоченные по (дата, номер). Операции обычно добавляются в хронологическом
+ * порядке, поэтому вставка - это дописывание в конец массива; поиск границ периода и позиции
+ * курсора выполняется двоичным поиском.
+ */
+class OperationTimeIndex {
+  static final Comparator<Operation> ORDER =
+      Comparator.comparing(Operation::getDateTime).thenComparingLong(Operation::getId);
+
+  private Operation[] sorted;
+  private int size;
+
+  private OperationTimeIndex(Operation[] sorted) {
+    this.sorted = sorted;
+    this.size = sorted.length;
+  }
+
+  static OperationTimeIndex build(List<Operation> operations) {
+    Operation[] sorted = operations.toArray(new Operation[0]);
+    // TimSort почти упорядоченный массив сортирует за линейное время
+    Arrays.sort(sorted, ORDER);
+    return new OperationTimeIndex(sorted);
+  }
+
+  /** Дописывает операцию в конец; false, если она нарушает порядок и индекс нужно перестроить. */
+  boolean append(Operation operation) {
+    if (size > 0 && ORDER.compare(sorted[size - 1], operation) > 0) {
+      return false;
+    }
+    if (size == sorted.length) {
+      sorted = Arrays.copyOf(sorted, Math.max(16, size + (size >> 1)));
+    }
+    sorted[size++] = operation;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  Operation get(int position) {
+    return sorted[position];
+  }
+
+  /** Позиция первой операции не раньше указанного момента. */
+  int lowerBound(LocalDateTime dateTime) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sorted[mid].getDateTime().isBefore(dateTime)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** Позиция первой операции, не предшествующей курсору. */
+  int lowerBound(OperationCursor cursor) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cursor.isAfter(sorted[mid])) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
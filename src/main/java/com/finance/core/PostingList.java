@@ -0,0 +1,64 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Возрастающий список номеров операций в сжатом виде: хранятся разности соседних номеров, каждая
+ * записана переменным числом байт (по 7 бит на байт). Номера операций почти всегда идут подряд,
+ * поэтому на одну запись обычно уходит один байт.
+ */
+class PostingList implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private byte[] data;
+  private int length;
+  private int size;
+  private long lastId;
+
+  PostingList() {
+    this.data = new byte[4];
+  }
+
+  /** Добавляет номер; false, если он не больше последнего и порядок нарушен. */
+  boolean add(long id) {
+    if (id <= lastId) {
+      return id == lastId && size > 0;
+    }
+    long delta = id - lastId;
+    if (length + 10 > data.length) {
+      data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+    }
+    while (delta >= 0x80) {
+      data[length++] = (byte) (delta | 0x80);
+      delta >>>= 7;
+    }
+    data[length++] = (byte) delta;
+    lastId = id;
+    size++;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long[] decode() {
+    long[] ids = new long[size];
+    long current = 0;
+    int position = 0;
+    for (int i = 0; i < size; i++) {
+      long delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        delta |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      current += delta;
+      ids[i] = current;
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,131 @@
+package com.finance.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Потоковый эскиз распределения положительных сумм для оценки квантилей (медиана, p90, p99) без
+ * хранения и сортировки всех значений. Суммы раскладываются по логарифмическим корзинам, поэтому
+ * ответ отличается от точного квантиля не более чем на {@link #RELATIVE_ACCURACY} от его величины.
+ * Эскизы с одинаковой точностью объединяются сложением счетчиков, что позволяет строить общую
+ * статистику по нескольким кошелькам.
+ */
+public class QuantileSketch implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final double RELATIVE_ACCURACY = 0.01;
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+
+  // counts[i] - число сумм в корзине с номером offset + i
+  private long[] counts;
+  private int offset;
+  private long count;
+  private double sum;
+  private double min;
+  private double max;
+
+  public QuantileSketch() {
+    this.counts = new long[0];
+    this.min = Double.POSITIVE_INFINITY;
+    this.max = Double.NEGATIVE_INFINITY;
+  }
+
+  public void add(double amount) {
+    if (!(amount > 0) || Double.isInfinite(amount)) {
+      throw new IllegalArgumentException("Сумма должна быть положительной");
+    }
+    int bucket = (int) Math.ceil(Math.log(amount) / LOG_GAMMA);
+    ensureBucket(bucket);
+    counts[bucket - offset]++;
+    count++;
+    sum += amount;
+    min = Math.min(min, amount);
+    max = Math.max(max, amount);
+  }
+
+  /** Добавляет к эскизу значения другого эскиза; исходный эскиз не меняется. */
+  public void merge(QuantileSketch other) {
+    if (other.count == 0) {
+      return;
+    }
+    ensureBucket(other.offset);
+    ensureBucket(other.offset + other.counts.length - 1);
+    for (int i = 0; i < other.counts.length; i++) {
+      counts[other.offset + i - offset] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Оценка квантиля уровня q (0 - минимум, 0.5 - медиана, 1 - максимум).
+   *
+   * @return оценка или NaN, если эскиз пуст
+   */
+  public double quantile(double q) {
+    if (q < 0 || q > 1) {
+      throw new IllegalArgumentException("Уровень квантиля должен быть от 0 до 1");
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    long rank = (long) Math.floor(q * (count - 1));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen > rank) {
+        // Середина корзины в смысле относительной ошибки
+        double estimate = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+        return Math.max(min, Math.min(max, estimate));
+      }
+    }
+    return max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  public double getMin() {
+    return count == 0 ? Double.NaN : min;
+  }
+
+  public double getMax() {
+    return count == 0 ? Double.NaN : max;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public QuantileSketch copy() {
+    QuantileSketch copy = new QuantileSketch();
+    copy.merge(this);
+    return copy;
+  }
+
+  private void ensureBucket(int bucket) {
+    if (counts.length == 0) {
+      counts = new long[16];
+      offset = bucket - 8;
+      return;
+    }
+    if (bucket < offset) {
+      int grow = Math.max(offset - bucket, counts.length / 2);
+      long[] resized = new long[counts.length + grow];
+      System.arraycopy(counts, 0, resized, grow, counts.length);
+      counts = resized;
+      offset -= grow;
+    } else if (bucket >= offset + counts.length) {
+      int needed = bucket - offset + 1;
+      counts = Arrays.copyOf(counts, Math.max(needed, counts.length + counts.length / 2));
+    }
+  }
+}
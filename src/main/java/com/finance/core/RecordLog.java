@@ -0,0 +1,155 @@
+package com.finance.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Файл записей, которые только дописываются: заголовок (сигнатура и версия формата), затем записи
+ * вида длина, данные, CRC32 данных. Оборванная при сбое последняя запись отбрасывается при
+ * открытии, следующие записи пишутся на ее место. Общая основа журналов переводов и взаимозачетов.
+ */
+final class RecordLog implements AutoCloseable {
+  private static final int HEADER_SIZE = 8;
+
+  private final Path file;
+  private final FileChannel channel;
+
+  /**
+   * Обработчик записи при чтении; false - запись не подходит, она и все следующие отбрасываются.
+   */
+  @FunctionalInterface
+  interface Reader {
+    boolean accept(byte[] record) throws IOException;
+  }
+
+  private RecordLog(Path file, FileChannel channel) {
+    this.file = file;
+    this.channel = channel;
+  }
+
+  /** Открывает файл (создает с заголовком, если его нет) и передает читателю целые записи. */
+  static RecordLog open(Path file, int magic, int version, String name, Reader reader)
+      throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    RecordLog log = new RecordLog(file, channel);
+    if (channel.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(version);
+      channel.write(header.flip());
+      channel.force(false);
+      return log;
+    }
+    ByteBuffer data = log.readAll(channel.size());
+    if (data.remaining() < HEADER_SIZE || data.getInt() != magic || data.getInt() != version) {
+      channel.close();
+      throw new IllegalStateException("Неизвестный формат " + name + ": " + file);
+    }
+    long valid = log.scan(data, reader);
+    // Хвост после последней целой записи - след прерванной записи, новые записи пишутся поверх
+    channel.truncate(valid);
+    channel.position(valid);
+    return log;
+  }
+
+  /** Повторно читает записи от начала файла до текущего конца. */
+  void scan(Reader reader) throws IOException {
+    ByteBuffer data = readAll(channel.position());
+    data.position(HEADER_SIZE);
+    scan(data, reader);
+  }
+
+  private ByteBuffer readAll(long size) throws IOException {
+    ByteBuffer data = ByteBuffer.allocate((int) size);
+    long position = 0;
+    while (data.hasRemaining()) {
+      int read = channel.read(data, position);
+      if (read < 0) {
+        break;
+      }
+      position += read;
+    }
+    return data.flip();
+  }
+
+  private static long scan(ByteBuffer data, Reader reader) throws IOException {
+    long valid = data.position();
+    while (data.remaining() >= Integer.BYTES) {
+      int length = data.getInt();
+      if (length <= 0 || data.remaining() < length + Integer.BYTES) {
+        break;
+      }
+      byte[] record = new byte[length];
+      data.get(record);
+      if (data.getInt() != checksum(record) || !reader.accept(record)) {
+        break;
+      }
+      valid = data.position();
+    }
+    return valid;
+  }
+
+  /**
+   * Дописывает записи одним вызовом записи. При ошибке недописанные данные срезаются, чтобы
+   * следующие записи не оказались за поврежденной.
+   *
+   * @param force синхронизировать с диском (иначе данные переживут сбой процесса, но не системы)
+   */
+  void append(List<byte[]> records, boolean force) throws IOException {
+    int size = 0;
+    for (byte[] record : records) {
+      size += record.length + 2 * Integer.BYTES;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (byte[] record : records) {
+      buffer.putInt(record.length).put(record).putInt(checksum(record));
+    }
+    buffer.flip();
+    long position = channel.position();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (force) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      try {
+        channel.truncate(position);
+        channel.position(position);
+      } catch (IOException ignored) {
+        // при открытии файл все равно отбросит хвост с неверной контрольной суммой
+      }
+      throw e;
+    }
+  }
+
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static int checksum(byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,68 @@
+package com.finance.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-кэш готовых отчетов кошелька. Каждая запись помнит версию кошелька, для которой построена;
+ * после любого изменения кошелька версия растет, и запись считается устаревшей.
+ */
+public class ReportCache {
+  private final Map<String, Entry> entries;
+  private long hits;
+  private long misses;
+
+  public ReportCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Емкость кэша должна быть положительной");
+    }
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+          }
+        };
+  }
+
+  /** Отчет для версии кошелька или null, если его нет или он устарел. */
+  public String get(String key, long version) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.version != version) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.value;
+  }
+
+  public void put(String key, long version, String value) {
+    entries.put(key, new Entry(version, value));
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  private static final class Entry {
+    private final long version;
+    private final String value;
+
+    private Entry(long version, String value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+}
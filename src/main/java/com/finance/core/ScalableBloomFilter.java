@@ -0,0 +1,118 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Масштабируемый фильтр Блума над 64-битными хешами: отвечает "точно не встречался" или "возможно
+ * встречался". Фильтр состоит из слоев; когда последний слой заполнен до расчетной емкости,
+ * добавляется слой вдвое больше со вдвое меньшей долей ложных срабатываний, поэтому общая доля
+ * ложных срабатываний не превышает заданной при любом числе элементов. Позиции битов получаются
+ * двойным хешированием из одного хеша элемента.
+ */
+public final class ScalableBloomFilter {
+  private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+  // Доля ложных срабатываний каждого следующего слоя относительно предыдущего
+  private static final double TIGHTENING = 0.5;
+  private static final int MAX_LAYER_CAPACITY = 1 << 26;
+
+  private final List<Layer> layers = new ArrayList<>();
+  private final int initialCapacity;
+  private final double falsePositiveRate;
+  private long size;
+
+  /**
+   * @param initialCapacity число элементов первого слоя
+   * @param falsePositiveRate допустимая доля ложных срабатываний всего фильтра
+   */
+  public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+    if (initialCapacity <= 0) {
+      throw new IllegalArgumentException("Емкость фильтра должна быть положительной");
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("Доля ложных срабатываний должна быть между 0 и 1");
+    }
+    this.initialCapacity = initialCapacity;
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
+  public boolean mightContain(long hash) {
+    long second = secondHash(hash);
+    for (int i = layers.size() - 1; i >= 0; i--) {
+      if (layers.get(i).mightContain(hash, second)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void add(long hash) {
+    Layer last = layers.isEmpty() ? null : layers.get(layers.size() - 1);
+    if (last == null || last.count >= last.capacity) {
+      int index = layers.size();
+      long capacity = (long) initialCapacity << Math.min(index, 26);
+      // Доли слоев образуют геометрический ряд с суммой falsePositiveRate
+      double rate = falsePositiveRate * (1 - TIGHTENING) * Math.pow(TIGHTENING, index);
+      last = new Layer((int) Math.min(capacity, MAX_LAYER_CAPACITY), rate);
+      layers.add(last);
+    }
+    last.add(hash, secondHash(hash));
+    size++;
+  }
+
+  /** Число добавленных элементов (с повторами). */
+  public long size() {
+    return size;
+  }
+
+  public int getLayerCount() {
+    return layers.size();
+  }
+
+  /** Размер битовых массивов всех слоев в байтах. */
+  public long getMemoryBytes() {
+    long bytes = 0;
+    for (Layer layer : layers) {
+      bytes += (long) layer.bits.length * Long.BYTES;
+    }
+    return bytes;
+  }
+
+  private static long secondHash(long hash) {
+    return OperationFingerprints.mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+  }
+
+  private static final class Layer {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+    private final int capacity;
+    private int count;
+
+    Layer(int capacity, double rate) {
+      long m = (long) Math.ceil(-capacity * Math.log(rate) / LN2_SQUARED);
+      this.bits = new long[(int) Math.max(1, (m + 63) / 64)];
+      this.bitCount = (long) bits.length * 64;
+      this.hashes = Math.max(1, (int) Math.ceil(-Math.log(rate) / Math.log(2)));
+      this.capacity = capacity;
+    }
+
+    void add(long first, long second) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = Long.remainderUnsigned(first + i * second, bitCount);
+        bits[(int) (bit >>> 6)] |= 1L << bit;
+      }
+      count++;
+    }
+
+    boolean mightContain(long first, long second) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = Long.remainderUnsigned(first + i * second, bitCount);
+        if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.finance.core;
+
+/** Скалярное ядро агрегатов: обычный цикл по столбцам, без ветвлений на тип операции. */
+class ScalarAggregationKernel implements AggregationKernel {
+  @Override
+  public double sum(
+      double[] amounts,
+      byte[] types,
+      long[] epochs,
+      int size,
+      byte type,
+      long fromEpoch,
+      long toEpoch) {
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      long epoch = epochs[i];
+      boolean matches = types[i] == type && epoch >= fromEpoch && epoch < toEpoch;
+      sum += matches ? amounts[i] : 0.0;
+    }
+    return sum;
+  }
+
+  @Override
+  public String name() {
+    return "scalar";
+  }
+}
@@ -0,0 +1,199 @@
+package com.finance.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Журнал отложенных переводов: каждая часть перевода записывается в момент приема, закрытие окна
+ * взаимозачетом - отдельной записью. Логины хранятся один раз в словаре, части переводов ссылаются
+ * на номера пользователей, поэтому запись части занимает несколько десятков байт. При открытии
+ * части незакрытого окна восстанавливаются как ожидающие.
+ *
+ * <p>Формат файла - {@link RecordLog}; методы синхронизированы.
+ */
+public final class SettlementLog implements AutoCloseable {
+  private static final int MAGIC = 0x46534C47; // "FSLG"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final byte USER = 'U';
+  private static final byte LEG = 'L';
+  private static final byte SETTLED = 'S';
+
+  private final List<String> logins = new ArrayList<>();
+  private final Map<String, Integer> userIds = new HashMap<>();
+  private long lastSettledWindow;
+  private NettingWindow pending;
+  private RecordLog log;
+
+  private SettlementLog() {}
+
+  /** Открывает журнал (создает пустой, если файла нет) и восстанавливает незакрытое окно. */
+  public static SettlementLog open(Path file) {
+    SettlementLog settlements = new SettlementLog();
+    try {
+      settlements.log =
+          RecordLog.open(file, MAGIC, FORMAT_VERSION, "журнала взаимозачетов", settlements::load);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось открыть журнал взаимозачетов: " + file, e);
+    }
+    if (settlements.pending == null) {
+      settlements.pending = new NettingWindow(settlements.lastSettledWindow + 1);
+    }
+    return settlements;
+  }
+
+  private boolean load(byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    byte type = in.readByte();
+    if (type == USER) {
+      int id = in.readInt();
+      if (id != logins.size()) {
+        return false;
+      }
+      String login = in.readUTF();
+      logins.add(login);
+      userIds.put(login, id);
+    } else if (type == LEG) {
+      long window = in.readLong();
+      if (window <= lastSettledWindow) {
+        return false;
+      }
+      if (pending == null || pending.getId() != window) {
+        pending = new NettingWindow(window);
+      }
+      pending.add(in.readInt(), in.readInt(), in.readDouble(), in.readLong(), in.readUTF());
+    } else if (type == SETTLED) {
+      lastSettledWindow = in.readLong();
+      pending = null;
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /** Номер пользователя; новый логин записывается в словарь журнала. */
+  public synchronized int userId(String login) {
+    Integer id = userIds.get(login);
+    if (id != null) {
+      return id;
+    }
+    int created = logins.size();
+    write(
+        out -> {
+          out.writeByte(USER);
+          out.writeInt(created);
+          out.writeUTF(login);
+        },
+        false);
+    logins.add(login);
+    userIds.put(login, created);
+    return created;
+  }
+
+  /** Номер пользователя или -1, если он не участвовал в отложенных переводах. */
+  public synchronized int findUserId(String login) {
+    return userIds.getOrDefault(login, -1);
+  }
+
+  public synchronized String login(int userId) {
+    return logins.get(userId);
+  }
+
+  /**
+   * Записывает часть перевода окна. Диск не синхронизируется: запись переживет сбой процесса, а
+   * синхронизация выполняется при закрытии окна.
+   */
+  public synchronized void appendLeg(
+      long window, int fromUser, int toUser, double amount, long epochSecond, String description) {
+    write(
+        out -> {
+          out.writeByte(LEG);
+          out.writeLong(window);
+          out.writeInt(fromUser);
+          out.writeInt(toUser);
+          out.writeDouble(amount);
+          out.writeLong(epochSecond);
+          out.writeUTF(description);
+        },
+        false);
+  }
+
+  /** Отмечает окно закрытым после проведения взаимозачета и синхронизирует журнал с диском. */
+  public synchronized void markSettled(long window) {
+    write(
+        out -> {
+          out.writeByte(SETTLED);
+          out.writeLong(window);
+        },
+        true);
+    lastSettledWindow = window;
+  }
+
+  /**
+   * Незакрытое окно, восстановленное при открытии (пустое, если все окна закрыты). Владелец журнала
+   * забирает его один раз и дальше ведет окна сам.
+   */
+  public synchronized NettingWindow takePendingWindow() {
+    NettingWindow window = pending;
+    pending = null;
+    return window;
+  }
+
+  public synchronized long getLastSettledWindow() {
+    return lastSettledWindow;
+  }
+
+  /** Части переводов окна, прочитанные из журнала. */
+  public synchronized NettingWindow readWindow(long window) {
+    NettingWindow result = new NettingWindow(window);
+    try {
+      log.scan(
+          record -> {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            if (in.readByte() == LEG && in.readLong() == window) {
+              result.add(in.readInt(), in.readInt(), in.readDouble(), in.readLong(), in.readUTF());
+            }
+            return true;
+          });
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось прочитать журнал взаимозачетов", e);
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      log.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(Encoder encoder, boolean force) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        encoder.encode(out);
+      }
+      log.append(List.of(bytes.toByteArray()), force);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Не удалось записать журнал взаимозачетов: " + e.getMessage(), e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Encoder {
+    void encode(DataOutputStream out) throws IOException;
+  }
+}
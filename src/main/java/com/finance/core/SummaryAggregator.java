@@ -0,0 +1,129 @@
+package com.finance.core;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Подсчет {@link WalletSummary} по участку индекса времени. Небольшие участки считаются одним
+ * циклом в текущем потоке; начиная с {@link #PARALLEL_THRESHOLD} операций участок делится на куски,
+ * которые считаются задачами fork-join и затем сливаются. Задачи запускаются в пуле вызывающего
+ * потока, если он сам работает в ForkJoinPool, иначе в общем пуле.
+ */
+class SummaryAggregator {
+  static final int PARALLEL_THRESHOLD = 1 << 16;
+  private static final int MIN_CHUNK = 1 << 14;
+  // Кусков в несколько раз больше, чем потоков, чтобы простаивающие потоки забирали работу
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private SummaryAggregator() {}
+
+  static WalletSummary summarize(OperationTimeIndex index, int from, int to) {
+    int size = to - from;
+    Partial partial;
+    if (size < PARALLEL_THRESHOLD) {
+      partial = Partial.scan(index, from, to);
+    } else {
+      ForkJoinPool pool =
+          ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+      int chunk = Math.max(MIN_CHUNK, size / (pool.getParallelism() * CHUNKS_PER_THREAD));
+      partial = new ChunkTask(index, from, to, chunk).invoke();
+    }
+    return partial.toSummary();
+  }
+
+  private static final class ChunkTask extends RecursiveTask<Partial> {
+    private final OperationTimeIndex index;
+    private final int from;
+    private final int to;
+    private final int chunk;
+
+    private ChunkTask(OperationTimeIndex index, int from, int to, int chunk) {
+      this.index = index;
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+    }
+
+    @Override
+    protected Partial compute() {
+      if (to - from <= chunk) {
+        return Partial.scan(index, from, to);
+      }
+      int mid = (from + to) >>> 1;
+      ChunkTask right = new ChunkTask(index, mid, to, chunk);
+      right.fork();
+      Partial left = new ChunkTask(index, from, mid, chunk).compute();
+      return left.merge(right.join());
+    }
+  }
+
+  // Итоги куска. Категории различаются по ссылке: операции одной категории ссылаются на один
+  // объект, так что в цикле не нужно приводить названия к нижнему регистру
+  private static final class Partial {
+    private double income;
+    private double expense;
+    private int incomeCount;
+    private int expenseCount;
+    private final Map<Category, WalletSummary.CategorySums> byCategory = new IdentityHashMap<>();
+
+    static Partial scan(OperationTimeIndex index, int from, int to) {
+      Partial partial = new Partial();
+      Category lastCategory = null;
+      WalletSummary.CategorySums sums = null;
+      for (int i = from; i < to; i++) {
+        Operation op = index.get(i);
+        Category category = op.getCategory();
+        if (category != lastCategory) {
+          sums =
+              partial.byCategory.computeIfAbsent(
+                  category, c -> new WalletSummary.CategorySums(c.getName()));
+          lastCategory = category;
+        }
+        double amount = op.getAmount();
+        if (op instanceof Income) {
+          partial.income += amount;
+          partial.incomeCount++;
+          sums.income += amount;
+          sums.incomeCount++;
+        } else if (op instanceof Expense) {
+          partial.expense += amount;
+          partial.expenseCount++;
+          sums.expense += amount;
+          sums.expenseCount++;
+        }
+      }
+      return partial;
+    }
+
+    Partial merge(Partial other) {
+      income += other.income;
+      expense += other.expense;
+      incomeCount += other.incomeCount;
+      expenseCount += other.expenseCount;
+      other.byCategory.forEach(
+          (category, sums) ->
+              byCategory
+                  .computeIfAbsent(category, c -> new WalletSummary.CategorySums(c.getName()))
+                  .merge(sums));
+      return this;
+    }
+
+    WalletSummary toSummary() {
+      // Разные объекты категории с одним названием (например, после загрузки старых данных)
+      // объединяются
+      Map<String, WalletSummary.CategorySums> byKey = new LinkedHashMap<>();
+      byCategory.forEach(
+          (category, sums) ->
+              byKey
+                  .computeIfAbsent(
+                      WalletAggregates.key(category.getName()),
+                      k -> new WalletSummary.CategorySums(category.getName()))
+                  .merge(sums));
+      return new WalletSummary(income, expense, incomeCount, expenseCount, byKey);
+    }
+  }
+}
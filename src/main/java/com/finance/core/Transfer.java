@@ -10,18 +10,68 @@ public class Transfer implements java.io.Serializable {
   private double amount;
   private LocalDateTime dateTime;
   private String description;
+  // Номер в журнале переводов (0 - перевод не записан) и ключ повтора от клиента
+  private long id;
+  private String idempotencyKey;
+  // Операции расхода отправителя и дохода получателя, созданные переводом
+  private long fromOperationId;
+  private long toOperationId;
 
   public Transfer(String fromUser, String toUser, double amount, String description) {
+    this(fromUser, toUser, amount, description, LocalDateTime.now());
+  }
+
+  public Transfer(
+      String fromUser, String toUser, double amount, String description, LocalDateTime dateTime) {
     if (amount <= 0) {
       throw new IllegalArgumentException("Сумма перевода должна быть положительной");
     }
     this.fromUser = fromUser;
     this.toUser = toUser;
     this.amount = amount;
-    this.dateTime = LocalDateTime.now();
+    this.dateTime = dateTime;
     this.description = description;
   }
 
+  /** Связывает перевод с созданными им операциями и ключом повтора перед записью в журнал. */
+  public void link(String idempotencyKey, Operation expense, Operation income) {
+    linkExpense(idempotencyKey, expense);
+    this.toOperationId = income.getId();
+  }
+
+  /** Связывает перевод с расходом отправителя, пока зачисление получателю еще не выполнено. */
+  public void linkExpense(String idempotencyKey, Operation expense) {
+    this.idempotencyKey = idempotencyKey;
+    this.fromOperationId = expense.getId();
+  }
+
+  void assignId(long id) {
+    this.id = id;
+  }
+
+  void restore(String idempotencyKey, long fromOperationId, long toOperationId) {
+    this.idempotencyKey = idempotencyKey;
+    this.fromOperationId = fromOperationId;
+    this.toOperationId = toOperationId;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  /** Ключ повтора или null, если клиент его не передал. */
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public long getFromOperationId() {
+    return fromOperationId;
+  }
+
+  public long getToOperationId() {
+    return toOperationId;
+  }
+
   public String getFromUser() {
     return fromUser;
   }
@@ -0,0 +1,220 @@
+package com.finance.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Журнал переводов: файл, в который записи только дописываются, и индексы в памяти. Номер перевода
+ * - позиция в журнале; поиск по ключу повтора, отправителю, получателю и паре пользователей не
+ * просматривает журнал. Формат файла - {@link RecordLog}.
+ *
+ * <p>Методы синхронизированы: переводы разных пар пользователей пишут в журнал из разных потоков.
+ */
+public final class TransferLedger implements AutoCloseable {
+  private static final int MAGIC = 0x4654524C; // "FTRL"
+  private static final int FORMAT_VERSION = 1;
+
+  private final List<Transfer> transfers = new ArrayList<>();
+  // Ключ повтора действует в пределах отправителя: отправитель + '\0' + ключ
+  private final Map<String, Transfer> byKey = new HashMap<>();
+  private final Map<String, List<Transfer>> bySender = new HashMap<>();
+  private final Map<String, List<Transfer>> byReceiver = new HashMap<>();
+  // Пара без учета направления: меньший логин + '\0' + больший
+  private final Map<String, List<Transfer>> byPair = new HashMap<>();
+  private RecordLog log;
+
+  private TransferLedger() {}
+
+  /** Открывает журнал (создает пустой, если файла нет) и строит индексы по его записям. */
+  public static TransferLedger open(Path file) {
+    TransferLedger ledger = new TransferLedger();
+    try {
+      // Запись с нарушенной нумерацией считается началом поврежденного хвоста
+      ledger.log =
+          RecordLog.open(
+              file,
+              MAGIC,
+              FORMAT_VERSION,
+              "журнала переводов",
+              record -> {
+                Transfer transfer = decode(record);
+                if (transfer.getId() != ledger.transfers.size() + 1L) {
+                  return false;
+                }
+                ledger.index(transfer);
+                return true;
+              });
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось открыть журнал переводов: " + file, e);
+    }
+    return ledger;
+  }
+
+  /**
+   * Записывает перевод с очередным номером. Перевод попадает в индексы только после записи в файл:
+   * если запись не удалась, журнал в памяти не меняется, и номер не пропадает.
+   *
+   * @throws IllegalArgumentException если ключ повтора отправителя уже использован
+   */
+  public synchronized Transfer append(Transfer transfer) {
+    appendAll(List.of(transfer));
+    return transfer;
+  }
+
+  /**
+   * Записывает переводы пакета одной записью в файл с одной синхронизацией диска. Ключи проверяются
+   * до записи: при повторе ключа (в журнале или внутри пакета) не записывается ни один перевод.
+   *
+   * @throws IllegalArgumentException если ключ повтора отправителя уже использован
+   */
+  public synchronized void appendAll(List<Transfer> batch) {
+    Set<String> keys = new HashSet<>();
+    for (Transfer transfer : batch) {
+      String key = transfer.getIdempotencyKey();
+      if (key != null
+          && (byKey.containsKey(keyOf(transfer.getFromUser(), key))
+              || !keys.add(keyOf(transfer.getFromUser(), key)))) {
+        throw new IllegalArgumentException("Ключ перевода уже использован: " + key);
+      }
+    }
+    List<byte[]> records = new ArrayList<>(batch.size());
+    long next = transfers.size() + 1L;
+    try {
+      for (Transfer transfer : batch) {
+        transfer.assignId(next++);
+        records.add(encode(transfer));
+      }
+      log.append(records, true);
+    } catch (IOException e) {
+      // Номера не заняты: иначе при открытии журнал отбросил бы все следующие записи
+      for (Transfer transfer : batch) {
+        transfer.assignId(0);
+      }
+      throw new UncheckedIOException("Не удалось записать перевод в журнал: " + e.getMessage(), e);
+    }
+    for (Transfer transfer : batch) {
+      index(transfer);
+    }
+  }
+
+  private void index(Transfer transfer) {
+    transfers.add(transfer);
+    if (transfer.getIdempotencyKey() != null) {
+      byKey.put(keyOf(transfer.getFromUser(), transfer.getIdempotencyKey()), transfer);
+    }
+    bySender.computeIfAbsent(transfer.getFromUser(), l -> new ArrayList<>()).add(transfer);
+    byReceiver.computeIfAbsent(transfer.getToUser(), l -> new ArrayList<>()).add(transfer);
+    byPair
+        .computeIfAbsent(
+            pairOf(transfer.getFromUser(), transfer.getToUser()), p -> new ArrayList<>())
+        .add(transfer);
+  }
+
+  /** Перевод отправителя с этим ключом повтора или null. */
+  public synchronized Transfer findByKey(String fromUser, String idempotencyKey) {
+    return byKey.get(keyOf(fromUser, idempotencyKey));
+  }
+
+  /** Перевод по номеру или null. */
+  public synchronized Transfer get(long id) {
+    return id >= 1 && id <= transfers.size() ? transfers.get((int) (id - 1)) : null;
+  }
+
+  public synchronized int size() {
+    return transfers.size();
+  }
+
+  /** Переводы пользователя другим пользователям по возрастанию номера. */
+  public synchronized List<Transfer> getSent(String login) {
+    return copyOf(bySender.get(login), Integer.MAX_VALUE);
+  }
+
+  public synchronized List<Transfer> getReceived(String login) {
+    return copyOf(byReceiver.get(login), Integer.MAX_VALUE);
+  }
+
+  /** Переводы между двумя пользователями в обе стороны по возрастанию номера. */
+  public synchronized List<Transfer> getHistory(String first, String second) {
+    return getHistory(first, second, Integer.MAX_VALUE);
+  }
+
+  /** Последние limit переводов между двумя пользователями в обе стороны. */
+  public synchronized List<Transfer> getHistory(String first, String second, int limit) {
+    return copyOf(byPair.get(pairOf(first, second)), limit);
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      log.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static List<Transfer> copyOf(List<Transfer> transfers, int limit) {
+    if (transfers == null) {
+      return Collections.emptyList();
+    }
+    int from = Math.max(0, transfers.size() - Math.max(limit, 0));
+    return Collections.unmodifiableList(new ArrayList<>(transfers.subList(from, transfers.size())));
+  }
+
+  private static String keyOf(String fromUser, String idempotencyKey) {
+    return fromUser + '\0' + idempotencyKey;
+  }
+
+  private static String pairOf(String first, String second) {
+    return first.compareTo(second) <= 0 ? first + '\0' + second : second + '\0' + first;
+  }
+
+  private static byte[] encode(Transfer transfer) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeLong(transfer.getId());
+      out.writeUTF(transfer.getFromUser());
+      out.writeUTF(transfer.getToUser());
+      out.writeDouble(transfer.getAmount());
+      out.writeLong(transfer.getDateTime().toEpochSecond(ZoneOffset.UTC));
+      out.writeInt(transfer.getDateTime().getNano());
+      out.writeUTF(transfer.getDescription() != null ? transfer.getDescription() : "");
+      out.writeBoolean(transfer.getIdempotencyKey() != null);
+      if (transfer.getIdempotencyKey() != null) {
+        out.writeUTF(transfer.getIdempotencyKey());
+      }
+      out.writeLong(transfer.getFromOperationId());
+      out.writeLong(transfer.getToOperationId());
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Transfer decode(byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    long id = in.readLong();
+    String fromUser = in.readUTF();
+    String toUser = in.readUTF();
+    double amount = in.readDouble();
+    LocalDateTime dateTime =
+        LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    String description = in.readUTF();
+    String key = in.readBoolean() ? in.readUTF() : null;
+    Transfer transfer = new Transfer(fromUser, toUser, amount, description, dateTime);
+    transfer.assignId(id);
+    transfer.restore(key, in.readLong(), in.readLong());
+    return transfer;
+  }
+}
@@ -0,0 +1,45 @@
+package com.finance.core;
+
+/** Одна часть пакетного перевода: получатель, сумма, описание и необязательный ключ повтора. */
+public final class TransferLeg {
+  private final String toUser;
+  private final double amount;
+  private final String description;
+  private final String idempotencyKey;
+
+  public TransferLeg(String toUser, double amount, String description, String idempotencyKey) {
+    if (toUser == null || toUser.isBlank()) {
+      throw new IllegalArgumentException("Не указан получатель перевода");
+    }
+    if (!(amount > 0) || Double.isInfinite(amount)) {
+      throw new IllegalArgumentException("Сумма перевода должна быть положительной");
+    }
+    this.toUser = toUser.trim();
+    this.amount = amount;
+    this.description = description != null ? description : "";
+    this.idempotencyKey =
+        idempotencyKey == null || idempotencyKey.isBlank() ? null : idempotencyKey;
+  }
+
+  public String getToUser() {
+    return toUser;
+  }
+
+  public double getAmount() {
+    return amount;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /** Ключ повтора или null. */
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.2f (%s)", toUser, amount, description);
+  }
+}
@@ -0,0 +1,72 @@
+package com.finance.core;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторное ядро агрегатов на jdk.incubator.vector. Суммы и даты обрабатываются векторами
+ * предпочтительной ширины (у double и long одинаковое число линий), типы - блоками по 8 байт,
+ * которые расширяются до нужного числа линий. Загружается только через {@link
+ * AggregationKernel#load()}.
+ */
+class VectorAggregationKernel implements AggregationKernel {
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_64;
+  // Сколько векторов сумм покрывает один блок типов
+  private static final int PARTS = BYTES.length() / DOUBLES.length();
+
+  VectorAggregationKernel() {
+    if (LONGS.length() != DOUBLES.length() || PARTS < 1) {
+      throw new UnsupportedOperationException("Неподходящая ширина векторов");
+    }
+  }
+
+  @Override
+  public double sum(
+      double[] amounts,
+      byte[] types,
+      long[] epochs,
+      int size,
+      byte type,
+      long fromEpoch,
+      long toEpoch) {
+    DoubleVector acc = DoubleVector.zero(DOUBLES);
+    double wanted = type;
+    int lanes = DOUBLES.length();
+    int bound = size - size % BYTES.length();
+    int i = 0;
+    for (; i < bound; i += BYTES.length()) {
+      ByteVector typeBlock = ByteVector.fromArray(BYTES, types, i);
+      for (int part = 0; part < PARTS; part++) {
+        int offset = i + part * lanes;
+        VectorMask<Double> typeMask =
+            ((DoubleVector) typeBlock.convertShape(VectorOperators.B2D, DOUBLES, part))
+                .compare(VectorOperators.EQ, wanted);
+        LongVector epoch = LongVector.fromArray(LONGS, epochs, offset);
+        VectorMask<Double> periodMask =
+            epoch
+                .compare(VectorOperators.GE, fromEpoch)
+                .and(epoch.compare(VectorOperators.LT, toEpoch))
+                .cast(DOUBLES);
+        acc = acc.add(DoubleVector.fromArray(DOUBLES, amounts, offset), typeMask.and(periodMask));
+      }
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < size; i++) {
+      if (types[i] == type && epochs[i] >= fromEpoch && epochs[i] < toEpoch) {
+        sum += amounts[i];
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  public String name() {
+    return "vector " + DOUBLES.vectorBitSize() + " бит";
+  }
+}
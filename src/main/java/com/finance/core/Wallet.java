@@ -1,11 +1,11 @@
 package com.finance.core;
 
 import java.io.Serializable;
-import java.text.NumberFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public class Wallet implements Serializable {
   private static final long serialVersionUID = 1L;
@@ -14,21 +14,58 @@ public class Wallet implements Serializable {
   private Map<String, Category> categories;
   private Map<String, Budget> budgets;
   private List<Operation> operations;
-  private transient List<String> notifications;
+  private transient NotificationBuffer notifications;
+  private AlertRuleEngine alertRules;
+  private transient WalletAggregates aggregates;
+  private long lastOperationId;
+  // Последнее окно взаимозачета, итог которого проведен в кошельке
+  private long lastSettledWindow;
+  // Последний перевод журнала, проведенный в кошельке; у кошельков из файлов данных до появления
+  // отметки transferMarked = false
+  private long lastTransferId;
+  private boolean transferMarked;
+  // Исходящие переводы, списанные с кошелька, но еще не записанные в журнал (null - нет)
+  private List<Transfer> pendingTransfers;
+  private transient OperationTimeIndex timeIndex;
+  private ExpenseDistribution expenseDistribution;
+  private DescriptionIndex descriptionIndex;
+  private transient OperationAmountIndex amountIndex;
+  private transient OperationColumns columns;
+  private DailyRollups dailyRollups;
+  private OperationArchive archive;
+  private transient long version;
+  // Пакет операций (beginBatch/endBatch): правила оповещений проверяются один раз в конце
+  private transient int batchDepth;
+  private transient Set<String> batchKeys;
+  private transient Set<String> batchCategories;
+  private transient ReportCache reportCache;
+  private transient OperationFingerprints fingerprints;
+
+  private static final int NOTIFICATION_CAPACITY = 64;
+  private static final int REPORT_CACHE_CAPACITY = 32;
+
+  private static final List<String> INCOME_CHANGED =
+      List.of(AlertRule.BALANCE_KEY, AlertRule.INCOME_KEY);
+  private static final List<String> EXPENSE_CHANGED =
+      List.of(AlertRule.BALANCE_KEY, AlertRule.EXPENSE_KEY);
+  private static final List<String> ALL_TOTALS_CHANGED =
+      List.of(AlertRule.BALANCE_KEY, AlertRule.INCOME_KEY, AlertRule.EXPENSE_KEY);
 
   public Wallet() {
     this.balance = 0.0;
     this.categories = new HashMap<>();
     this.budgets = new HashMap<>();
     this.operations = new ArrayList<>();
-    this.notifications = new ArrayList<>();
+    this.notifications = new NotificationBuffer(NOTIFICATION_CAPACITY);
+    this.alertRules = AlertRuleEngine.withDefaultRules();
+    this.transferMarked = true;
     initializeDefaultCategories();
   }
 
   // 🔧 Метод для инициализации notifications после десериализации
   public void initializeNotifications() {
     if (notifications == null) {
-      notifications = new ArrayList<>();
+      notifications = new NotificationBuffer(NOTIFICATION_CAPACITY);
     }
   }
 
@@ -44,10 +81,12 @@ public class Wallet implements Serializable {
   }
 
   public void addCategory(Category category) {
+    modified();
     categories.put(category.getName().toLowerCase(), category);
   }
 
   public void removeCategory(String categoryName) {
+    modified();
     categories.remove(categoryName.toLowerCase());
   }
 
@@ -68,89 +107,410 @@ public class Wallet implements Serializable {
   }
 
   public void setCategories(Map<String, Category> categories) {
+    modified();
     this.categories = categories != null ? categories : new HashMap<>();
   }
 
   public void addOperation(Operation operation) {
+    modified();
+    WalletAggregates current = aggregates();
+    OperationTimeIndex index = timeIndex();
+    DescriptionIndex words = descriptionIndex();
+    ExpenseDistribution distribution = getExpenseDistribution();
+    DailyRollups rollups = getDailyRollups();
+    operation.assignId(++lastOperationId);
     operations.add(operation);
+    current.add(operation);
+    distribution.add(operation);
+    rollups.add(operation);
+    if (!index.append(operation)) {
+      timeIndex = null;
+    }
+    if (!words.add(operation)) {
+      descriptionIndex = null;
+    }
+    if (amountIndex != null) {
+      amountIndex.add(operation);
+    }
+    if (columns != null) {
+      columns.append(operation);
+    }
+    if (fingerprints != null) {
+      fingerprints.add(operation.getFingerprint());
+    }
+    String categoryName = operation.getCategory().getName();
     if (operation instanceof Income) {
       balance += operation.getAmount();
+      evaluateAlertRules(INCOME_CHANGED, categoryName);
     } else if (operation instanceof Expense) {
       balance -= operation.getAmount();
-      checkBudgetExceeded((Expense) operation);
+      Budget budget = budgets.get(categoryName.toLowerCase());
+      if (budget != null) {
+        budget.addExpense(operation.getAmount());
+      }
+      evaluateAlertRules(EXPENSE_CHANGED, categoryName);
+    } else {
+      checkFinancialHealth();
     }
-    checkFinancialHealth();
   }
 
-  private void checkBudgetExceeded(Expense expense) {
-    initializeNotifications();
-    String categoryName = expense.getCategory().getName().toLowerCase();
-    if (budgets.containsKey(categoryName)) {
-      Budget budget = budgets.get(categoryName);
-      budget.addExpense(expense.getAmount());
-      if (budget.isExceeded()) {
-        notifications.add(
-            "\n⚠️  ВНИМАНИЕ: Превышен бюджет по категории '"
-                + expense.getCategory().getName()
-                + "'!");
-        notifications.add(
-            "   Потрачено: "
-                + formatCurrency(budget.getSpent())
-                + ", Лимит: "
-                + formatCurrency(budget.getLimit()));
-      } else if (budget.isNearLimit()) {
-        notifications.add(
-            "\nℹ️  ИНФО: Бюджет по категории '"
-                + expense.getCategory().getName()
-                + "' почти исчерпан!");
-        notifications.add(
-            "   Использовано: "
-                + formatCurrency(budget.getSpent())
-                + " из "
-                + formatCurrency(budget.getLimit())
-                + " ("
-                + String.format("%.0f", (budget.getSpent() / budget.getLimit() * 100))
-                + "%)");
+  /** Номер последнего окна взаимозачета, итог которого проведен в этом кошельке (0 - ни одного). */
+  public long getLastSettledWindow() {
+    return lastSettledWindow;
+  }
+
+  /**
+   * Запоминает проведенное окно взаимозачета. Номер сохраняется вместе с кошельком, поэтому
+   * проведение итога и отметка об окне попадают на диск одним сохранением.
+   */
+  public void setLastSettledWindow(long window) {
+    if (window > lastSettledWindow) {
+      lastSettledWindow = window;
+    }
+  }
+
+  /**
+   * Номер последнего перевода журнала, операция которого проведена в этом кошельке (0 - ни одного).
+   * Сохраняется вместе с кошельком, поэтому переводы журнала с большими номерами в сохраненный
+   * кошелек не попали.
+   */
+  public long getLastTransferId() {
+    return lastTransferId;
+  }
+
+  /** Запоминает проведенный перевод журнала; номера переводов кошелька возрастают. */
+  public void setLastTransferId(long transferId) {
+    if (transferId > lastTransferId) {
+      lastTransferId = transferId;
+    }
+    transferMarked = true;
+  }
+
+  /** Ведется ли отметка переводов: кошельки из старых файлов данных сохранены без нее. */
+  public boolean isTransferMarked() {
+    return transferMarked;
+  }
+
+  /**
+   * Переносит отметки журналов переводов и взаимозачетов с заменяемого кошелька пользователя:
+   * импортированный кошелек продолжает с того же места журналов, что и прежний.
+   */
+  public void copyJournalMarks(Wallet replaced) {
+    lastTransferId = replaced.lastTransferId;
+    transferMarked = replaced.transferMarked;
+    lastSettledWindow = replaced.lastSettledWindow;
+    pendingTransfers =
+        replaced.pendingTransfers != null ? new ArrayList<>(replaced.pendingTransfers) : null;
+  }
+
+  /**
+   * Запоминает перевод, сумма которого списана, а зачисление получателю еще впереди. Запись
+   * сохраняется вместе со списанием, поэтому после сбоя между фазами перевод можно довести до конца
+   * или вернуть.
+   */
+  public void addPendingTransfer(Transfer transfer) {
+    if (pendingTransfers == null) {
+      pendingTransfers = new ArrayList<>();
+    }
+    pendingTransfers.add(transfer);
+  }
+
+  /** Снимает перевод из ожидающих: он записан в журнал или сумма возвращена. */
+  public boolean removePendingTransfer(Transfer transfer) {
+    return pendingTransfers != null && pendingTransfers.remove(transfer);
+  }
+
+  /** Списанные, но еще не записанные в журнал исходящие переводы. */
+  public List<Transfer> getPendingTransfers() {
+    return pendingTransfers != null
+        ? Collections.unmodifiableList(pendingTransfers)
+        : Collections.emptyList();
+  }
+
+  /**
+   * Отменяет последнюю добавленную операцию: например, если не удалась запись перевода в журнал,
+   * ради которого она добавлялась. Номер операции освобождается, производные данные строятся
+   * заново.
+   *
+   * @throws IllegalStateException если операция не последняя в кошельке
+   */
+  public void undoLastOperation(Operation operation) {
+    if (operations.isEmpty() || operations.get(operations.size() - 1) != operation) {
+      throw new IllegalStateException("Отменить можно только последнюю добавленную операцию");
+    }
+    operations.remove(operations.size() - 1);
+    lastOperationId--;
+    if (operation instanceof Income) {
+      balance -= operation.getAmount();
+    } else if (operation instanceof Expense) {
+      balance += operation.getAmount();
+      Budget budget = budgets.get(operation.getCategory().getName().toLowerCase());
+      if (budget != null) {
+        budget.addExpense(-operation.getAmount());
       }
     }
+    recalculateAggregates();
+  }
+
+  /**
+   * Добавляет операцию, если в истории кошелька (включая архив) нет операции с тем же отпечатком
+   * ({@link Operation#getFingerprint()}).
+   *
+   * @return false, если операция - повтор и не добавлена
+   */
+  public boolean addOperationIfAbsent(Operation operation) {
+    if (fingerprints().contains(operation.getFingerprint())) {
+      return false;
+    }
+    addOperation(operation);
+    return true;
+  }
+
+  /** Есть ли в истории кошелька операция с тем же отпечатком. */
+  public boolean containsOperation(Operation operation) {
+    return fingerprints().contains(operation.getFingerprint());
+  }
+
+  OperationFingerprints fingerprints() {
+    if (fingerprints == null) {
+      List<Operation> history = history();
+      fingerprints = OperationFingerprints.build(history, history.size());
+    }
+    return fingerprints;
   }
 
   public void checkFinancialHealth() {
+    evaluateAlertRules(ALL_TOTALS_CHANGED, null);
+  }
+
+  /**
+   * Начинает пакет изменений: проверка правил оповещений откладывается до {@link #endBatch()} и
+   * выполняется один раз на пакет. Пакеты могут быть вложенными.
+   */
+  public void beginBatch() {
+    if (batchDepth++ == 0) {
+      batchKeys = new LinkedHashSet<>();
+      batchCategories = new LinkedHashSet<>();
+    }
+  }
+
+  /** Завершает пакет и проверяет правила, зависящие от изменившихся за пакет агрегатов. */
+  public void endBatch() {
+    if (batchDepth == 0) {
+      throw new IllegalStateException("Пакет изменений кошелька не начат");
+    }
+    if (--batchDepth > 0) {
+      return;
+    }
+    Set<String> keys = batchKeys;
+    Set<String> categoryNames = batchCategories;
+    batchKeys = null;
+    batchCategories = null;
+    if (!keys.isEmpty()) {
+      initializeNotifications();
+      getAlertRules().evaluateBatch(this, keys, categoryNames, notifications);
+    }
+  }
+
+  private void evaluateAlertRules(List<String> changedKeys, String categoryName) {
+    if (batchDepth > 0) {
+      batchKeys.addAll(changedKeys);
+      if (categoryName != null) {
+        batchCategories.add(categoryName);
+      }
+      return;
+    }
     initializeNotifications();
-    if (balance < 0) {
-      notifications.add(
-          "\n🚨 КРИТИЧЕСКОЕ ПРЕДУПРЕЖДЕНИЕ: Отрицательный баланс! Расходы превысили доходы!");
-      notifications.add("   Текущий баланс: " + formatCurrency(balance));
-    }
-    double totalExpense = getTotalExpense();
-    double totalIncome = getTotalIncome();
-    if (totalIncome > 0) {
-      double expensePercentage = (totalExpense / totalIncome) * 100;
-      if (expensePercentage > 90) {
-        notifications.add(
-            "\n⚠️  ВНИМАНИЕ: Расходы составляют "
-                + String.format("%.1f", expensePercentage)
-                + "% от доходов!");
+    getAlertRules().evaluate(this, changedKeys, categoryName, notifications);
+  }
+
+  // 🔧 Правила оповещений сохраняются вместе с кошельком; для старых данных - стандартные
+  public AlertRuleEngine getAlertRules() {
+    if (alertRules == null) {
+      alertRules = AlertRuleEngine.withDefaultRules();
+    }
+    return alertRules;
+  }
+
+  public AlertRule addAlertRule(AlertRule rule) {
+    modified();
+    if (rule.getCategory() != null && !hasCategory(rule.getCategory())) {
+      throw new IllegalArgumentException("Категория не найдена: " + rule.getCategory());
+    }
+    return getAlertRules().addRule(rule);
+  }
+
+  public boolean removeAlertRule(long ruleId) {
+    modified();
+    return getAlertRules().removeRule(ruleId);
+  }
+
+  public void setAlertRules(AlertRuleEngine alertRules) {
+    modified();
+    this.alertRules = alertRules;
+  }
+
+  /**
+   * Номер изменения кошелька: растет при каждом изменении через его методы. Кто меняет категории,
+   * бюджеты или операции напрямую, должен вызвать {@link #markModified()}.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public void markModified() {
+    modified();
+  }
+
+  private void modified() {
+    version++;
+  }
+
+  /**
+   * Готовый отчет из кэша, если кошелек не менялся с момента его построения; иначе отчет строится
+   * заново и запоминается. Ключ должен включать тип отчета и все его параметры.
+   */
+  public String cachedReport(String key, Supplier<String> render) {
+    if (reportCache == null) {
+      reportCache = new ReportCache(REPORT_CACHE_CAPACITY);
+    }
+    String report = reportCache.get(key, version);
+    if (report == null) {
+      report = render.get();
+      reportCache.put(key, version, report);
+    }
+    return report;
+  }
+
+  WalletAggregates aggregates() {
+    if (aggregates == null) {
+      aggregates = WalletAggregates.rebuild(operations);
+      if (archive != null) {
+        archive.getTotals().values().forEach(aggregates::addArchived);
+      }
+    }
+    return aggregates;
+  }
+
+  // 🔧 Пересчет агрегатов после изменения операций в обход addOperation
+  public void recalculateAggregates() {
+    modified();
+    aggregates = null;
+    timeIndex = null;
+    expenseDistribution = null;
+    descriptionIndex = null;
+    amountIndex = null;
+    columns = null;
+    dailyRollups = null;
+    fingerprints = null;
+  }
+
+  /**
+   * Эскизы квантилей размеров расходов. Сохраняются вместе с кошельком; для старых данных строятся
+   * по операциям при первом обращении.
+   */
+  public ExpenseDistribution getExpenseDistribution() {
+    if (expenseDistribution == null) {
+      expenseDistribution = ExpenseDistribution.rebuild(history());
+    }
+    return expenseDistribution;
+  }
+
+  OperationTimeIndex timeIndex() {
+    if (timeIndex == null || timeIndex.size() != operations.size()) {
+      normalizeOperationIds();
+      timeIndex = OperationTimeIndex.build(operations);
+    }
+    return timeIndex;
+  }
+
+  // 🔧 Номера операций возрастают по списку; операции из старых файлов данных сохранены без
+  // номеров,
+  // в этом случае список нумеруется заново (после номеров архива)
+  private void normalizeOperationIds() {
+    long previous = 0;
+    for (Operation op : operations) {
+      if (op.getId() <= previous) {
+        lastOperationId = archive != null ? archive.getLastId() : 0;
+        for (Operation renumbered : operations) {
+          renumbered.assignId(++lastOperationId);
+        }
+        descriptionIndex = null;
+        return;
       }
-      if (balance < totalIncome * 0.1) {
-        notifications.add("\nℹ️  ИНФО: Баланс составляет менее 10% от общего дохода");
+      previous = op.getId();
+    }
+    lastOperationId = Math.max(lastOperationId, previous);
+  }
+
+  DescriptionIndex descriptionIndex() {
+    timeIndex();
+    if (descriptionIndex == null) {
+      descriptionIndex = DescriptionIndex.rebuild(operations);
+    }
+    return descriptionIndex;
+  }
+
+  /**
+   * Поиск операций по словам описания, от новых к старым. Слова через пробел должны встречаться
+   * все, группы слов разделяются "ИЛИ", "кофе*" - поиск по началу слова.
+   */
+  public List<Operation> searchOperations(String query) {
+    return query(OperationQuery.builder().text(query).build()).getOperations();
+  }
+
+  /**
+   * Выполняет запрос, перебирая кандидатов самого избирательного из индексов (время, категории,
+   * суммы, слова описания) и проверяя остальные условия для каждого кандидата.
+   */
+  public OperationQueryResult query(OperationQuery query) {
+    return new OperationQueryExecutor(this, query).execute();
+  }
+
+  // Индекс сумм строится при первом запросе с диапазоном сумм и дальше поддерживается
+  OperationAmountIndex amountIndex() {
+    if (amountIndex == null || amountIndex.size() != operations.size()) {
+      amountIndex = OperationAmountIndex.build(operations);
+    }
+    return amountIndex;
+  }
+
+  // Номера в списке операций возрастают, поэтому операция находится двоичным поиском
+  Operation findOperation(long id) {
+    int lo = 0;
+    int hi = operations.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long midId = operations.get(mid).getId();
+      if (midId < id) {
+        lo = mid + 1;
+      } else if (midId > id) {
+        hi = mid - 1;
+      } else {
+        return operations.get(mid);
       }
     }
+    return null;
   }
 
   public List<String> getAndClearNotifications() {
     initializeNotifications();
-    List<String> result = new ArrayList<>(notifications);
-    notifications.clear();
-    return result;
+    return notifications.drain();
+  }
+
+  // Перенос оповещений с сохранением ключей, чтобы повторы объединялись и у получателя
+  public void drainNotificationsTo(NotificationBuffer target) {
+    initializeNotifications();
+    notifications.drainTo(target);
   }
 
   public List<String> getNotifications() {
     initializeNotifications();
-    return new ArrayList<>(notifications);
+    return notifications.snapshot();
   }
 
   public void setBudget(String categoryName, double limit) {
+    modified();
     if (!hasCategory(categoryName)) {
       throw new IllegalArgumentException("Категория не найдена: " + categoryName);
     }
@@ -160,10 +520,15 @@ public class Wallet implements Serializable {
             .filter(op -> op.getCategory().getName().equalsIgnoreCase(categoryName))
             .mapToDouble(Operation::getAmount)
             .sum();
+    if (archive != null) {
+      OperationArchive.Totals archived = archive.getTotals().get(categoryName.toLowerCase());
+      spent += archived != null ? archived.expense : 0.0;
+    }
     budgets.put(categoryName.toLowerCase(), new Budget(getCategory(categoryName), limit, spent));
   }
 
   public void editBudget(String categoryName, double newLimit) {
+    modified();
     if (!budgets.containsKey(categoryName.toLowerCase())) {
       throw new IllegalArgumentException("Бюджет для категории не установлен: " + categoryName);
     }
@@ -171,6 +536,7 @@ public class Wallet implements Serializable {
   }
 
   public void removeBudget(String categoryName) {
+    modified();
     budgets.remove(categoryName.toLowerCase());
   }
 
@@ -183,6 +549,7 @@ public class Wallet implements Serializable {
   }
 
   public void setBudgets(Map<String, Budget> budgets) {
+    modified();
     this.budgets = budgets != null ? budgets : new HashMap<>();
   }
 
@@ -191,90 +558,365 @@ public class Wallet implements Serializable {
   }
 
   public void setBalance(double balance) {
+    modified();
     this.balance = balance;
   }
 
+  /** Операции оперативной части; архивные операции - в {@link #getAllOperations()}. */
   public List<Operation> getOperations() {
     return operations;
   }
 
+  /** Вся история: архивные операции, прочитанные с диска, и операции оперативной части. */
+  public List<Operation> getAllOperations() {
+    return Collections.unmodifiableList(history());
+  }
+
+  // Полная история для пересчета сохраняемых сводок; читает весь архив
+  private List<Operation> history() {
+    if (archive == null) {
+      return operations;
+    }
+    List<Operation> history = archive.read(null, null, this::getCategory);
+    history.addAll(operations);
+    return history;
+  }
+
+  /** Замена операций заменяет и историю: ранее созданный архив больше не используется. */
   public void setOperations(List<Operation> operations) {
+    modified();
     this.operations = operations != null ? operations : new ArrayList<>();
+    this.archive = null;
+    this.aggregates = null;
+    this.timeIndex = null;
+    this.expenseDistribution = null;
+    this.descriptionIndex = null;
+    this.amountIndex = null;
+    this.columns = null;
+    this.dailyRollups = null;
+    this.fingerprints = null;
   }
 
   public double getTotalIncome() {
-    return operations.stream()
-        .filter(op -> op instanceof Income)
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    return aggregates().getTotalIncome();
   }
 
   public double getTotalExpense() {
-    return operations.stream()
-        .filter(op -> op instanceof Expense)
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    return aggregates().getTotalExpense();
   }
 
   public double getIncomeByCategory(String categoryName) {
-    return operations.stream()
-        .filter(
-            op -> op instanceof Income && op.getCategory().getName().equalsIgnoreCase(categoryName))
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    return aggregates().getIncome(categoryName);
   }
 
   public double getExpenseByCategory(String categoryName) {
-    return operations.stream()
-        .filter(
-            op ->
-                op instanceof Expense && op.getCategory().getName().equalsIgnoreCase(categoryName))
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    return aggregates().getExpense(categoryName);
   }
 
   public Map<String, Double> getIncomeByCategories() {
-    return operations.stream()
-        .filter(op -> op instanceof Income)
-        .collect(
-            Collectors.groupingBy(
-                op -> op.getCategory().getName(), Collectors.summingDouble(Operation::getAmount)));
+    return aggregates().getIncomeByCategories();
   }
 
   public Map<String, Double> getExpenseByCategories() {
-    return operations.stream()
-        .filter(op -> op instanceof Expense)
-        .collect(
-            Collectors.groupingBy(
-                op -> op.getCategory().getName(), Collectors.summingDouble(Operation::getAmount)));
+    return aggregates().getExpenseByCategories();
+  }
+
+  /**
+   * Страница операций от новых к старым. Операции берутся из индекса по времени, поэтому страница
+   * без фильтра по категории находится без сортировки и просмотра всей ленты.
+   *
+   * @param startDate начало периода включительно или null
+   * @param endDate конец периода включительно или null
+   * @param category категория или null для всех операций
+   * @param page номер страницы, начиная с 1
+   * @param pageSize число операций на странице
+   */
+  public OperationPage getOperationsPage(
+      LocalDate startDate, LocalDate endDate, String category, int page, int pageSize) {
+    if (page < 1 || pageSize < 1) {
+      throw new IllegalArgumentException("Номер и размер страницы должны быть положительными");
+    }
+    OperationTimeIndex index = timeIndex();
+    int from = startDate != null ? index.lowerBound(startDate.atStartOfDay()) : 0;
+    int to = endDate != null ? index.lowerBound(endDate.plusDays(1).atStartOfDay()) : index.size();
+    long offset = (long) (page - 1) * pageSize;
+    List<Operation> result = new ArrayList<>(Math.min(pageSize, Math.max(to - from, 0)));
+    int next = collectNewestFirst(index, from, to, category, offset, pageSize, result);
+    int total = countOperations(index, from, to, category, startDate != null || endDate != null);
+    return new OperationPage(
+        result, page, pageSize, total, nextCursor(index, next, from, category));
+  }
+
+  /**
+   * Операции, предшествующие курсору, от новых к старым. В отличие от номера страницы, курсор
+   * остается верным при добавлении новых операций между запросами.
+   *
+   * @param cursor курсор из {@link OperationPage#getNextCursor()} или null для самых новых
+   */
+  public OperationPage getOperationsBefore(
+      OperationCursor cursor, LocalDate startDate, LocalDate endDate, String category, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Размер страницы должен быть положительным");
+    }
+    OperationTimeIndex index = timeIndex();
+    int from = startDate != null ? index.lowerBound(startDate.atStartOfDay()) : 0;
+    int to = endDate != null ? index.lowerBound(endDate.plusDays(1).atStartOfDay()) : index.size();
+    int total = countOperations(index, from, to, category, startDate != null || endDate != null);
+    if (cursor != null) {
+      to = Math.min(to, index.lowerBound(cursor));
+    }
+    List<Operation> result = new ArrayList<>(Math.min(limit, Math.max(to - from, 0)));
+    int next = collectNewestFirst(index, from, to, category, 0, limit, result);
+    return new OperationPage(result, 1, limit, total, nextCursor(index, next, from, category));
+  }
+
+  public List<Operation> getLatestOperations(int limit) {
+    return getOperationsBefore(null, null, null, null, limit).getOperations();
+  }
+
+  // Идет по индексу от позиции to - 1 вниз, пропуская skip подходящих операций; возвращает позицию,
+  // с которой продолжится следующая страница
+  private static int collectNewestFirst(
+      OperationTimeIndex index,
+      int from,
+      int to,
+      String category,
+      long skip,
+      int limit,
+      List<Operation> out) {
+    int position = to - 1;
+    if (category == null) {
+      position -= (int) Math.min(skip, Math.max(to - from, 0));
+      for (; position >= from && out.size() < limit; position--) {
+        out.add(index.get(position));
+      }
+      return position;
+    }
+    for (; position >= from && out.size() < limit; position--) {
+      Operation op = index.get(position);
+      if (op.getCategory().getName().equalsIgnoreCase(category)) {
+        if (skip > 0) {
+          skip--;
+        } else {
+          out.add(op);
+        }
+      }
+    }
+    return position;
+  }
+
+  private static OperationCursor nextCursor(
+      OperationTimeIndex index, int position, int from, String category) {
+    for (; position >= from; position--) {
+      Operation op = index.get(position);
+      if (category == null || op.getCategory().getName().equalsIgnoreCase(category)) {
+        return OperationCursor.of(index.get(position + 1));
+      }
+    }
+    return null;
   }
 
+  private int countOperations(
+      OperationTimeIndex index, int from, int to, String category, boolean byPeriod) {
+    if (category == null) {
+      return Math.max(to - from, 0);
+    }
+    if (!byPeriod) {
+      return aggregates().getOperations(category).size();
+    }
+    int count = 0;
+    for (int position = from; position < to; position++) {
+      if (index.get(position).getCategory().getName().equalsIgnoreCase(category)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Категории с наибольшими доходами, по убыванию суммы. Рейтинг поддерживается при добавлении
+   * операций, поэтому запрос стоит O(limit), без сортировки всех категорий.
+   */
+  public Map<String, Double> getTopIncomeCategories(int limit) {
+    return aggregates().getTopIncome(limit);
+  }
+
+  /** Категории с наибольшими расходами, по убыванию суммы. */
+  public Map<String, Double> getTopExpenseCategories(int limit) {
+    return aggregates().getTopExpense(limit);
+  }
+
+  /** Операции за период включительно, в хронологическом порядке. */
   public List<Operation> getOperationsByPeriod(LocalDate startDate, LocalDate endDate) {
-    return operations.stream()
-        .filter(
-            op ->
-                !op.getDateTime().toLocalDate().isBefore(startDate)
-                    && !op.getDateTime().toLocalDate().isAfter(endDate))
-        .collect(Collectors.toList());
+    return query(
+            OperationQuery.builder()
+                .between(startDate, endDate)
+                .sortBy(OperationQuery.Sort.OLDEST)
+                .build())
+        .getOperations();
   }
 
   public double getTotalIncomeByPeriod(LocalDate startDate, LocalDate endDate) {
-    return getOperationsByPeriod(startDate, endDate).stream()
-        .filter(op -> op instanceof Income)
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    checkPeriod(startDate, endDate);
+    double archived =
+        archive != null ? archive.sum(true, startDate, endDate, this::getCategory) : 0;
+    return columns().sum(OperationColumns.INCOME, startDate, endDate) + archived;
   }
 
   public double getTotalExpenseByPeriod(LocalDate startDate, LocalDate endDate) {
-    return getOperationsByPeriod(startDate, endDate).stream()
-        .filter(op -> op instanceof Expense)
-        .mapToDouble(Operation::getAmount)
-        .sum();
+    checkPeriod(startDate, endDate);
+    double archived =
+        archive != null ? archive.sum(false, startDate, endDate, this::getCategory) : 0;
+    return columns().sum(OperationColumns.EXPENSE, startDate, endDate) + archived;
+  }
+
+  /**
+   * Сводная таблица доходов и расходов по категориям и периодам за период включительно (любая
+   * граница может быть null), по дневным сводкам.
+   */
+  public CategoryPivot pivot(
+      CategoryPivot.Granularity granularity, LocalDate startDate, LocalDate endDate) {
+    return CategoryPivot.build(getDailyRollups(), granularity, startDate, endDate);
+  }
+
+  /**
+   * Дневные сводки по категориям для отчетов за длинные периоды. Сохраняются вместе с кошельком;
+   * для старых данных строятся по операциям при первом обращении.
+   */
+  public DailyRollups getDailyRollups() {
+    long archived = archive != null ? archive.getOperationCount() : 0;
+    if (dailyRollups == null || dailyRollups.getOperationCount() != archived + operations.size()) {
+      dailyRollups = DailyRollups.rebuild(history());
+    }
+    return dailyRollups;
+  }
+
+  /**
+   * Переносит операции раньше даты horizon в архив: новые неизменяемые сжатые сегменты по месяцам в
+   * каталоге directory. Итоги, бюджеты, дневные сводки и распределения расходов остаются в
+   * кошельке, запросы за архивный период читают сегменты с диска.
+   *
+   * @return число перенесенных операций
+   */
+  public int archiveOperationsBefore(LocalDate horizon, Path directory) {
+    if (archive != null && !isArchivedIn(directory)) {
+      throw new IllegalArgumentException(
+          "Архив кошелька уже находится в " + archive.getDirectory());
+    }
+    // Сводки должны учесть все операции до того, как часть из них уйдет из памяти
+    getDailyRollups();
+    getExpenseDistribution();
+    timeIndex();
+    List<Operation> cold = new ArrayList<>();
+    List<Operation> hot = new ArrayList<>();
+    for (Operation op : operations) {
+      (op.getDateTime().toLocalDate().isBefore(horizon) ? cold : hot).add(op);
+    }
+    if (cold.isEmpty()) {
+      return 0;
+    }
+    modified();
+    OperationArchive updated = archive != null ? archive : new OperationArchive(directory);
+    updated.append(cold, horizon);
+    archive = updated;
+    operations = hot;
+    aggregates = null;
+    timeIndex = null;
+    descriptionIndex = null;
+    amountIndex = null;
+    columns = null;
+    return cold.size();
+  }
+
+  /** Находится ли архив кошелька в каталоге directory (пути сравниваются нормализованными). */
+  public boolean isArchivedIn(Path directory) {
+    return archive != null
+        && Paths.get(archive.getDirectory())
+            .toAbsolutePath()
+            .normalize()
+            .equals(directory.toAbsolutePath().normalize());
+  }
+
+  /**
+   * Возвращает архивные операции в оперативную часть: кошелек больше не ссылается на файлы архива.
+   * Так выгружается самодостаточная копия кошелька.
+   */
+  public void inlineArchive() {
+    if (archive == null) {
+      return;
+    }
+    List<Operation> history = history();
+    modified();
+    operations = history;
+    archive = null;
+    aggregates = null;
+    timeIndex = null;
+    descriptionIndex = null;
+    amountIndex = null;
+    columns = null;
+    fingerprints = null;
+  }
+
+  /** Число операций вместе с архивными. */
+  public long getOperationCount() {
+    return operations.size() + (archive != null ? archive.getOperationCount() : 0);
+  }
+
+  /** Архив операций или null, если операции не архивировались. */
+  public OperationArchive getArchive() {
+    return archive;
+  }
+
+  /** Переименование категории для операций архива (сегменты не перезаписываются). */
+  public void renameArchivedCategory(String oldName, String newName) {
+    if (archive != null) {
+      modified();
+      archive.rename(oldName, newName);
+    }
+  }
+
+  // Архивные операции сегментов, пересекающихся с периодом; пустой список, если архива нет
+  List<Operation> archivedOperations(LocalDate startDate, LocalDate endDate) {
+    if (archive == null || !archive.overlaps(startDate, endDate)) {
+      return List.of();
+    }
+    return archive.read(startDate, endDate, this::getCategory);
+  }
+
+  // Столбцы строятся при первой сумме за период и дальше дописываются в addOperation
+  OperationColumns columns() {
+    if (columns == null || columns.size() != operations.size()) {
+      columns = OperationColumns.build(operations);
+    }
+    return columns;
+  }
+
+  /**
+   * Суммы доходов и расходов за период включительно (любая граница может быть null) и по
+   * категориям, одним проходом по индексу времени. Большие периоды считаются параллельно.
+   */
+  public WalletSummary summarize(LocalDate startDate, LocalDate endDate) {
+    checkPeriod(startDate, endDate);
+    if (archive != null && archive.overlaps(startDate, endDate)) {
+      // Архивные операции есть только в дневных сводках
+      return getDailyRollups().summarize(startDate, endDate);
+    }
+    OperationTimeIndex index = timeIndex();
+    int from = startDate != null ? index.lowerBound(startDate.atStartOfDay()) : 0;
+    int to = endDate != null ? index.lowerBound(endDate.plusDays(1).atStartOfDay()) : index.size();
+    return SummaryAggregator.summarize(index, from, Math.max(from, to));
+  }
+
+  private static void checkPeriod(LocalDate startDate, LocalDate endDate) {
+    if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+      throw new IllegalArgumentException("Начало периода позже его конца");
+    }
   }
 
   // 🔧 Метод для пересчета баланса при необходимости
   public void recalculateBalance() {
-    this.balance = 0.0;
+    modified();
+    this.balance = archive != null ? archive.getTotalIncome() - archive.getTotalExpense() : 0.0;
     for (Operation op : operations) {
       if (op instanceof Income) {
         this.balance += op.getAmount();
@@ -285,11 +927,7 @@ public class Wallet implements Serializable {
   }
 
   public String formatCurrency(double amount) {
-    NumberFormat nf = NumberFormat.getNumberInstance(Locale.US);
-    nf.setMinimumFractionDigits(1);
-    nf.setMaximumFractionDigits(1);
-    nf.setGroupingUsed(true);
-    return nf.format(amount);
+    return MoneyFormatter.DEFAULT.format(amount);
   }
 
   public String getFormattedBalance() {
@@ -307,17 +945,12 @@ public class Wallet implements Serializable {
   public String getBudgetSummaryAsInTZ() {
     StringBuilder sb = new StringBuilder();
     sb.append("Общий доход: ").append(formatCurrency(getTotalIncome())).append("\n");
-    Map<String, Double> incomeByCat = getIncomeByCategories();
+    Map<String, Double> incomeByCat = getTopIncomeCategories(Integer.MAX_VALUE);
     if (!incomeByCat.isEmpty()) {
       sb.append("Доходы по категориям:\n");
-      incomeByCat.entrySet().stream()
-          .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-          .forEach(
-              entry ->
-                  sb.append(entry.getKey())
-                      .append(": ")
-                      .append(formatCurrency(entry.getValue()))
-                      .append("\n"));
+      incomeByCat.forEach(
+          (name, amount) ->
+              sb.append(name).append(": ").append(formatCurrency(amount)).append("\n"));
     }
     sb.append("Общие расходы: ").append(formatCurrency(getTotalExpense())).append("\n");
     if (!budgets.isEmpty()) {
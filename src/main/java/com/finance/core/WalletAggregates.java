@@ -0,0 +1,170 @@
+package com.finance.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Агрегаты кошелька, поддерживаемые инкрементально при добавлении операций: общие суммы доходов и
+ * расходов, суммы по категориям, рейтинги категорий по этим суммам и списки операций категорий.
+ * Пересчитываются полностью только после массовой замены операций.
+ */
+class WalletAggregates {
+  private static final Comparator<CategoryTotals> BY_INCOME =
+      Comparator.<CategoryTotals>comparingDouble(t -> -t.income).thenComparing(t -> t.key);
+  private static final Comparator<CategoryTotals> BY_EXPENSE =
+      Comparator.<CategoryTotals>comparingDouble(t -> -t.expense).thenComparing(t -> t.key);
+
+  private double totalIncome;
+  private double totalExpense;
+  private final Map<String, CategoryTotals> byCategory = new LinkedHashMap<>();
+  // Рейтинги категорий по убыванию суммы; содержат только категории с операциями этого типа
+  private final NavigableSet<CategoryTotals> incomeRanking = new TreeSet<>(BY_INCOME);
+  private final NavigableSet<CategoryTotals> expenseRanking = new TreeSet<>(BY_EXPENSE);
+
+  static WalletAggregates rebuild(List<Operation> operations) {
+    WalletAggregates aggregates = new WalletAggregates();
+    for (Operation op : operations) {
+      aggregates.add(op);
+    }
+    return aggregates;
+  }
+
+  void add(Operation op) {
+    String name = op.getCategory().getName();
+    CategoryTotals totals = byCategory.computeIfAbsent(key(name), k -> new CategoryTotals(k, name));
+    totals.operations.add(op);
+    // Позиция в рейтинге зависит от суммы, поэтому запись переставляется: удалить, изменить,
+    // вставить
+    if (op instanceof Income) {
+      incomeRanking.remove(totals);
+      totalIncome += op.getAmount();
+      totals.income += op.getAmount();
+      totals.incomeCount++;
+      incomeRanking.add(totals);
+    } else if (op instanceof Expense) {
+      expenseRanking.remove(totals);
+      totalExpense += op.getAmount();
+      totals.expense += op.getAmount();
+      totals.expenseCount++;
+      expenseRanking.add(totals);
+    }
+  }
+
+  // Итоги архивных операций: входят в суммы и рейтинги, но не в списки операций категорий
+  void addArchived(OperationArchive.Totals archived) {
+    CategoryTotals totals =
+        byCategory.computeIfAbsent(key(archived.name), k -> new CategoryTotals(k, archived.name));
+    incomeRanking.remove(totals);
+    expenseRanking.remove(totals);
+    totalIncome += archived.income;
+    totalExpense += archived.expense;
+    totals.income += archived.income;
+    totals.expense += archived.expense;
+    totals.incomeCount += archived.incomeCount;
+    totals.expenseCount += archived.expenseCount;
+    if (totals.incomeCount > 0) {
+      incomeRanking.add(totals);
+    }
+    if (totals.expenseCount > 0) {
+      expenseRanking.add(totals);
+    }
+  }
+
+  double getTotalIncome() {
+    return totalIncome;
+  }
+
+  double getTotalExpense() {
+    return totalExpense;
+  }
+
+  double getIncome(String categoryName) {
+    CategoryTotals totals = byCategory.get(key(categoryName));
+    return totals != null ? totals.income : 0.0;
+  }
+
+  double getExpense(String categoryName) {
+    CategoryTotals totals = byCategory.get(key(categoryName));
+    return totals != null ? totals.expense : 0.0;
+  }
+
+  int getCount(String categoryName) {
+    CategoryTotals totals = byCategory.get(key(categoryName));
+    return totals != null ? totals.incomeCount + totals.expenseCount : 0;
+  }
+
+  /** Операции категории в порядке добавления (индекс по категориям для запросов). */
+  List<Operation> getOperations(String categoryName) {
+    CategoryTotals totals = byCategory.get(key(categoryName));
+    return totals != null ? Collections.unmodifiableList(totals.operations) : List.of();
+  }
+
+  Map<String, Double> getIncomeByCategories() {
+    Map<String, Double> result = new HashMap<>();
+    for (CategoryTotals totals : byCategory.values()) {
+      if (totals.incomeCount > 0) {
+        result.put(totals.name, totals.income);
+      }
+    }
+    return result;
+  }
+
+  Map<String, Double> getExpenseByCategories() {
+    Map<String, Double> result = new HashMap<>();
+    for (CategoryTotals totals : byCategory.values()) {
+      if (totals.expenseCount > 0) {
+        result.put(totals.name, totals.expense);
+      }
+    }
+    return result;
+  }
+
+  /** Первые limit категорий по доходам, по убыванию суммы. */
+  Map<String, Double> getTopIncome(int limit) {
+    Map<String, Double> result = new LinkedHashMap<>();
+    Iterator<CategoryTotals> it = incomeRanking.iterator();
+    while (result.size() < limit && it.hasNext()) {
+      CategoryTotals totals = it.next();
+      result.put(totals.name, totals.income);
+    }
+    return result;
+  }
+
+  /** Первые limit категорий по расходам, по убыванию суммы. */
+  Map<String, Double> getTopExpense(int limit) {
+    Map<String, Double> result = new LinkedHashMap<>();
+    Iterator<CategoryTotals> it = expenseRanking.iterator();
+    while (result.size() < limit && it.hasNext()) {
+      CategoryTotals totals = it.next();
+      result.put(totals.name, totals.expense);
+    }
+    return result;
+  }
+
+  static String key(String categoryName) {
+    return categoryName.toLowerCase();
+  }
+
+  private static final class CategoryTotals {
+    private final String key;
+    private final String name;
+    private double income;
+    private double expense;
+    private int incomeCount;
+    private int expenseCount;
+    private final List<Operation> operations = new ArrayList<>();
+
+    private CategoryTotals(String key, String name) {
+      this.key = key;
+      this.name = name;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.finance.core;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Итоги операций за период, посчитанные одним проходом: суммы и число доходов и расходов, суммы по
+ * категориям. Строится {@link Wallet#summarize}.
+ */
+public final class WalletSummary {
+  private final double totalIncome;
+  private final double totalExpense;
+  private final int incomeCount;
+  private final int expenseCount;
+  // Ключ - название категории в нижнем регистре
+  private final Map<String, CategorySums> byCategory;
+
+  WalletSummary(
+      double totalIncome,
+      double totalExpense,
+      int incomeCount,
+      int expenseCount,
+      Map<String, CategorySums> byCategory) {
+    this.totalIncome = totalIncome;
+    this.totalExpense = totalExpense;
+    this.incomeCount = incomeCount;
+    this.expenseCount = expenseCount;
+    this.byCategory = byCategory;
+  }
+
+  public double getTotalIncome() {
+    return totalIncome;
+  }
+
+  public double getTotalExpense() {
+    return totalExpense;
+  }
+
+  public int getIncomeCount() {
+    return incomeCount;
+  }
+
+  public int getExpenseCount() {
+    return expenseCount;
+  }
+
+  public double getIncome(String categoryName) {
+    CategorySums sums = byCategory.get(WalletAggregates.key(categoryName));
+    return sums != null ? sums.income : 0.0;
+  }
+
+  public double getExpense(String categoryName) {
+    CategorySums sums = byCategory.get(WalletAggregates.key(categoryName));
+    return sums != null ? sums.expense : 0.0;
+  }
+
+  /** Категории с доходами по убыванию суммы. */
+  public Map<String, Double> getIncomeByCategories() {
+    return rank(true);
+  }
+
+  /** Категории с расходами по убыванию суммы. */
+  public Map<String, Double> getExpenseByCategories() {
+    return rank(false);
+  }
+
+  private Map<String, Double> rank(boolean income) {
+    Map<String, Double> ranked = new LinkedHashMap<>();
+    byCategory.values().stream()
+        .filter(s -> (income ? s.incomeCount : s.expenseCount) > 0)
+        .sorted(
+            Comparator.comparingDouble((CategorySums s) -> income ? -s.income : -s.expense)
+                .thenComparing(s -> WalletAggregates.key(s.name)))
+        .forEach(s -> ranked.put(s.name, income ? s.income : s.expense));
+    return ranked;
+  }
+
+  static final class CategorySums {
+    final String name;
+    double income;
+    double expense;
+    int incomeCount;
+    int expenseCount;
+
+    CategorySums(String name) {
+      this.name = name;
+    }
+
+    void merge(CategorySums other) {
+      income += other.income;
+      expense += other.expense;
+      incomeCount += other.incomeCount;
+      expenseCount += other.expenseCount;
+    }
+  }
+}
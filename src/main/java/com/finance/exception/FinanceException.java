@@ -1,6 +1,8 @@
 package com.finance.exception;
 
 public class FinanceException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
   public FinanceException(String message) {
     super(message);
   }
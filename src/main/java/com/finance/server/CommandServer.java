@@ -0,0 +1,425 @@
+package com.finance.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.finance.cli.CLIInterface;
+import com.finance.service.FinanceManager;
+import com.finance.service.UserRegistry;
+
+/**
+ * Сетевой доступ к командам консоли: строковый протокол поверх TCP с той же грамматикой команд, что
+ * и {@link CLIInterface}. Каждое соединение - отдельный сеанс со своим {@link FinanceManager} над
+ * общим {@link UserRegistry}.
+ *
+ * <p>Протокол: клиент отправляет команды строками в UTF-8. На каждую команду сервер отвечает ее
+ * выводом и строкой-терминатором {@code .OK} или {@code .ERR} (команда завершилась ошибкой). Строки
+ * вывода, начинающиеся с точки, дополняются еще одной точкой, поэтому терминатор однозначен.
+ * Команды можно отправлять пакетом, не дожидаясь ответов: они выполняются строго по порядку, ответы
+ * приходят в том же порядке. {@code exit} или {@code quit} завершает сеанс и закрывает соединение.
+ * Вопросы-подтверждения (например, в {@code import}) в сетевом сеансе считаются отклоненными.
+ *
+ * <p>Один поток с {@link Selector} принимает соединения, читает и пишет; команды выполняются в пуле
+ * рабочих потоков, по одной одновременно на соединение. Если у соединения накопилось больше {@link
+ * #MAX_PIPELINE} невыполненных команд, чтение из него приостанавливается до разбора очереди.
+ */
+public final class CommandServer implements AutoCloseable {
+  /** Предел очереди команд соединения, после которого сервер перестает читать из него. */
+  static final int MAX_PIPELINE = 256;
+
+  private static final int MAX_LINE = 64 * 1024;
+  // Сколько команд рабочий поток выполняет подряд для одного соединения, прежде чем уступить
+  private static final int COMMANDS_PER_TURN = 16;
+  private static final byte[] OK = ".OK\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] ERR = ".ERR\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final UserRegistry registry;
+  private final InetSocketAddress address;
+  private final ExecutorService workers;
+  // Соединения, которым нужно пересчитать интерес селектора (их меняют рабочие потоки)
+  private final Queue<Connection> updates = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger connections = new AtomicInteger();
+  private Selector selector;
+  private ServerSocketChannel serverChannel;
+  private Thread selectorThread;
+  private volatile boolean running;
+
+  public CommandServer(UserRegistry registry, InetSocketAddress address, int workers) {
+    if (workers <= 0) {
+      throw new IllegalArgumentException("Число рабочих потоков должно быть положительным");
+    }
+    this.registry = registry;
+    this.address = address;
+    AtomicInteger threads = new AtomicInteger();
+    this.workers =
+        Executors.newFixedThreadPool(
+            workers,
+            task -> {
+              Thread thread = new Thread(task, "finance-worker-" + threads.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Открывает порт и запускает поток селектора.
+   *
+   * @return номер порта (полезно, если в адресе указан порт 0)
+   */
+  public int start() {
+    try {
+      selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(address);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось открыть порт " + address.getPort(), e);
+    }
+    running = true;
+    selectorThread = new Thread(this::loop, "finance-selector");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+    return getPort();
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /** Число открытых соединений. */
+  public int getConnectionCount() {
+    return connections.get();
+  }
+
+  private void loop() {
+    try {
+      while (running) {
+        selector.select();
+        Connection updated;
+        while ((updated = updates.poll()) != null) {
+          updated.updateInterest();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.write();
+            }
+          } catch (IOException e) {
+            connection.close();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      if (running) {
+        System.err.println("Сервер остановлен из-за ошибки: " + e.getMessage());
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    connections.incrementAndGet();
+  }
+
+  private void requestUpdate(Connection connection) {
+    updates.add(connection);
+    selector.wakeup();
+  }
+
+  /** Закрывает порт и все соединения; сеансы соединений завершаются с сохранением данных. */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    selector.wakeup();
+    try {
+      selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+      for (SelectionKey key : new ArrayList<>(selector.keys())) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      serverChannel.close();
+      selector.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    workers.shutdown();
+    try {
+      workers.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Соединение: буфер чтения и сборки строк (только поток селектора), очередь команд и очередь
+   * ответов (под монитором соединения), сеанс (только рабочий поток, выполняющий команды).
+   */
+  private final class Connection {
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private final ByteBuffer input = ByteBuffer.allocate(8192);
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+    private final ArrayDeque<String> commands = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private boolean executing;
+    private boolean closeAfterWrite;
+    private boolean closed;
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream(1024);
+    private final FinanceManager financeManager;
+    private final CLIInterface cli;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      this.financeManager = new FinanceManager(registry);
+      this.cli =
+          new CLIInterface(
+              financeManager,
+              new Scanner(""),
+              new PrintStream(captured, false, StandardCharsets.UTF_8));
+    }
+
+    // Поток селектора
+    void read() throws IOException {
+      int read = channel.read(input);
+      if (read < 0) {
+        close();
+        return;
+      }
+      input.flip();
+      int received = 0;
+      while (input.hasRemaining()) {
+        byte b = input.get();
+        if (b == '\n') {
+          byte[] bytes = line.toByteArray();
+          int length = bytes.length;
+          if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+          }
+          line.reset();
+          enqueue(new String(bytes, 0, length, StandardCharsets.UTF_8));
+          received++;
+        } else if (line.size() < MAX_LINE) {
+          line.write(b);
+        } else {
+          input.clear();
+          respond("❌ Слишком длинная строка", false);
+          synchronized (this) {
+            closeAfterWrite = true;
+          }
+          updateInterest();
+          return;
+        }
+      }
+      input.clear();
+      if (received > 0) {
+        updateInterest();
+      }
+    }
+
+    private void enqueue(String command) {
+      synchronized (this) {
+        if (closeAfterWrite || closed) {
+          return;
+        }
+        commands.add(command);
+        if (executing) {
+          return;
+        }
+        executing = true;
+      }
+      workers.execute(this::drain);
+    }
+
+    // Рабочий поток: выполняет очередь команд по порядку
+    private void drain() {
+      for (int i = 0; i < COMMANDS_PER_TURN; i++) {
+        String command;
+        synchronized (this) {
+          if (closed) {
+            executing = false;
+            break;
+          }
+          command = commands.poll();
+          if (command == null) {
+            executing = false;
+            return;
+          }
+        }
+        // После каждого ответа селектор пересчитывает интерес, в том числе снова включает чтение
+        execute(command);
+      }
+      synchronized (this) {
+        if (closed) {
+          endSession();
+          return;
+        }
+      }
+      // Остаток очереди - следующим заданием, чтобы не задерживать другие соединения
+      workers.execute(this::drain);
+    }
+
+    private void execute(String command) {
+      String name = command.trim().toLowerCase();
+      if (name.equals("exit") || name.equals("quit")) {
+        endSession();
+        respond("👋 Сеанс завершен", true);
+        synchronized (this) {
+          closeAfterWrite = true;
+          commands.clear();
+        }
+        requestUpdate(this);
+        return;
+      }
+      captured.reset();
+      boolean ok = cli.execute(command);
+      respond(captured.toString(StandardCharsets.UTF_8), ok);
+      requestUpdate(this);
+    }
+
+    private void endSession() {
+      try {
+        financeManager.logout();
+      } catch (RuntimeException e) {
+        System.err.println("Не удалось завершить сеанс соединения: " + e.getMessage());
+      }
+    }
+
+    /** Кадрирует вывод команды: строки с экранированной точкой и терминатор. */
+    private void respond(String text, boolean ok) {
+      ByteArrayOutputStream frame = new ByteArrayOutputStream(text.length() + 16);
+      int start = 0;
+      int length = text.length();
+      if (length > 0 && text.charAt(length - 1) == '\n') {
+        length--;
+      }
+      while (length > 0 && start <= length) {
+        int end = text.indexOf('\n', start);
+        if (end < 0 || end > length) {
+          end = length;
+        }
+        if (end > start && text.charAt(start) == '.') {
+          frame.write('.');
+        }
+        frame.writeBytes(text.substring(start, end).getBytes(StandardCharsets.UTF_8));
+        frame.write('\n');
+        start = end + 1;
+      }
+      frame.writeBytes(ok ? OK : ERR);
+      synchronized (this) {
+        output.add(ByteBuffer.wrap(frame.toByteArray()));
+      }
+    }
+
+    // Поток селектора
+    void write() throws IOException {
+      synchronized (this) {
+        while (!output.isEmpty()) {
+          ByteBuffer buffer = output.peek();
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            return;
+          }
+          output.poll();
+        }
+      }
+      updateInterest();
+    }
+
+    // Поток селектора
+    void updateInterest() {
+      if (!key.isValid()) {
+        return;
+      }
+      int ops = 0;
+      synchronized (this) {
+        if (closeAfterWrite && output.isEmpty()) {
+          close();
+          return;
+        }
+        if (!closeAfterWrite && commands.size() < MAX_PIPELINE) {
+          ops |= SelectionKey.OP_READ;
+        }
+        if (!output.isEmpty()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+      }
+      key.interestOps(ops);
+    }
+
+    // Поток селектора (или остановка сервера)
+    void close() {
+      boolean end;
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        commands.clear();
+        output.clear();
+        // Если команды сейчас выполняются, сеанс завершит рабочий поток
+        end = !executing;
+        executing = true;
+      }
+      connections.decrementAndGet();
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+        // соединение уже разорвано
+      }
+      if (end) {
+        workers.execute(this::endSession);
+      }
+    }
+  }
+}
@@ -0,0 +1,537 @@
+package com.finance.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.finance.core.Budget;
+import com.finance.core.Income;
+import com.finance.core.Operation;
+import com.finance.core.Transfer;
+import com.finance.core.WalletSummary;
+import com.finance.exception.FinanceException;
+import com.finance.service.FinanceManager;
+import com.finance.service.Session;
+import com.finance.service.UserRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP API с JSON поверх {@link HttpServer} из JDK. Обработчики вызывают методы {@link
+ * FinanceManager}, возвращающие данные ({@link FinanceManager#readWallet}, {@link
+ * FinanceManager#getSummary}, {@link FinanceManager#getTransfers}), а не текстовые отчеты; ответы
+ * пишутся потоково через Jackson {@link JsonGenerator}, тела запросов читаются {@link JsonParser}.
+ *
+ * <p>Вход возвращает токен - идентификатор сеанса {@link UserRegistry}; остальные запросы передают
+ * его в заголовке {@code Authorization: Bearer <токен>}. Ошибки - JSON {@code {"error": "..."}} с
+ * кодом 400 (неверный запрос или ошибка операции), 401, 404 или 405.
+ *
+ * <p>Запросы выполняет пул фиксированного размера с ограниченной очередью. Когда очередь полна,
+ * запрос выполняет поток приема соединений, и прием новых запросов замедляется, пока пул не
+ * разгрузится. Соединения HTTP/1.1 остаются открытыми между запросами: у каждого ответа известна
+ * длина или он передается частями ({@link JsonResponse}).
+ */
+public final class HttpApiServer implements AutoCloseable {
+  private static final JsonFactory JSON = new JsonFactory();
+  private static final int MAX_BODY = 64 * 1024;
+  private static final String BEARER = "Bearer ";
+
+  private final UserRegistry registry;
+  private final HttpServer server;
+  private final ThreadPoolExecutor executor;
+  // Путь -> метод -> обработчик; один контекст HttpServer на путь
+  private final Map<String, Map<String, Endpoint>> routes = new HashMap<>();
+
+  /**
+   * @param threads рабочих потоков
+   * @param queueCapacity сколько принятых запросов может ждать свободного потока
+   */
+  public HttpApiServer(
+      UserRegistry registry, InetSocketAddress address, int threads, int queueCapacity) {
+    if (threads <= 0 || queueCapacity <= 0) {
+      throw new IllegalArgumentException("Размеры пула и очереди должны быть положительными");
+    }
+    this.registry = registry;
+    AtomicInteger created = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> {
+              Thread thread = new Thread(task, "finance-http-" + created.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      this.server = HttpServer.create(address, 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось открыть порт " + address.getPort(), e);
+    }
+    server.setExecutor(executor);
+
+    route("/api/register", "POST", this::register);
+    route("/api/login", "POST", this::login);
+    route("/api/logout", "POST", this::logout);
+    route("/api/balance", "GET", this::balance);
+    route("/api/income", "POST", request -> addOperation(request, true));
+    route("/api/expense", "POST", request -> addOperation(request, false));
+    route("/api/budgets", "GET", this::budgets);
+    route("/api/budgets", "POST", this::setBudget);
+    route("/api/budgets", "DELETE", this::removeBudget);
+    route("/api/stats", "GET", this::stats);
+    route("/api/transfers", "GET", this::transfers);
+    route("/api/transfers", "POST", this::transfer);
+    route("/api/export", "GET", this::export);
+  }
+
+  /**
+   * Запускает прием запросов.
+   *
+   * @return номер порта (полезно, если в адресе указан порт 0)
+   */
+  public int start() {
+    server.start();
+    return getPort();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdown();
+  }
+
+  @FunctionalInterface
+  private interface Endpoint {
+    void handle(Request request) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface Body {
+    void write(JsonGenerator json) throws IOException;
+  }
+
+  private void route(String path, String method, Endpoint endpoint) {
+    Map<String, Endpoint> methods = routes.get(path);
+    if (methods == null) {
+      methods = new HashMap<>();
+      routes.put(path, methods);
+      Map<String, Endpoint> byMethod = methods;
+      server.createContext(path, exchange -> dispatch(exchange, path, byMethod));
+    }
+    methods.put(method, endpoint);
+  }
+
+  private void dispatch(HttpExchange exchange, String path, Map<String, Endpoint> methods)
+      throws IOException {
+    try (exchange) {
+      Request request = new Request(exchange);
+      try {
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+          throw new HttpError(404, "Ресурс не найден");
+        }
+        Endpoint endpoint = methods.get(exchange.getRequestMethod());
+        if (endpoint == null) {
+          exchange.getResponseHeaders().set("Allow", String.join(", ", methods.keySet()));
+          throw new HttpError(405, "Метод не поддерживается");
+        }
+        endpoint.handle(request);
+      } catch (HttpError e) {
+        request.error(e.status, e.getMessage());
+      } catch (FinanceException | IllegalArgumentException e) {
+        request.error(400, e.getMessage());
+      } catch (RuntimeException e) {
+        request.error(500, "Внутренняя ошибка: " + e.getMessage());
+      }
+    }
+  }
+
+  private void register(Request request) throws IOException {
+    String login = request.field("login");
+    registry.register(login, request.field("password"));
+    request.respond(201, json -> json.writeStringField("login", login));
+  }
+
+  private void login(Request request) throws IOException {
+    FinanceManager manager = new FinanceManager(registry);
+    manager.login(request.field("login"), request.field("password"));
+    Session session = manager.getSession();
+    request.respond(
+        200,
+        json -> {
+          json.writeStringField("token", session.getId());
+          json.writeStringField("login", session.getLogin());
+          writeNotifications(json, manager);
+        });
+  }
+
+  private void logout(Request request) throws IOException {
+    request.manager().logout();
+    request.noContent();
+  }
+
+  private void balance(Request request) throws IOException {
+    double[] totals =
+        request
+            .manager()
+            .readWallet(
+                wallet ->
+                    new double[] {
+                      wallet.getBalance(), wallet.getTotalIncome(), wallet.getTotalExpense()
+                    });
+    request.respond(
+        200,
+        json -> {
+          json.writeNumberField("balance", totals[0]);
+          json.writeNumberField("totalIncome", totals[1]);
+          json.writeNumberField("totalExpense", totals[2]);
+        });
+  }
+
+  private void addOperation(Request request, boolean income) throws IOException {
+    FinanceManager manager = request.manager();
+    String category = request.field("category");
+    double amount = request.number("amount");
+    String description = request.optional("description", "");
+    if (income) {
+      manager.addIncome(category, amount, description);
+    } else {
+      manager.addExpense(category, amount, description);
+    }
+    double balance = manager.readWallet(wallet -> wallet.getBalance());
+    request.respond(
+        201,
+        json -> {
+          json.writeNumberField("balance", balance);
+          writeNotifications(json, manager);
+        });
+  }
+
+  private void budgets(Request request) throws IOException {
+    // Снимок под блокировкой кошелька: категория, лимит, потрачено
+    List<Object[]> rows =
+        request
+            .manager()
+            .readWallet(
+                wallet -> {
+                  List<Object[]> snapshot = new ArrayList<>(wallet.getBudgets().size());
+                  for (Budget budget : wallet.getBudgets().values()) {
+                    snapshot.add(
+                        new Object[] {
+                          budget.getCategory().getName(), budget.getLimit(), budget.getSpent()
+                        });
+                  }
+                  return snapshot;
+                });
+    request.respondArray(
+        200,
+        json -> {
+          for (Object[] row : rows) {
+            double limit = (Double) row[1];
+            double spent = (Double) row[2];
+            json.writeStartObject();
+            json.writeStringField("category", (String) row[0]);
+            json.writeNumberField("limit", limit);
+            json.writeNumberField("spent", spent);
+            json.writeNumberField("remaining", limit - spent);
+            json.writeBooleanField("exceeded", spent > limit);
+            json.writeEndObject();
+          }
+        });
+  }
+
+  private void setBudget(Request request) throws IOException {
+    FinanceManager manager = request.manager();
+    manager.setBudget(request.field("category"), request.number("limit"));
+    request.respond(200, json -> writeNotifications(json, manager));
+  }
+
+  private void removeBudget(Request request) throws IOException {
+    request.manager().removeBudget(request.query("category"));
+    request.noContent();
+  }
+
+  private void stats(Request request) throws IOException {
+    FinanceManager manager = request.manager();
+    String from = request.queryOrNull("from");
+    String to = request.queryOrNull("to");
+    LocalDate startDate = from != null ? manager.parseDate(from) : null;
+    LocalDate endDate = to != null ? manager.parseDate(to) : null;
+    WalletSummary summary = manager.getSummary(startDate, endDate);
+    request.respond(
+        200,
+        json -> {
+          if (startDate != null) {
+            json.writeStringField("from", startDate.toString());
+          }
+          if (endDate != null) {
+            json.writeStringField("to", endDate.toString());
+          }
+          json.writeNumberField("totalIncome", summary.getTotalIncome());
+          json.writeNumberField("totalExpense", summary.getTotalExpense());
+          json.writeNumberField("incomeCount", summary.getIncomeCount());
+          json.writeNumberField("expenseCount", summary.getExpenseCount());
+          writeAmounts(json, "income", summary.getIncomeByCategories());
+          writeAmounts(json, "expense", summary.getExpenseByCategories());
+        });
+  }
+
+  private void transfer(Request request) throws IOException {
+    FinanceManager manager = request.manager();
+    Transfer transfer =
+        manager.transfer(
+            request.field("to"),
+            request.number("amount"),
+            request.optional("description", ""),
+            request.optional("key", null));
+    request.respond(
+        201,
+        json -> {
+          writeTransferFields(json, transfer);
+          writeNotifications(json, manager);
+        });
+  }
+
+  private void transfers(Request request) throws IOException {
+    List<Transfer> transfers = request.manager().getTransfers(request.queryOrNull("with"));
+    request.respondArray(
+        200,
+        json -> {
+          for (Transfer transfer : transfers) {
+            json.writeStartObject();
+            writeTransferFields(json, transfer);
+            json.writeEndObject();
+          }
+        });
+  }
+
+  private void export(Request request) throws IOException {
+    FinanceManager manager = request.manager();
+    String login = manager.getCurrentUser().getLogin();
+    // Операции и баланс - один снимок под блокировкой, ответ пишется уже без нее
+    Object[] snapshot =
+        manager.readWallet(
+            wallet ->
+                new Object[] {new ArrayList<>(wallet.getAllOperations()), wallet.getBalance()});
+    @SuppressWarnings("unchecked")
+    List<Operation> operations = (List<Operation>) snapshot[0];
+    double balance = (Double) snapshot[1];
+    request.respond(
+        200,
+        json -> {
+          json.writeStringField("login", login);
+          json.writeNumberField("balance", balance);
+          json.writeArrayFieldStart("operations");
+          for (Operation op : operations) {
+            json.writeStartObject();
+            json.writeNumberField("id", op.getId());
+            json.writeStringField("type", op instanceof Income ? "income" : "expense");
+            json.writeStringField("category", op.getCategory().getName());
+            json.writeNumberField("amount", op.getAmount());
+            json.writeStringField("description", op.getDescription());
+            json.writeStringField("dateTime", op.getDateTime().toString());
+            json.writeEndObject();
+          }
+          json.writeEndArray();
+        });
+  }
+
+  private static void writeTransferFields(JsonGenerator json, Transfer transfer)
+      throws IOException {
+    json.writeNumberField("id", transfer.getId());
+    json.writeStringField("from", transfer.getFromUser());
+    json.writeStringField("to", transfer.getToUser());
+    json.writeNumberField("amount", transfer.getAmount());
+    json.writeStringField("description", transfer.getDescription());
+    json.writeStringField("dateTime", transfer.getDateTime().toString());
+    if (transfer.getIdempotencyKey() != null) {
+      json.writeStringField("key", transfer.getIdempotencyKey());
+    }
+  }
+
+  private static void writeAmounts(JsonGenerator json, String name, Map<String, Double> amounts)
+      throws IOException {
+    json.writeObjectFieldStart(name);
+    for (Map.Entry<String, Double> entry : amounts.entrySet()) {
+      json.writeNumberField(entry.getKey(), entry.getValue());
+    }
+    json.writeEndObject();
+  }
+
+  private static void writeNotifications(JsonGenerator json, FinanceManager manager)
+      throws IOException {
+    List<String> notifications = manager.getAndClearNotifications();
+    json.writeArrayFieldStart("notifications");
+    for (String notification : notifications) {
+      json.writeString(notification);
+    }
+    json.writeEndArray();
+  }
+
+  private static final class HttpError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    HttpError(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  private final class Request {
+    private final HttpExchange exchange;
+    private Map<String, String> fields;
+    private Map<String, String> query;
+    private FinanceManager manager;
+
+    Request(HttpExchange exchange) {
+      this.exchange = exchange;
+    }
+
+    /** Менеджер сеанса из токена запроса. */
+    FinanceManager manager() {
+      if (manager == null) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        Session session =
+            header != null && header.startsWith(BEARER)
+                ? registry.findSession(header.substring(BEARER.length()).trim())
+                : null;
+        if (session == null || !session.isOpen()) {
+          throw new HttpError(401, "Требуется авторизация");
+        }
+        manager = new FinanceManager(registry, session);
+      }
+      return manager;
+    }
+
+    String field(String name) {
+      String value = fields().get(name);
+      if (value == null || value.isBlank()) {
+        throw new HttpError(400, "Не указано поле " + name);
+      }
+      return value;
+    }
+
+    String optional(String name, String defaultValue) {
+      return fields().getOrDefault(name, defaultValue);
+    }
+
+    double number(String name) {
+      try {
+        return Double.parseDouble(field(name));
+      } catch (NumberFormatException e) {
+        throw new HttpError(400, "Поле " + name + " должно быть числом");
+      }
+    }
+
+    String query(String name) {
+      String value = queryOrNull(name);
+      if (value == null || value.isBlank()) {
+        throw new HttpError(400, "Не указан параметр " + name);
+      }
+      return value;
+    }
+
+    String queryOrNull(String name) {
+      if (query == null) {
+        query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+          for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(
+                URLDecoder.decode(key, StandardCharsets.UTF_8),
+                URLDecoder.decode(value, StandardCharsets.UTF_8));
+          }
+        }
+      }
+      return query.get(name);
+    }
+
+    /** Поля тела запроса: плоский JSON-объект, значения читаются как строки. */
+    private Map<String, String> fields() {
+      if (fields != null) {
+        return fields;
+      }
+      fields = new HashMap<>();
+      try (InputStream body = exchange.getRequestBody()) {
+        byte[] bytes = body.readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) {
+          throw new HttpError(400, "Слишком большое тело запроса");
+        }
+        if (bytes.length == 0) {
+          return fields;
+        }
+        try (JsonParser parser = JSON.createParser(bytes)) {
+          if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new HttpError(400, "Тело запроса должно быть JSON-объектом");
+          }
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+              throw new HttpError(400, "Поле " + name + " должно быть строкой или числом");
+            }
+            fields.put(name, value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+          }
+        }
+      } catch (JsonProcessingException e) {
+        throw new HttpError(400, "Неверный JSON: " + e.getOriginalMessage());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return fields;
+    }
+
+    void respond(int status, Body body) throws IOException {
+      try (JsonGenerator json = JSON.createGenerator(new JsonResponse(exchange, status))) {
+        json.writeStartObject();
+        body.write(json);
+        json.writeEndObject();
+      }
+    }
+
+    void respondArray(int status, Body body) throws IOException {
+      try (JsonGenerator json = JSON.createGenerator(new JsonResponse(exchange, status))) {
+        json.writeStartArray();
+        body.write(json);
+        json.writeEndArray();
+      }
+    }
+
+    void noContent() throws IOException {
+      exchange.sendResponseHeaders(204, -1);
+    }
+
+    void error(int status, String message) throws IOException {
+      respond(status, json -> json.writeStringField("error", message));
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.finance.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Нагрузка на {@link HttpApiServer} для подбора размера пула и очереди: несколько клиентов с общим
+ * {@link HttpClient} (соединения переиспользуются), каждый входит под своим пользователем и
+ * выполняет запросы последовательно. Каждый десятый запрос - расход, остальные - баланс. Итоги - в
+ * том же виде, что у {@link LoadGenerator}.
+ *
+ * <p>Запуск: {@code HttpBenchmark [адрес] [клиентов] [запросов на клиента]}, адрес вида {@code
+ * http://localhost:8080}.
+ */
+public final class HttpBenchmark {
+  private static final String PASSWORD = "load-password";
+  private static final int WRITE_EVERY = 10;
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private HttpBenchmark() {}
+
+  public static void main(String[] args) {
+    String base = args.length > 0 ? args[0] : "http://localhost:8080";
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    System.out.println(run(base, clients, requests));
+  }
+
+  /** Выполняет прогон и возвращает его итоги; сетевые ошибки пробрасываются. */
+  public static LoadGenerator.Report run(String base, int clients, int requests) {
+    if (clients <= 0 || requests <= 0) {
+      throw new IllegalArgumentException("Параметры нагрузки должны быть положительными");
+    }
+    HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    String prefix = "http" + Long.toString(System.nanoTime() % 1_000_000, 36) + "_";
+    ExecutorService threads = Executors.newFixedThreadPool(clients);
+    try {
+      List<Future<long[]>> futures = new ArrayList<>(clients);
+      long started = System.nanoTime();
+      for (int c = 0; c < clients; c++) {
+        String login = prefix + c;
+        futures.add(threads.submit(() -> runClient(http, URI.create(base), login, requests)));
+      }
+      long[] latencies = new long[clients * requests];
+      int errors = 0;
+      int offset = 0;
+      for (Future<long[]> future : futures) {
+        long[] result = future.get();
+        System.arraycopy(result, 0, latencies, offset, requests);
+        offset += requests;
+        errors += (int) result[requests];
+      }
+      return new LoadGenerator.Report(latencies, errors, System.nanoTime() - started);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw new UncheckedIOException((IOException) cause);
+      }
+      throw new IllegalStateException("Клиент нагрузки завершился ошибкой", cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Прогон прерван", e);
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  // Задержки запросов и последним элементом - число ответов с ошибкой
+  private static long[] runClient(HttpClient http, URI base, String login, int requests)
+      throws IOException, InterruptedException {
+    String credentials = "{\"login\":\"" + login + "\",\"password\":\"" + PASSWORD + "\"}";
+    send(http, post(base, "/api/register", null, credentials));
+    HttpResponse<String> loggedIn = send(http, post(base, "/api/login", null, credentials));
+    if (loggedIn.statusCode() != 200) {
+      throw new IllegalStateException("Не удалось войти: " + loggedIn.body());
+    }
+    String token = token(loggedIn.body());
+    HttpResponse<String> funded =
+        send(
+            http,
+            post(
+                base,
+                "/api/income",
+                token,
+                "{\"category\":\"Зарплата\",\"amount\":1000000,\"description\":\"нагрузка\"}"));
+    if (funded.statusCode() != 201) {
+      throw new IllegalStateException("Не удалось пополнить баланс: " + funded.body());
+    }
+
+    HttpRequest balance =
+        HttpRequest.newBuilder(base.resolve("/api/balance"))
+            .header("Authorization", "Bearer " + token)
+            .GET()
+            .build();
+    HttpRequest expense =
+        post(
+            base,
+            "/api/expense",
+            token,
+            "{\"category\":\"Еда\",\"amount\":1,\"description\":\"нагрузка\"}");
+    long[] result = new long[requests + 1];
+    for (int i = 0; i < requests; i++) {
+      long started = System.nanoTime();
+      HttpResponse<String> response = send(http, i % WRITE_EVERY == 0 ? expense : balance);
+      result[i] = System.nanoTime() - started;
+      if (response.statusCode() >= 400) {
+        result[requests]++;
+      }
+    }
+    return result;
+  }
+
+  private static HttpRequest post(URI base, String path, String token, String json) {
+    HttpRequest.Builder request =
+        HttpRequest.newBuilder(base.resolve(path))
+            .header("Content-Type", "application/json; charset=utf-8")
+            .POST(HttpRequest.BodyPublishers.ofString(json));
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+    return request.build();
+  }
+
+  private static HttpResponse<String> send(HttpClient http, HttpRequest request)
+      throws IOException, InterruptedException {
+    return http.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static String token(String body) throws IOException {
+    try (JsonParser parser = JSON.createParser(body)) {
+      while (parser.nextToken() != null) {
+        if (parser.currentToken() == JsonToken.FIELD_NAME
+            && "token".equals(parser.getCurrentName())) {
+          parser.nextToken();
+          return parser.getText();
+        }
+      }
+    }
+    throw new IllegalStateException("В ответе входа нет токена");
+  }
+}
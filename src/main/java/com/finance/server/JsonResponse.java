@@ -0,0 +1,91 @@
+package com.finance.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Тело ответа {@link HttpApiServer}. Небольшой ответ копится в буфере и отправляется с точной
+ * длиной; если он перерастает {@link #BUFFERED_LIMIT}, заголовки отправляются сразу и дальше тело
+ * передается частями (chunked) по мере записи. В обоих случаях соединение остается открытым для
+ * следующих запросов.
+ */
+final class JsonResponse extends OutputStream {
+  static final int BUFFERED_LIMIT = 16 * 1024;
+
+  private final HttpExchange exchange;
+  private final int status;
+  private byte[] buffer = new byte[512];
+  private int size;
+  private OutputStream streaming;
+  private boolean closed;
+
+  JsonResponse(HttpExchange exchange, int status) {
+    this.exchange = exchange;
+    this.status = status;
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (streaming == null && size == buffer.length && size < BUFFERED_LIMIT) {
+      buffer = Arrays.copyOf(buffer, Math.min(size * 2, BUFFERED_LIMIT));
+    }
+    if (streaming == null && size < buffer.length) {
+      buffer[size++] = (byte) b;
+      return;
+    }
+    startStreaming();
+    streaming.write(b);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    if (streaming == null && size + length <= BUFFERED_LIMIT) {
+      if (size + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.min(Math.max(size * 2, size + length), BUFFERED_LIMIT));
+      }
+      System.arraycopy(bytes, offset, buffer, size, length);
+      size += length;
+      return;
+    }
+    startStreaming();
+    streaming.write(bytes, offset, length);
+  }
+
+  private void startStreaming() throws IOException {
+    if (streaming != null) {
+      return;
+    }
+    exchange.sendResponseHeaders(status, 0);
+    streaming = exchange.getResponseBody();
+    streaming.write(buffer, 0, size);
+    buffer = null;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // До перехода на передачу частями сбрасывать нечего: длина ответа еще неизвестна
+    if (streaming != null) {
+      streaming.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (streaming != null) {
+      streaming.close();
+      return;
+    }
+    exchange.sendResponseHeaders(status, size == 0 ? -1 : size);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(buffer, 0, size);
+    }
+  }
+}
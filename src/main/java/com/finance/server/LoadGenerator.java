@@ -0,0 +1,218 @@
+package com.finance.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Генератор нагрузки для {@link CommandServer}: несколько соединений, каждое входит под своим
+ * пользователем и отправляет команды с заданной глубиной конвейера (сколько команд может ждать
+ * ответа одновременно). Каждая десятая команда - расход, остальные - запрос баланса. Задержка
+ * команды - время от отправки до терминатора ее ответа.
+ *
+ * <p>Запуск: {@code LoadGenerator [хост] [порт] [соединений] [команд на соединение] [конвейер]}.
+ */
+public final class LoadGenerator {
+  private static final String PASSWORD = "load-password";
+  private static final int WRITE_EVERY = 10;
+
+  private LoadGenerator() {}
+
+  public static void main(String[] args) {
+    String host = args.length > 0 ? args[0] : "localhost";
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+    int connections = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    int commands = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+    int pipeline = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+    System.out.println(run(host, port, connections, commands, pipeline));
+  }
+
+  /** Выполняет прогон и возвращает его итоги; ошибки соединений пробрасываются. */
+  public static Report run(String host, int port, int connections, int commands, int pipeline) {
+    if (connections <= 0 || commands <= 0 || pipeline <= 0) {
+      throw new IllegalArgumentException("Параметры нагрузки должны быть положительными");
+    }
+    String prefix = "load" + Long.toString(System.nanoTime() % 1_000_000, 36) + "_";
+    ExecutorService threads = Executors.newFixedThreadPool(connections);
+    try {
+      List<Future<Client>> futures = new ArrayList<>(connections);
+      long started = System.nanoTime();
+      for (int c = 0; c < connections; c++) {
+        Client client = new Client(prefix + c, commands, pipeline);
+        futures.add(
+            threads.submit(
+                () -> {
+                  client.run(host, port);
+                  return client;
+                }));
+      }
+      long[] latencies = new long[connections * commands];
+      int errors = 0;
+      int offset = 0;
+      for (Future<Client> future : futures) {
+        Client client = future.get();
+        System.arraycopy(client.latencies, 0, latencies, offset, commands);
+        offset += commands;
+        errors += client.errors;
+      }
+      return new Report(latencies, errors, System.nanoTime() - started);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw new UncheckedIOException((IOException) cause);
+      }
+      throw new IllegalStateException("Соединение нагрузки завершилось ошибкой", cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Прогон прерван", e);
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  private static final class Client {
+    private final String login;
+    private final int commands;
+    private final int pipeline;
+    private final long[] latencies;
+    private int errors;
+
+    Client(String login, int commands, int pipeline) {
+      this.login = login;
+      this.commands = commands;
+      this.pipeline = pipeline;
+      this.latencies = new long[commands];
+    }
+
+    void run(String host, int port) throws IOException {
+      try (Socket socket = new Socket(host, port)) {
+        socket.setTcpNoDelay(true);
+        Writer out =
+            new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+        out.write("register " + login + " " + PASSWORD + "\n");
+        out.write("login " + login + " " + PASSWORD + "\n");
+        out.write("add_income Зарплата 1000000 нагрузка\n");
+        out.flush();
+        // Пользователь мог остаться от прошлого прогона: ошибка регистрации не важна
+        readResponse(in);
+        for (int i = 0; i < 2; i++) {
+          if (!readResponse(in)) {
+            throw new IllegalStateException("Не удалось подготовить пользователя " + login);
+          }
+        }
+
+        // Времена отправки команд, ожидающих ответа: кольцо на глубину конвейера
+        long[] sentAt = new long[pipeline];
+        int sent = 0;
+        int completed = 0;
+        while (completed < commands) {
+          if (sent < commands && sent - completed < pipeline) {
+            while (sent < commands && sent - completed < pipeline) {
+              out.write(sent % WRITE_EVERY == 0 ? "add_expense Еда 1 нагрузка\n" : "balance\n");
+              sentAt[sent % pipeline] = System.nanoTime();
+              sent++;
+            }
+            out.flush();
+          }
+          boolean ok = readResponse(in);
+          latencies[completed] = System.nanoTime() - sentAt[completed % pipeline];
+          if (!ok) {
+            errors++;
+          }
+          completed++;
+        }
+
+        out.write("exit\n");
+        out.flush();
+        readResponse(in);
+      }
+    }
+
+    /** Читает ответ до терминатора; false - команда завершилась ошибкой. */
+    private static boolean readResponse(BufferedReader in) throws IOException {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.equals(".OK")) {
+          return true;
+        }
+        if (line.equals(".ERR")) {
+          return false;
+        }
+      }
+      throw new IOException("Сервер закрыл соединение");
+    }
+  }
+
+  /** Итоги прогона: пропускная способность и перцентили задержки. */
+  public static final class Report {
+    private final long[] latencies;
+    private final int errors;
+    private final long elapsedNanos;
+
+    Report(long[] latencies, int errors, long elapsedNanos) {
+      this.latencies = latencies;
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+      Arrays.sort(latencies);
+    }
+
+    public int getCommands() {
+      return latencies.length;
+    }
+
+    /** Число команд, ответ на которые завершился {@code .ERR}. */
+    public int getErrors() {
+      return errors;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /** Команд в секунду по всем соединениям. */
+    public double getThroughput() {
+      return latencies.length * 1e9 / elapsedNanos;
+    }
+
+    /** Задержка уровня {@code q} (0..1) в микросекундах. */
+    public double getLatencyMicros(double q) {
+      int index = (int) Math.min(latencies.length - 1, Math.ceil(q * latencies.length) - 1);
+      return latencies[Math.max(index, 0)] / 1e3;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "Команд: %d (ошибок: %d) за %.2f с, %.0f команд/с%n"
+              + "Задержка, мкс: p50 %.0f, p90 %.0f, p99 %.0f, макс %.0f",
+          getCommands(),
+          errors,
+          elapsedNanos / 1e9,
+          getThroughput(),
+          getLatencyMicros(0.5),
+          getLatencyMicros(0.9),
+          getLatencyMicros(0.99),
+          getLatencyMicros(1.0));
+    }
+  }
+}
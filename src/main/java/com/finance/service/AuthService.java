@@ -11,6 +11,10 @@ public class AuthService {
     if (login.length() < 3) {
       return false;
     }
+    // Логин - имя каталога архива пользователя, поэтому не может содержать путь
+    if (login.contains("/") || login.contains("\\") || login.contains("..")) {
+      return false;
+    }
     if (password.length() < 4) {
       return false;
     }
@@ -1,8 +1,11 @@
 package com.finance.service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -14,7 +17,12 @@ import com.finance.core.*;
 public class DataStorage {
   private static final String DATA_FILE = "users_data.dat";
   private static final String EXPORT_DIR = "exports/";
+  private static final String ARCHIVE_DIR = "archive/";
+  private static final String TRANSFER_LOG = "transfers.log";
+  private static final String SETTLEMENT_LOG = "settlements.log";
   private final ObjectMapper objectMapper;
+  private TransferLedger transferLedger;
+  private SettlementLog settlementLog;
 
   public DataStorage() {
     new File(EXPORT_DIR).mkdirs();
@@ -24,9 +32,20 @@ public class DataStorage {
     this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
   }
 
-  public void saveUsers(Map<String, User> users) {
-    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-      oos.writeObject(users);
+  // 🔧 Снимок пишется во временный файл и заменяет старый целиком: прерванное сохранение
+  // не портит данные, а одновременные сохранения из разных сеансов идут по очереди
+  public synchronized void saveUsers(Map<String, User> users) {
+    Path temp = Paths.get(DATA_FILE + ".tmp");
+    try {
+      try (ObjectOutputStream oos =
+          new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        oos.writeObject(users);
+      }
+      Files.move(
+          temp,
+          Paths.get(DATA_FILE),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
     } catch (Exception e) {
       System.out.println("Ошибка при сохранении данных: " + e.getMessage());
     }
@@ -63,7 +82,7 @@ public class DataStorage {
     try {
       String fullPath = prepareFilePath(filename, ".dat");
       try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fullPath))) {
-        oos.writeObject(wallet);
+        oos.writeObject(selfContained(wallet));
       }
       System.out.println("Данные экспортированы в бинарный файл: " + fullPath);
     } catch (Exception e) {
@@ -71,6 +90,222 @@ public class DataStorage {
     }
   }
 
+  /** Журнал переводов между пользователями; открывается при первом обращении. */
+  public synchronized TransferLedger getTransferLedger() {
+    if (transferLedger == null) {
+      transferLedger = TransferLedger.open(Paths.get(TRANSFER_LOG));
+    }
+    return transferLedger;
+  }
+
+  /** Журнал отложенных переводов и взаимозачетов; открывается при первом обращении. */
+  public synchronized SettlementLog getSettlementLog() {
+    if (settlementLog == null) {
+      settlementLog = SettlementLog.open(Paths.get(SETTLEMENT_LOG));
+    }
+    return settlementLog;
+  }
+
+  /** Есть ли журнал переводов: открыт в этом запуске или остался от прошлого. */
+  public synchronized boolean hasTransferLedger() {
+    return transferLedger != null || Files.exists(Paths.get(TRANSFER_LOG));
+  }
+
+  /** Есть ли журнал взаимозачетов с прошлых запусков. */
+  public boolean hasSettlementLog() {
+    return Files.exists(Paths.get(SETTLEMENT_LOG));
+  }
+
+  /**
+   * Читает части пакетного перевода из CSV: получатель, сумма, описание, ключ повтора (последние
+   * два столбца необязательны). Строка заголовка пропускается; поля с запятыми заключаются в
+   * кавычки.
+   *
+   * @throws IllegalArgumentException с номером строки, если строка не разбирается
+   */
+  public List<TransferLeg> readTransferLegs(String filename) throws IOException {
+    String fullPath = findFile(filename, ".csv");
+    List<TransferLeg> legs = new ArrayList<>();
+    try (BufferedReader reader =
+        Files.newBufferedReader(Paths.get(fullPath), StandardCharsets.UTF_8)) {
+      String line;
+      int number = 0;
+      while ((line = reader.readLine()) != null) {
+        number++;
+        if (line.isBlank()) {
+          continue;
+        }
+        List<String> fields = parseCsvLine(line);
+        if (fields.size() < 2) {
+          throw new IllegalArgumentException(
+              "Строка " + number + ": нужны получатель и сумма через запятую");
+        }
+        double amount;
+        try {
+          amount = Double.parseDouble(fields.get(1).trim());
+        } catch (NumberFormatException e) {
+          if (number == 1) {
+            continue; // заголовок
+          }
+          throw new IllegalArgumentException(
+              "Строка " + number + ": неверная сумма " + fields.get(1));
+        }
+        try {
+          legs.add(
+              new TransferLeg(
+                  fields.get(0),
+                  amount,
+                  fields.size() > 2 ? fields.get(2).trim() : "",
+                  fields.size() > 3 ? fields.get(3).trim() : null));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("Строка " + number + ": " + e.getMessage());
+        }
+      }
+    }
+    return legs;
+  }
+
+  /**
+   * Операции из CSV в формате {@link #exportToCSV}: тип (Доход/Расход), категория, сумма, дата,
+   * описание. Поля с запятыми, кавычками или переводами строк заключаются в кавычки (RFC 4180).
+   * Категории операций - заготовки по имени, их нужно заменить категориями кошелька.
+   */
+  public List<Operation> readOperationsCSV(String filename) throws IOException {
+    String fullPath = findFile(filename, ".csv");
+    List<Operation> operations = new ArrayList<>();
+    try (BufferedReader reader =
+        Files.newBufferedReader(Paths.get(fullPath), StandardCharsets.UTF_8)) {
+      String line;
+      int number = 0;
+      while ((line = reader.readLine()) != null) {
+        number++;
+        if (line.isBlank()) {
+          continue;
+        }
+        int first = number;
+        String next;
+        while (hasOpenQuote(line) && (next = reader.readLine()) != null) {
+          number++;
+          line = line + "\n" + next;
+        }
+        List<String> fields = parseCsvLine(line);
+        String type = fields.get(0).trim();
+        boolean income = "Доход".equalsIgnoreCase(type) || "INCOME".equalsIgnoreCase(type);
+        if (!income && !"Расход".equalsIgnoreCase(type) && !"EXPENSE".equalsIgnoreCase(type)) {
+          if (first == 1) {
+            continue; // заголовок
+          }
+          throw new IllegalArgumentException("Строка " + first + ": неизвестный тип " + type);
+        }
+        if (fields.size() < 4) {
+          throw new IllegalArgumentException(
+              "Строка " + first + ": нужны тип, категория, сумма и дата через запятую");
+        }
+        operations.add(parseOperationFields(fields, income, first));
+      }
+    }
+    return operations;
+  }
+
+  private static Operation parseOperationFields(List<String> fields, boolean income, int number) {
+    if (fields.size() > 5) {
+      throw new IllegalArgumentException(
+          "Строка " + number + ": лишние поля, описание с запятыми нужно заключить в кавычки");
+    }
+    try {
+      double amount = Double.parseDouble(fields.get(2).trim());
+      LocalDateTime dateTime = LocalDateTime.parse(fields.get(3).trim());
+      String description = fields.size() > 4 ? fields.get(4) : "";
+      Category category = new Category(fields.get(1).trim(), "");
+      return income
+          ? new Income(amount, category, description, dateTime)
+          : new Expense(amount, category, description, dateTime);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Строка " + number + ": " + e.getMessage());
+    }
+  }
+
+  // Незакрытая кавычка: поле продолжается на следующей строке файла
+  private static boolean hasOpenQuote(String line) {
+    return line.chars().filter(c -> c == '"').count() % 2 != 0;
+  }
+
+  // Поле по RFC 4180: в кавычках, если содержит запятую, кавычку или перевод строки
+  private static String csvField(String value) {
+    if (value == null) {
+      return "";
+    }
+    if (value.indexOf(',') < 0
+        && value.indexOf('"') < 0
+        && value.indexOf('\n') < 0
+        && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  // Поля через запятую; поле в кавычках может содержать запятые, "" внутри - кавычка
+  private static List<String> parseCsvLine(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  /**
+   * Каталог сегментов архива операций пользователя.
+   *
+   * @throws IllegalArgumentException если логин выводит путь за пределы каталога архива
+   */
+  public Path archiveDirectory(String login) {
+    Path root = Paths.get(ARCHIVE_DIR).toAbsolutePath().normalize();
+    Path directory = root.resolve(login).normalize();
+    if (!directory.startsWith(root) || directory.equals(root)) {
+      throw new IllegalArgumentException("Недопустимый логин для каталога архива: " + login);
+    }
+    // Путь относительно рабочего каталога, как и остальные файлы данных
+    return Paths.get(ARCHIVE_DIR).resolve(login).normalize();
+  }
+
+  // Копия кошелька с архивными операциями внутри: выгрузка не ссылается на каталог архива
+  // владельца, поэтому импорт другим пользователем не читает и не перезаписывает чужие сегменты
+  private static Wallet selfContained(Wallet wallet) throws IOException, ClassNotFoundException {
+    if (wallet.getArchive() == null) {
+      return wallet;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      oos.writeObject(wallet);
+    }
+    try (ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Wallet copy = (Wallet) ois.readObject();
+      copy.inlineArchive();
+      return copy;
+    }
+  }
+
   public Wallet importWallet(String filename) {
     try {
       String fullPath = findFile(filename, ".dat");
@@ -94,18 +329,19 @@ public class DataStorage {
       String fullPath = prepareFilePath(filename, ".csv");
       StringBuilder csv = new StringBuilder();
       csv.append("Тип,Категория,Сумма,Дата,Описание\n");
-      for (Operation op : wallet.getOperations()) {
+      for (Operation op : wallet.getAllOperations()) {
         String type = op instanceof Income ? "Доход" : "Расход";
         csv.append(
             String.format(
+                Locale.ROOT,
                 "%s,%s,%.2f,%s,%s\n",
                 type,
-                op.getCategory().getName(),
+                csvField(op.getCategory().getName()),
                 op.getAmount(),
                 op.getDateTime(),
-                op.getDescription()));
+                csvField(op.getDescription())));
       }
-      Files.write(Paths.get(fullPath), csv.toString().getBytes());
+      Files.write(Paths.get(fullPath), csv.toString().getBytes(StandardCharsets.UTF_8));
       System.out.println("Данные экспортированы в CSV: " + fullPath);
     } catch (Exception e) {
       throw new RuntimeException("Ошибка при экспорте в CSV: " + e.getMessage(), e);
@@ -120,14 +356,15 @@ public class DataStorage {
       for (Budget budget : wallet.getBudgets().values()) {
         csv.append(
             String.format(
+                Locale.ROOT,
                 "%s,%.2f,%.2f,%.2f,%.1f%%\n",
-                budget.getCategory().getName(),
+                csvField(budget.getCategory().getName()),
                 budget.getLimit(),
                 budget.getSpent(),
                 budget.getRemaining(),
                 budget.getUsagePercentage()));
       }
-      Files.write(Paths.get(fullPath), csv.toString().getBytes());
+      Files.write(Paths.get(fullPath), csv.toString().getBytes(StandardCharsets.UTF_8));
       System.out.println("Бюджеты экспортированы в CSV: " + fullPath);
     } catch (Exception e) {
       throw new RuntimeException("Ошибка при экспорте бюджетов: " + e.getMessage(), e);
@@ -142,13 +379,16 @@ public class DataStorage {
       jsonData.put("totalIncome", wallet.getTotalIncome());
       jsonData.put("totalExpense", wallet.getTotalExpense());
       List<Map<String, Object>> operationsList = new ArrayList<>();
-      for (Operation op : wallet.getOperations()) {
+      for (Operation op : wallet.getAllOperations()) {
         Map<String, Object> opMap = new HashMap<>();
         opMap.put("type", op instanceof Income ? "INCOME" : "EXPENSE");
         opMap.put("category", op.getCategory().getName());
         opMap.put("amount", op.getAmount());
         opMap.put("dateTime", op.getDateTime().toString());
         opMap.put("description", op.getDescription());
+        if (op.getSourceId() != null) {
+          opMap.put("sourceId", op.getSourceId());
+        }
         operationsList.add(opMap);
       }
       jsonData.put("operations", operationsList);
@@ -172,6 +412,21 @@ public class DataStorage {
         budgetsList.add(budgetMap);
       }
       jsonData.put("budgets", budgetsList);
+      List<Map<String, Object>> rulesList = new ArrayList<>();
+      for (AlertRule rule : wallet.getAlertRules().getRules()) {
+        Map<String, Object> ruleMap = new HashMap<>();
+        ruleMap.put("metric", rule.getMetric().name());
+        ruleMap.put("condition", rule.getCondition().name());
+        ruleMap.put("threshold", rule.getThreshold());
+        if (rule.getCeiling() != Double.POSITIVE_INFINITY) {
+          ruleMap.put("ceiling", rule.getCeiling());
+        }
+        ruleMap.put("category", rule.getCategory());
+        ruleMap.put("message", rule.getMessage());
+        ruleMap.put("severity", rule.getSeverity().name());
+        rulesList.add(ruleMap);
+      }
+      jsonData.put("alertRules", rulesList);
       objectMapper.writeValue(new File(fullPath), jsonData);
       System.out.println("Данные экспортированы в JSON: " + fullPath);
     } catch (Exception e) {
@@ -179,6 +434,80 @@ public class DataStorage {
     }
   }
 
+  // Строки - категория и тип, столбцы - периоды и итог
+  public void exportPivotToCSV(CategoryPivot pivot, String filename) {
+    try {
+      String fullPath = prepareFilePath(filename, ".csv");
+      StringBuilder csv = new StringBuilder();
+      csv.append("Категория,Тип");
+      for (int p = 0; p < pivot.getPeriods().size(); p++) {
+        csv.append(',').append(pivot.getPeriodLabel(p));
+      }
+      csv.append(",Итого\n");
+      for (int c = 0; c < pivot.getCategories().size(); c++) {
+        appendPivotRow(csv, pivot, c, true);
+        appendPivotRow(csv, pivot, c, false);
+      }
+      Files.write(Paths.get(fullPath), csv.toString().getBytes(StandardCharsets.UTF_8));
+      System.out.println("Сводная таблица экспортирована в CSV: " + fullPath);
+    } catch (Exception e) {
+      throw new RuntimeException("Ошибка при экспорте сводной таблицы: " + e.getMessage(), e);
+    }
+  }
+
+  private static void appendPivotRow(
+      StringBuilder csv, CategoryPivot pivot, int category, boolean income) {
+    double total = income ? pivot.getIncomeTotal(category) : pivot.getExpenseTotal(category);
+    if (total == 0) {
+      return;
+    }
+    csv.append(pivot.getCategories().get(category)).append(income ? ",Доход" : ",Расход");
+    for (int p = 0; p < pivot.getPeriods().size(); p++) {
+      double amount = income ? pivot.getIncome(category, p) : pivot.getExpense(category, p);
+      csv.append(String.format(Locale.ROOT, ",%.2f", amount));
+    }
+    csv.append(String.format(Locale.ROOT, ",%.2f\n", total));
+  }
+
+  public void exportPivotToJSON(CategoryPivot pivot, String filename) {
+    try {
+      String fullPath = prepareFilePath(filename, ".json");
+      Map<String, Object> jsonData = new LinkedHashMap<>();
+      jsonData.put("granularity", pivot.getGranularity().name());
+      List<Map<String, Object>> periodsList = new ArrayList<>();
+      for (int p = 0; p < pivot.getPeriods().size(); p++) {
+        Map<String, Object> periodMap = new LinkedHashMap<>();
+        periodMap.put("start", pivot.getPeriods().get(p).toString());
+        periodMap.put("label", pivot.getPeriodLabel(p));
+        periodMap.put("income", pivot.getPeriodIncome(p));
+        periodMap.put("expense", pivot.getPeriodExpense(p));
+        periodsList.add(periodMap);
+      }
+      jsonData.put("periods", periodsList);
+      List<Map<String, Object>> categoriesList = new ArrayList<>();
+      for (int c = 0; c < pivot.getCategories().size(); c++) {
+        double[] income = new double[pivot.getPeriods().size()];
+        double[] expense = new double[pivot.getPeriods().size()];
+        for (int p = 0; p < income.length; p++) {
+          income[p] = pivot.getIncome(c, p);
+          expense[p] = pivot.getExpense(c, p);
+        }
+        Map<String, Object> catMap = new LinkedHashMap<>();
+        catMap.put("name", pivot.getCategories().get(c));
+        catMap.put("income", income);
+        catMap.put("expense", expense);
+        catMap.put("totalIncome", pivot.getIncomeTotal(c));
+        catMap.put("totalExpense", pivot.getExpenseTotal(c));
+        categoriesList.add(catMap);
+      }
+      jsonData.put("categories", categoriesList);
+      objectMapper.writeValue(new File(fullPath), jsonData);
+      System.out.println("Сводная таблица экспортирована в JSON: " + fullPath);
+    } catch (Exception e) {
+      throw new RuntimeException("Ошибка при экспорте сводной таблицы: " + e.getMessage(), e);
+    }
+  }
+
   public Wallet importFromJSON(String filename) {
     try {
       String fullPath = findFile(filename, ".json");
@@ -226,6 +555,7 @@ public class DataStorage {
             operation = new Expense(amount, category, description, dateTime);
             calculatedBalance -= amount;
           }
+          operation.setSourceId((String) opMap.get("sourceId"));
           importedOperations.add(operation);
         }
         wallet.setOperations(importedOperations);
@@ -250,12 +580,37 @@ public class DataStorage {
         }
         wallet.setBudgets(importedBudgets);
       }
+      @SuppressWarnings("unchecked")
+      List<Map<String, Object>> rulesList = (List<Map<String, Object>>) jsonData.get("alertRules");
+      if (rulesList != null) {
+        AlertRuleEngine engine = new AlertRuleEngine();
+        for (Map<String, Object> ruleMap : rulesList) {
+          Number ceiling = (Number) ruleMap.get("ceiling");
+          // Файлы без важности выгружены до ее появления: правило получает важность по умолчанию
+          String severity = (String) ruleMap.get("severity");
+          engine
+              .addRule(
+                  new AlertRule(
+                      AlertRule.Metric.valueOf((String) ruleMap.get("metric")),
+                      AlertRule.Condition.valueOf((String) ruleMap.get("condition")),
+                      ((Number) ruleMap.get("threshold")).doubleValue(),
+                      ceiling != null ? ceiling.doubleValue() : Double.POSITIVE_INFINITY,
+                      (String) ruleMap.get("category"),
+                      (String) ruleMap.get("message")))
+              .setSeverity(severity != null ? NotificationBuffer.Severity.valueOf(severity) : null);
+        }
+        wallet.setAlertRules(engine);
+      }
       return wallet;
     } catch (Exception e) {
       throw new RuntimeException("Ошибка при импорте из JSON: " + e.getMessage(), e);
     }
   }
 
+  public String prepareReportPath(String filename) {
+    return prepareFilePath(filename, ".txt");
+  }
+
   private String prepareFilePath(String filename, String extension) {
     String fullPath = filename;
     if (!filename.endsWith(extension)) {
@@ -286,6 +641,10 @@ public class DataStorage {
     if (file.exists()) {
       return exportPath;
     }
+    // Имя уже с расширением, файл в каталоге выгрузок
+    if (new File(EXPORT_DIR + filename).exists()) {
+      return EXPORT_DIR + filename;
+    }
     throw new FileNotFoundException("Файл не найден: " + filename);
   }
 }
@@ -0,0 +1,249 @@
+package com.finance.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.finance.core.Expense;
+import com.finance.core.Income;
+import com.finance.core.NetPositions;
+import com.finance.core.NettingWindow;
+import com.finance.core.SettlementLog;
+import com.finance.core.User;
+import com.finance.core.Wallet;
+
+/**
+ * Отложенные переводы с многосторонним взаимозачетом. Перевод не меняет кошельки, а записывается
+ * частью текущего окна в журнал взаимозачетов; взаимозачет закрывает окно и проводит каждому
+ * участнику одну операцию на его итог (полученное минус отправленное). Встречные переводы внутри
+ * окна взаимно гасятся, число изменений кошельков и сохранений - по одному на участника и окно.
+ *
+ * <p>Отправленные, но еще не проведенные суммы резервируются: перевод проверяет баланс за вычетом
+ * резерва. Один общий объект на {@link UserRegistry}.
+ */
+public final class DeferredSettlement {
+  // Итог меньше копейки считается нулевым: он появляется только из-за округления double
+  private static final double ZERO = 0.005;
+
+  private final UserRegistry registry;
+  private final SettlementLog log;
+  // Взаимозачеты выполняются по одному; перевод эту блокировку не берет
+  private final ReentrantLock settleLock = new ReentrantLock();
+  private NettingWindow current;
+  // Окно, которое проводится сейчас: его суммы еще входят в резерв отправителей
+  private volatile NettingWindow settling;
+
+  DeferredSettlement(UserRegistry registry, SettlementLog log) {
+    this.registry = registry;
+    this.log = log;
+    NettingWindow pending = log.takePendingWindow();
+    if (pending.size() > 0 && isPosted(pending)) {
+      // Итоги окна сохранены с кошельками, но отметка в журнал не попала: окно уже проведено
+      log.markSettled(pending.getId());
+      pending = new NettingWindow(pending.getId() + 1);
+    }
+    this.current = pending;
+  }
+
+  /**
+   * Проведено ли окно: участники и номер окна сохраняются одним сохранением реестра, поэтому
+   * достаточно, чтобы номер окна был отмечен хотя бы у одного участника.
+   */
+  private boolean isPosted(NettingWindow window) {
+    boolean[] posted = new boolean[1];
+    window
+        .net()
+        .forEach(
+            (user, amount) -> {
+              User participant = registry.find(log.login(user));
+              if (participant != null
+                  && participant.getWallet().getLastSettledWindow() >= window.getId()) {
+                posted[0] = true;
+              }
+            });
+    return posted[0];
+  }
+
+  /**
+   * Добавляет перевод в текущее окно. Вызывается под блокировкой отправителя, проверившего баланс с
+   * учетом {@link #getReserved}.
+   *
+   * @return номер окна
+   */
+  synchronized long add(String fromUser, String toUser, double amount, String description) {
+    int from = log.userId(fromUser);
+    int to = log.userId(toUser);
+    long now = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    log.appendLeg(current.getId(), from, to, amount, now, description);
+    current.add(from, to, amount, now, description);
+    return current.getId();
+  }
+
+  /** Сумма отложенных переводов пользователя, еще не списанная с его баланса. */
+  double getReserved(String login) {
+    int user = log.findUserId(login);
+    if (user < 0) {
+      return 0.0;
+    }
+    double reserved;
+    synchronized (this) {
+      reserved = current.getOutgoing(user);
+    }
+    NettingWindow inProgress = settling;
+    return inProgress != null ? reserved + inProgress.getOutgoing(user) : reserved;
+  }
+
+  /** Номер и состояние текущего окна. */
+  public synchronized Status getStatus() {
+    return new Status(current.getId(), current.size(), current.getTurnover());
+  }
+
+  /** Итог пользователя в текущем окне: полученное минус отправленное. */
+  public synchronized double getPendingNet(String login) {
+    int user = log.findUserId(login);
+    return user < 0 ? 0.0 : current.net().get(user);
+  }
+
+  public SettlementLog getLog() {
+    return log;
+  }
+
+  /**
+   * Закрывает текущее окно и проводит итоги участников. Новые переводы во время проведения уходят в
+   * следующее окно.
+   *
+   * @return итоги взаимозачета или null, если окно пустое
+   */
+  public Result settle() {
+    settleLock.lock();
+    try {
+      NettingWindow window;
+      synchronized (this) {
+        if (current.size() == 0) {
+          return null;
+        }
+        window = current;
+        settling = window;
+        current = new NettingWindow(window.getId() + 1);
+      }
+      NetPositions net = window.net();
+      List<User> participants = new ArrayList<>(net.size());
+      net.forEach(
+          (user, amount) -> {
+            User participant = registry.find(log.login(user));
+            if (participant != null) {
+              participants.add(participant);
+            }
+          });
+      Result result = new Result(window.getId(), window.size(), window.getTurnover());
+      try (UserRegistry.UserLock lock = registry.lock(participants.toArray(new User[0]))) {
+        String description =
+            "Взаимозачет переводов, окно №" + window.getId() + " (" + window.size() + " перев.)";
+        net.forEach(
+            (user, amount) -> {
+              User participant = registry.find(log.login(user));
+              if (participant == null) {
+                return;
+              }
+              Wallet wallet = participant.getWallet();
+              // Окна не старше отмеченного в кошельке уже проведены в нем
+              if (wallet.getLastSettledWindow() >= window.getId()) {
+                return;
+              }
+              wallet.setLastSettledWindow(window.getId());
+              if (Math.abs(amount) < ZERO) {
+                return;
+              }
+              if (amount > 0) {
+                wallet.addOperation(new Income(amount, wallet.getCategory("Прочее"), description));
+              } else {
+                wallet.addOperation(
+                    new Expense(-amount, wallet.getCategory("Прочее"), description));
+              }
+              result.postings++;
+              result.netVolume += Math.abs(amount);
+            });
+        result.participants = participants.size();
+        settling = null;
+        registry.save();
+      }
+      // Окно отмечается закрытым после сохранения кошельков. Номер окна сохранен в них тем же
+      // сохранением, поэтому сбой до этой записи не приведет к повторному проведению
+      log.markSettled(window.getId());
+      return result;
+    } finally {
+      settleLock.unlock();
+    }
+  }
+
+  /** Состояние текущего окна. */
+  public static final class Status {
+    private final long window;
+    private final int transfers;
+    private final double turnover;
+
+    private Status(long window, int transfers, double turnover) {
+      this.window = window;
+      this.transfers = transfers;
+      this.turnover = turnover;
+    }
+
+    public long getWindow() {
+      return window;
+    }
+
+    public int getTransfers() {
+      return transfers;
+    }
+
+    public double getTurnover() {
+      return turnover;
+    }
+  }
+
+  /** Итоги взаимозачета окна. */
+  public static final class Result {
+    private final long window;
+    private final int transfers;
+    private final double turnover;
+    private int participants;
+    private int postings;
+    private double netVolume;
+
+    private Result(long window, int transfers, double turnover) {
+      this.window = window;
+      this.transfers = transfers;
+      this.turnover = turnover;
+    }
+
+    public long getWindow() {
+      return window;
+    }
+
+    /** Число переводов в окне. */
+    public int getTransfers() {
+      return transfers;
+    }
+
+    public int getParticipants() {
+      return participants;
+    }
+
+    /** Число проведенных операций: по одной на участника с ненулевым итогом. */
+    public int getPostings() {
+      return postings;
+    }
+
+    /** Сумма переводов окна. */
+    public double getTurnover() {
+      return turnover;
+    }
+
+    /** Сумма проведенных операций (доходы и расходы вместе). */
+    public double getNetVolume() {
+      return netVolume;
+    }
+  }
+}
@@ -1,40 +1,126 @@
 package com.finance.service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.finance.core.*;
 import com.finance.exception.FinanceException;
 
+/**
+ * Операции пользователя в рамках одного сеанса. Пользователи, хранилище и кэши кошельков общие для
+ * всех экземпляров с одним {@link UserRegistry}, поэтому один процесс обслуживает сколько угодно
+ * сеансов: на каждый сеанс (соединение, поток) - свой экземпляр. Сам экземпляр не предназначен для
+ * одновременного использования из нескольких потоков.
+ */
 public class FinanceManager {
-  private Map<String, User> users;
-  private User currentUser;
-  private AuthService authService;
-  private DataStorage dataStorage;
+  private final UserRegistry registry;
+  private final DataStorage dataStorage;
+  private Session session;
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-  private List<String> notifications;
+  private NotificationBuffer notifications;
+  private final ReportWriter reportWriter = new ReportWriter();
+  // Куда выводятся отчеты без явного Writer; null - System.out
+  private Writer console;
 
+  private static final String LINE = "══════════════════════════════════════════════";
+  private static final String WIDE_LINE =
+      "══════════════════════════════════════════════════════════════";
+  // Макеты строк отчетов (бывшие шаблоны printf)
+  private static final ReportWriter.Layout CATEGORY_ROW =
+      ReportWriter.layout().text("   ").left(20).text(" ").right(15).newline().build();
+  private static final ReportWriter.Layout SELECTED_CATEGORY_ROW =
+      ReportWriter.layout()
+          .text("   ")
+          .left(20)
+          .text(" Доходы: ")
+          .right(10)
+          .text(", Расходы: ")
+          .right(10)
+          .newline()
+          .build();
+  private static final ReportWriter.Layout OPERATION_ROW =
+      ReportWriter.layout()
+          .left(0)
+          .text(": ")
+          .left(15)
+          .text(" ")
+          .right(10)
+          .text(" - ")
+          .left(0)
+          .newline()
+          .build();
+  private static final ReportWriter.Layout BUDGET_STATUS_ROW =
+      ReportWriter.layout()
+          .text("   ")
+          .left(20)
+          .text(" ")
+          .right(6)
+          .text("% ")
+          .left(0)
+          .newline()
+          .build();
+  private static final ReportWriter.Layout TRANSFER_ROW =
+      ReportWriter.layout()
+          .text("   №")
+          .left(6)
+          .text(" ")
+          .left(10)
+          .text(" ")
+          .left(18)
+          .text(" ")
+          .right(12)
+          .text(" ")
+          .left(0)
+          .newline()
+          .build();
+  private static final ReportWriter.Layout ALERT_RULE_ROW =
+      ReportWriter.layout().text("   ").left(5).text(" ").left(0).newline().build();
+  private static final ReportWriter.Layout QUANTILE_ROW =
+      ReportWriter.layout()
+          .text("   ")
+          .left(20)
+          .text(" ")
+          .right(6)
+          .text(" ")
+          .right(11)
+          .text(" ")
+          .right(11)
+          .text(" ")
+          .right(11)
+          .newline()
+          .build();
+  private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MM.yyyy");
+  private static final int NOTIFICATION_CAPACITY = 128;
+
+  // 🔧 Прежний режим: отдельный реестр с загрузкой пользователей из файла и один сеанс
   public FinanceManager() {
-    this.users = new HashMap<>();
-    this.authService = new AuthService();
-    this.dataStorage = new DataStorage();
-    this.notifications = new ArrayList<>();
-    loadUsers();
+    this(new UserRegistry(new DataStorage()));
+    addNotification("Загружено пользователей: " + registry.size());
   }
 
-  private void loadUsers() {
-    try {
-      Map<String, User> loadedUsers = dataStorage.loadUsers();
-      if (loadedUsers != null) {
-        users = loadedUsers;
-        addNotification("Загружено пользователей: " + users.size());
-      }
-    } catch (Exception e) {
-      addNotification("Не удалось загрузить пользователей: " + e.getMessage());
-    }
+  /** Экземпляр для нового сеанса с общими пользователями; вход - через {@link #login}. */
+  public FinanceManager(UserRegistry registry) {
+    this(registry, null);
+  }
+
+  /** Экземпляр для уже открытого сеанса, например найденного по идентификатору из запроса. */
+  public FinanceManager(UserRegistry registry, Session session) {
+    this.registry = registry;
+    this.dataStorage = registry.getDataStorage();
+    this.notifications = new NotificationBuffer(NOTIFICATION_CAPACITY);
+    this.session = session;
   }
 
   private void addNotification(String message) {
@@ -42,432 +128,1406 @@ public class FinanceManager {
   }
 
   public List<String> getAndClearNotifications() {
-    List<String> result = new ArrayList<>(notifications);
-    notifications.clear();
-    return result;
+    return notifications.drain();
   }
 
   public boolean register(String login, String password) {
-    if (users.containsKey(login)) {
-      throw new FinanceException("Пользователь с таким логином уже существует");
-    }
-    if (!authService.validateCredentials(login, password)) {
-      throw new FinanceException("Некорректные логин или пароль");
-    }
-    User user = new User(login, password);
-    users.put(login, user);
-    dataStorage.saveUsers(users);
+    registry.register(login, password);
     addNotification("✅ Регистрация успешна!");
     return true;
   }
 
   public boolean login(String login, String password) {
-    User user = users.get(login);
-    if (user == null) {
-      throw new FinanceException("Пользователь не найден");
-    }
-    if (!user.authenticate(password)) {
-      throw new FinanceException("Неверный пароль");
-    }
-    currentUser = user;
+    Session opened = registry.openSession(login, password);
+    registry.closeSession(session);
+    session = opened;
     addNotification("✅ Добро пожаловать, " + login + "!");
-    currentUser.getWallet().checkFinancialHealth();
-    List<String> walletNotifications = currentUser.getWallet().getAndClearNotifications();
-    notifications.addAll(walletNotifications);
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      currentUser().getWallet().checkFinancialHealth();
+      currentUser().getWallet().drainNotificationsTo(notifications);
+    }
     return true;
   }
 
   public void logout() {
-    if (currentUser != null) {
-      dataStorage.saveUsers(users);
-      addNotification("👋 До свидания, " + currentUser.getLogin() + "!");
-      currentUser = null;
+    if (session != null) {
+      registry.save();
+      addNotification("👋 До свидания, " + currentUser().getLogin() + "!");
+      registry.closeSession(session);
+      session = null;
     }
   }
 
   public void addIncome(String categoryName, double amount, String description) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    if (!wallet.hasCategory(categoryName)) {
-      addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
-      wallet.addCategory(new Category(categoryName, ""));
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (!wallet.hasCategory(categoryName)) {
+        addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
+        wallet.addCategory(new Category(categoryName, ""));
+      }
+      Income income = new Income(amount, wallet.getCategory(categoryName), description);
+      wallet.addOperation(income);
+      addNotification("✅ Доход добавлен: " + income);
+      wallet.drainNotificationsTo(notifications);
+      registry.save();
     }
-    Income income = new Income(amount, wallet.getCategory(categoryName), description);
-    wallet.addOperation(income);
-    addNotification("✅ Доход добавлен: " + income);
-    notifications.addAll(wallet.getAndClearNotifications());
-    dataStorage.saveUsers(users);
   }
 
   public void addExpense(String categoryName, double amount, String description) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    if (!wallet.hasCategory(categoryName)) {
-      addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
-      wallet.addCategory(new Category(categoryName, ""));
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (!wallet.hasCategory(categoryName)) {
+        addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
+        wallet.addCategory(new Category(categoryName, ""));
+      }
+      Expense expense = new Expense(amount, wallet.getCategory(categoryName), description);
+      wallet.addOperation(expense);
+      addNotification("✅ Расход добавлен: " + expense);
+      wallet.drainNotificationsTo(notifications);
+      registry.save();
     }
-    Expense expense = new Expense(amount, wallet.getCategory(categoryName), description);
-    wallet.addOperation(expense);
-    addNotification("✅ Расход добавлен: " + expense);
-    notifications.addAll(wallet.getAndClearNotifications());
-    dataStorage.saveUsers(users);
   }
 
   public void setBudget(String categoryName, double limit) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    if (!wallet.hasCategory(categoryName)) {
-      addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
-      wallet.addCategory(new Category(categoryName, ""));
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (!wallet.hasCategory(categoryName)) {
+        addNotification("⚠️  Категория не найдена. Создана новая категория: " + categoryName);
+        wallet.addCategory(new Category(categoryName, ""));
+      }
+      wallet.setBudget(categoryName, limit);
+      addNotification("✅ Бюджет установлен: " + wallet.getBudget(categoryName));
+      registry.save();
     }
-    wallet.setBudget(categoryName, limit);
-    addNotification("✅ Бюджет установлен: " + wallet.getBudget(categoryName));
-    dataStorage.saveUsers(users);
   }
 
   public void editBudget(String categoryName, double newLimit) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    Budget budget = wallet.getBudget(categoryName);
-    if (budget == null) {
-      throw new FinanceException("Бюджет для категории не найден");
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      Budget budget = wallet.getBudget(categoryName);
+      if (budget == null) {
+        throw new FinanceException("Бюджет для категории не найден");
+      }
+      wallet.editBudget(categoryName, newLimit);
+      addNotification("✅ Бюджет обновлен: " + wallet.getBudget(categoryName));
+      registry.save();
     }
-    wallet.editBudget(categoryName, newLimit);
-    addNotification("✅ Бюджет обновлен: " + wallet.getBudget(categoryName));
-    dataStorage.saveUsers(users);
   }
 
   public void removeBudget(String categoryName) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    if (wallet.getBudget(categoryName) == null) {
-      throw new FinanceException("Бюджет для категории не найден");
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (wallet.getBudget(categoryName) == null) {
+        throw new FinanceException("Бюджет для категории не найден");
+      }
+      wallet.removeBudget(categoryName);
+      addNotification("✅ Бюджет удален для категории: " + categoryName);
+      registry.save();
     }
-    wallet.removeBudget(categoryName);
-    addNotification("✅ Бюджет удален для категории: " + categoryName);
-    dataStorage.saveUsers(users);
   }
 
   public void transfer(String toUserLogin, double amount, String description) {
+    transfer(toUserLogin, amount, description, null);
+  }
+
+  /**
+   * Переводит деньги другому пользователю и записывает перевод в журнал. Запись в журнал (вместе с
+   * ключом повтора) - момент фиксации: если она не удалась, операции перевода отменяются. Повтор с
+   * тем же ключом (idempotencyKey, в пределах отправителя) не выполняет перевод второй раз, а
+   * возвращает уже записанный.
+   */
+  public Transfer transfer(
+      String toUserLogin, double amount, String description, String idempotencyKey) {
     checkAuth();
-    if (currentUser.getLogin().equals(toUserLogin)) {
+    if (currentUser().getLogin().equals(toUserLogin)) {
       throw new FinanceException("Нельзя перевести деньги самому себе");
     }
-    User toUser = users.get(toUserLogin);
+    User toUser = registry.find(toUserLogin);
     if (toUser == null) {
       throw new FinanceException("Получатель не найден");
     }
-    Wallet fromWallet = currentUser.getWallet();
-    Wallet toWallet = toUser.getWallet();
-    if (fromWallet.getBalance() < amount) {
-      throw new FinanceException("Недостаточно средств на балансе");
+    TransferLedger ledger = dataStorage.getTransferLedger();
+    // Оба кошелька блокируются сразу: проверка баланса и обе операции выполняются атомарно.
+    // Повторы с одним ключом идут от одного отправителя и поэтому выполняются по очереди
+    try (UserRegistry.UserLock lock = registry.lock(currentUser(), toUser)) {
+      if (idempotencyKey != null) {
+        Transfer applied = ledger.findByKey(currentUser().getLogin(), idempotencyKey);
+        if (applied != null) {
+          if (!applied.getToUser().equals(toUserLogin) || applied.getAmount() != amount) {
+            throw new FinanceException(
+                "Ключ перевода " + idempotencyKey + " уже использован для другого перевода");
+          }
+          addNotification("ℹ️  Перевод №" + applied.getId() + " уже выполнен ранее");
+          return applied;
+        }
+      }
+      Wallet fromWallet = currentUser().getWallet();
+      if (availableBalance() < amount) {
+        throw new FinanceException("Недостаточно средств на балансе");
+      }
+      Transfer transfer;
+      try {
+        transfer = new Transfer(currentUser().getLogin(), toUserLogin, amount, description);
+      } catch (IllegalArgumentException e) {
+        throw new FinanceException(e.getMessage());
+      }
+      Operation[] applied = applyTransfer(transfer, toUser.getWallet(), idempotencyKey);
+      try {
+        ledger.append(transfer);
+      } catch (RuntimeException e) {
+        // Кроме сбоя записи, ключ мог занять перевод того же отправителя через WalletActors
+        undoTransfer(applied, toUser.getWallet());
+        throw new FinanceException(
+            "Перевод не выполнен: "
+                + (e instanceof UncheckedIOException
+                    ? "ошибка записи журнала переводов"
+                    : e.getMessage()));
+      }
+      markTransfer(transfer, toUser.getWallet());
+      // Кошельки сохраняются после записи журнала; сбой между ними исправляет UserRegistry при
+      // следующем запуске
+      registry.save();
+      addNotification("✅ Перевод №" + transfer.getId() + " выполнен: " + transfer);
+      fromWallet.drainNotificationsTo(notifications);
+      return transfer;
     }
-    Category transferCategory = fromWallet.getCategory("Прочее");
-    Expense expense =
-        new Expense(
-            amount, transferCategory, "Перевод пользователю " + toUserLogin + ": " + description);
+  }
+
+  // Расход отправителя и доход получателя по переводу; вызывается под блокировкой обоих
+  private Operation[] applyTransfer(Transfer transfer, Wallet toWallet, String idempotencyKey) {
+    Wallet fromWallet = currentUser().getWallet();
+    Expense expense = transferExpense(transfer, fromWallet);
     fromWallet.addOperation(expense);
-    Category incomeCategory = toWallet.getCategory("Прочее");
-    Income income =
-        new Income(
-            amount,
-            incomeCategory,
-            "Перевод от пользователя " + currentUser.getLogin() + ": " + description);
+    Income income = transferIncome(transfer, toWallet);
     toWallet.addOperation(income);
-    Transfer transfer = new Transfer(currentUser.getLogin(), toUserLogin, amount, description);
-    addNotification("✅ Перевод выполнен: " + transfer);
-    dataStorage.saveUsers(users);
+    transfer.link(idempotencyKey, expense, income);
+    return new Operation[] {expense, income};
   }
 
-  public void showBalance() {
+  private void undoTransfer(Operation[] applied, Wallet toWallet) {
+    toWallet.undoLastOperation(applied[1]);
+    currentUser().getWallet().undoLastOperation(applied[0]);
+  }
+
+  // Отметка перевода в обоих кошельках сохраняется вместе с его операциями
+  private void markTransfer(Transfer transfer, Wallet toWallet) {
+    currentUser().getWallet().setLastTransferId(transfer.getId());
+    toWallet.setLastTransferId(transfer.getId());
+  }
+
+  static Expense transferExpense(Transfer transfer, Wallet fromWallet) {
+    return new Expense(
+        transfer.getAmount(),
+        fromWallet.getCategory("Прочее"),
+        "Перевод пользователю " + transfer.getToUser() + ": " + transfer.getDescription());
+  }
+
+  static Income transferIncome(Transfer transfer, Wallet toWallet) {
+    return new Income(
+        transfer.getAmount(),
+        toWallet.getCategory("Прочее"),
+        "Перевод от пользователя " + transfer.getFromUser() + ": " + transfer.getDescription());
+  }
+
+  static Income transferRefund(Transfer transfer, Wallet fromWallet) {
+    return new Income(
+        transfer.getAmount(),
+        fromWallet.getCategory("Прочее"),
+        "Возврат перевода пользователю " + transfer.getToUser());
+  }
+
+  /** Пакетный перевод из CSV-файла (получатель, сумма, описание, ключ повтора). */
+  public List<Transfer> transferBatch(String filename) {
+    List<TransferLeg> legs;
+    try {
+      legs = dataStorage.readTransferLegs(filename);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new FinanceException("Ошибка чтения пакета переводов: " + e.getMessage());
+    }
+    return transferBatch(legs);
+  }
+
+  /**
+   * Выполняет все переводы пакета или ни одного. Получатели, ключи и общий баланс проверяются до
+   * первого перевода; кошельки всех участников блокируются один раз, данные и журнал переводов
+   * сохраняются один раз на пакет. Части с уже выполненным ключом повтора пропускаются.
+   *
+   * @return выполненные этим вызовом переводы
+   */
+  public List<Transfer> transferBatch(List<TransferLeg> legs) {
     checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    System.out.println("\n══════════════════════════════════════════════");
-    System.out.println("                 БАЛАНС");
-    System.out.println("══════════════════════════════════════════════");
-    System.out.printf("💰 Текущий баланс: %s\n", wallet.getFormattedBalance());
-    System.out.printf("📈 Общий доход: %s\n", wallet.getFormattedTotalIncome());
-    System.out.printf("📉 Общий расход: %s\n", wallet.getFormattedTotalExpense());
-    System.out.println("══════════════════════════════════════════════");
+    if (legs.isEmpty()) {
+      throw new FinanceException("Пакет переводов пуст");
+    }
+    String login = currentUser().getLogin();
+    Map<String, User> recipients = new HashMap<>();
+    Set<String> keys = new HashSet<>();
+    for (int i = 0; i < legs.size(); i++) {
+      TransferLeg leg = legs.get(i);
+      if (leg.getToUser().equals(login)) {
+        throw new FinanceException("Перевод " + (i + 1) + ": нельзя перевести деньги самому себе");
+      }
+      User toUser = recipients.computeIfAbsent(leg.getToUser(), registry::find);
+      if (toUser == null) {
+        throw new FinanceException(
+            "Перевод " + (i + 1) + ": получатель не найден: " + leg.getToUser());
+      }
+      if (leg.getIdempotencyKey() != null && !keys.add(leg.getIdempotencyKey())) {
+        throw new FinanceException(
+            "Перевод " + (i + 1) + ": ключ повторяется в пакете: " + leg.getIdempotencyKey());
+      }
+    }
+    List<User> locked = new ArrayList<>(recipients.values());
+    locked.add(currentUser());
+    TransferLedger ledger = dataStorage.getTransferLedger();
+    try (UserRegistry.UserLock lock = registry.lock(locked.toArray(new User[0]))) {
+      List<TransferLeg> pending = new ArrayList<>(legs.size());
+      double total = 0;
+      for (int i = 0; i < legs.size(); i++) {
+        TransferLeg leg = legs.get(i);
+        Transfer applied =
+            leg.getIdempotencyKey() != null
+                ? ledger.findByKey(login, leg.getIdempotencyKey())
+                : null;
+        if (applied == null) {
+          pending.add(leg);
+          total += leg.getAmount();
+        } else if (!applied.getToUser().equals(leg.getToUser())
+            || applied.getAmount() != leg.getAmount()) {
+          throw new FinanceException(
+              "Перевод "
+                  + (i + 1)
+                  + ": ключ "
+                  + leg.getIdempotencyKey()
+                  + " уже использован для другого перевода");
+        }
+      }
+      Wallet fromWallet = currentUser().getWallet();
+      if (availableBalance() < total) {
+        throw new FinanceException(
+            "Недостаточно средств для пакета: нужно "
+                + fromWallet.formatCurrency(total)
+                + ", доступно "
+                + fromWallet.formatCurrency(availableBalance()));
+      }
+      List<Transfer> transfers = new ArrayList<>(pending.size());
+      List<Operation[]> applied = new ArrayList<>(pending.size());
+      for (TransferLeg leg : pending) {
+        Transfer transfer =
+            new Transfer(login, leg.getToUser(), leg.getAmount(), leg.getDescription());
+        applied.add(
+            applyTransfer(
+                transfer, recipients.get(leg.getToUser()).getWallet(), leg.getIdempotencyKey()));
+        transfers.add(transfer);
+      }
+      try {
+        ledger.appendAll(transfers);
+      } catch (RuntimeException e) {
+        // Отмена в обратном порядке: каждая отменяемая операция - последняя в своем кошельке
+        for (int i = applied.size() - 1; i >= 0; i--) {
+          undoTransfer(applied.get(i), recipients.get(transfers.get(i).getToUser()).getWallet());
+        }
+        throw new FinanceException(
+            "Пакет переводов не выполнен: "
+                + (e instanceof UncheckedIOException
+                    ? "ошибка записи журнала переводов"
+                    : e.getMessage()));
+      }
+      for (Transfer transfer : transfers) {
+        markTransfer(transfer, recipients.get(transfer.getToUser()).getWallet());
+      }
+      registry.save();
+      addNotification(
+          "✅ Пакет переводов выполнен: "
+              + transfers.size()
+              + " на сумму "
+              + fromWallet.formatCurrency(total)
+              + (pending.size() < legs.size()
+                  ? " (уже выполнено ранее: " + (legs.size() - pending.size()) + ")"
+                  : ""));
+      fromWallet.drainNotificationsTo(notifications);
+      return transfers;
+    }
   }
 
-  public void showExampleFromTZ() {
+  // Баланс за вычетом отложенных переводов, которые еще не проведены взаимозачетом
+  private double availableBalance() {
+    return currentUser().getWallet().getBalance() - registry.getReserved(currentUser().getLogin());
+  }
+
+  /**
+   * Отложенный перевод: кошельки не меняются до взаимозачета ({@link #settle}), сумма сразу
+   * резервируется на балансе отправителя.
+   *
+   * @return номер окна взаимозачета
+   */
+  public long transferDeferred(String toUserLogin, double amount, String description) {
+    checkAuth();
+    if (currentUser().getLogin().equals(toUserLogin)) {
+      throw new FinanceException("Нельзя перевести деньги самому себе");
+    }
+    if (registry.find(toUserLogin) == null) {
+      throw new FinanceException("Получатель не найден");
+    }
+    if (!(amount > 0) || Double.isInfinite(amount)) {
+      throw new FinanceException("Сумма перевода должна быть положительной");
+    }
+    DeferredSettlement settlement = registry.getSettlement();
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      if (availableBalance() < amount) {
+        throw new FinanceException("Недостаточно средств с учетом отложенных переводов");
+      }
+      long window;
+      try {
+        window =
+            settlement.add(
+                currentUser().getLogin(),
+                toUserLogin,
+                amount,
+                description != null ? description : "");
+      } catch (UncheckedIOException e) {
+        throw new FinanceException("Ошибка записи отложенного перевода: " + e.getMessage());
+      }
+      addNotification(
+          "⏳ Перевод пользователю "
+              + toUserLogin
+              + " на "
+              + currentUser().getWallet().formatCurrency(amount)
+              + " будет проведен при взаимозачете окна №"
+              + window);
+      return window;
+    }
+  }
+
+  /** Проводит взаимозачет текущего окна отложенных переводов всех пользователей. */
+  public DeferredSettlement.Result settle() {
     checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    System.out.println("\n" + wallet.getBudgetSummaryAsInTZ());
+    DeferredSettlement.Result result;
+    try {
+      result = registry.getSettlement().settle();
+    } catch (UncheckedIOException e) {
+      throw new FinanceException("Ошибка взаимозачета: " + e.getMessage());
+    }
+    if (result == null) {
+      addNotification("ℹ️  Отложенных переводов нет");
+      return null;
+    }
+    addNotification(
+        "✅ Взаимозачет окна №"
+            + result.getWindow()
+            + ": переводов "
+            + result.getTransfers()
+            + " на "
+            + currentUser().getWallet().formatCurrency(result.getTurnover())
+            + ", проведено операций "
+            + result.getPostings()
+            + " на "
+            + currentUser().getWallet().formatCurrency(result.getNetVolume() / 2));
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      currentUser().getWallet().drainNotificationsTo(notifications);
+    }
+    return result;
   }
 
-  public void showStatistics(List<String> categoryNames, LocalDate startDate, LocalDate endDate) {
+  public void showSettlement() {
+    showSettlement(console());
+  }
+
+  public void showSettlement(Writer out) {
     checkAuth();
-    Wallet wallet = currentUser.getWallet();
+    DeferredSettlement settlement = registry.getSettlement();
+    DeferredSettlement.Status status = settlement.getStatus();
+    String login = currentUser().getLogin();
+    ReportWriter report = report(out);
+    report.newline().line(LINE).line("          ОТЛОЖЕННЫЕ ПЕРЕВОДЫ").line(LINE);
+    report
+        .text("🪟 Окно №")
+        .text(status.getWindow())
+        .text(": переводов ")
+        .text(status.getTransfers())
+        .text(" на ")
+        .money(status.getTurnover())
+        .newline()
+        .text("⏳ Ваш резерв: ")
+        .money(registry.getReserved(login))
+        .newline()
+        .text("⚖️  Ваш итог при взаимозачете: ")
+        .money(settlement.getPendingNet(login))
+        .newline()
+        .text("📚 Проведено окон: ")
+        .text(settlement.getLog().getLastSettledWindow())
+        .newline();
+    report.line(LINE).flush();
+  }
 
-    System.out.println("\n══════════════════════════════════════════════");
+  public void showTransfers(String withUser) {
+    showTransfers(withUser, console());
+  }
+
+  /** Переводы текущего пользователя: все отправленные и полученные или только с одним партнером. */
+  public void showTransfers(String withUser, Writer out) {
+    List<Transfer> transfers = getTransfers(withUser);
+    String login = currentUser().getLogin();
+    ReportWriter report = report(out);
+    report.newline().line(LINE).line("               ПЕРЕВОДЫ").line(LINE);
+    if (transfers.isEmpty()) {
+      report.line("ℹ️  Переводов нет");
+    }
+    for (Transfer transfer : transfers) {
+      boolean sent = transfer.getFromUser().equals(login);
+      report
+          .row(TRANSFER_ROW)
+          .cell(String.valueOf(transfer.getId()))
+          .cell(transfer.getDateTime().format(DATE_FORMATTER))
+          .cell(sent ? "➡️  " + transfer.getToUser() : "⬅️  " + transfer.getFromUser())
+          .moneyCell(sent ? -transfer.getAmount() : transfer.getAmount())
+          .cell(transfer.getDescription());
+    }
+    report.line(LINE).flush();
+  }
+
+  /** Переводы текущего пользователя по номерам; withUser - только с этим партнером. */
+  public List<Transfer> getTransfers(String withUser) {
+    checkAuth();
+    String login = currentUser().getLogin();
+    TransferLedger ledger = dataStorage.getTransferLedger();
+    if (withUser != null) {
+      return ledger.getHistory(login, withUser);
+    }
+    List<Transfer> transfers = new ArrayList<>(ledger.getSent(login));
+    transfers.addAll(ledger.getReceived(login));
+    transfers.sort(Comparator.comparingLong(Transfer::getId));
+    return transfers;
+  }
+
+  /**
+   * Читает кошелек текущего пользователя под его блокировкой. Для API, которым нужны данные, а не
+   * текстовый отчет: {@code reader} должен вернуть снимок (числа, копии коллекций), а не ссылки на
+   * изменяемое состояние кошелька.
+   */
+  public <T> T readWallet(Function<Wallet, T> reader) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      return reader.apply(currentUser().getWallet());
+    }
+  }
+
+  /** Итоги текущего пользователя за период (границы включительно, null - без ограничения). */
+  public WalletSummary getSummary(LocalDate startDate, LocalDate endDate) {
+    return readWallet(wallet -> summarize(wallet, startDate, endDate));
+  }
+
+  public void showBalance() {
+    showBalance(console());
+  }
+
+  public void showBalance(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      writeCached(out, wallet, "balance", report -> writeBalance(report, wallet));
+    }
+  }
+
+  private void writeBalance(ReportWriter report, Wallet wallet) {
+    report.newline().line(LINE).line("                 БАЛАНС").line(LINE);
+    report.text("💰 Текущий баланс: ").money(wallet.getBalance()).newline();
+    report.text("📈 Общий доход: ").money(wallet.getTotalIncome()).newline();
+    report.text("📉 Общий расход: ").money(wallet.getTotalExpense()).newline();
+    report.line(LINE).flush();
+  }
+
+  public void showExampleFromTZ() {
+    showExampleFromTZ(console());
+  }
+
+  public void showExampleFromTZ(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      report(out).newline().line(wallet.getBudgetSummaryAsInTZ()).flush();
+    }
+  }
+
+  public void showStatistics(List<String> categoryNames, LocalDate startDate, LocalDate endDate) {
+    showStatistics(categoryNames, startDate, endDate, console());
+  }
+
+  public void showStatistics(
+      List<String> categoryNames, LocalDate startDate, LocalDate endDate, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      String key = "statistics|" + categoryNames + "|" + startDate + "|" + endDate;
+      writeCached(
+          out,
+          wallet,
+          key,
+          report -> writeStatistics(report, wallet, categoryNames, startDate, endDate));
+    }
+  }
+
+  private void writeStatistics(
+      ReportWriter report,
+      Wallet wallet,
+      List<String> categoryNames,
+      LocalDate startDate,
+      LocalDate endDate) {
+
+    report.newline().line(LINE);
     if (startDate != null && endDate != null) {
-      System.out.println(
-          "СТАТИСТИКА за период "
-              + startDate.format(DATE_FORMATTER)
-              + " - "
-              + endDate.format(DATE_FORMATTER));
+      report
+          .text("СТАТИСТИКА за период ")
+          .text(startDate.format(DATE_FORMATTER))
+          .text(" - ")
+          .line(endDate.format(DATE_FORMATTER));
     } else {
-      System.out.println("                СТАТИСТИКА");
+      report.line("                СТАТИСТИКА");
     }
-    System.out.println("══════════════════════════════════════════════");
+    report.line(LINE);
+
+    // За весь период суммы берутся из агрегатов кошелька, за часть периода - из дневных сводок
+    boolean byPeriod = startDate != null || endDate != null;
+    WalletSummary summary = byPeriod ? summarize(wallet, startDate, endDate) : null;
 
     if (categoryNames.isEmpty()) {
-      Map<String, Double> incomeByCat = wallet.getIncomeByCategories();
-      Map<String, Double> expenseByCat = wallet.getExpenseByCategories();
+      Map<String, Double> incomeByCat =
+          byPeriod
+              ? summary.getIncomeByCategories()
+              : wallet.getTopIncomeCategories(Integer.MAX_VALUE);
+      Map<String, Double> expenseByCat =
+          byPeriod
+              ? summary.getExpenseByCategories()
+              : wallet.getTopExpenseCategories(Integer.MAX_VALUE);
 
       if (!incomeByCat.isEmpty()) {
-        System.out.println("\n📊 ДОХОДЫ по категориям:");
-        incomeByCat.entrySet().stream()
-            .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-            .forEach(
-                entry ->
-                    System.out.printf(
-                        "   %-20s %15s\n",
-                        entry.getKey(), wallet.formatCurrency(entry.getValue())));
+        report.newline().line("📊 ДОХОДЫ по категориям:");
+        writeCategoryRows(report, incomeByCat);
       }
 
       if (!expenseByCat.isEmpty()) {
-        System.out.println("\n📊 РАСХОДЫ по категориям:");
-        expenseByCat.entrySet().stream()
-            .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-            .forEach(
-                entry ->
-                    System.out.printf(
-                        "   %-20s %15s\n",
-                        entry.getKey(), wallet.formatCurrency(entry.getValue())));
+        report.newline().line("📊 РАСХОДЫ по категориям:");
+        writeCategoryRows(report, expenseByCat);
       }
 
       if (!wallet.getBudgets().isEmpty()) {
-        System.out.println("\n🎯 БЮДЖЕТЫ по категориям:");
-        wallet.getBudgets().values().stream()
-            .sorted(Comparator.comparing(b -> b.getCategory().getName()))
-            .forEach(
-                budget -> {
-                  // 🔧 ИСПРАВЛЕНО: Объявлены обе переменные
-                  String statusIcon =
-                      budget.isExceeded() ? "🔴" : budget.isNearLimit() ? "🟡" : "🟢";
-                  String statusText =
-                      budget.isExceeded()
-                          ? "ПРЕВЫШЕН"
-                          : budget.isNearLimit() ? "ПОЧТИ ИСЧЕРПАН" : "В НОРМЕ";
-                  System.out.printf("   %s %s [%s]\n", statusIcon, budget, statusText);
-                });
+        report.newline().line("🎯 БЮДЖЕТЫ по категориям:");
+        writeBudgetRows(report, wallet, "   ");
       }
     } else {
-      System.out.println("\n📊 СТАТИСТИКА по выбранным категориям:");
+      report.newline().line("📊 СТАТИСТИКА по выбранным категориям:");
       for (String catName : categoryNames) {
         if (!wallet.hasCategory(catName)) {
-          System.out.println("   ❌ Категория не найдена: " + catName);
+          report.text("   ❌ Категория не найдена: ").line(catName);
           continue;
         }
-        double income = wallet.getIncomeByCategory(catName);
-        double expense = wallet.getExpenseByCategory(catName);
-        System.out.printf(
-            "   %-20s Доходы: %10s, Расходы: %10s\n",
-            catName, wallet.formatCurrency(income), wallet.formatCurrency(expense));
+        report
+            .row(SELECTED_CATEGORY_ROW)
+            .cell(catName)
+            .moneyCell(byPeriod ? summary.getIncome(catName) : wallet.getIncomeByCategory(catName))
+            .moneyCell(
+                byPeriod ? summary.getExpense(catName) : wallet.getExpenseByCategory(catName));
       }
     }
-    System.out.println("══════════════════════════════════════════════");
+    report.line(LINE).flush();
   }
 
-  public void showBudgets() {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    System.out.println("\n══════════════════════════════════════════════");
-    System.out.println("                 БЮДЖЕТЫ");
-    System.out.println("══════════════════════════════════════════════");
-    if (wallet.getBudgets().isEmpty()) {
-      System.out.println("ℹ️  Бюджеты не установлены");
+  private static WalletSummary summarize(Wallet wallet, LocalDate startDate, LocalDate endDate) {
+    try {
+      return wallet.getDailyRollups().summarize(startDate, endDate);
+    } catch (IllegalArgumentException e) {
+      throw new FinanceException(e.getMessage());
+    }
+  }
+
+  public void showTopCategories(int limit, boolean income) {
+    showTopCategories(limit, income, console());
+  }
+
+  public void showTopCategories(int limit, boolean income, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      if (limit < 1) {
+        throw new FinanceException("Количество категорий должно быть положительным");
+      }
+      Wallet wallet = currentUser().getWallet();
+      Map<String, Double> top =
+          income ? wallet.getTopIncomeCategories(limit) : wallet.getTopExpenseCategories(limit);
+      ReportWriter report = report(out);
+      report
+          .newline()
+          .line(LINE)
+          .text("   ТОП-")
+          .text(limit)
+          .line(income ? " КАТЕГОРИЙ ПО ДОХОДАМ" : " КАТЕГОРИЙ ПО РАСХОДАМ")
+          .line(LINE);
+      if (top.isEmpty()) {
+        report.line(income ? "ℹ️  Доходов пока нет" : "ℹ️  Расходов пока нет");
+      } else {
+        writeCategoryRows(report, top);
+      }
+      report.line(LINE).flush();
+    }
+  }
+
+  public void showPivot(
+      CategoryPivot.Granularity granularity, LocalDate startDate, LocalDate endDate) {
+    showPivot(granularity, startDate, endDate, console());
+  }
+
+  // 🔧 Вся таблица считается одним проходом по операциям, а не запросом на каждую ячейку
+  public void showPivot(
+      CategoryPivot.Granularity granularity, LocalDate startDate, LocalDate endDate, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      String key = "pivot|" + granularity + "|" + startDate + "|" + endDate;
+      writeCached(
+          out,
+          wallet,
+          key,
+          report ->
+              writePivot(
+                  report, buildPivot(wallet, granularity, startDate, endDate), startDate, endDate));
+    }
+  }
+
+  public void exportPivot(
+      CategoryPivot.Granularity granularity,
+      LocalDate startDate,
+      LocalDate endDate,
+      String filename,
+      String format) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      CategoryPivot pivot = buildPivot(currentUser().getWallet(), granularity, startDate, endDate);
+      if ("csv".equalsIgnoreCase(format)) {
+        dataStorage.exportPivotToCSV(pivot, filename);
+      } else if ("json".equalsIgnoreCase(format)) {
+        dataStorage.exportPivotToJSON(pivot, filename);
+      } else {
+        throw new FinanceException("Сводная таблица экспортируется в csv или json");
+      }
+    }
+  }
+
+  private static CategoryPivot buildPivot(
+      Wallet wallet,
+      CategoryPivot.Granularity granularity,
+      LocalDate startDate,
+      LocalDate endDate) {
+    try {
+      return wallet.pivot(granularity, startDate, endDate);
+    } catch (IllegalArgumentException e) {
+      throw new FinanceException(e.getMessage());
+    }
+  }
+
+  private void writePivot(
+      ReportWriter report, CategoryPivot pivot, LocalDate startDate, LocalDate endDate) {
+    report
+        .newline()
+        .line(WIDE_LINE)
+        .text("   СВОДНАЯ ТАБЛИЦА: категории / ")
+        .line(pivot.getGranularity().getPluralTitle());
+    if (startDate != null || endDate != null) {
+      report
+          .text("   Период: ")
+          .text(startDate != null ? startDate.format(DATE_FORMATTER) : "...")
+          .text(" - ")
+          .line(endDate != null ? endDate.format(DATE_FORMATTER) : "...");
+    }
+    report.line(WIDE_LINE);
+    if (pivot.getCategories().isEmpty()) {
+      report.line("ℹ️  Нет операций за период");
     } else {
-      wallet.getBudgets().values().stream()
-          .sorted(Comparator.comparing(b -> b.getCategory().getName()))
-          .forEach(
-              budget -> {
-                String statusIcon = budget.isExceeded() ? "🔴" : budget.isNearLimit() ? "🟡" : "🟢";
-                String statusText =
-                    budget.isExceeded()
-                        ? "ПРЕВЫШЕН"
-                        : budget.isNearLimit() ? "ПОЧТИ ИСЧЕРПАН" : "В НОРМЕ";
-                System.out.printf("%s %s [%s]\n", statusIcon, budget, statusText);
-              });
+      writePivotTable(report, pivot, true);
+      writePivotTable(report, pivot, false);
     }
-    System.out.println("══════════════════════════════════════════════");
+    report.line(WIDE_LINE).flush();
   }
 
-  public void addCategory(String name, String description) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    if (wallet.hasCategory(name)) {
-      throw new FinanceException("Категория уже существует");
+  // Строки - периоды, столбцы - категории с операциями нужного типа и итог
+  private void writePivotTable(ReportWriter report, CategoryPivot pivot, boolean income) {
+    List<Integer> columns = new ArrayList<>();
+    for (int c = 0; c < pivot.getCategories().size(); c++) {
+      if ((income ? pivot.getIncomeTotal(c) : pivot.getExpenseTotal(c)) > 0) {
+        columns.add(c);
+      }
+    }
+    if (columns.isEmpty()) {
+      return;
+    }
+    int labelWidth = 10;
+    for (int p = 0; p < pivot.getPeriods().size(); p++) {
+      labelWidth = Math.max(labelWidth, pivot.getPeriodLabel(p).length());
     }
-    wallet.addCategory(new Category(name, description));
-    addNotification("✅ Категория добавлена: " + name);
-    dataStorage.saveUsers(users);
+    ReportWriter.Layout.Builder builder = ReportWriter.layout().text("   ").left(labelWidth);
+    for (int c : columns) {
+      builder.text(" ").right(Math.max(12, pivot.getCategories().get(c).length()));
+    }
+    ReportWriter.Layout row = builder.text(" ").right(12).newline().build();
+
+    report.newline().line(income ? "📈 ДОХОДЫ:" : "📉 РАСХОДЫ:");
+    report.row(row).cell("");
+    for (int c : columns) {
+      report.cell(pivot.getCategories().get(c));
+    }
+    report.cell("Итого");
+    for (int p = 0; p < pivot.getPeriods().size(); p++) {
+      report.row(row).cell(pivot.getPeriodLabel(p));
+      for (int c : columns) {
+        report.moneyCell(income ? pivot.getIncome(c, p) : pivot.getExpense(c, p));
+      }
+      report.moneyCell(income ? pivot.getPeriodIncome(p) : pivot.getPeriodExpense(p));
+    }
+    report.row(row).cell("Итого");
+    double total = 0.0;
+    for (int c : columns) {
+      double categoryTotal = income ? pivot.getIncomeTotal(c) : pivot.getExpenseTotal(c);
+      total += categoryTotal;
+      report.moneyCell(categoryTotal);
+    }
+    report.moneyCell(total);
   }
 
-  public void editCategory(String oldName, String newName, String newDescription) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
+  /**
+   * Переносит операции старше keepMonths полных месяцев (текущий месяц не считается) в архив
+   * пользователя; итоги и отчеты не меняются.
+   */
+  public void archiveOperations(int keepMonths) {
+    if (keepMonths < 0) {
+      throw new FinanceException("Число месяцев не может быть отрицательным");
+    }
+    archiveOperations(LocalDate.now().withDayOfMonth(1).minusMonths(keepMonths));
+  }
 
-    if (!wallet.hasCategory(oldName)) {
-      throw new FinanceException("Категория не найдена: " + oldName);
+  /** Переносит операции раньше даты horizon в архив пользователя. */
+  public void archiveOperations(LocalDate horizon) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      int archived;
+      try {
+        archived =
+            wallet.archiveOperationsBefore(
+                horizon, dataStorage.archiveDirectory(currentUser().getLogin()));
+      } catch (IllegalArgumentException | IllegalStateException | UncheckedIOException e) {
+        throw new FinanceException("Ошибка архивации: " + e.getMessage());
+      }
+      if (archived == 0) {
+        addNotification("ℹ️  Нет операций раньше " + horizon.format(DATE_FORMATTER));
+        return;
+      }
+      addNotification(
+          "✅ В архив перенесено операций: "
+              + archived
+              + " (раньше "
+              + horizon.format(DATE_FORMATTER)
+              + ")");
+      registry.save();
     }
+  }
+
+  public void showArchive() {
+    showArchive(console());
+  }
+
+  public void showArchive(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      OperationArchive archive = wallet.getArchive();
+      ReportWriter report = report(out);
+      report.newline().line(LINE).line("            АРХИВ ОПЕРАЦИЙ").line(LINE);
+      if (archive == null) {
+        report.line("ℹ️  Операции не архивировались");
+      } else {
+        report
+            .text("📦 Операций в архиве: ")
+            .text(archive.getOperationCount())
+            .newline()
+            .text("📅 Раньше даты: ")
+            .line(archive.getHorizon().format(DATE_FORMATTER))
+            .text("🗂️  Сегментов: ")
+            .text(archive.getSegmentCount())
+            .text(", на диске ")
+            .text((archive.getStoredBytes() + 1023) / 1024)
+            .line(" КБ")
+            .text("💰 Доходы: ")
+            .money(archive.getTotalIncome())
+            .text(", расходы: ")
+            .money(archive.getTotalExpense())
+            .newline();
+      }
+      report.text("📋 Операций в памяти: ").text(wallet.getOperations().size()).newline();
+      report.line(LINE).flush();
+    }
+  }
+
+  public void showQuantiles(String category) {
+    showQuantiles(category, console());
+  }
+
+  /**
+   * Медиана, p90 и p99 размеров расходов текущего пользователя: по всем расходам, по категориям и
+   * по месяцам, или только по одной категории.
+   */
+  public void showQuantiles(String category, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (category != null && !wallet.hasCategory(category)) {
+        throw new FinanceException("Категория не найдена: " + category);
+      }
+      ExpenseDistribution distribution = wallet.getExpenseDistribution();
+      ReportWriter report = report(out);
+      report.newline().line(LINE).line("          КВАНТИЛИ РАЗМЕРОВ РАСХОДОВ").line(LINE);
+      if (category != null) {
+        QuantileSketch sketch = distribution.getCategory(category);
+        if (sketch == null) {
+          report.text("ℹ️  Расходов по категории нет: ").line(category);
+        } else {
+          writeQuantileHeader(report);
+          writeQuantileRow(report, wallet.getCategory(category).getName(), sketch);
+        }
+      } else {
+        writeDistribution(report, distribution);
+      }
+      report.line(LINE).text("ℹ️  Точность оценки: ±").text(quantileAccuracyPercent()).line("%");
+      report.flush();
+    }
+  }
+
+  public void showSystemQuantiles() {
+    showSystemQuantiles(console());
+  }
 
-    Category oldCategory = wallet.getCategory(oldName);
+  // 🔧 Эскизы кошельков объединяются без доступа к отдельным операциям пользователей
+  public void showSystemQuantiles(Writer out) {
+    checkAuth();
+    // Кошельки блокируются по одному, чтобы не нарушать порядок блокировок
+    ExpenseDistribution system = new ExpenseDistribution();
+    int userCount = 0;
+    for (User user : registry.getUsers()) {
+      try (UserRegistry.UserLock lock = registry.lock(user)) {
+        system.merge(user.getWallet().getExpenseDistribution());
+      }
+      userCount++;
+    }
+    ReportWriter report = report(out);
+    report.newline().line(LINE).line("     КВАНТИЛИ РАСХОДОВ ПО ВСЕМ ПОЛЬЗОВАТЕЛЯМ").line(LINE);
+    writeDistribution(report, system);
+    report.line(LINE).text("Пользователей: ").text(userCount).newline();
+    report.text("ℹ️  Точность оценки: ±").text(quantileAccuracyPercent()).line("%");
+    report.flush();
+  }
 
-    if (oldName.equalsIgnoreCase(newName)) {
-      // Только обновляем описание
-      oldCategory.setDescription(newDescription);
-      addNotification("✅ Категория обновлена: " + oldName);
-      dataStorage.saveUsers(users);
+  private void writeDistribution(ReportWriter report, ExpenseDistribution distribution) {
+    if (distribution.getOverall().isEmpty()) {
+      report.line("ℹ️  Расходов пока нет");
       return;
     }
+    writeQuantileHeader(report);
+    writeQuantileRow(report, "Все расходы", distribution.getOverall());
+    report.newline().line("📂 По категориям:");
+    distribution.getByCategory().entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(entry -> writeQuantileRow(report, entry.getKey(), entry.getValue()));
+    report.newline().line("📅 По месяцам:");
+    distribution
+        .getByMonth()
+        .forEach(
+            (month, sketch) -> writeQuantileRow(report, month.format(MONTH_FORMATTER), sketch));
+  }
+
+  private void writeQuantileHeader(ReportWriter report) {
+    report.row(QUANTILE_ROW).cell("").cell("Кол-во").cell("Медиана").cell("p90").cell("p99");
+  }
+
+  private void writeQuantileRow(ReportWriter report, String label, QuantileSketch sketch) {
+    report
+        .row(QUANTILE_ROW)
+        .cell(label)
+        .cell(String.valueOf(sketch.getCount()))
+        .moneyCell(sketch.quantile(0.5))
+        .moneyCell(sketch.quantile(0.9))
+        .moneyCell(sketch.quantile(0.99));
+  }
+
+  private static String quantileAccuracyPercent() {
+    return String.format("%.0f", QuantileSketch.RELATIVE_ACCURACY * 100);
+  }
+
+  public void showBudgets() {
+    showBudgets(console());
+  }
+
+  public void showBudgets(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      ReportWriter report = report(out);
+      report.newline().line(LINE).line("                 БЮДЖЕТЫ").line(LINE);
+      if (wallet.getBudgets().isEmpty()) {
+        report.line("ℹ️  Бюджеты не установлены");
+      } else {
+        writeBudgetRows(report, wallet, "");
+      }
+      report.line(LINE).flush();
+    }
+  }
+
+  // Суммы уже упорядочены рейтингом кошелька
+  private void writeCategoryRows(ReportWriter report, Map<String, Double> ranked) {
+    for (Map.Entry<String, Double> entry : ranked.entrySet()) {
+      report.row(CATEGORY_ROW).cell(entry.getKey()).moneyCell(entry.getValue());
+    }
+  }
+
+  private void writeBudgetRows(ReportWriter report, Wallet wallet, String indent) {
+    wallet.getBudgets().values().stream()
+        .sorted(Comparator.comparing(b -> b.getCategory().getName()))
+        .forEach(
+            budget -> {
+              String statusIcon = budget.isExceeded() ? "🔴" : budget.isNearLimit() ? "🟡" : "🟢";
+              String statusText =
+                  budget.isExceeded()
+                      ? "ПРЕВЫШЕН"
+                      : budget.isNearLimit() ? "ПОЧТИ ИСЧЕРПАН" : "В НОРМЕ";
+              report
+                  .text(indent)
+                  .text(statusIcon)
+                  .text(" ")
+                  .text(budget.toString())
+                  .text(" [")
+                  .text(statusText)
+                  .line("]");
+            });
+  }
+
+  private ReportWriter report(Writer out) {
+    return reportWriter.reset(out);
+  }
 
-    // Проверяем, не существует ли уже категория с новым именем
-    if (wallet.hasCategory(newName)) {
-      throw new FinanceException("Категория с именем '" + newName + "' уже существует");
+  // Отчет строится заново, только если кошелек изменился с прошлого показа с теми же параметрами
+  private void writeCached(Writer out, Wallet wallet, String key, Consumer<ReportWriter> render) {
+    String text =
+        wallet.cachedReport(
+            key,
+            () -> {
+              StringWriter buffer = new StringWriter();
+              render.accept(report(buffer));
+              return buffer.toString();
+            });
+    report(out).text(text).flush();
+  }
+
+  public void addCategory(String name, String description) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      if (wallet.hasCategory(name)) {
+        throw new FinanceException("Категория уже существует");
+      }
+      wallet.addCategory(new Category(name, description));
+      addNotification("✅ Категория добавлена: " + name);
+      registry.save();
     }
+  }
+
+  public void editCategory(String oldName, String newName, String newDescription) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+
+      if (!wallet.hasCategory(oldName)) {
+        throw new FinanceException("Категория не найдена: " + oldName);
+      }
+
+      Category oldCategory = wallet.getCategory(oldName);
+
+      if (oldName.equalsIgnoreCase(newName)) {
+        // Только обновляем описание
+        oldCategory.setDescription(newDescription);
+        wallet.markModified();
+        addNotification("✅ Категория обновлена: " + oldName);
+        registry.save();
+        return;
+      }
+
+      // Проверяем, не существует ли уже категория с новым именем
+      if (wallet.hasCategory(newName)) {
+        throw new FinanceException("Категория с именем '" + newName + "' уже существует");
+      }
+
+      // Создаем новую категорию
+      Category newCategory = new Category(newName, newDescription);
+      wallet.addCategory(newCategory);
 
-    // Создаем новую категорию
-    Category newCategory = new Category(newName, newDescription);
-    wallet.addCategory(newCategory);
+      // Изменяем категорию во всех операциях (без пересоздания операций!)
+      for (Operation op : wallet.getOperations()) {
+        if (op.getCategory().equals(oldCategory)) {
+          op.setCategory(newCategory);
+        }
+      }
 
-    // Изменяем категорию во всех операциях (без пересоздания операций!)
-    for (Operation op : wallet.getOperations()) {
-      if (op.getCategory().equals(oldCategory)) {
-        op.setCategory(newCategory);
+      // Переносим бюджет
+      Budget oldBudget = wallet.getBudget(oldName);
+      if (oldBudget != null) {
+        wallet.removeBudget(oldName);
+        wallet.setBudget(newName, oldBudget.getLimit());
+        double spent = oldBudget.getSpent();
+        if (spent > 0) {
+          wallet.getBudget(newName).addExpense(spent);
+        }
       }
+
+      // Удаляем старую категорию; архивные операции получат новое название при чтении
+      wallet.removeCategory(oldName);
+      wallet.renameArchivedCategory(oldCategory.getName(), newName);
+      wallet.recalculateAggregates();
+
+      addNotification("✅ Категория обновлена: " + newName);
+      registry.save();
     }
+  }
 
-    // Переносим бюджет
-    Budget oldBudget = wallet.getBudget(oldName);
-    if (oldBudget != null) {
-      wallet.removeBudget(oldName);
-      wallet.setBudget(newName, oldBudget.getLimit());
-      double spent = oldBudget.getSpent();
-      if (spent > 0) {
-        wallet.getBudget(newName).addExpense(spent);
+  public void addAlertRule(
+      String metricCode,
+      String conditionSymbol,
+      double threshold,
+      String category,
+      String message) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      AlertRule rule;
+      try {
+        AlertRule.Metric metric = AlertRule.Metric.fromCode(metricCode);
+        AlertRule.Condition condition = AlertRule.Condition.fromSymbol(conditionSymbol);
+        rule =
+            wallet.addAlertRule(
+                new AlertRule(
+                    metric, condition, threshold, Double.POSITIVE_INFINITY, category, message));
+      } catch (IllegalArgumentException e) {
+        throw new FinanceException(e.getMessage());
       }
+      addNotification("✅ Правило оповещения добавлено: " + rule);
+      registry.save();
     }
+  }
 
-    // Удаляем старую категорию
-    wallet.removeCategory(oldName);
+  public void removeAlertRule(long ruleId) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      if (!currentUser().getWallet().removeAlertRule(ruleId)) {
+        throw new FinanceException("Правило оповещения не найдено: " + ruleId);
+      }
+      addNotification("✅ Правило оповещения удалено: #" + ruleId);
+      registry.save();
+    }
+  }
 
-    addNotification("✅ Категория обновлена: " + newName);
-    dataStorage.saveUsers(users);
+  public void showAlertRules() {
+    showAlertRules(console());
+  }
+
+  public void showAlertRules(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      List<AlertRule> rules = currentUser().getWallet().getAlertRules().getRules();
+      ReportWriter report = report(out);
+      report.newline().line(LINE).line("           ПРАВИЛА ОПОВЕЩЕНИЙ").line(LINE);
+      if (rules.isEmpty()) {
+        report.line("ℹ️  Правила не заданы");
+      } else {
+        for (AlertRule rule : rules) {
+          report.row(ALERT_RULE_ROW).cell("#" + rule.getId()).cell(rule.describe());
+        }
+      }
+      report.line(LINE).flush();
+    }
   }
 
   public void exportToFile(String filename, String format) {
-    checkAuth();
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      if ("csv".equalsIgnoreCase(format)) {
+        dataStorage.exportToCSV(currentUser().getWallet(), filename);
+        dataStorage.exportBudgetsToCSV(currentUser().getWallet(), filename);
+      } else if ("json".equalsIgnoreCase(format)) {
+        dataStorage.exportToJSON(currentUser().getWallet(), filename);
+      } else {
+        dataStorage.exportWallet(currentUser().getWallet(), filename);
+      }
+    }
+  }
+
+  /**
+   * Импорт с заменой кошелька; с merge операции файла добавляются к текущим, а повторы уже
+   * имеющихся операций пропускаются. Формат csv (выгрузка export csv) всегда добавляет операции.
+   */
+  public void importFromFile(String filename, String format, boolean merge) {
     if ("csv".equalsIgnoreCase(format)) {
-      dataStorage.exportToCSV(currentUser.getWallet(), filename);
-      dataStorage.exportBudgetsToCSV(currentUser.getWallet(), filename);
-    } else if ("json".equalsIgnoreCase(format)) {
-      dataStorage.exportToJSON(currentUser.getWallet(), filename);
+      List<Operation> operations;
+      try {
+        operations = dataStorage.readOperationsCSV(filename);
+      } catch (IOException | IllegalArgumentException e) {
+        throw new FinanceException("Ошибка при импорте: " + e.getMessage());
+      }
+      importOperations(operations);
+    } else if (merge) {
+      Wallet imported;
+      try {
+        imported =
+            "json".equalsIgnoreCase(format)
+                ? dataStorage.importFromJSON(filename)
+                : dataStorage.importWallet(filename);
+      } catch (Exception e) {
+        throw new FinanceException("Ошибка при импорте: " + e.getMessage());
+      }
+      checkArchiveOwner(imported);
+      importOperations(imported.getAllOperations());
     } else {
-      dataStorage.exportWallet(currentUser.getWallet(), filename);
+      importFromFile(filename, format);
+    }
+  }
+
+  // Старые бинарные выгрузки ссылаются на каталог архива владельца: чужой архив не подключается
+  private void checkArchiveOwner(Wallet imported) {
+    if (imported.getArchive() != null
+        && !imported.isArchivedIn(dataStorage.archiveDirectory(currentUser().getLogin()))) {
+      throw new FinanceException("Файл ссылается на архив операций другого пользователя");
+    }
+  }
+
+  /**
+   * Добавляет операции в кошелек текущего пользователя, пропуская повторы: операции с тем же
+   * отпечатком уже в кошельке или ранее в этом же списке. Категории подбираются по имени и
+   * создаются при необходимости; правила оповещений проверяются и данные сохраняются один раз.
+   *
+   * @return число добавленных операций
+   */
+  public int importOperations(List<Operation> operations) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      int added = 0;
+      wallet.beginBatch();
+      try {
+        for (Operation operation : operations) {
+          String categoryName = operation.getCategory().getName();
+          if (!wallet.hasCategory(categoryName)) {
+            wallet.addCategory(
+                new Category(categoryName, operation.getCategory().getDescription()));
+          }
+          operation.setCategory(wallet.getCategory(categoryName));
+          if (wallet.addOperationIfAbsent(operation)) {
+            added++;
+          }
+        }
+      } finally {
+        wallet.endBatch();
+      }
+      if (added > 0) {
+        registry.save();
+      }
+      addNotification(
+          "✅ Импортировано операций: "
+              + added
+              + ", пропущено повторов: "
+              + (operations.size() - added));
+      return added;
     }
   }
 
   public void importFromFile(String filename, String format) {
-    checkAuth();
-    try {
-      String fullPath = filename;
-      if (!filename.startsWith("exports/") && !new File(filename).exists()) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      try {
+        String fullPath = filename;
+        if (!filename.startsWith("exports/") && !new File(filename).exists()) {
+          if ("json".equalsIgnoreCase(format)) {
+            fullPath = "exports/" + (filename.endsWith(".json") ? filename : filename + ".json");
+          } else {
+            fullPath = "exports/" + (filename.endsWith(".dat") ? filename : filename + ".dat");
+          }
+        }
+        Wallet importedWallet;
         if ("json".equalsIgnoreCase(format)) {
-          fullPath = "exports/" + (filename.endsWith(".json") ? filename : filename + ".json");
+          importedWallet = dataStorage.importFromJSON(fullPath);
         } else {
-          fullPath = "exports/" + (filename.endsWith(".dat") ? filename : filename + ".dat");
+          importedWallet = dataStorage.importWallet(fullPath);
         }
+        checkArchiveOwner(importedWallet);
+        importedWallet.copyJournalMarks(currentUser().getWallet());
+        currentUser().setWallet(importedWallet);
+        addNotification("✅ Данные успешно импортированы из файла: " + fullPath);
+        registry.save();
+      } catch (Exception e) {
+        throw new FinanceException("Ошибка при импорте: " + e.getMessage());
       }
-      Wallet importedWallet;
-      if ("json".equalsIgnoreCase(format)) {
-        importedWallet = dataStorage.importFromJSON(fullPath);
+    }
+  }
+
+  public void showOperations(LocalDate startDate, LocalDate endDate, String category) {
+    showOperations(startDate, endDate, category, console());
+  }
+
+  public void showOperations(LocalDate startDate, LocalDate endDate, String category, Writer out) {
+    showOperations(
+        buildQuery(OperationQuery.builder().between(startDate, endDate).category(category)), out);
+  }
+
+  public void showOperations(
+      LocalDate startDate, LocalDate endDate, String category, int page, int pageSize) {
+    showOperations(startDate, endDate, category, page, pageSize, console());
+  }
+
+  // 🔧 Постраничный вывод: берется только нужный участок ленты, без сортировки всех операций
+  public void showOperations(
+      LocalDate startDate, LocalDate endDate, String category, int page, int pageSize, Writer out) {
+    if (page < 1 || pageSize < 1) {
+      throw new FinanceException("Номер страницы и размер страницы должны быть положительными");
+    }
+    showOperations(
+        buildQuery(
+            OperationQuery.builder()
+                .between(startDate, endDate)
+                .category(category)
+                .offset((int) Math.min((long) (page - 1) * pageSize, Integer.MAX_VALUE))
+                .limit(pageSize)),
+        out);
+  }
+
+  private static OperationQuery buildQuery(OperationQuery.Builder builder) {
+    try {
+      return builder.build();
+    } catch (IllegalArgumentException e) {
+      throw new FinanceException(e.getMessage());
+    }
+  }
+
+  public void showOperations(OperationQuery query) {
+    showOperations(query, console());
+  }
+
+  public void showOperations(OperationQuery query, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      OperationQueryResult result = wallet.query(query);
+      ReportWriter report = report(out);
+      report.newline().line(LINE).line("               ОПЕРАЦИИ");
+      writeQueryConditions(report, wallet, query);
+      report.line(LINE);
+      if (result.getOperations().isEmpty()) {
+        report.line("ℹ️  Операции не найдены");
       } else {
-        importedWallet = dataStorage.importWallet(fullPath);
+        for (Operation op : result.getOperations()) {
+          writeOperationRow(report, op);
+        }
       }
-      currentUser.setWallet(importedWallet);
-      addNotification("✅ Данные успешно импортированы из файла: " + fullPath);
-      dataStorage.saveUsers(users);
-    } catch (Exception e) {
-      throw new FinanceException("Ошибка при импорте: " + e.getMessage());
+      report.line(LINE).text("Всего операций: ").text(result.getTotalCount()).newline();
+      if (query.getLimit() != Integer.MAX_VALUE) {
+        long pages = ((long) result.getTotalCount() + query.getLimit() - 1) / query.getLimit();
+        report
+            .text("Страница ")
+            .text(query.getOffset() / query.getLimit() + 1)
+            .text(" из ")
+            .text(Math.max(pages, 1))
+            .text(" (по ")
+            .text(query.getLimit())
+            .line(" на странице)");
+      }
+      report.flush();
     }
   }
 
-  public void showOperations(LocalDate startDate, LocalDate endDate, String category) {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    List<Operation> operations;
-    if (startDate != null && endDate != null) {
-      operations = wallet.getOperationsByPeriod(startDate, endDate);
-    } else {
-      operations = wallet.getOperations();
+  private void writeQueryConditions(ReportWriter report, Wallet wallet, OperationQuery query) {
+    if (query.getStartDate() != null && query.getEndDate() != null) {
+      report
+          .text("За период: ")
+          .text(query.getStartDate().format(DATE_FORMATTER))
+          .text(" - ")
+          .line(query.getEndDate().format(DATE_FORMATTER));
+    } else if (query.getStartDate() != null) {
+      report.text("Начиная с: ").line(query.getStartDate().format(DATE_FORMATTER));
+    } else if (query.getEndDate() != null) {
+      report.text("По: ").line(query.getEndDate().format(DATE_FORMATTER));
     }
-    if (category != null && !category.isEmpty()) {
-      operations =
-          operations.stream()
-              .filter(op -> op.getCategory().getName().equalsIgnoreCase(category))
-              .toList();
+    if (!query.getCategories().isEmpty()) {
+      StringJoiner names = new StringJoiner(", ");
+      for (String key : query.getCategories()) {
+        Category category = wallet.getCategory(key);
+        names.add(category != null ? category.getName() : key);
+      }
+      report
+          .text(query.getCategories().size() > 1 ? "Категории: " : "Категория: ")
+          .line(names.toString());
     }
-    System.out.println("\n══════════════════════════════════════════════");
-    System.out.println("               ОПЕРАЦИИ");
-    if (startDate != null && endDate != null) {
-      System.out.println(
-          "За период: "
-              + startDate.format(DATE_FORMATTER)
-              + " - "
-              + endDate.format(DATE_FORMATTER));
-    }
-    if (category != null && !category.isEmpty()) {
-      System.out.println("Категория: " + category);
-    }
-    System.out.println("══════════════════════════════════════════════");
-    if (operations.isEmpty()) {
-      System.out.println("ℹ️  Операции не найдены");
-    } else {
-      operations.stream()
-          .sorted((a, b) -> b.getDateTime().compareTo(a.getDateTime()))
-          .forEach(
-              op -> {
-                String type = op instanceof Income ? "📈 ДОХОД" : "📉 РАСХОД";
-                System.out.printf(
-                    "%s: %-15s %10s - %s\n",
-                    type,
-                    op.getCategory().getName(),
-                    wallet.formatCurrency(op.getAmount()),
-                    op.getDescription());
-              });
+    if (query.getType() != null) {
+      report.line(query.getType() == OperationQuery.Type.INCOME ? "Тип: доходы" : "Тип: расходы");
+    }
+    if (query.hasAmountRange()) {
+      report.text("Сумма:");
+      if (query.getMinAmount() > Double.NEGATIVE_INFINITY) {
+        report.text(" от ").money(query.getMinAmount());
+      }
+      if (query.getMaxAmount() < Double.POSITIVE_INFINITY) {
+        report.text(" до ").money(query.getMaxAmount());
+      }
+      report.newline();
     }
-    System.out.println("══════════════════════════════════════════════");
-    System.out.println("Всего операций: " + operations.size());
+    if (query.getText() != null) {
+      report.text("Описание: ").line(query.getText());
+    }
+  }
+
+  public void searchOperations(String query) {
+    searchOperations(query, console());
+  }
+
+  public void searchOperations(String query, Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      if (query == null || query.trim().isEmpty()) {
+        throw new FinanceException("Введите слова для поиска");
+      }
+      List<Operation> found = currentUser().getWallet().searchOperations(query);
+      ReportWriter report = report(out);
+      report
+          .newline()
+          .line(LINE)
+          .line("               ПОИСК ОПЕРАЦИЙ")
+          .text("Запрос: ")
+          .line(query.trim());
+      report.line(LINE);
+      if (found.isEmpty()) {
+        report.line("ℹ️  Операции не найдены");
+      } else {
+        for (Operation op : found) {
+          writeOperationRow(report, op);
+        }
+      }
+      report.line(LINE).text("Найдено операций: ").text(found.size()).newline().flush();
+    }
+  }
+
+  private void writeOperationRow(ReportWriter report, Operation op) {
+    report
+        .row(OPERATION_ROW)
+        .cell(op instanceof Income ? "📈 ДОХОД" : "📉 РАСХОД")
+        .cell(op.getCategory().getName())
+        .moneyCell(op.getAmount())
+        .cell(op.getDescription());
   }
 
   public void showDetailedReport() {
-    checkAuth();
-    Wallet wallet = currentUser.getWallet();
-    System.out.println("\n══════════════════════════════════════════════════════════════");
-    System.out.println("               ДЕТАЛЬНЫЙ ОТЧЕТ");
-    System.out.println("══════════════════════════════════════════════════════════════");
-    System.out.println("\n📊 ОБЩАЯ ИНФОРМАЦИЯ:");
-    System.out.printf("   Баланс: %s\n", wallet.getFormattedBalance());
-    System.out.printf("   Всего доходов: %s\n", wallet.getFormattedTotalIncome());
-    System.out.printf("   Всего расходов: %s\n", wallet.getFormattedTotalExpense());
-    System.out.printf("   Всего операций: %d\n", wallet.getOperations().size());
-    Map<String, Double> expenses = wallet.getExpenseByCategories();
+    showDetailedReport(console());
+  }
+
+  public void showDetailedReport(Writer out) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      Wallet wallet = currentUser().getWallet();
+      writeCached(out, wallet, "detailed", report -> writeDetailedReport(report, wallet));
+    }
+  }
+
+  private void writeDetailedReport(ReportWriter report, Wallet wallet) {
+    report.newline().line(WIDE_LINE).line("               ДЕТАЛЬНЫЙ ОТЧЕТ").line(WIDE_LINE);
+    report.newline().line("📊 ОБЩАЯ ИНФОРМАЦИЯ:");
+    report.text("   Баланс: ").money(wallet.getBalance()).newline();
+    report.text("   Всего доходов: ").money(wallet.getTotalIncome()).newline();
+    report.text("   Всего расходов: ").money(wallet.getTotalExpense()).newline();
+    report.text("   Всего операций: ").text(wallet.getOperationCount()).newline();
+    Map<String, Double> expenses = wallet.getTopExpenseCategories(5);
     if (!expenses.isEmpty()) {
-      System.out.println("\n📉 ТОП-5 КАТЕГОРИЙ ПО РАСХОДАМ:");
-      expenses.entrySet().stream()
-          .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-          .limit(5)
-          .forEach(
-              entry ->
-                  System.out.printf(
-                      "   %-20s %15s\n", entry.getKey(), wallet.formatCurrency(entry.getValue())));
+      report.newline().line("📉 ТОП-5 КАТЕГОРИЙ ПО РАСХОДАМ:");
+      writeCategoryRows(report, expenses);
     }
     if (!wallet.getBudgets().isEmpty()) {
-      System.out.println("\n🎯 СТАТУС БЮДЖЕТОВ:");
+      report.newline().line("🎯 СТАТУС БЮДЖЕТОВ:");
       wallet.getBudgets().values().stream()
           .sorted(Comparator.comparing(Budget::getUsagePercentage).reversed())
           .forEach(
@@ -476,31 +1536,58 @@ public class FinanceManager {
                     budget.isExceeded()
                         ? "🔴 ПРЕВЫШЕН"
                         : budget.isNearLimit() ? "🟡 ВНИМАНИЕ" : "🟢 НОРМА";
-                System.out.printf(
-                    "   %-20s %6.0f%% %s\n",
-                    budget.getCategory().getName(), budget.getUsagePercentage(), status);
+                report
+                    .row(BUDGET_STATUS_ROW)
+                    .cell(budget.getCategory().getName())
+                    .cell(String.format("%.0f", budget.getUsagePercentage()))
+                    .cell(status);
               });
     }
-    System.out.println("\n❤️  ФИНАНСОВОЕ ЗДОРОВЬЕ:");
+    report.newline().line("❤️  ФИНАНСОВОЕ ЗДОРОВЬЕ:");
     double expenseRatio =
         wallet.getTotalIncome() > 0
             ? (wallet.getTotalExpense() / wallet.getTotalIncome()) * 100
             : 0;
-    System.out.printf("   Соотношение расходов к доходам: %.1f%%\n", expenseRatio);
+    report
+        .text("   Соотношение расходов к доходам: ")
+        .text(String.format("%.1f", expenseRatio))
+        .line("%");
     if (expenseRatio > 80) {
-      System.out.println("   ⚠️  Высокий уровень расходов (более 80% от доходов)");
+      report.line("   ⚠️  Высокий уровень расходов (более 80% от доходов)");
     } else if (expenseRatio < 50) {
-      System.out.println("   ✅ Хороший уровень сбережений");
+      report.line("   ✅ Хороший уровень сбережений");
+    }
+    report.line(WIDE_LINE).flush();
+  }
+
+  public void saveDetailedReport(String filename) {
+    try (UserRegistry.UserLock lock = lockCurrentUser()) {
+      String path = dataStorage.prepareReportPath(filename);
+      try (Writer out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+        showDetailedReport(out);
+      } catch (IOException e) {
+        throw new FinanceException("Ошибка при сохранении отчета: " + e.getMessage(), e);
+      }
+      addNotification("✅ Отчет сохранен в файл: " + path);
     }
-    System.out.println("══════════════════════════════════════════════════════════════");
   }
 
   private void checkAuth() {
-    if (currentUser == null) {
+    if (session == null || !session.isOpen()) {
       throw new FinanceException("Требуется авторизация. Используйте команду 'login'");
     }
   }
 
+  private User currentUser() {
+    return session.getUser();
+  }
+
+  // Все операции с кошельком текущего пользователя выполняются под его блокировкой
+  private UserRegistry.UserLock lockCurrentUser() {
+    checkAuth();
+    return registry.lock(currentUser());
+  }
+
   public LocalDate parseDate(String dateStr) {
     try {
       return LocalDate.parse(dateStr, DATE_FORMATTER);
@@ -510,10 +1597,28 @@ public class FinanceManager {
   }
 
   public User getCurrentUser() {
-    return currentUser;
+    return session != null ? session.getUser() : null;
+  }
+
+  /** Текущий сеанс или null, если вход не выполнен. */
+  public Session getSession() {
+    return session;
+  }
+
+  public UserRegistry getRegistry() {
+    return registry;
+  }
+
+  /** Направляет отчеты без явного Writer в указанный поток (null - снова в System.out). */
+  public void setConsole(Writer console) {
+    this.console = console;
+  }
+
+  private Writer console() {
+    return console != null ? console : ReportWriter.console();
   }
 
   public boolean isAuthenticated() {
-    return currentUser != null;
+    return session != null && session.isOpen();
   }
 }
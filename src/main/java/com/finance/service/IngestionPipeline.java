@@ -0,0 +1,468 @@
+package com.finance.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.finance.core.Category;
+import com.finance.core.Expense;
+import com.finance.core.Income;
+import com.finance.core.Operation;
+import com.finance.core.User;
+import com.finance.core.Wallet;
+import com.finance.exception.FinanceException;
+
+/**
+ * Прием потока операций через кольцевой буфер. Производители записывают операции в заранее
+ * созданные ячейки буфера, а четыре потока-этапа проходят по ним друг за другом: проверка, запись в
+ * кошельки, сохранение, передача результатов слушателю. Каждый этап берет сразу все ячейки, готовые
+ * после предыдущего этапа: запись идет по пользователям с одной проверкой правил оповещений на
+ * пользователя ({@link Wallet#beginBatch}), сохранение - одно на пачку.
+ *
+ * <p>Ячейка освобождается, когда результат передан слушателю, поэтому при медленном сохранении
+ * буфер заполняется, и производители ждут свободной ячейки ({@link Overflow#BLOCK}) или получают
+ * отказ ({@link Overflow#REJECT}). Как этапы и производители ждут работы - задает {@link
+ * WaitStrategy}.
+ */
+public final class IngestionPipeline implements AutoCloseable {
+  /** Что делать производителю, если буфер заполнен. */
+  public enum Overflow {
+    /** Ждать освобождения ячейки. */
+    BLOCK,
+    /** Отказать: {@link #publish} бросает FinanceException. */
+    REJECT
+  }
+
+  /** Ожидание этапа, которому нечего делать, и производителя, которому некуда писать. */
+  public enum WaitStrategy {
+    /** Постоянная проверка: наименьшая задержка, занимает ядро целиком. */
+    BUSY_SPIN,
+    /** Проверка, затем уступка процессора другим потокам. */
+    YIELDING,
+    /** Проверка, уступка, затем короткий сон: почти не занимает процессор в простое. */
+    SLEEPING;
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 200;
+
+    void idle(int attempt) {
+      if (this == BUSY_SPIN || attempt < SPINS) {
+        Thread.onSpinWait();
+      } else if (this == YIELDING || attempt < SPINS + YIELDS) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+      }
+    }
+  }
+
+  /** Получатель результатов; вызывается из потока последнего этапа в порядке публикации. */
+  @FunctionalInterface
+  public interface Listener {
+    void onProcessed(Entry entry);
+  }
+
+  /**
+   * Ячейка буфера. Передается слушателю только на время вызова: после него ячейка используется
+   * повторно.
+   */
+  public static final class Entry {
+    private long sequence;
+    private String login;
+    private boolean income;
+    private String categoryName;
+    private double amount;
+    private String description;
+    private String sourceId;
+    private User user;
+    private Operation operation;
+    private String error;
+    private boolean duplicate;
+    private List<String> notifications = Collections.emptyList();
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    public String getLogin() {
+      return login;
+    }
+
+    public boolean isIncome() {
+      return income;
+    }
+
+    public double getAmount() {
+      return amount;
+    }
+
+    /** Записанная операция или null, если операция отклонена. */
+    public Operation getOperation() {
+      return operation;
+    }
+
+    /** Причина отказа или null. */
+    public String getError() {
+      return error;
+    }
+
+    /** Операция отклонена как повтор уже записанной. */
+    public boolean isDuplicate() {
+      return duplicate;
+    }
+
+    /** Оповещения кошелька, возникшие в пачке; передаются с последней операцией пользователя. */
+    public List<String> getNotifications() {
+      return notifications;
+    }
+
+    private void clear() {
+      login = null;
+      categoryName = null;
+      description = null;
+      sourceId = null;
+      user = null;
+      operation = null;
+      error = null;
+      duplicate = false;
+      notifications = Collections.emptyList();
+    }
+  }
+
+  private final UserRegistry registry;
+  private final Listener listener;
+  private final Overflow overflow;
+  private final WaitStrategy waitStrategy;
+  private final Entry[] entries;
+  private final int mask;
+
+  // Номер следующей занимаемой ячейки и номера, уже опубликованные в каждой ячейке
+  private final AtomicLong claimed = new AtomicLong();
+  private final AtomicLongArray published;
+  // Сколько ячеек прошел каждый этап
+  private final AtomicLong validated = new AtomicLong();
+  private final AtomicLong applied = new AtomicLong();
+  private final AtomicLong persisted = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong saves = new AtomicLong();
+  private final List<Thread> stages = new ArrayList<>();
+  private volatile boolean running;
+
+  /**
+   * @param capacity размер буфера, степень двойки
+   */
+  public IngestionPipeline(
+      UserRegistry registry,
+      int capacity,
+      Overflow overflow,
+      WaitStrategy waitStrategy,
+      Listener listener) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Размер буфера должен быть степенью двойки");
+    }
+    this.registry = registry;
+    this.listener = listener;
+    this.overflow = overflow;
+    this.waitStrategy = waitStrategy;
+    this.entries = new Entry[capacity];
+    this.mask = capacity - 1;
+    this.published = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      entries[i] = new Entry();
+      published.set(i, -1);
+    }
+  }
+
+  /** Запускает потоки этапов. */
+  public synchronized void start() {
+    if (running) {
+      throw new IllegalStateException("Прием уже запущен");
+    }
+    running = true;
+    stages.add(stage("validate", this::published, validated, this::validate));
+    stages.add(stage("apply", validated::get, applied, this::apply));
+    stages.add(stage("persist", applied::get, persisted, this::persist));
+    stages.add(stage("deliver", persisted::get, delivered, this::deliver));
+    stages.forEach(Thread::start);
+  }
+
+  /**
+   * Публикует доход или расход; категория создается при первой операции. Возвращает номер операции
+   * в потоке. Если буфер заполнен, ждет или отказывает в зависимости от {@link Overflow}.
+   */
+  public long publish(
+      String login, boolean income, String categoryName, double amount, String description) {
+    return publish(login, income, categoryName, amount, description, null);
+  }
+
+  /**
+   * Публикация с идентификатором операции в источнике: повтор с тем же идентификатором (например,
+   * при повторном проигрывании потока) не записывается и передается слушателю как {@link
+   * Entry#isDuplicate()}. Защита от повторов работает только с идентификатором: операция без него
+   * записывается всегда.
+   */
+  public long publish(
+      String login,
+      boolean income,
+      String categoryName,
+      double amount,
+      String description,
+      String sourceId) {
+    if (!running) {
+      throw new IllegalStateException("Прием не запущен");
+    }
+    long sequence = claim();
+    Entry entry = entries[(int) sequence & mask];
+    entry.sequence = sequence;
+    entry.login = login;
+    entry.income = income;
+    entry.categoryName = categoryName;
+    entry.amount = amount;
+    entry.description = description == null ? "" : description;
+    entry.sourceId = sourceId;
+    published.set((int) sequence & mask, sequence);
+    return sequence;
+  }
+
+  private long claim() {
+    int attempt = 0;
+    while (true) {
+      long next = claimed.get();
+      if (next - entries.length >= delivered.get()) {
+        if (overflow == Overflow.REJECT) {
+          rejected.incrementAndGet();
+          throw new FinanceException("Очередь приема переполнена, повторите позже");
+        }
+        waitStrategy.idle(attempt++);
+      } else if (claimed.compareAndSet(next, next + 1)) {
+        return next;
+      }
+    }
+  }
+
+  // Граница первого этапа: ячейки, опубликованные подряд начиная с уже проверенных
+  private long published() {
+    long next = validated.get();
+    long limit = claimed.get();
+    while (next < limit && published.get((int) next & mask) == next) {
+      next++;
+    }
+    return next;
+  }
+
+  /** Ждет, пока все опубликованные на момент вызова операции будут переданы слушателю. */
+  public void flush() {
+    long target = claimed.get();
+    int attempt = 0;
+    while (delivered.get() < target) {
+      if (!running) {
+        throw new IllegalStateException("Прием остановлен");
+      }
+      WaitStrategy.SLEEPING.idle(attempt++);
+    }
+  }
+
+  /** Число операций, прошедших весь конвейер. */
+  public long getProcessedCount() {
+    return delivered.get();
+  }
+
+  /** Число отказов из-за заполненного буфера. */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * Число сбоев этапов и слушателя. Сбой не останавливает прием: пачка, на которой этап упал,
+   * проходит дальше.
+   */
+  public long getFailureCount() {
+    return failures.get();
+  }
+
+  /** Число сохранений файла данных. */
+  public long getSaveCount() {
+    return saves.get();
+  }
+
+  public int getCapacity() {
+    return entries.length;
+  }
+
+  /** Обрабатывает уже опубликованные операции и останавливает этапы. */
+  @Override
+  public synchronized void close() {
+    if (!running) {
+      return;
+    }
+    flush();
+    running = false;
+    for (Thread stage : stages) {
+      try {
+        stage.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    stages.clear();
+  }
+
+  @FunctionalInterface
+  private interface Barrier {
+    long available();
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    void handle(long from, long to);
+  }
+
+  // Этап обрабатывает пачкой все ячейки, готовые после предыдущего, и сдвигает свою границу
+  private Thread stage(String name, Barrier upstream, AtomicLong progress, Handler handler) {
+    Thread thread =
+        new Thread(
+            () -> {
+              int attempt = 0;
+              while (true) {
+                long from = progress.get();
+                long to = upstream.available();
+                if (from == to) {
+                  if (!running) {
+                    return;
+                  }
+                  waitStrategy.idle(attempt++);
+                  continue;
+                }
+                attempt = 0;
+                try {
+                  handler.handle(from, to);
+                } catch (RuntimeException e) {
+                  // Этап не останавливается: иначе буфер заполнится и производители встанут
+                  failures.incrementAndGet();
+                }
+                progress.set(to);
+              }
+            },
+            "finance-ingest-" + name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private void validate(long from, long to) {
+    for (long sequence = from; sequence < to; sequence++) {
+      Entry entry = entries[(int) sequence & mask];
+      if (!(entry.amount > 0) || Double.isInfinite(entry.amount)) {
+        entry.error = "Сумма должна быть положительной";
+      } else if (entry.categoryName == null || entry.categoryName.isBlank()) {
+        entry.error = "Название категории не может быть пустым";
+      } else {
+        entry.user = registry.find(entry.login);
+        if (entry.user == null) {
+          entry.error = "Пользователь не найден: " + entry.login;
+        }
+      }
+    }
+  }
+
+  // Операции пачки группируются по пользователям: одна блокировка и одна проверка правил на
+  // пользователя, порядок операций пользователя сохраняется
+  private void apply(long from, long to) {
+    Map<User, List<Entry>> byUser = new LinkedHashMap<>();
+    for (long sequence = from; sequence < to; sequence++) {
+      Entry entry = entries[(int) sequence & mask];
+      if (entry.error == null) {
+        byUser.computeIfAbsent(entry.user, u -> new ArrayList<>()).add(entry);
+      }
+    }
+    for (Map.Entry<User, List<Entry>> group : byUser.entrySet()) {
+      List<Entry> userEntries = group.getValue();
+      try (UserRegistry.UserLock lock = registry.lock(group.getKey())) {
+        applyGroup(group.getKey().getWallet(), userEntries);
+      } catch (RuntimeException e) {
+        for (Entry entry : userEntries) {
+          if (entry.operation == null && entry.error == null) {
+            entry.error = e.getMessage();
+          }
+        }
+      }
+    }
+  }
+
+  private static void applyGroup(Wallet wallet, List<Entry> userEntries) {
+    wallet.beginBatch();
+    try {
+      for (Entry entry : userEntries) {
+        applyEntry(wallet, entry);
+      }
+    } finally {
+      wallet.endBatch();
+    }
+    List<String> notifications = wallet.getAndClearNotifications();
+    if (!notifications.isEmpty()) {
+      userEntries.get(userEntries.size() - 1).notifications = notifications;
+    }
+  }
+
+  private static void applyEntry(Wallet wallet, Entry entry) {
+    try {
+      if (!wallet.hasCategory(entry.categoryName)) {
+        wallet.addCategory(new Category(entry.categoryName, ""));
+      }
+      Category category = wallet.getCategory(entry.categoryName);
+      Operation operation =
+          entry.income
+              ? new Income(entry.amount, category, entry.description)
+              : new Expense(entry.amount, category, entry.description);
+      if (entry.sourceId == null) {
+        wallet.addOperation(operation);
+        entry.operation = operation;
+        return;
+      }
+      operation.setSourceId(entry.sourceId);
+      if (wallet.addOperationIfAbsent(operation)) {
+        entry.operation = operation;
+      } else {
+        entry.duplicate = true;
+        entry.error = "Повтор операции " + entry.sourceId;
+      }
+    } catch (IllegalArgumentException e) {
+      entry.operation = null;
+      entry.error = e.getMessage();
+    }
+  }
+
+  private void persist(long from, long to) {
+    for (long sequence = from; sequence < to; sequence++) {
+      if (entries[(int) sequence & mask].operation != null) {
+        registry.save();
+        saves.incrementAndGet();
+        return;
+      }
+    }
+  }
+
+  private void deliver(long from, long to) {
+    for (long sequence = from; sequence < to; sequence++) {
+      Entry entry = entries[(int) sequence & mask];
+      try {
+        if (listener != null) {
+          listener.onProcessed(entry);
+        }
+      } catch (RuntimeException e) {
+        failures.incrementAndGet();
+      } finally {
+        entry.clear();
+      }
+    }
+  }
+}
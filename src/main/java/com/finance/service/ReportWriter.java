@@ -0,0 +1,244 @@
+package com.finance.service;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.finance.core.MoneyFormatter;
+
+/**
+ * Построитель текстовых отчетов. Строки собираются в переиспользуемый буфер по заранее
+ * скомпилированным макетам колонок и передаются в Writer крупными блоками, а не построчно через
+ * printf. Подходит как для вывода в терминал, так и для записи в файл.
+ */
+public class ReportWriter {
+  private static final int FLUSH_THRESHOLD = 8192;
+  private static final String NEWLINE = System.lineSeparator();
+  private static final String SPACES = " ".repeat(64);
+
+  private final StringBuilder buffer;
+  private final StringBuilder cell;
+  private final MoneyFormatter money;
+  private char[] chunk;
+  private Writer out;
+
+  // Текущая строка табличного макета
+  private Layout layout;
+  private int column;
+
+  public ReportWriter() {
+    this(MoneyFormatter.DEFAULT);
+  }
+
+  public ReportWriter(MoneyFormatter money) {
+    this.buffer = new StringBuilder(FLUSH_THRESHOLD * 2);
+    this.cell = new StringBuilder(64);
+    this.money = money;
+    this.chunk = new char[FLUSH_THRESHOLD * 2];
+  }
+
+  /** Writer поверх System.out; поток берется в момент вызова, чтобы учитывать System.setOut. */
+  public static Writer console() {
+    return new PrintStreamWriter(System.out);
+  }
+
+  /** Writer поверх указанного потока, например вывода сетевого сеанса. */
+  public static Writer console(PrintStream stream) {
+    return new PrintStreamWriter(stream);
+  }
+
+  /** Начинает новый отчет в указанный Writer, переиспользуя внутренние буферы. */
+  public ReportWriter reset(Writer target) {
+    this.out = target;
+    this.buffer.setLength(0);
+    this.layout = null;
+    return this;
+  }
+
+  public static Layout.Builder layout() {
+    return new Layout.Builder();
+  }
+
+  public ReportWriter text(CharSequence text) {
+    buffer.append(text);
+    return this;
+  }
+
+  public ReportWriter text(long value) {
+    buffer.append(value);
+    return this;
+  }
+
+  public ReportWriter money(double amount) {
+    money.formatTo(buffer, amount);
+    return this;
+  }
+
+  public ReportWriter line(CharSequence text) {
+    buffer.append(text);
+    return newline();
+  }
+
+  public ReportWriter newline() {
+    buffer.append(NEWLINE);
+    flushIfFull();
+    return this;
+  }
+
+  /** Начинает строку по макету; значения колонок передаются через cell/moneyCell. */
+  public ReportWriter row(Layout rowLayout) {
+    this.layout = rowLayout;
+    this.column = 0;
+    buffer.append(rowLayout.literals[0]);
+    return this;
+  }
+
+  public ReportWriter cell(CharSequence value) {
+    int width = layout.widths[column];
+    if (width < 0) {
+      buffer.append(value);
+      pad(-width - value.length());
+    } else {
+      pad(width - value.length());
+      buffer.append(value);
+    }
+    return nextColumn();
+  }
+
+  public ReportWriter moneyCell(double amount) {
+    cell.setLength(0);
+    money.formatTo(cell, amount);
+    return cell(cell);
+  }
+
+  private ReportWriter nextColumn() {
+    column++;
+    buffer.append(layout.literals[column]);
+    if (column == layout.widths.length) {
+      layout = null;
+      flushIfFull();
+    }
+    return this;
+  }
+
+  private void pad(int count) {
+    while (count > 0) {
+      int n = Math.min(count, SPACES.length());
+      buffer.append(SPACES, 0, n);
+      count -= n;
+    }
+  }
+
+  private void flushIfFull() {
+    if (buffer.length() >= FLUSH_THRESHOLD) {
+      drain();
+    }
+  }
+
+  private void drain() {
+    int length = buffer.length();
+    if (length == 0) {
+      return;
+    }
+    if (chunk.length < length) {
+      chunk = new char[length];
+    }
+    buffer.getChars(0, length, chunk, 0);
+    buffer.setLength(0);
+    try {
+      out.write(chunk, 0, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Передает накопленный текст в Writer и сбрасывает его. */
+  public void flush() {
+    drain();
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Скомпилированный макет строки: текстовые фрагменты между колонками и ширины колонок
+   * (отрицательная ширина - выравнивание по левому краю, как %-Ns в printf).
+   */
+  public static final class Layout {
+    private final String[] literals;
+    private final int[] widths;
+
+    private Layout(String[] literals, int[] widths) {
+      this.literals = literals;
+      this.widths = widths;
+    }
+
+    public static final class Builder {
+      private final List<String> literals = new ArrayList<>();
+      private final List<Integer> widths = new ArrayList<>();
+      private final StringBuilder pending = new StringBuilder();
+
+      public Builder text(String text) {
+        pending.append(text);
+        return this;
+      }
+
+      public Builder left(int width) {
+        return column(-width);
+      }
+
+      public Builder right(int width) {
+        return column(width);
+      }
+
+      public Builder newline() {
+        pending.append(NEWLINE);
+        return this;
+      }
+
+      private Builder column(int width) {
+        literals.add(pending.toString());
+        pending.setLength(0);
+        widths.add(width);
+        return this;
+      }
+
+      public Layout build() {
+        String[] literalArray = new String[literals.size() + 1];
+        literals.toArray(literalArray);
+        literalArray[literals.size()] = pending.toString();
+        int[] widthArray = widths.stream().mapToInt(Integer::intValue).toArray();
+        return new Layout(literalArray, widthArray);
+      }
+    }
+  }
+
+  // Пишет блоками в PrintStream, сохраняя его кодировку
+  private static final class PrintStreamWriter extends Writer {
+    private final PrintStream stream;
+
+    private PrintStreamWriter(PrintStream stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      stream.print(new String(cbuf, off, len));
+    }
+
+    @Override
+    public void flush() {
+      stream.flush();
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+}
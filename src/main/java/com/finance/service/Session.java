@@ -0,0 +1,53 @@
+package com.finance.service;
+
+import java.time.LocalDateTime;
+
+import com.finance.core.User;
+
+/**
+ * Сеанс вошедшего пользователя. Выдается {@link UserRegistry#openSession}; все операции {@link
+ * FinanceManager}, созданного для сеанса, выполняются от имени его пользователя. У одного
+ * пользователя может быть несколько открытых сеансов, кошелек у них общий.
+ */
+public final class Session {
+  private final String id;
+  private final User user;
+  private final LocalDateTime openedAt;
+  private volatile boolean open = true;
+
+  Session(String id, User user) {
+    this.id = id;
+    this.user = user;
+    this.openedAt = LocalDateTime.now();
+  }
+
+  /** Случайный идентификатор сеанса, по которому сеанс находится в {@link UserRegistry}. */
+  public String getId() {
+    return id;
+  }
+
+  public User getUser() {
+    return user;
+  }
+
+  public String getLogin() {
+    return user.getLogin();
+  }
+
+  public LocalDateTime getOpenedAt() {
+    return openedAt;
+  }
+
+  public boolean isOpen() {
+    return open;
+  }
+
+  void close() {
+    open = false;
+  }
+
+  @Override
+  public String toString() {
+    return "Session{login='" + user.getLogin() + "', openedAt=" + openedAt + '}';
+  }
+}
@@ -0,0 +1,288 @@
+package com.finance.service;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.finance.core.Transfer;
+import com.finance.core.TransferLedger;
+import com.finance.core.User;
+import com.finance.core.Wallet;
+import com.finance.exception.FinanceException;
+
+/**
+ * Общие для всех сеансов пользователи, открытые сеансы и хранилище. Один экземпляр обслуживает
+ * любое число {@link FinanceManager} в разных потоках.
+ *
+ * <p>Кошелек пользователя меняется и читается только под блокировкой пользователя ({@link #lock}).
+ * Блокировки разбиты на полосы по хешу логина: переводы между разными парами пользователей идут
+ * параллельно, а пересекающиеся выполняются по очереди. Полосы берутся в порядке номеров, поэтому
+ * встречные переводы не взаимоблокируются. Сохранение ждет завершения начатых операций и пишет
+ * согласованный снимок всех кошельков.
+ */
+public final class UserRegistry {
+  private static final SecureRandom RANDOM = new SecureRandom();
+  // Степень двойки: номер полосы - младшие биты хеша логина
+  private static final int LOCK_STRIPES = 64;
+
+  private final Map<String, User> users = new ConcurrentHashMap<>();
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+  // Операции с кошельками держат блокировку чтения, сохранение - блокировку записи
+  private final ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
+  // Операция потока изменила кошельки: сохранить при снятии внешней блокировки
+  private final ThreadLocal<Boolean> changed = ThreadLocal.withInitial(() -> false);
+  private final AuthService authService = new AuthService();
+  private final DataStorage dataStorage;
+  private volatile DeferredSettlement settlement;
+
+  public UserRegistry(DataStorage dataStorage) {
+    this.dataStorage = dataStorage;
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+    Map<String, User> loaded = dataStorage.loadUsers();
+    if (loaded != null) {
+      users.putAll(loaded);
+    }
+    if (dataStorage.hasTransferLedger()) {
+      recoverTransfers(dataStorage.getTransferLedger());
+    }
+    // Непроведенные отложенные переводы прошлого запуска сразу входят в резерв отправителей
+    if (dataStorage.hasSettlementLog()) {
+      getSettlement();
+    }
+  }
+
+  /**
+   * Журнал переводов пишется раньше кошельков. Если процесс остановился между записью журнала и
+   * сохранением кошельков, в сохраненном кошельке отметка последнего перевода ({@link
+   * Wallet#getLastTransferId()}) меньше номера перевода в журнале. Такие переводы проводятся заново
+   * в порядке журнала.
+   *
+   * <p>Перевод {@link WalletActors}, списанный у отправителя, ожидает в его кошельке записи в
+   * журнал. Если перевод есть в журнале, списание повторно не проводится; если нет - процесс
+   * остановился до зачисления, и сумма возвращается отправителю.
+   */
+  private void recoverTransfers(TransferLedger ledger) {
+    boolean recovered = false;
+    Map<String, Set<Long>> logged = new HashMap<>();
+    for (User user : users.values()) {
+      // Кошельки из файлов до появления отметки сохранялись после журнала и содержат все переводы
+      if (!user.getWallet().isTransferMarked()) {
+        user.getWallet().setLastTransferId(ledger.size());
+        recovered = true;
+      }
+    }
+    for (long id = 1; id <= ledger.size(); id++) {
+      Transfer transfer = ledger.get(id);
+      logged
+          .computeIfAbsent(transfer.getFromUser(), l -> new HashSet<>())
+          .add(transfer.getFromOperationId());
+      User from = users.get(transfer.getFromUser());
+      if (from != null && from.getWallet().getLastTransferId() < id) {
+        Transfer pending = findPending(from.getWallet(), transfer);
+        if (pending != null) {
+          from.getWallet().removePendingTransfer(pending);
+        } else {
+          from.getWallet().addOperation(FinanceManager.transferExpense(transfer, from.getWallet()));
+        }
+        from.getWallet().setLastTransferId(id);
+        recovered = true;
+      }
+      User to = users.get(transfer.getToUser());
+      if (to != null && to.getWallet().getLastTransferId() < id) {
+        to.getWallet().addOperation(FinanceManager.transferIncome(transfer, to.getWallet()));
+        to.getWallet().setLastTransferId(id);
+        recovered = true;
+      }
+    }
+    for (User user : users.values()) {
+      Wallet wallet = user.getWallet();
+      Set<Long> sent = logged.getOrDefault(user.getLogin(), Collections.emptySet());
+      for (Transfer pending : new ArrayList<>(wallet.getPendingTransfers())) {
+        if (!sent.contains(pending.getFromOperationId())) {
+          wallet.addOperation(FinanceManager.transferRefund(pending, wallet));
+        }
+        wallet.removePendingTransfer(pending);
+        recovered = true;
+      }
+    }
+    if (recovered) {
+      save();
+    }
+  }
+
+  // Ожидающий перевод отправителя, записанный в журнал как transfer: тот же расход
+  private static Transfer findPending(Wallet wallet, Transfer transfer) {
+    for (Transfer pending : wallet.getPendingTransfers()) {
+      if (pending.getFromOperationId() == transfer.getFromOperationId()) {
+        return pending;
+      }
+    }
+    return null;
+  }
+
+  public DataStorage getDataStorage() {
+    return dataStorage;
+  }
+
+  public int size() {
+    return users.size();
+  }
+
+  /** Пользователь по логину или null. */
+  public User find(String login) {
+    return login != null ? users.get(login) : null;
+  }
+
+  public Collection<User> getUsers() {
+    return Collections.unmodifiableCollection(users.values());
+  }
+
+  /** Отложенные переводы и взаимозачет; журнал открывается при первом обращении. */
+  public DeferredSettlement getSettlement() {
+    DeferredSettlement current = settlement;
+    if (current == null) {
+      synchronized (this) {
+        if (settlement == null) {
+          settlement = new DeferredSettlement(this, dataStorage.getSettlementLog());
+        }
+        current = settlement;
+      }
+    }
+    return current;
+  }
+
+  /** Сумма отложенных переводов пользователя, еще не списанная с баланса. */
+  double getReserved(String login) {
+    DeferredSettlement current = settlement;
+    return current != null ? current.getReserved(login) : 0.0;
+  }
+
+  /** Регистрирует пользователя; из двух одновременных регистраций одного логина проходит одна. */
+  public User register(String login, String password) {
+    if (users.containsKey(login)) {
+      throw new FinanceException("Пользователь с таким логином уже существует");
+    }
+    if (!authService.validateCredentials(login, password)) {
+      throw new FinanceException("Некорректные логин или пароль");
+    }
+    User user = new User(login, password);
+    if (users.putIfAbsent(login, user) != null) {
+      throw new FinanceException("Пользователь с таким логином уже существует");
+    }
+    save();
+    return user;
+  }
+
+  /** Проверяет пароль и открывает новый сеанс пользователя. */
+  public Session openSession(String login, String password) {
+    User user = find(login);
+    if (user == null) {
+      throw new FinanceException("Пользователь не найден");
+    }
+    if (!user.authenticate(password)) {
+      throw new FinanceException("Неверный пароль");
+    }
+    byte[] token = new byte[16];
+    RANDOM.nextBytes(token);
+    Session session = new Session(HexFormat.of().formatHex(token), user);
+    sessions.put(session.getId(), session);
+    return session;
+  }
+
+  /** Открытый сеанс по идентификатору или null. */
+  public Session findSession(String id) {
+    return id != null ? sessions.get(id) : null;
+  }
+
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  public void closeSession(Session session) {
+    if (session != null && sessions.remove(session.getId(), session)) {
+      session.close();
+    }
+  }
+
+  /**
+   * Блокирует пользователей до закрытия возвращенной блокировки. Полосы пользователей берутся по
+   * возрастанию номера, каждая один раз, даже если на нее попали несколько пользователей.
+   * Блокировки повторно входимы: операция может вызывать другие операции того же пользователя.
+   */
+  public UserLock lock(User... lockedUsers) {
+    int[] order = new int[lockedUsers.length];
+    for (int i = 0; i < lockedUsers.length; i++) {
+      order[i] = stripeOf(lockedUsers[i].getLogin());
+    }
+    Arrays.sort(order);
+    int count = 0;
+    for (int i = 0; i < order.length; i++) {
+      if (i == 0 || order[i] != order[i - 1]) {
+        order[count++] = order[i];
+      }
+    }
+    storageLock.readLock().lock();
+    ReentrantLock[] locks = new ReentrantLock[count];
+    for (int i = 0; i < count; i++) {
+      locks[i] = stripes[order[i]];
+      locks[i].lock();
+    }
+    return new UserLock(locks);
+  }
+
+  static int stripeOf(String login) {
+    int hash = login.hashCode();
+    return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+  }
+
+  /**
+   * Сохраняет всех пользователей. Внутри {@link #lock} сохранение откладывается до снятия внешней
+   * блокировки потока.
+   */
+  public void save() {
+    if (storageLock.getReadHoldCount() > 0) {
+      changed.set(true);
+      return;
+    }
+    storageLock.writeLock().lock();
+    try {
+      dataStorage.saveUsers(users);
+    } finally {
+      storageLock.writeLock().unlock();
+    }
+  }
+
+  /** Блокировка пользователей на время операции; закрывается в try-with-resources. */
+  public final class UserLock implements AutoCloseable {
+    private final ReentrantLock[] locks;
+
+    private UserLock(ReentrantLock[] locks) {
+      this.locks = locks;
+    }
+
+    @Override
+    public void close() {
+      for (int i = locks.length - 1; i >= 0; i--) {
+        locks[i].unlock();
+      }
+      storageLock.readLock().unlock();
+      if (storageLock.getReadHoldCount() == 0 && changed.get()) {
+        changed.set(false);
+        save();
+      }
+    }
+  }
+}
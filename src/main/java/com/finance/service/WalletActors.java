@@ -0,0 +1,549 @@
+package com.finance.service;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.finance.core.Category;
+import com.finance.core.Expense;
+import com.finance.core.Income;
+import com.finance.core.Operation;
+import com.finance.core.Transfer;
+import com.finance.core.TransferLedger;
+import com.finance.core.User;
+import com.finance.core.Wallet;
+import com.finance.exception.FinanceException;
+
+/**
+ * Исполнение команд через акторов кошельков: у каждого пользователя свой актор с почтовым ящиком, и
+ * кошелек меняет только он. Актор выбирает из ящика до {@link #MAX_BATCH} команд и выполняет их
+ * пакетом: одна блокировка пользователя, одна проверка правил оповещений ({@link
+ * Wallet#beginBatch}) и один запрос на сохранение на пакет. Акторы разных пользователей работают
+ * параллельно в общем пуле.
+ *
+ * <p>Запросы на сохранение нескольких пакетов объединяются: пока идет одно сохранение, следующие
+ * пакеты копятся и сохраняются вместе. Результат команды становится доступен после сохранения ее
+ * пакета. Перевод выполняется в две фазы: актор отправителя проверяет баланс, списывает сумму и
+ * запоминает перевод как ожидающий; после сохранения списания актор получателя зачисляет ее и
+ * записывает перевод в журнал. Затем актор отправителя снимает перевод из ожидающих, а если
+ * зачисление или запись не удались - возвращает сумму. Переводы, прерванные сбоем процесса между
+ * фазами, завершает или возвращает {@link UserRegistry} при следующем запуске.
+ *
+ * <p>Блокировка пользователя на время пакета сохраняется, поэтому акторы совместимы с сеансами
+ * {@link FinanceManager}, которые меняют те же кошельки напрямую.
+ */
+public final class WalletActors implements AutoCloseable {
+  /** Наибольшее число команд одного актора в пакете. */
+  public static final int MAX_BATCH = 64;
+
+  private final UserRegistry registry;
+  private final ExecutorService pool;
+  private final Map<String, Actor> actors = new ConcurrentHashMap<>();
+
+  // Групповое сохранение: завершения пакетов, ждущие записи файла
+  private final Queue<Runnable> awaitingSave = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean saving = new AtomicBoolean();
+
+  private final AtomicLong messages = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong saves = new AtomicLong();
+  // Принятые, но еще не завершенные команды (включая вторые фазы переводов); ждет close()
+  private final AtomicLong outstanding = new AtomicLong();
+
+  public WalletActors(UserRegistry registry, int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Число потоков должно быть положительным");
+    }
+    this.registry = registry;
+    AtomicInteger created = new AtomicInteger();
+    this.pool =
+        Executors.newFixedThreadPool(
+            threads,
+            task -> {
+              Thread thread = new Thread(task, "finance-actor-" + created.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Выполняет команду над кошельком пользователя в его акторе. Команда меняет кошелек, поэтому ее
+   * пакет сохраняется; результат должен быть снимком, а не ссылкой на изменяемое состояние.
+   */
+  public <T> CompletableFuture<T> submit(String login, Function<Wallet, T> command) {
+    return send(login, command, true);
+  }
+
+  /** Команда только для чтения: пакет из таких команд не сохраняется. */
+  public <T> CompletableFuture<T> read(String login, Function<Wallet, T> query) {
+    return send(login, query, false);
+  }
+
+  public CompletableFuture<Operation> addIncome(
+      String login, String categoryName, double amount, String description) {
+    return submit(
+        login,
+        wallet -> {
+          Income income = new Income(amount, category(wallet, categoryName), description);
+          wallet.addOperation(income);
+          return income;
+        });
+  }
+
+  public CompletableFuture<Operation> addExpense(
+      String login, String categoryName, double amount, String description) {
+    return submit(
+        login,
+        wallet -> {
+          Expense expense = new Expense(amount, category(wallet, categoryName), description);
+          wallet.addOperation(expense);
+          return expense;
+        });
+  }
+
+  /**
+   * Перевод в две фазы: списание в акторе отправителя, затем зачисление в акторе получателя. Повтор
+   * с тем же ключом (в пределах отправителя) возвращает уже выполненный или выполняемый перевод.
+   */
+  public CompletableFuture<Transfer> transfer(
+      String fromLogin, String toLogin, double amount, String description, String key) {
+    if (fromLogin.equals(toLogin)) {
+      return failed("Нельзя перевести деньги самому себе");
+    }
+    if (registry.find(toLogin) == null) {
+      return failed("Получатель не найден");
+    }
+    Actor sender;
+    try {
+      sender = actor(fromLogin);
+    } catch (FinanceException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    CompletableFuture<Transfer> result = new CompletableFuture<>();
+    if (key != null) {
+      PendingTransfer pending = new PendingTransfer(toLogin, amount, result);
+      PendingTransfer running = sender.transfersInFlight.putIfAbsent(key, pending);
+      if (running != null) {
+        return running.matches(toLogin, amount)
+            ? running.result
+            : failed("Ключ перевода " + key + " уже использован для другого перевода");
+      }
+      result.whenComplete((transfer, error) -> sender.transfersInFlight.remove(key, pending));
+    }
+    TransferLedger ledger = registry.getDataStorage().getTransferLedger();
+
+    // Фаза 1: проверка и списание у отправителя
+    Function<Wallet, Object> debit =
+        wallet -> {
+          if (key != null) {
+            Transfer applied = ledger.findByKey(fromLogin, key);
+            if (applied != null) {
+              if (!applied.getToUser().equals(toLogin) || applied.getAmount() != amount) {
+                throw new FinanceException(
+                    "Ключ перевода " + key + " уже использован для другого перевода");
+              }
+              return applied;
+            }
+          }
+          if (wallet.getBalance() - registry.getReserved(fromLogin) < amount) {
+            throw new FinanceException("Недостаточно средств на балансе");
+          }
+          Transfer transfer;
+          try {
+            transfer = new Transfer(fromLogin, toLogin, amount, description);
+          } catch (IllegalArgumentException e) {
+            throw new FinanceException(e.getMessage());
+          }
+          Expense expense =
+              new Expense(
+                  amount,
+                  wallet.getCategory("Прочее"),
+                  "Перевод пользователю " + toLogin + ": " + description);
+          wallet.addOperation(expense);
+          // Намерение перевода сохраняется вместе со списанием: после сбоя до записи в журнал
+          // UserRegistry вернет сумму отправителю
+          transfer.linkExpense(key, expense);
+          wallet.addPendingTransfer(transfer);
+          return new Debited(transfer, expense);
+        };
+    sender.send(
+        new Message(
+            debit,
+            true,
+            (value, error) -> {
+              if (error != null) {
+                result.completeExceptionally(error);
+              } else if (value instanceof Transfer) {
+                result.complete((Transfer) value);
+              } else {
+                credit((Debited) value, key, ledger, result);
+              }
+            }));
+    return result;
+  }
+
+  // Фаза 2: зачисление получателю после сохранения списания. Запись в журнал переводов - точка
+  // фиксации: если она не удалась, зачисление отменяется и сумма возвращается отправителю
+  private void credit(
+      Debited debited, String key, TransferLedger ledger, CompletableFuture<Transfer> result) {
+    Transfer transfer = debited.transfer;
+    Function<Wallet, Object> credit =
+        wallet -> {
+          Income income =
+              new Income(
+                  transfer.getAmount(),
+                  wallet.getCategory("Прочее"),
+                  "Перевод от пользователя "
+                      + transfer.getFromUser()
+                      + ": "
+                      + transfer.getDescription());
+          wallet.addOperation(income);
+          transfer.link(key, debited.expense, income);
+          try {
+            ledger.append(transfer);
+          } catch (RuntimeException e) {
+            // Любой отказ журнала (сбой записи, занятый ключ) отменяет зачисление до возврата
+            wallet.undoLastOperation(income);
+            throw new FinanceException(
+                e instanceof UncheckedIOException
+                    ? "ошибка записи журнала переводов: " + e.getMessage()
+                    : e.getMessage());
+          }
+          wallet.setLastTransferId(transfer.getId());
+          return transfer;
+        };
+    Actor recipient;
+    try {
+      recipient = actor(transfer.getToUser());
+    } catch (RuntimeException e) {
+      refund(transfer, e, result);
+      return;
+    }
+    recipient.send(
+        new Message(
+            credit,
+            true,
+            (value, error) -> {
+              if (error != null) {
+                refund(transfer, error, result);
+              } else {
+                markSender(transfer, result);
+              }
+            }));
+  }
+
+  // Фаза 3: отметка записанного перевода в кошельке отправителя
+  private void markSender(Transfer transfer, CompletableFuture<Transfer> result) {
+    Actor sender;
+    try {
+      sender = actor(transfer.getFromUser());
+    } catch (RuntimeException e) {
+      result.complete(transfer);
+      return;
+    }
+    sender.send(
+        new Message(
+            wallet -> {
+              wallet.removePendingTransfer(transfer);
+              wallet.setLastTransferId(transfer.getId());
+              return null;
+            },
+            true,
+            (value, error) -> result.complete(transfer)));
+  }
+
+  // Зачисление не удалось: сумма возвращается отправителю
+  private void refund(Transfer transfer, Throwable cause, CompletableFuture<Transfer> result) {
+    Actor sender;
+    try {
+      sender = actor(transfer.getFromUser());
+    } catch (RuntimeException e) {
+      result.completeExceptionally(
+          new FinanceException(
+              "Перевод не зачислен получателю и не возвращен: " + cause.getMessage()));
+      return;
+    }
+    sender.send(
+        new Message(
+            wallet -> {
+              wallet.removePendingTransfer(transfer);
+              wallet.addOperation(FinanceManager.transferRefund(transfer, wallet));
+              return null;
+            },
+            true,
+            (value, error) ->
+                result.completeExceptionally(
+                    new FinanceException(
+                        "Перевод не зачислен получателю и возвращен: " + cause.getMessage()))));
+  }
+
+  /** Число выполненных команд. */
+  public long getMessageCount() {
+    return messages.get();
+  }
+
+  /** Число пакетов: команды одного актора, выполненные за один проход. */
+  public long getBatchCount() {
+    return batches.get();
+  }
+
+  /** Число сохранений файла данных; одно сохранение покрывает пакеты нескольких акторов. */
+  public long getSaveCount() {
+    return saves.get();
+  }
+
+  /** Дожидается завершения принятых команд, включая вторые фазы переводов, и останавливает пул. */
+  @Override
+  public void close() {
+    synchronized (outstanding) {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (outstanding.get() > 0) {
+        long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (left <= 0) {
+          break;
+        }
+        try {
+          outstanding.wait(left);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    pool.shutdown();
+    try {
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private <T> CompletableFuture<T> send(
+      String login, Function<Wallet, T> command, boolean mutating) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Actor actor;
+    try {
+      actor = actor(login);
+    } catch (FinanceException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    actor.send(
+        new Message(
+            command,
+            mutating,
+            (value, error) -> {
+              if (error != null) {
+                result.completeExceptionally(error);
+              } else {
+                @SuppressWarnings("unchecked")
+                T typed = (T) value;
+                result.complete(typed);
+              }
+            }));
+    return result;
+  }
+
+  private Actor actor(String login) {
+    Actor actor = actors.get(login);
+    if (actor != null) {
+      return actor;
+    }
+    User user = registry.find(login);
+    if (user == null) {
+      throw new FinanceException("Пользователь не найден: " + login);
+    }
+    return actors.computeIfAbsent(login, l -> new Actor(user));
+  }
+
+  private static Category category(Wallet wallet, String categoryName) {
+    if (!wallet.hasCategory(categoryName)) {
+      wallet.addCategory(new Category(categoryName, ""));
+    }
+    return wallet.getCategory(categoryName);
+  }
+
+  private static <T> CompletableFuture<T> failed(String message) {
+    return CompletableFuture.failedFuture(new FinanceException(message));
+  }
+
+  // Сохраняет файл один раз для всех накопившихся пакетов и завершает их команды
+  private void requestSave(List<Runnable> completions) {
+    awaitingSave.addAll(completions);
+    if (saving.compareAndSet(false, true)) {
+      pool.execute(this::saveLoop);
+    }
+  }
+
+  private void saveLoop() {
+    while (true) {
+      List<Runnable> ready = new ArrayList<>();
+      Runnable completion;
+      while ((completion = awaitingSave.poll()) != null) {
+        ready.add(completion);
+      }
+      if (ready.isEmpty()) {
+        saving.set(false);
+        // Пакет мог добавиться между опустошением очереди и сбросом флага
+        if (awaitingSave.isEmpty() || !saving.compareAndSet(false, true)) {
+          return;
+        }
+        continue;
+      }
+      registry.save();
+      saves.incrementAndGet();
+      for (Runnable done : ready) {
+        done.run();
+      }
+    }
+  }
+
+  // Завершение команды; вторая фаза перевода успевает встать в ящик до уменьшения счетчика
+  private void finish(Message message) {
+    try {
+      message.complete();
+    } finally {
+      if (outstanding.decrementAndGet() == 0) {
+        synchronized (outstanding) {
+          outstanding.notifyAll();
+        }
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Completion {
+    void complete(Object value, Throwable error);
+  }
+
+  private static final class Message {
+    private final Function<Wallet, Object> command;
+    private final boolean mutating;
+    private final Completion completion;
+    private Object value;
+    private Throwable error;
+
+    Message(Function<Wallet, ?> command, boolean mutating, Completion completion) {
+      this.command = command::apply;
+      this.mutating = mutating;
+      this.completion = completion;
+    }
+
+    void complete() {
+      completion.complete(value, error);
+    }
+  }
+
+  // Результат первой фазы перевода
+  private static final class Debited {
+    private final Transfer transfer;
+    private final Expense expense;
+
+    Debited(Transfer transfer, Expense expense) {
+      this.transfer = transfer;
+      this.expense = expense;
+    }
+  }
+
+  private static final class PendingTransfer {
+    private final String toLogin;
+    private final double amount;
+    private final CompletableFuture<Transfer> result;
+
+    PendingTransfer(String toLogin, double amount, CompletableFuture<Transfer> result) {
+      this.toLogin = toLogin;
+      this.amount = amount;
+      this.result = result;
+    }
+
+    boolean matches(String toLogin, double amount) {
+      return this.toLogin.equals(toLogin) && this.amount == amount;
+    }
+  }
+
+  private final class Actor implements Runnable {
+    private final User user;
+    private final Queue<Message> mailbox = new ConcurrentLinkedQueue<>();
+    // Актор стоит в очереди пула или выполняется; одновременно не больше одного прохода
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Переводы с ключом, начатые, но еще не завершенные
+    private final Map<String, PendingTransfer> transfersInFlight = new ConcurrentHashMap<>();
+
+    Actor(User user) {
+      this.user = user;
+    }
+
+    void send(Message message) {
+      outstanding.incrementAndGet();
+      mailbox.add(message);
+      schedule();
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        pool.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      List<Message> batch = new ArrayList<>(Math.min(MAX_BATCH, 16));
+      Message message;
+      while (batch.size() < MAX_BATCH && (message = mailbox.poll()) != null) {
+        batch.add(message);
+      }
+      boolean mutating = false;
+      try (UserRegistry.UserLock lock = registry.lock(user)) {
+        Wallet wallet = user.getWallet();
+        wallet.beginBatch();
+        try {
+          for (Message next : batch) {
+            try {
+              next.value = next.command.apply(wallet);
+            } catch (IllegalArgumentException e) {
+              next.error = new FinanceException(e.getMessage());
+            } catch (RuntimeException e) {
+              next.error = e;
+            }
+            mutating |= next.mutating;
+          }
+        } finally {
+          wallet.endBatch();
+        }
+      } catch (RuntimeException e) {
+        for (Message next : batch) {
+          if (next.error == null) {
+            next.error = e;
+          }
+        }
+      }
+      messages.addAndGet(batch.size());
+      batches.incrementAndGet();
+
+      scheduled.set(false);
+      if (!mailbox.isEmpty()) {
+        schedule();
+      }
+      List<Runnable> completions = new ArrayList<>(batch.size());
+      for (Message next : batch) {
+        completions.add(() -> finish(next));
+      }
+      if (mutating) {
+        requestSave(completions);
+      } else {
+        completions.forEach(Runnable::run);
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.finance.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.finance.core.*;
+
+/**
+ * Суммы за период по столбцам операций (векторное и скалярное ядро) против прежних потоковых
+ * getTotalIncome/getTotalExpenseByPeriod. Векторное ядро включается модулем jdk.incubator.vector в
+ * JVM замера; методы с пометкой scalar запускаются без модуля и проверяют запасной путь.
+ *
+ * <p>Запуск: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=AggregationKernelBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xmx2g", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class AggregationKernelBenchmark {
+  @Param({"1000000"})
+  public int size;
+
+  private Wallet wallet;
+  private LocalDate from;
+  private LocalDate to;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    wallet = new Wallet();
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    for (int i = 0; i < size; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(1_000_000)) / 100.0;
+      LocalDateTime dateTime = start.plusSeconds(i * 60L);
+      wallet.addOperation(
+          random.nextInt(4) == 0
+              ? new Income(amount, category, "", dateTime)
+              : new Expense(amount, category, "", dateTime));
+    }
+    // Середина истории - примерно половина операций
+    from = start.toLocalDate().plusDays(size / 1440 / 4);
+    to = start.toLocalDate().plusDays(size / 1440 * 3 / 4);
+    wallet.getTotalExpenseByPeriod(from, to);
+  }
+
+  // Прежняя реализация getTotalIncome
+  @Benchmark
+  public double streamTotalIncome() {
+    return wallet.getOperations().stream()
+        .filter(op -> op instanceof Income)
+        .mapToDouble(Operation::getAmount)
+        .sum();
+  }
+
+  // Прежняя реализация getTotalExpenseByPeriod
+  @Benchmark
+  public double streamExpenseByPeriod() {
+    return wallet.getOperations().stream()
+        .filter(op -> op instanceof Expense)
+        .filter(
+            op ->
+                !op.getDateTime().toLocalDate().isBefore(from)
+                    && !op.getDateTime().toLocalDate().isAfter(to))
+        .mapToDouble(Operation::getAmount)
+        .sum();
+  }
+
+  @Benchmark
+  public double vectorTotalIncome() {
+    return wallet.getTotalIncomeByPeriod(null, null);
+  }
+
+  @Benchmark
+  public double vectorExpenseByPeriod() {
+    return wallet.getTotalExpenseByPeriod(from, to);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+  public double scalarExpenseByPeriod() {
+    return wallet.getTotalExpenseByPeriod(from, to);
+  }
+}
@@ -0,0 +1,71 @@
+package com.finance.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.finance.service.DataStorage;
+import com.finance.service.IngestionPipeline;
+import com.finance.service.UserRegistry;
+
+/**
+ * Пропускная способность приема операций (операций в секунду) по размеру буфера и способу ожидания.
+ * Каждый вызов публикует {@link #BATCH} операций для нескольких пользователей и ждет, пока они
+ * пройдут все этапы, включая сохранение файла данных. Перед итерацией создается пустой реестр,
+ * чтобы размер сохраняемых данных не рос от итерации к итерации.
+ *
+ * <p>Запуск: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=IngestionPipelineBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestionPipelineBenchmark {
+  private static final int BATCH = 10_000;
+  private static final int USERS = 16;
+
+  @Param({"1024", "16384"})
+  public int capacity;
+
+  @Param({"BUSY_SPIN", "YIELDING", "SLEEPING"})
+  public IngestionPipeline.WaitStrategy waitStrategy;
+
+  private UserRegistry registry;
+  private IngestionPipeline pipeline;
+  private String[] logins;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    registry = new UserRegistry(new DataStorage());
+    logins = new String[USERS];
+    for (int u = 0; u < USERS; u++) {
+      logins[u] = "bench" + u;
+      registry.register(logins[u], "bench-password");
+    }
+    pipeline =
+        new IngestionPipeline(
+            registry, capacity, IngestionPipeline.Overflow.BLOCK, waitStrategy, null);
+    pipeline.start();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws Exception {
+    pipeline.close();
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public long ingest() {
+    for (int i = 0; i < BATCH; i++) {
+      pipeline.publish(logins[i % USERS], i % 4 == 0, i % 4 == 0 ? "Зарплата" : "Еда", 1, "");
+    }
+    pipeline.flush();
+    return pipeline.getProcessedCount();
+  }
+}
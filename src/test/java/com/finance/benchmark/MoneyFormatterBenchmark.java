@@ -0,0 +1,67 @@
+package com.finance.benchmark;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.finance.core.MoneyFormatter;
+
+/**
+ * Сравнение прежнего formatCurrency (NumberFormat на каждый вызов) с MoneyFormatter.
+ *
+ * <p>Запуск: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MoneyFormatterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyFormatterBenchmark {
+  private static final int SIZE = 1024;
+
+  private double[] amounts;
+  private StringBuilder buffer;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    amounts = new double[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      amounts[i] = Math.round(random.nextDouble() * 1e7) / 100.0;
+    }
+    buffer = new StringBuilder(64);
+  }
+
+  private double next() {
+    index = (index + 1) & (SIZE - 1);
+    return amounts[index];
+  }
+
+  // Точная копия прежней реализации Operation/Budget/Wallet.formatCurrency
+  @Benchmark
+  public String numberFormatPerCall() {
+    NumberFormat nf = NumberFormat.getNumberInstance(Locale.US);
+    nf.setMinimumFractionDigits(1);
+    nf.setMaximumFractionDigits(1);
+    nf.setGroupingUsed(true);
+    return nf.format(next());
+  }
+
+  @Benchmark
+  public String moneyFormatterToString() {
+    return MoneyFormatter.DEFAULT.format(next());
+  }
+
+  @Benchmark
+  public void moneyFormatterAppend(Blackhole blackhole) {
+    buffer.setLength(0);
+    MoneyFormatter.DEFAULT.formatTo(buffer, next());
+    blackhole.consume(buffer);
+  }
+}
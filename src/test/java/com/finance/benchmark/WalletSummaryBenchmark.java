@@ -0,0 +1,83 @@
+package com.finance.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.finance.core.*;
+
+/**
+ * Масштабирование Wallet.summarize по числу потоков: подсчет запускается в ForkJoinPool заданного
+ * размера, и задачи fork-join выполняются в этом пуле. Для сравнения - прежний подсчет суммы за
+ * период потоком по всем операциям.
+ *
+ * <p>Запуск: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=WalletSummaryBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class WalletSummaryBenchmark {
+  @Param({"2000000"})
+  public int size;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  private Wallet wallet;
+  private ForkJoinPool pool;
+  private LocalDate from;
+  private LocalDate to;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    wallet = new Wallet();
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    for (int i = 0; i < size; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(1_000_000)) / 100.0;
+      LocalDateTime dateTime = start.plusSeconds(i * 60L);
+      wallet.addOperation(
+          random.nextInt(4) == 0
+              ? new Income(amount, category, "", dateTime)
+              : new Expense(amount, category, "", dateTime));
+    }
+    // Период покрывает почти все операции
+    from = start.toLocalDate().plusDays(1);
+    to = start.plusSeconds(size * 60L).toLocalDate().minusDays(1);
+    wallet.summarize(from, to);
+    pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public WalletSummary summarize() {
+    return pool.submit(() -> wallet.summarize(from, to)).join();
+  }
+
+  // Прежняя реализация getTotalExpenseByPeriod: фильтр по типу и дате в потоке
+  @Benchmark
+  public double streamExpenseByPeriod() {
+    return wallet.getOperations().stream()
+        .filter(op -> op instanceof Expense)
+        .filter(
+            op ->
+                !op.getDateTime().toLocalDate().isBefore(from)
+                    && !op.getDateTime().toLocalDate().isAfter(to))
+        .mapToDouble(Operation::getAmount)
+        .sum();
+  }
+}
@@ -242,6 +242,27 @@ class CLIInterfaceIntegrationTest {
             || output.contains("Экспорт"));
   }
 
+  @Test
+  void testIntegration_CsvImportSkipsDuplicates() {
+    String uniqueUser = getUniqueUsername("csvimport");
+    cli.processCommand("register", uniqueUser + " password123");
+    cli.processCommand("login", uniqueUser + " password123");
+    cli.processCommand("add_income", "Зарплата 50000");
+    cli.processCommand("add_expense", "Еда 3000");
+    cli.processCommand("export", "test_import_csv csv");
+    cli.processCommand("export", "test_import_json json");
+    outputStream.reset();
+
+    cli.processCommand("import", "test_import_csv.csv csv");
+    cli.processCommand("import", "test_import_json json merge");
+    assertFalse(outputStream.toString().contains("Ошибка"), outputStream.toString());
+
+    assertEquals(47000, financeManager.getCurrentUser().getWallet().getBalance(), 1e-9);
+    assertEquals(2, financeManager.getCurrentUser().getWallet().getOperations().size());
+    cli.processCommand("import", "test_import_csv.csv xml");
+    assertTrue(outputStream.toString().contains("binary, json или csv"));
+  }
+
   @Test
   void testIntegration_ErrorHandling() {
     // Test various error scenarios
@@ -102,6 +102,25 @@ class CLIInterfaceTest {
     assertEquals(4500, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
   }
 
+  @Test
+  void testProcessCommand_Pivot() {
+    String uniqueUser = getUniqueUsername("pivot");
+    cli.processCommand("register", uniqueUser + " password123");
+    cli.processCommand("login", uniqueUser + " password123");
+    cli.processCommand("add_income", "Зарплата 5000");
+    cli.processCommand("add_expense", "Такси 700");
+    outputStream.reset();
+    cli.processCommand("pivot", "квартал");
+    String output = outputStream.toString();
+    assertTrue(output.contains("СВОДНАЯ ТАБЛИЦА"), "Заголовок сводной таблицы");
+    assertTrue(output.contains("кв."), "Подписи кварталов");
+    assertTrue(output.contains("Такси"), "Категория расходов в столбце");
+
+    outputStream.reset();
+    cli.processCommand("pivot", "год");
+    assertTrue(outputStream.toString().contains("Неизвестная разбивка"));
+  }
+
   @Test
   void testProcessCommand_Help() {
     cli.processCommand("help", "");
@@ -0,0 +1,84 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AggregationKernelTest {
+  private final AggregationKernel loaded = AggregationKernel.load();
+  private final AggregationKernel scalar = new ScalarAggregationKernel();
+
+  @Test
+  void testVectorKernelLoadedWithIncubatorModule() {
+    // Тесты запускаются с --add-modules jdk.incubator.vector (см. argLine в pom.xml)
+    assertTrue(loaded.name().startsWith("vector"), "Загружено ядро: " + loaded.name());
+  }
+
+  @Test
+  void testKernelsMatchBruteForce() {
+    Random random = new Random(3);
+    // Размеры с неполными блоками в конце
+    for (int size : new int[] {0, 1, 7, 8, 9, 31, 1000, 4099}) {
+      double[] amounts = new double[size + 5];
+      byte[] types = new byte[size + 5];
+      long[] epochs = new long[size + 5];
+      for (int i = 0; i < amounts.length; i++) {
+        amounts[i] = random.nextInt(100_000) / 100.0;
+        types[i] = (byte) random.nextInt(3);
+        epochs[i] = random.nextInt(1000);
+      }
+      for (int round = 0; round < 20; round++) {
+        byte type = (byte) random.nextInt(3);
+        long from = random.nextInt(1000);
+        long to = from + random.nextInt(1000);
+        double expected = 0;
+        for (int i = 0; i < size; i++) {
+          if (types[i] == type && epochs[i] >= from && epochs[i] < to) {
+            expected += amounts[i];
+          }
+        }
+        assertEquals(
+            expected, scalar.sum(amounts, types, epochs, size, type, from, to), 1e-6, "scalar");
+        assertEquals(
+            expected,
+            loaded.sum(amounts, types, epochs, size, type, from, to),
+            1e-6,
+            loaded.name() + ", размер " + size);
+      }
+    }
+  }
+
+  @Test
+  void testPeriodSumsUseOperationDates() {
+    Wallet wallet = new Wallet();
+    Category food = wallet.getCategory("Еда");
+    Category salary = wallet.getCategory("Зарплата");
+    LocalDateTime day = LocalDateTime.of(2024, 3, 10, 23, 59);
+    for (int i = 0; i < 50; i++) {
+      wallet.addOperation(new Expense(10 + i, food, "", day.plusDays(i)));
+      wallet.addOperation(new Income(100, salary, "", day.plusDays(i).withHour(0)));
+    }
+    LocalDate from = LocalDate.of(2024, 3, 11);
+    LocalDate to = LocalDate.of(2024, 3, 20);
+
+    // Границы периода включительно: 11-20 марта - 10 дней
+    assertEquals(1000, wallet.getTotalIncomeByPeriod(from, to), 1e-9);
+    assertEquals(
+        wallet.summarize(from, to).getTotalExpense(),
+        wallet.getTotalExpenseByPeriod(from, to),
+        1e-9);
+    assertEquals(wallet.getTotalExpense(), wallet.getTotalExpenseByPeriod(null, null), 1e-9);
+
+    // Столбцы дописываются вместе с операциями
+    wallet.addOperation(new Expense(5, food, "", LocalDateTime.of(2024, 3, 15, 12, 0)));
+    assertEquals(
+        wallet.summarize(from, to).getTotalExpense(),
+        wallet.getTotalExpenseByPeriod(from, to),
+        1e-9);
+    assertThrows(IllegalArgumentException.class, () -> wallet.getTotalIncomeByPeriod(to, from));
+  }
+}
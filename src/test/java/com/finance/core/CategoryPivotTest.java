@@ -0,0 +1,115 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CategoryPivotTest {
+  @Test
+  void testPeriodBoundariesAndLabels() {
+    LocalDate date = LocalDate.of(2024, 5, 15); // среда
+    assertEquals(LocalDate.of(2024, 5, 13), CategoryPivot.Granularity.WEEK.periodStart(date));
+    assertEquals(LocalDate.of(2024, 5, 1), CategoryPivot.Granularity.MONTH.periodStart(date));
+    assertEquals(LocalDate.of(2024, 4, 1), CategoryPivot.Granularity.QUARTER.periodStart(date));
+    assertEquals("2 кв. 2024", CategoryPivot.Granularity.QUARTER.label(LocalDate.of(2024, 4, 1)));
+    assertEquals("05.2024", CategoryPivot.Granularity.MONTH.label(LocalDate.of(2024, 5, 1)));
+    assertEquals(CategoryPivot.Granularity.WEEK, CategoryPivot.Granularity.fromName("Неделя"));
+    assertEquals(CategoryPivot.Granularity.DAY, CategoryPivot.Granularity.fromName("day"));
+    assertThrows(IllegalArgumentException.class, () -> CategoryPivot.Granularity.fromName("год"));
+  }
+
+  @Test
+  void testPivotMatchesPerCellSums() {
+    Random random = new Random(11);
+    Wallet wallet = new Wallet();
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2023, 11, 20, 8, 0);
+    for (int i = 0; i < 3000; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(100_000)) / 100.0;
+      // Операции добавляются не по порядку дат, как при импорте
+      LocalDateTime dateTime = start.plusHours(random.nextInt(24 * 200));
+      wallet.addOperation(
+          random.nextBoolean()
+              ? new Income(amount, category, "", dateTime)
+              : new Expense(amount, category, "", dateTime));
+    }
+
+    LocalDate from = LocalDate.of(2023, 12, 3);
+    LocalDate to = LocalDate.of(2024, 4, 17);
+    for (CategoryPivot.Granularity granularity : CategoryPivot.Granularity.values()) {
+      CategoryPivot pivot = wallet.pivot(granularity, from, to);
+      assertEquals(granularity.periodStart(from), pivot.getPeriods().get(0));
+      for (int c = 0; c < pivot.getCategories().size(); c++) {
+        String name = pivot.getCategories().get(c);
+        for (int p = 0; p < pivot.getPeriods().size(); p++) {
+          LocalDate periodStart = pivot.getPeriods().get(p);
+          LocalDate cellFrom = periodStart.isBefore(from) ? from : periodStart;
+          LocalDate periodEnd = granularity.nextPeriod(periodStart).minusDays(1);
+          LocalDate cellTo = periodEnd.isAfter(to) ? to : periodEnd;
+          double income = 0;
+          double expense = 0;
+          for (Operation op : wallet.getOperationsByPeriod(cellFrom, cellTo)) {
+            if (op.getCategory().getName().equals(name)) {
+              if (op instanceof Income) {
+                income += op.getAmount();
+              } else {
+                expense += op.getAmount();
+              }
+            }
+          }
+          String cell = granularity + " " + name + " " + pivot.getPeriodLabel(p);
+          assertEquals(income, pivot.getIncome(c, p), 1e-6, cell);
+          assertEquals(expense, pivot.getExpense(c, p), 1e-6, cell);
+        }
+      }
+      double total = 0;
+      for (int p = 0; p < pivot.getPeriods().size(); p++) {
+        total += pivot.getPeriodExpense(p);
+      }
+      assertEquals(wallet.getTotalExpenseByPeriod(from, to), total, 1e-6, granularity.name());
+    }
+  }
+
+  @Test
+  void testPivotWithoutBoundsAndEmptyWallet() {
+    Wallet wallet = new Wallet();
+    CategoryPivot empty = wallet.pivot(CategoryPivot.Granularity.MONTH, null, null);
+    assertTrue(empty.getPeriods().isEmpty());
+    assertTrue(empty.getCategories().isEmpty());
+
+    wallet.addOperation(
+        new Expense(100, wallet.getCategory("Еда"), "", LocalDateTime.of(2024, 1, 31, 23, 0)));
+    wallet.addOperation(
+        new Expense(50, wallet.getCategory("Такси"), "", LocalDateTime.of(2024, 3, 1, 0, 0)));
+    wallet.addOperation(
+        new Expense(70, wallet.getCategory("Еда"), "", LocalDateTime.of(2024, 3, 2, 0, 0)));
+    CategoryPivot pivot = wallet.pivot(CategoryPivot.Granularity.MONTH, null, null);
+    assertEquals(List.of("01.2024", "02.2024", "03.2024"), labels(pivot));
+    assertEquals(List.of("Еда", "Такси"), pivot.getCategories(), "По убыванию оборота");
+    assertEquals(100, pivot.getExpense(0, 0), 1e-9);
+    assertEquals(0, pivot.getExpense(0, 1), 1e-9);
+    assertEquals(70, pivot.getExpense(0, 2), 1e-9);
+    assertEquals(50, pivot.getExpense(1, 2), 1e-9);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            wallet.pivot(
+                CategoryPivot.Granularity.DAY, LocalDate.of(1990, 1, 1), LocalDate.of(2024, 1, 1)),
+        "Слишком много столбцов");
+  }
+
+  private static List<String> labels(CategoryPivot pivot) {
+    String[] labels = new String[pivot.getPeriods().size()];
+    for (int p = 0; p < labels.length; p++) {
+      labels[p] = pivot.getPeriodLabel(p);
+    }
+    return List.of(labels);
+  }
+}
@@ -0,0 +1,115 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DailyRollupsTest {
+  @Test
+  void testDayRollupCountSumMinMax() {
+    Wallet wallet = new Wallet();
+    Category food = wallet.getCategory("Еда");
+    LocalDateTime day = LocalDateTime.of(2024, 6, 1, 9, 0);
+    wallet.addOperation(new Expense(300, food, "", day));
+    wallet.addOperation(new Expense(120, food, "", day.plusHours(5)));
+    wallet.addOperation(new Expense(80, food, "", day.plusDays(1)));
+    wallet.addOperation(new Income(1000, wallet.getCategory("Зарплата"), "", day));
+
+    DailyRollups rollups = wallet.getDailyRollups();
+    DailyRollups.Rollup first = rollups.get(day.toLocalDate(), "еда", false);
+    assertEquals(2, first.getCount());
+    assertEquals(420, first.getSum(), 1e-9);
+    assertEquals(120, first.getMin(), 1e-9);
+    assertEquals(300, first.getMax(), 1e-9);
+    assertNull(rollups.get(day.toLocalDate(), "Еда", true), "Доходов по категории не было");
+
+    DailyRollups.Rollup twoDays =
+        rollups.get(day.toLocalDate(), day.toLocalDate().plusDays(1), "Еда", false);
+    assertEquals(3, twoDays.getCount());
+    assertEquals(80, twoDays.getMin(), 1e-9);
+    assertEquals(500.0 / 3, twoDays.getAverage(), 1e-9);
+    assertEquals(day.toLocalDate(), rollups.getFirstDay());
+    assertEquals(day.toLocalDate().plusDays(1), rollups.getLastDay());
+  }
+
+  @Test
+  void testIncrementalRollupsMatchRebuildAndScan() {
+    Random random = new Random(5);
+    Wallet wallet = new Wallet();
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2021, 1, 1, 0, 0);
+    for (int i = 0; i < 5000; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(100_000)) / 100.0;
+      LocalDateTime dateTime = start.plusHours(random.nextInt(24 * 1000));
+      wallet.addOperation(
+          random.nextBoolean()
+              ? new Income(amount, category, "", dateTime)
+              : new Expense(amount, category, "", dateTime));
+    }
+    LocalDate from = LocalDate.of(2021, 5, 3);
+    LocalDate to = LocalDate.of(2022, 12, 30);
+
+    WalletSummary incremental = wallet.getDailyRollups().summarize(from, to);
+    WalletSummary scan = wallet.summarize(from, to);
+    assertEquals(scan.getTotalIncome(), incremental.getTotalIncome(), 1e-6);
+    assertEquals(scan.getTotalExpense(), incremental.getTotalExpense(), 1e-6);
+    assertEquals(scan.getExpenseCount(), incremental.getExpenseCount());
+    assertEquals(
+        scan.getExpenseByCategories().keySet(), incremental.getExpenseByCategories().keySet());
+    for (Category category : categories) {
+      assertEquals(
+          scan.getIncome(category.getName()),
+          incremental.getIncome(category.getName()),
+          1e-6,
+          category.getName());
+    }
+
+    WalletSummary rebuilt = DailyRollups.rebuild(wallet.getOperations()).summarize(null, null);
+    assertEquals(wallet.getTotalExpense(), rebuilt.getTotalExpense(), 1e-6);
+    assertThrows(
+        IllegalArgumentException.class, () -> wallet.getDailyRollups().summarize(to, from));
+  }
+
+  @Test
+  void testRollupsPersistedAndRebuiltWhenMissing() throws Exception {
+    Wallet wallet = new Wallet();
+    wallet.addOperation(
+        new Expense(100, wallet.getCategory("Такси"), "", LocalDateTime.of(2024, 2, 1, 10, 0)));
+
+    Wallet restored = copy(wallet);
+    restored.addOperation(
+        new Expense(50, restored.getCategory("Такси"), "", LocalDateTime.of(2024, 2, 1, 20, 0)));
+    assertEquals(
+        2, restored.getDailyRollups().get(LocalDate.of(2024, 2, 1), "Такси", false).getCount());
+
+    // Файлы данных, сохраненные до появления сводок
+    Field field = Wallet.class.getDeclaredField("dailyRollups");
+    field.setAccessible(true);
+    field.set(restored, null);
+    Wallet legacy = copy(restored);
+    assertEquals(
+        150, legacy.getDailyRollups().get(LocalDate.of(2024, 2, 1), "Такси", false).getSum(), 1e-9);
+  }
+
+  private static Wallet copy(Wallet wallet) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(wallet);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (Wallet) in.readObject();
+    }
+  }
+}
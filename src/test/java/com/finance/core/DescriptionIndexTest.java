@@ -0,0 +1,31 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DescriptionIndexTest {
+
+  @Test
+  void testTokenizeCyrillicAndLatin() {
+    assertEquals(
+        List.of("кофе", "в", "starbucks", "ежик", "2024"),
+        DescriptionIndex.tokenize("Кофе в Starbucks, ёжик-2024!"));
+    assertTrue(DescriptionIndex.tokenize("  ...  ").isEmpty());
+    assertTrue(DescriptionIndex.tokenize(null).isEmpty());
+  }
+
+  @Test
+  void testPostingListRoundTripWithLargeGaps() {
+    PostingList list = new PostingList();
+    long[] ids = {1, 2, 3, 130, 20_000, 5_000_000_000L};
+    for (long id : ids) {
+      assertTrue(list.add(id));
+    }
+    assertTrue(list.add(5_000_000_000L), "Повтор того же номера допустим");
+    assertFalse(list.add(7), "Убывающий номер должен быть отклонен");
+    assertArrayEquals(ids, list.decode());
+  }
+}
@@ -0,0 +1,101 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MoneyFormatterTest {
+
+  private static String reference(Locale locale, int fractionDigits, double amount) {
+    NumberFormat nf = NumberFormat.getNumberInstance(locale);
+    nf.setMinimumFractionDigits(fractionDigits);
+    nf.setMaximumFractionDigits(fractionDigits);
+    nf.setGroupingUsed(true);
+    return nf.format(amount);
+  }
+
+  @Test
+  void testFormatAsInTZ() {
+    assertEquals("1,000.0", MoneyFormatter.DEFAULT.format(1000));
+    assertEquals("1,234,567.9", MoneyFormatter.DEFAULT.format(1234567.89));
+    assertEquals("-3,000.0", MoneyFormatter.DEFAULT.format(-3000));
+    assertEquals("0.0", MoneyFormatter.DEFAULT.format(0));
+  }
+
+  @Test
+  void testEdgeCasesMatchNumberFormat() {
+    double[] values = {
+      -0.0,
+      -0.04,
+      0.05,
+      0.15,
+      0.25,
+      0.35,
+      1.45,
+      2.5,
+      999.95,
+      0.95,
+      1e-9,
+      1e12,
+      1e15,
+      1e20,
+      9.223372036854776E17,
+      123456789012.25,
+      Double.NaN,
+      Double.POSITIVE_INFINITY,
+      Double.NEGATIVE_INFINITY
+    };
+    for (double value : values) {
+      assertEquals(
+          reference(Locale.US, 1, value),
+          MoneyFormatter.DEFAULT.format(value),
+          "Значение " + value);
+    }
+  }
+
+  @Test
+  void testRandomValuesMatchNumberFormat() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20_000; i++) {
+      double value = Math.round(random.nextDouble() * 1e8) / 100.0;
+      if (random.nextBoolean()) {
+        value = -value;
+      }
+      assertEquals(reference(Locale.US, 1, value), MoneyFormatter.DEFAULT.format(value));
+    }
+  }
+
+  @Test
+  void testOtherLocalesAndPrecision() {
+    Locale russian = Locale.forLanguageTag("ru-RU");
+    MoneyFormatter formatter = MoneyFormatter.forLocale(russian, 2);
+    for (double value : new double[] {1234567.891, 0.005, 0.015, 42, -17.125}) {
+      assertEquals(reference(russian, 2, value), formatter.format(value));
+    }
+    assertEquals(
+        reference(Locale.GERMANY, 0, 1234567.5),
+        MoneyFormatter.forLocale(Locale.GERMANY, 0).format(1234567.5));
+    assertSame(formatter, MoneyFormatter.forLocale(russian, 2));
+  }
+
+  @Test
+  void testFormatToAppendsInPlace() throws Exception {
+    StringBuilder sb = new StringBuilder("Баланс: ");
+    MoneyFormatter.DEFAULT.formatTo(sb, 12345.6);
+    assertEquals("Баланс: 12,345.6", sb.toString());
+
+    StringWriter writer = new StringWriter();
+    MoneyFormatter.DEFAULT.formatTo(writer, 7.25);
+    assertEquals("7.2", writer.toString());
+  }
+
+  @Test
+  void testInvalidFractionDigits() {
+    assertThrows(IllegalArgumentException.class, () -> MoneyFormatter.forLocale(Locale.US, 9));
+  }
+}
@@ -0,0 +1,47 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class NetPositionsTest {
+  @Test
+  void testMatchesHashMapAcrossGrowth() {
+    Random random = new Random(5);
+    NetPositions net = new NetPositions(2);
+    Map<Integer, Double> expected = new HashMap<>();
+    for (int i = 0; i < 20_000; i++) {
+      int key = random.nextInt(3000) * 7;
+      double delta = random.nextInt(1000) - 500;
+      net.add(key, delta);
+      expected.merge(key, delta, Double::sum);
+    }
+
+    assertEquals(expected.size(), net.size());
+    Map<Integer, Double> actual = new HashMap<>();
+    net.forEach(actual::put);
+    assertEquals(expected, actual);
+    assertEquals(0.0, net.get(1), "Отсутствующий пользователь - нулевая сумма");
+  }
+
+  @Test
+  void testWindowNetSumsToZero() {
+    NettingWindow window = new NettingWindow(1);
+    window.add(0, 1, 100, 0, "");
+    window.add(1, 0, 70, 0, "");
+    window.add(1, 2, 10, 0, "");
+    window.add(2, 0, 5, 0, "");
+
+    NetPositions net = window.net();
+    assertEquals(-25, net.get(0), 1e-9);
+    assertEquals(20, net.get(1), 1e-9);
+    assertEquals(5, net.get(2), 1e-9);
+    assertEquals(185, window.getTurnover(), 1e-9);
+    assertEquals(80, window.getOutgoing(1), 1e-9, "Резерв - все исходящие суммы окна");
+    assertThrows(IllegalArgumentException.class, () -> net.add(-1, 1));
+  }
+}
@@ -0,0 +1,69 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class NotificationBufferTest {
+
+  @Test
+  void testCoalescesSameKeyAndSeverity() {
+    NotificationBuffer buffer = new NotificationBuffer(8);
+    buffer.add("balance", NotificationBuffer.Severity.CRITICAL, "Баланс: -100");
+    buffer.add("balance", NotificationBuffer.Severity.CRITICAL, "Баланс: -200");
+    buffer.add("balance", NotificationBuffer.Severity.INFO, "Баланс: -200");
+
+    List<String> drained = buffer.drain();
+    assertEquals(2, drained.size());
+    assertTrue(drained.get(0).startsWith("Баланс: -200"));
+    assertTrue(drained.get(0).contains("повторений: 2"));
+    assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  void testEvictsOldestWhenFull() {
+    NotificationBuffer buffer = new NotificationBuffer(3);
+    for (int i = 1; i <= 5; i++) {
+      buffer.add("Сообщение " + i);
+    }
+
+    List<String> drained = buffer.drain();
+    assertEquals(3, buffer.capacity());
+    assertEquals(
+        List.of("ℹ️  Пропущено старых оповещений: 2", "Сообщение 3", "Сообщение 4", "Сообщение 5"),
+        drained);
+  }
+
+  @Test
+  void testEvictedKeyCanBeAddedAgain() {
+    NotificationBuffer buffer = new NotificationBuffer(2);
+    buffer.add("a");
+    buffer.add("b");
+    buffer.add("c");
+    buffer.add("a");
+
+    assertEquals(2, buffer.size());
+    assertFalse(buffer.snapshot().stream().anyMatch(n -> n.contains("повторений")));
+  }
+
+  @Test
+  void testDrainToKeepsCounts() {
+    NotificationBuffer source = new NotificationBuffer(4);
+    NotificationBuffer target = new NotificationBuffer(4);
+    source.add("k", NotificationBuffer.Severity.WARNING, "Внимание");
+    source.add("k", NotificationBuffer.Severity.WARNING, "Внимание");
+    target.add("k", NotificationBuffer.Severity.WARNING, "Внимание");
+
+    source.drainTo(target);
+
+    assertTrue(source.isEmpty());
+    assertEquals(List.of("Внимание\n   ↻ повторений: 3"), target.drain());
+  }
+
+  @Test
+  void testInvalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new NotificationBuffer(0));
+  }
+}
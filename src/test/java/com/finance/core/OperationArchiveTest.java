@@ -0,0 +1,210 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OperationArchiveTest {
+  private static final LocalDate HORIZON = LocalDate.of(2023, 1, 1);
+
+  @TempDir Path archiveDir;
+
+  private static Wallet walletWithHistory() {
+    Random random = new Random(3);
+    Wallet wallet = new Wallet();
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2021, 1, 1, 0, 0);
+    for (int i = 0; i < 3000; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(100_000)) / 100.0;
+      LocalDateTime dateTime = start.plusHours(random.nextInt(24 * 900));
+      String description = i % 100 == 0 ? "кофе с собой" : "покупка";
+      wallet.addOperation(
+          random.nextBoolean()
+              ? new Income(amount, category, description, dateTime)
+              : new Expense(amount, category, description, dateTime));
+    }
+    return wallet;
+  }
+
+  @Test
+  void testTotalsAndReportsUnchangedAfterArchiving() {
+    Wallet wallet = walletWithHistory();
+    wallet.setBudget("Еда", 1000);
+    double balance = wallet.getBalance();
+    double income = wallet.getTotalIncome();
+    var topExpense = wallet.getTopExpenseCategories(3);
+    LocalDate from = LocalDate.of(2022, 6, 15);
+    LocalDate to = LocalDate.of(2023, 3, 1);
+    double periodExpense = wallet.getTotalExpenseByPeriod(from, to);
+    double periodIncome = wallet.getTotalIncomeByPeriod(null, LocalDate.of(2022, 2, 10));
+    CategoryPivot pivot = wallet.pivot(CategoryPivot.Granularity.QUARTER, null, null);
+    int total = wallet.getOperations().size();
+
+    int archived = wallet.archiveOperationsBefore(HORIZON, archiveDir);
+
+    assertTrue(archived > 0 && archived < total);
+    assertEquals(total - archived, wallet.getOperations().size());
+    assertTrue(
+        wallet.getOperations().stream()
+            .noneMatch(op -> op.getDateTime().toLocalDate().isBefore(HORIZON)),
+        "В памяти остаются только операции после горизонта");
+    assertEquals(balance, wallet.getBalance(), 1e-6);
+    assertEquals(income, wallet.getTotalIncome(), 1e-6);
+    assertEquals(topExpense.keySet(), wallet.getTopExpenseCategories(3).keySet());
+    assertEquals(periodExpense, wallet.getTotalExpenseByPeriod(from, to), 1e-6);
+    assertEquals(
+        periodIncome, wallet.getTotalIncomeByPeriod(null, LocalDate.of(2022, 2, 10)), 1e-6);
+    CategoryPivot after = wallet.pivot(CategoryPivot.Granularity.QUARTER, null, null);
+    assertEquals(pivot.getCategories(), after.getCategories());
+    assertEquals(pivot.getPeriodExpense(0), after.getPeriodExpense(0), 1e-6);
+
+    wallet.recalculateBalance();
+    assertEquals(balance, wallet.getBalance(), 1e-6);
+    double spent = wallet.getBudget("Еда").getSpent();
+    wallet.setBudget("Еда", 2000);
+    assertEquals(spent, wallet.getBudget("Еда").getSpent(), 1e-6, "Траты бюджета учитывают архив");
+    assertEquals(archived, wallet.getArchive().getOperationCount());
+  }
+
+  @Test
+  void testQueriesReachIntoArchive() {
+    Wallet wallet = walletWithHistory();
+    LocalDate from = LocalDate.of(2022, 11, 20);
+    LocalDate to = LocalDate.of(2023, 1, 10);
+    List<Long> expected = ids(wallet.getOperationsByPeriod(from, to));
+    List<Long> coffee = ids(wallet.searchOperations("кофе"));
+    OperationQuery page =
+        OperationQuery.builder()
+            .type(OperationQuery.Type.EXPENSE)
+            .sortBy(OperationQuery.Sort.LARGEST)
+            .offset(5)
+            .limit(10)
+            .build();
+    List<Long> largest = ids(wallet.query(page).getOperations());
+
+    wallet.archiveOperationsBefore(HORIZON, archiveDir);
+
+    assertEquals(expected, ids(wallet.getOperationsByPeriod(from, to)));
+    assertEquals(coffee, ids(wallet.searchOperations("кофе")));
+    OperationQueryResult result = wallet.query(page);
+    assertEquals(largest, ids(result.getOperations()));
+    assertTrue(result.getPlan().contains("архив"), result.getPlan());
+    assertFalse(
+        wallet
+            .query(OperationQuery.builder().between(HORIZON, null).build())
+            .getPlan()
+            .contains("архив"),
+        "Запрос после горизонта не читает архив");
+    assertEquals(
+        3000, wallet.getAllOperations().size(), "Полная история включает архивные операции");
+  }
+
+  @Test
+  void testSegmentsAreImmutableAndSaveShrinks() throws Exception {
+    Wallet wallet = walletWithHistory();
+    int before = serializedSize(wallet);
+    wallet.archiveOperationsBefore(LocalDate.of(2022, 1, 1), archiveDir);
+    List<Path> firstRun = segmentFiles();
+    assertEquals(12, firstRun.size(), "Сегмент на каждый месяц 2021 года");
+    long firstModified = Files.getLastModifiedTime(firstRun.get(0)).toMillis();
+
+    // Поздно добавленная операция за уже архивный месяц уходит в новый сегмент
+    wallet.addOperation(
+        new Expense(10, wallet.getCategory("Еда"), "", LocalDateTime.of(2021, 3, 5, 12, 0)));
+    wallet.archiveOperationsBefore(HORIZON, archiveDir);
+    List<Path> secondRun = segmentFiles();
+    assertTrue(secondRun.contains(archiveDir.resolve("2021-03-002.seg.gz")), secondRun.toString());
+    assertEquals(firstModified, Files.getLastModifiedTime(firstRun.get(0)).toMillis());
+    assertEquals(LocalDate.of(2023, 1, 1), wallet.getArchive().getHorizon());
+    // Остаются сводки по дням и месяцам, но не сами операции архивного периода
+    assertTrue(serializedSize(wallet) < before * 3 / 4, "Сохранение зависит от недавних операций");
+    assertEquals(
+        3001,
+        wallet.getDailyRollups().getOperationCount(),
+        "Сводки не пересчитываются после архива");
+  }
+
+  @Test
+  void testFailedAppendLeavesArchiveUnchanged() throws Exception {
+    Wallet wallet = walletWithHistory();
+    int total = wallet.getOperations().size();
+    // Каталог на месте сегмента марта не дает записать третий месяц
+    Files.createDirectories(archiveDir.resolve("2021-03-001.seg.gz").resolve("blocker"));
+
+    assertThrows(RuntimeException.class, () -> wallet.archiveOperationsBefore(HORIZON, archiveDir));
+
+    assertNull(wallet.getArchive());
+    assertEquals(total, wallet.getOperations().size());
+    assertEquals(1, segmentFiles().size(), "Записанные сегменты удалены");
+
+    Files.delete(archiveDir.resolve("2021-03-001.seg.gz").resolve("blocker"));
+    Files.delete(archiveDir.resolve("2021-03-001.seg.gz"));
+    int archived = wallet.archiveOperationsBefore(HORIZON, archiveDir);
+    assertEquals(24, wallet.getArchive().getSegmentCount());
+    assertEquals(archived, wallet.getArchive().getOperationCount());
+    assertEquals(total, wallet.getOperationCount());
+  }
+
+  @Test
+  void testRenamedCategoryAppliesToArchivedOperations() {
+    Wallet wallet = walletWithHistory();
+    double food = wallet.getExpenseByCategory("Еда");
+    wallet.archiveOperationsBefore(HORIZON, archiveDir);
+
+    Category renamed = new Category("Продукты", "");
+    wallet.addCategory(renamed);
+    for (Operation op : wallet.getOperations()) {
+      if (op.getCategory().getName().equals("Еда")) {
+        op.setCategory(renamed);
+      }
+    }
+    wallet.removeCategory("Еда");
+    wallet.renameArchivedCategory("Еда", "Продукты");
+    wallet.recalculateAggregates();
+
+    assertEquals(food, wallet.getExpenseByCategory("Продукты"), 1e-6);
+    assertEquals(0, wallet.getExpenseByCategory("Еда"), 1e-9);
+    List<Operation> archived =
+        wallet
+            .query(OperationQuery.builder().category("Продукты").between(null, HORIZON).build())
+            .getOperations();
+    assertFalse(archived.isEmpty());
+    assertTrue(archived.stream().allMatch(op -> op.getCategory() == renamed));
+    assertEquals(
+        food,
+        wallet.getDailyRollups().summarize(null, null).getExpense("Продукты"),
+        1e-6,
+        "Сводки пересчитаны по архиву с новым названием");
+  }
+
+  private List<Path> segmentFiles() throws Exception {
+    try (Stream<Path> files = Files.list(archiveDir)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static List<Long> ids(List<Operation> operations) {
+    return operations.stream().map(Operation::getId).collect(Collectors.toList());
+  }
+
+  private static int serializedSize(Wallet wallet) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(wallet);
+    }
+    return bytes.size();
+  }
+}
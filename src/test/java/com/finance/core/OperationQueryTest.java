@@ -0,0 +1,136 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OperationQueryTest {
+  private static final String[] CATEGORIES = {"Еда", "Такси", "Транспорт", "Зарплата", "Бонус"};
+  private static final String[] WORDS = {"кофе", "обед", "аэропорт", "премия", "кино"};
+  private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+  private Wallet wallet;
+
+  @BeforeEach
+  void setUp() {
+    wallet = new Wallet();
+    Random random = new Random(11);
+    for (int i = 0; i < 3000; i++) {
+      Category category = wallet.getCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+      double amount = 1 + random.nextInt(2000);
+      String description = WORDS[random.nextInt(WORDS.length)] + " " + i;
+      // Часть операций добавляется не по порядку дат
+      LocalDateTime dateTime = START.atStartOfDay().plusHours(random.nextInt(24 * 365));
+      wallet.addOperation(
+          random.nextBoolean()
+              ? new Expense(amount, category, description, dateTime)
+              : new Income(amount, category, description, dateTime));
+    }
+  }
+
+  private List<Operation> bruteForce(OperationQuery query) {
+    return wallet.getOperations().stream()
+        .filter(query::matches)
+        .filter(
+            op ->
+                query.getText() == null
+                    || DescriptionIndex.tokenize(op.getDescription())
+                        .contains(query.getText().toLowerCase()))
+        .sorted(query.getSort().comparator())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void testRandomQueriesMatchBruteForce() {
+    Random random = new Random(5);
+    OperationQuery.Sort[] sorts = OperationQuery.Sort.values();
+    for (int i = 0; i < 300; i++) {
+      OperationQuery.Builder builder = OperationQuery.builder();
+      if (random.nextBoolean()) {
+        LocalDate from = START.plusDays(random.nextInt(360));
+        builder.between(from, from.plusDays(random.nextInt(60)));
+      }
+      if (random.nextInt(3) == 0) {
+        builder.category(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        builder.category(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+      }
+      if (random.nextInt(3) == 0) {
+        double min = random.nextInt(1500);
+        builder.minAmount(min).maxAmount(min + random.nextInt(300));
+      }
+      if (random.nextInt(4) == 0) {
+        builder.text(WORDS[random.nextInt(WORDS.length)]);
+      }
+      if (random.nextInt(3) == 0) {
+        builder.type(
+            random.nextBoolean() ? OperationQuery.Type.INCOME : OperationQuery.Type.EXPENSE);
+      }
+      int offset = random.nextInt(20);
+      int limit = 1 + random.nextInt(50);
+      OperationQuery query =
+          builder.sortBy(sorts[random.nextInt(sorts.length)]).offset(offset).limit(limit).build();
+
+      List<Operation> expected = bruteForce(query);
+      OperationQueryResult actual = wallet.query(query);
+      String context = "Запрос #" + i + ", план: " + actual.getPlan();
+      assertEquals(expected.size(), actual.getTotalCount(), context);
+      assertEquals(
+          expected.subList(
+              Math.min(offset, expected.size()), Math.min(offset + limit, expected.size())),
+          actual.getOperations(),
+          context);
+    }
+  }
+
+  @Test
+  void testPlannerPicksMostSelectiveIndex() {
+    LocalDate day = START.plusDays(100);
+    assertTrue(
+        wallet
+            .query(OperationQuery.builder().between(day, day).category("Еда").build())
+            .getPlan()
+            .startsWith("индекс времени"));
+    assertTrue(
+        wallet
+            .query(OperationQuery.builder().category("Еда").minAmount(10).maxAmount(11).build())
+            .getPlan()
+            .startsWith("индекс сумм"));
+    assertTrue(
+        wallet
+            .query(OperationQuery.builder().text("кофе 42").category("Бонус").build())
+            .getPlan()
+            .startsWith("индекс описаний"));
+    assertTrue(
+        wallet
+            .query(OperationQuery.builder().category("Такси").build())
+            .getPlan()
+            .startsWith("индекс категорий"));
+  }
+
+  @Test
+  void testAmountIndexSeesNewOperations() {
+    OperationQuery exact = OperationQuery.builder().minAmount(123_456).maxAmount(123_456).build();
+    assertEquals(0, wallet.query(exact).getTotalCount());
+
+    wallet.addOperation(new Expense(123_456, wallet.getCategory("Еда"), "ремонт"));
+    assertEquals(1, wallet.query(exact).getTotalCount());
+  }
+
+  @Test
+  void testInvalidQueryRejected() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OperationQuery.builder().between(START.plusDays(1), START).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OperationQuery.builder().minAmount(10).maxAmount(5).build());
+    assertThrows(IllegalArgumentException.class, () -> OperationQuery.builder().limit(0).build());
+  }
+}
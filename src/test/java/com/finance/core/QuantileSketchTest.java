@@ -0,0 +1,80 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+
+  private static double exactQuantile(double[] sorted, double q) {
+    return sorted[(int) Math.floor(q * (sorted.length - 1))];
+  }
+
+  private static void assertWithinAccuracy(double expected, double actual, String label) {
+    double error = Math.abs(actual - expected) / expected;
+    assertTrue(
+        error <= QuantileSketch.RELATIVE_ACCURACY + 1e-9,
+        label + ": ожидалось " + expected + ", получено " + actual);
+  }
+
+  @Test
+  void testQuantilesWithinRelativeAccuracy() {
+    Random random = new Random(42);
+    QuantileSketch sketch = new QuantileSketch();
+    double[] values = new double[50_000];
+    for (int i = 0; i < values.length; i++) {
+      // Логнормальное распределение похоже на реальные размеры покупок
+      values[i] = Math.round(Math.exp(6 + 1.5 * random.nextGaussian()) * 100) / 100.0 + 0.01;
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double q : new double[] {0.0, 0.1, 0.5, 0.9, 0.99, 1.0}) {
+      assertWithinAccuracy(exactQuantile(values, q), sketch.quantile(q), "q=" + q);
+    }
+    assertEquals(values.length, sketch.getCount());
+    assertEquals(values[0], sketch.getMin());
+    assertEquals(values[values.length - 1], sketch.getMax());
+  }
+
+  @Test
+  void testMergeMatchesSingleSketch() {
+    Random random = new Random(7);
+    QuantileSketch left = new QuantileSketch();
+    QuantileSketch right = new QuantileSketch();
+    QuantileSketch all = new QuantileSketch();
+    for (int i = 0; i < 10_000; i++) {
+      // Разные диапазоны, чтобы при объединении расширялся массив корзин
+      double small = 1 + random.nextDouble() * 100;
+      double large = 10_000 + random.nextDouble() * 1_000_000;
+      left.add(small);
+      right.add(large);
+      all.add(small);
+      all.add(large);
+    }
+
+    QuantileSketch merged = left.copy();
+    merged.merge(right);
+
+    assertEquals(all.getCount(), merged.getCount());
+    for (double q : new double[] {0.01, 0.25, 0.5, 0.75, 0.99}) {
+      assertEquals(all.quantile(q), merged.quantile(q), 1e-9, "q=" + q);
+    }
+    assertEquals(10_000, left.getCount(), "Исходный эскиз не должен меняться при копировании");
+  }
+
+  @Test
+  void testEmptyAndInvalidInput() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    assertThrows(IllegalArgumentException.class, () -> sketch.add(0));
+    assertThrows(IllegalArgumentException.class, () -> sketch.add(-5));
+    assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.5));
+
+    sketch.add(250);
+    assertEquals(250.0, sketch.quantile(0.5), 1e-9, "Одно значение возвращается точно");
+  }
+}
@@ -0,0 +1,41 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ScalableBloomFilterTest {
+
+  @Test
+  void testNoFalseNegativesAndBoundedFalsePositives() {
+    ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+    Random random = new Random(7);
+    long[] added = new long[20_000];
+    for (int i = 0; i < added.length; i++) {
+      added[i] = random.nextLong();
+      filter.add(added[i]);
+    }
+    for (long hash : added) {
+      assertTrue(filter.mightContain(hash), "Добавленный элемент всегда находится");
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain(random.nextLong())) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < 1500, "Ложных срабатываний: " + falsePositives);
+    assertTrue(filter.getLayerCount() >= 5, "Слои добавляются по мере роста");
+    assertTrue(filter.getMemoryBytes() < added.length * 4L, "Меньше 4 байт на элемент");
+    assertEquals(added.length, filter.size());
+  }
+
+  @Test
+  void testInvalidParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(0, 0.01));
+    assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(10, 1));
+    assertFalse(new ScalableBloomFilter(10, 0.01).mightContain(42));
+  }
+}
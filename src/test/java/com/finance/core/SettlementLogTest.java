@@ -0,0 +1,56 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SettlementLogTest {
+  @TempDir Path dir;
+
+  @Test
+  void testPendingWindowRestoredAfterReopen() throws Exception {
+    Path file = dir.resolve("settlements.log");
+    try (SettlementLog log = SettlementLog.open(file)) {
+      NettingWindow window = log.takePendingWindow();
+      assertEquals(1, window.getId());
+      int anna = log.userId("anna");
+      int boris = log.userId("boris");
+      assertEquals(anna, log.userId("anna"), "Логин записывается в словарь один раз");
+      log.appendLeg(1, anna, boris, 100, 0, "обед");
+      log.markSettled(1);
+      log.appendLeg(2, boris, anna, 40, 0, "такси");
+      log.appendLeg(2, anna, log.userId("vera"), 15, 0, "");
+    }
+    // Оборванная запись в конце журнала
+    Files.write(file, new byte[] {0, 0, 1, 0, 'L'}, StandardOpenOption.APPEND);
+
+    try (SettlementLog log = SettlementLog.open(file)) {
+      assertEquals(1, log.getLastSettledWindow());
+      NettingWindow pending = log.takePendingWindow();
+      assertEquals(2, pending.getId());
+      assertEquals(2, pending.size());
+      assertEquals("boris", log.login(pending.getFrom(0)));
+      assertEquals(40, pending.getOutgoing(log.findUserId("boris")), 1e-9);
+      assertEquals(-1, log.findUserId("gleb"));
+
+      NettingWindow settled = log.readWindow(1);
+      assertEquals(1, settled.size(), "Подробности закрытого окна остаются в журнале");
+      assertEquals("обед", settled.getDescription(0));
+      assertEquals(100, settled.getAmount(0), 1e-9);
+    }
+  }
+
+  @Test
+  void testNewLogStartsWithEmptyWindow() {
+    try (SettlementLog log = SettlementLog.open(dir.resolve("new.log"))) {
+      NettingWindow window = log.takePendingWindow();
+      assertEquals(0, window.size());
+      assertEquals(0, log.getLastSettledWindow());
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.finance.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferLedgerTest {
+  @TempDir Path dir;
+
+  private static Transfer transfer(String from, String to, double amount, String key) {
+    Transfer transfer = new Transfer(from, to, amount, "тест");
+    transfer.restore(key, 10, 20);
+    return transfer;
+  }
+
+  private static List<Long> ids(List<Transfer> transfers) {
+    return transfers.stream().map(Transfer::getId).collect(Collectors.toList());
+  }
+
+  @Test
+  void testIndexesBySenderReceiverAndPair() {
+    try (TransferLedger ledger = TransferLedger.open(dir.resolve("transfers.log"))) {
+      ledger.append(transfer("anna", "boris", 100, null));
+      ledger.append(transfer("boris", "anna", 40, null));
+      ledger.append(transfer("anna", "vera", 5, "k1"));
+      ledger.append(transfer("anna", "boris", 7, null));
+
+      assertEquals(List.of(1L, 3L, 4L), ids(ledger.getSent("anna")));
+      assertEquals(List.of(2L), ids(ledger.getReceived("anna")));
+      assertEquals(
+          List.of(1L, 2L, 4L), ids(ledger.getHistory("boris", "anna")), "Пара в обе стороны");
+      assertEquals(List.of(2L, 4L), ids(ledger.getHistory("anna", "boris", 2)));
+      assertTrue(ledger.getHistory("vera", "boris").isEmpty());
+      assertEquals(3, ledger.findByKey("anna", "k1").getId());
+      assertNull(ledger.findByKey("boris", "k1"), "Ключ действует в пределах отправителя");
+      assertEquals(40, ledger.get(2).getAmount(), 1e-9);
+    }
+  }
+
+  @Test
+  void testDuplicateKeyRejected() {
+    try (TransferLedger ledger = TransferLedger.open(dir.resolve("transfers.log"))) {
+      ledger.append(transfer("anna", "boris", 100, "retry"));
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> ledger.append(transfer("anna", "vera", 100, "retry")));
+      assertEquals(1, ledger.size());
+      ledger.append(transfer("boris", "anna", 100, "retry"));
+      assertEquals(2, ledger.size());
+    }
+  }
+
+  @Test
+  void testReopenRestoresRecordsAndDropsTornTail() throws Exception {
+    Path file = dir.resolve("transfers.log");
+    try (TransferLedger ledger = TransferLedger.open(file)) {
+      ledger.append(transfer("anna", "boris", 100, "a"));
+      ledger.append(transfer("boris", "anna", 30, null));
+    }
+    long size = Files.size(file);
+    // Оборванная при сбое запись: длина есть, данных нет
+    Files.write(file, new byte[] {0, 0, 0, 90, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    try (TransferLedger ledger = TransferLedger.open(file)) {
+      assertEquals(2, ledger.size());
+      assertEquals(size, Files.size(file), "Оборванный хвост срезан");
+      Transfer restored = ledger.findByKey("anna", "a");
+      assertEquals(1, restored.getId());
+      assertEquals(10, restored.getFromOperationId());
+      assertEquals(20, restored.getToOperationId());
+      assertEquals("тест", restored.getDescription());
+      assertEquals(3, ledger.append(transfer("anna", "boris", 1, null)).getId());
+    }
+    try (TransferLedger ledger = TransferLedger.open(file)) {
+      assertEquals(List.of(1L, 2L, 3L), ids(ledger.getHistory("anna", "boris")));
+    }
+  }
+
+  @Test
+  void testFailedAppendDoesNotLoseLaterTransfers() {
+    Path file = dir.resolve("transfers.log");
+    try (TransferLedger ledger = TransferLedger.open(file)) {
+      ledger.append(transfer("anna", "boris", 100, null));
+      // Описание длиннее предела записи: перевод не попадает в файл
+      Transfer tooLong = new Transfer("anna", "boris", 5, "x".repeat(70_000));
+      tooLong.restore("k1", 1, 2);
+      assertThrows(java.io.UncheckedIOException.class, () -> ledger.append(tooLong));
+      assertEquals(1, ledger.size(), "Неудачная запись не остается в памяти");
+      assertNull(ledger.findByKey("anna", "k1"), "Ключ неудачного перевода свободен");
+      assertEquals(0, tooLong.getId());
+
+      assertEquals(2, ledger.append(transfer("anna", "boris", 7, "k1")).getId());
+      ledger.append(transfer("boris", "anna", 3, null));
+    }
+    try (TransferLedger ledger = TransferLedger.open(file)) {
+      assertEquals(3, ledger.size(), "Переводы после неудачной записи не потеряны");
+      assertEquals(List.of(1L, 2L, 3L), ids(ledger.getHistory("anna", "boris")));
+      assertEquals(7, ledger.findByKey("anna", "k1").getAmount(), 1e-9);
+    }
+  }
+}
@@ -2,8 +2,14 @@ package com.finance.core;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -348,6 +354,143 @@ class WalletTest {
         "Должно быть уведомление о низком балансе (<10% от дохода). Получены: " + notifications);
   }
 
+  @Test
+  void testNotifications_RepeatedWarningsCoalesced() {
+    // Повторные предупреждения об отрицательном балансе объединяются в одно
+    wallet.addOperation(new Expense(100, wallet.getCategory("ТестКатегория"), ""));
+    wallet.addOperation(new Expense(200, wallet.getCategory("ТестКатегория"), ""));
+    wallet.addOperation(new Expense(300, wallet.getCategory("ТестКатегория"), ""));
+
+    List<String> notifications = wallet.getAndClearNotifications();
+    assertEquals(1, notifications.stream().filter(n -> n.contains("КРИТИЧЕСКОЕ")).count());
+    assertTrue(
+        notifications.stream().anyMatch(n -> n.contains("-600.0") && n.contains("повторений: 3")));
+  }
+
+  @Test
+  void testBatchDefersAlertEvaluationToEnd() {
+    wallet.setBudget("ТестКатегория", 1000);
+    wallet.beginBatch();
+    for (int i = 0; i < 5; i++) {
+      wallet.addOperation(new Expense(300, wallet.getCategory("ТестКатегория"), "Пакет"));
+    }
+    assertTrue(wallet.getNotifications().isEmpty(), "Внутри пакета правила не проверяются");
+
+    wallet.endBatch();
+
+    List<String> notifications = wallet.getAndClearNotifications();
+    assertTrue(notifications.stream().anyMatch(n -> n.contains("Превышен бюджет")));
+    assertTrue(notifications.stream().anyMatch(n -> n.contains("Отрицательный баланс")));
+    assertThrows(IllegalStateException.class, wallet::endBatch);
+  }
+
+  @Test
+  void testAddOperationIfAbsentRejectsSameContentAndSourceId() {
+    LocalDateTime time = LocalDateTime.of(2024, 3, 1, 12, 0);
+    Category food = wallet.getCategory("Еда");
+    assertTrue(wallet.addOperationIfAbsent(new Expense(100, food, "обед", time)));
+    assertFalse(wallet.addOperationIfAbsent(new Expense(100, food, "обед", time)));
+    assertTrue(wallet.addOperationIfAbsent(new Expense(100, food, "обед", time.plusSeconds(1))));
+    assertTrue(wallet.addOperationIfAbsent(new Income(100, food, "обед", time)));
+
+    Expense fromFeed = new Expense(5, food, "кофе");
+    fromFeed.setSourceId("bank-42");
+    Expense replayed = new Expense(7, food, "кофе, другая сумма");
+    replayed.setSourceId("bank-42");
+    assertTrue(wallet.addOperationIfAbsent(fromFeed));
+    assertFalse(wallet.addOperationIfAbsent(replayed), "Совпадает идентификатор источника");
+    assertEquals(4, wallet.getOperations().size());
+    assertTrue(wallet.containsOperation(new Expense(100, food, "обед", time)));
+
+    // Отпечатки строятся заново после замены операций
+    wallet.setOperations(new ArrayList<>());
+    assertTrue(wallet.addOperationIfAbsent(new Expense(100, food, "обед", time)));
+  }
+
+  @Test
+  void testFingerprintsFilterMostLookupsBeforeExactSet() {
+    Category food = wallet.getCategory("Еда");
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+    for (int i = 0; i < 5000; i++) {
+      wallet.addOperation(new Expense(1 + i % 50, food, "", start.plusMinutes(i)));
+    }
+    OperationFingerprints fingerprints = wallet.fingerprints();
+    assertEquals(5000, fingerprints.size());
+    for (int i = 0; i < 5000; i++) {
+      assertFalse(
+          wallet.containsOperation(
+              new Expense(1 + i % 50, food, "", start.plusMinutes(i).plusNanos(1))));
+    }
+    assertTrue(fingerprints.getExactLookups() < 250, "Фильтр Блума отсекает почти все проверки");
+    assertTrue(fingerprints.getFilter().getLayerCount() > 1, "Фильтр растет слоями");
+  }
+
+  // ========== ТЕСТЫ ДЛЯ ПРАВИЛ ОПОВЕЩЕНИЙ ==========
+
+  @Test
+  void testDefaultAlertRules() {
+    // Стандартные правила повторяют прежние зашитые пороги
+    assertEquals(5, wallet.getAlertRules().getRules().size());
+  }
+
+  @Test
+  void testCustomCategoryRule_FiresOnlyForItsCategory() {
+    wallet.addOperation(new Income(100000, wallet.getCategory("Зарплата"), ""));
+    wallet.addAlertRule(
+        new AlertRule(
+            AlertRule.Metric.CATEGORY_EXPENSE,
+            AlertRule.Condition.ABOVE,
+            1000,
+            Double.POSITIVE_INFINITY,
+            "Такси",
+            "Много трат на такси: {value}"));
+    wallet.getAndClearNotifications();
+
+    wallet.addOperation(new Expense(5000, wallet.getCategory("Еда"), ""));
+    assertTrue(wallet.getAndClearNotifications().stream().noneMatch(n -> n.contains("такси")));
+
+    wallet.addOperation(new Expense(1500, wallet.getCategory("Такси"), ""));
+    assertTrue(
+        wallet.getAndClearNotifications().stream()
+            .anyMatch(n -> n.startsWith("Много трат на такси: 1500")));
+  }
+
+  @Test
+  void testCustomBudgetRule_LowerThreshold() {
+    wallet.setBudget("ТестКатегория", 1000);
+    wallet.addAlertRule(
+        new AlertRule(AlertRule.Metric.BUDGET_USAGE, AlertRule.Condition.AT_LEAST, 50, null));
+    wallet.addOperation(new Expense(600, wallet.getCategory("ТестКатегория"), ""));
+
+    List<String> notifications = wallet.getAndClearNotifications();
+    assertTrue(notifications.stream().anyMatch(n -> n.contains("ПРАВИЛО #6")));
+  }
+
+  @Test
+  void testRemoveAlertRule() {
+    wallet.addOperation(new Income(500, wallet.getCategory("Зарплата"), ""));
+    long negativeBalanceRule = wallet.getAlertRules().getRules().get(2).getId();
+    assertTrue(wallet.removeAlertRule(negativeBalanceRule));
+    assertFalse(wallet.removeAlertRule(negativeBalanceRule));
+
+    wallet.addOperation(new Expense(1500, wallet.getCategory("ТестКатегория"), ""));
+    assertTrue(
+        wallet.getAndClearNotifications().stream().noneMatch(n -> n.contains("КРИТИЧЕСКОЕ")));
+  }
+
+  @Test
+  void testAlertRule_UnknownCategory() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            wallet.addAlertRule(
+                new AlertRule(
+                    AlertRule.Metric.CATEGORY_EXPENSE,
+                    AlertRule.Condition.ABOVE,
+                    10,
+                    "Несуществующая")));
+  }
+
   // ========== ТЕСТЫ ДЛЯ ФОРМАТИРОВАНИЯ ==========
 
   @Test
@@ -479,4 +622,268 @@ class WalletTest {
     wallet.setBudgets(budgets);
     assertNotNull(wallet.getBudget("ТестКатегория"));
   }
+
+  // ========== ТЕСТЫ ПОСТРАНИЧНОГО ВЫВОДА ==========
+
+  private void addDailyOperations(int count) {
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+    for (int i = 0; i < count; i++) {
+      Category category = wallet.getCategory(i % 2 == 0 ? "Еда" : "Транспорт");
+      wallet.addOperation(new Expense(i + 1, category, "op" + i, start.plusDays(i)));
+    }
+  }
+
+  @Test
+  void testOperationsPageNewestFirst() {
+    addDailyOperations(25);
+
+    OperationPage first = wallet.getOperationsPage(null, null, null, 1, 10);
+    assertEquals(25, first.getTotalCount());
+    assertEquals(3, first.getTotalPages());
+    assertEquals("op24", first.getOperations().get(0).getDescription());
+    assertEquals("op15", first.getOperations().get(9).getDescription());
+
+    OperationPage last = wallet.getOperationsPage(null, null, null, 3, 10);
+    assertEquals(5, last.getOperations().size());
+    assertEquals("op0", last.getOperations().get(4).getDescription());
+    assertFalse(last.hasNext());
+
+    assertTrue(wallet.getOperationsPage(null, null, null, 4, 10).getOperations().isEmpty());
+  }
+
+  @Test
+  void testOperationsPageWithFilters() {
+    addDailyOperations(30);
+    LocalDate from = LocalDate.of(2024, 1, 6);
+    LocalDate to = LocalDate.of(2024, 1, 15);
+
+    OperationPage page = wallet.getOperationsPage(from, to, "еда", 1, 3);
+    assertEquals(5, page.getTotalCount(), "В периоде 10 дней, из них 5 - расходы на еду");
+    assertEquals(
+        List.of("op14", "op12", "op10"),
+        page.getOperations().stream().map(Operation::getDescription).toList());
+    assertEquals(15, wallet.getOperationsPage(null, null, "Еда", 1, 3).getTotalCount());
+  }
+
+  @Test
+  void testCursorPagingIsStableWhenOperationsAdded() {
+    addDailyOperations(10);
+    OperationPage first = wallet.getOperationsBefore(null, null, null, null, 4);
+    assertTrue(first.hasNext());
+
+    // Новая операция не должна сдвигать следующую страницу
+    wallet.addOperation(new Income(100, wallet.getCategory("Зарплата"), "new"));
+    OperationPage second = wallet.getOperationsBefore(first.getNextCursor(), null, null, null, 4);
+    assertEquals("op5", second.getOperations().get(0).getDescription());
+    assertEquals("op2", second.getOperations().get(3).getDescription());
+
+    OperationPage third = wallet.getOperationsBefore(second.getNextCursor(), null, null, null, 4);
+    assertEquals(2, third.getOperations().size());
+    assertFalse(third.hasNext());
+  }
+
+  @Test
+  void testOperationsPageAfterOutOfOrderInsert() {
+    addDailyOperations(5);
+    wallet.addOperation(
+        new Expense(7, wallet.getCategory("Еда"), "old", LocalDateTime.of(2023, 12, 31, 0, 0)));
+
+    List<Operation> latest = wallet.getLatestOperations(10);
+    assertEquals(6, latest.size());
+    assertEquals("op4", latest.get(0).getDescription());
+    assertEquals("old", latest.get(5).getDescription());
+    assertTrue(latest.get(5).getId() > latest.get(0).getId(), "Номер назначается по порядку");
+  }
+
+  // ========== ТЕСТЫ РЕЙТИНГА КАТЕГОРИЙ ==========
+
+  @Test
+  void testTopExpenseCategoriesUpdatedIncrementally() {
+    wallet.addOperation(new Expense(300, wallet.getCategory("Еда"), ""));
+    wallet.addOperation(new Expense(500, wallet.getCategory("Транспорт"), ""));
+    wallet.addOperation(new Expense(100, wallet.getCategory("Такси"), ""));
+    assertEquals(
+        List.of("Транспорт", "Еда"), List.copyOf(wallet.getTopExpenseCategories(2).keySet()));
+
+    // Еда обгоняет Транспорт - позиция в рейтинге должна измениться
+    wallet.addOperation(new Expense(400, wallet.getCategory("Еда"), ""));
+    Map<String, Double> top = wallet.getTopExpenseCategories(3);
+    assertEquals(List.of("Еда", "Транспорт", "Такси"), List.copyOf(top.keySet()));
+    assertEquals(700.0, top.get("Еда"), 0.001);
+    assertEquals(3, wallet.getTopExpenseCategories(10).size());
+  }
+
+  @Test
+  void testTopCategoriesSeparateIncomeAndExpense() {
+    wallet.addOperation(new Income(1000, wallet.getCategory("Зарплата"), ""));
+    wallet.addOperation(new Income(200, wallet.getCategory("Бонус"), ""));
+    wallet.addOperation(new Expense(50, wallet.getCategory("Еда"), ""));
+
+    assertEquals(
+        List.of("Зарплата", "Бонус"), List.copyOf(wallet.getTopIncomeCategories(5).keySet()));
+    assertEquals(List.of("Еда"), List.copyOf(wallet.getTopExpenseCategories(5).keySet()));
+  }
+
+  @Test
+  void testTopCategoriesAfterOperationsReplaced() {
+    wallet.addOperation(new Expense(50, wallet.getCategory("Еда"), ""));
+    wallet.setOperations(
+        new ArrayList<>(List.of(new Expense(70, wallet.getCategory("Такси"), ""))));
+
+    assertEquals(List.of("Такси"), List.copyOf(wallet.getTopExpenseCategories(5).keySet()));
+  }
+
+  // ========== ТЕСТЫ РАСПРЕДЕЛЕНИЯ РАСХОДОВ ==========
+
+  @Test
+  void testExpenseDistributionUpdatedAndPersisted() throws Exception {
+    LocalDateTime january = LocalDateTime.of(2024, 1, 10, 12, 0);
+    for (int i = 1; i <= 100; i++) {
+      wallet.addOperation(new Expense(i * 10, wallet.getCategory("Еда"), "", january));
+    }
+    wallet.addOperation(new Expense(5000, wallet.getCategory("Такси"), "", january.plusMonths(1)));
+    wallet.addOperation(new Income(100_000, wallet.getCategory("Зарплата"), ""));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(wallet);
+    }
+    Wallet restored;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      restored = (Wallet) in.readObject();
+    }
+
+    ExpenseDistribution distribution = restored.getExpenseDistribution();
+    assertEquals(101, distribution.getOverall().getCount(), "Доходы в распределение не входят");
+    assertEquals(500, distribution.getCategory("еда").quantile(0.5), 500 * 0.01);
+    assertEquals(5000, distribution.getCategory("Такси").quantile(0.5), 5000 * 0.01);
+    assertEquals(2, distribution.getByMonth().size());
+  }
+
+  // ========== ТЕСТЫ ПОИСКА ПО ОПИСАНИЮ ==========
+
+  private List<String> search(Wallet target, String query) {
+    return target.searchOperations(query).stream().map(Operation::getDescription).toList();
+  }
+
+  @Test
+  void testSearchOperationsBooleanAndPrefix() {
+    LocalDateTime start = LocalDateTime.of(2024, 3, 1, 9, 0);
+    Category food = wallet.getCategory("Еда");
+    wallet.addOperation(new Expense(150, food, "Кофе с молоком", start));
+    wallet.addOperation(new Expense(90, food, "Чай зеленый", start.plusHours(1)));
+    wallet.addOperation(new Expense(300, food, "Кофейные зерна", start.plusHours(2)));
+    wallet.addOperation(new Expense(60, food, "молоко", start.plusHours(3)));
+
+    assertEquals(List.of("Кофе с молоком"), search(wallet, "кофе молоком"));
+    assertEquals(List.of("Чай зеленый", "Кофе с молоком"), search(wallet, "кофе ИЛИ чай"));
+    assertEquals(List.of("Кофейные зерна", "Кофе с молоком"), search(wallet, "коф*"));
+    assertEquals(List.of("молоко", "Кофе с молоком"), search(wallet, "молок*"));
+    assertTrue(search(wallet, "кофе сахар").isEmpty());
+  }
+
+  @Test
+  void testSearchIndexPersistedAndRebuiltForOldData() throws Exception {
+    wallet.addOperation(new Expense(100, wallet.getCategory("Такси"), "Такси в аэропорт"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(wallet);
+    }
+    Wallet restored;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      restored = (Wallet) in.readObject();
+    }
+    restored.addOperation(new Expense(200, restored.getCategory("Такси"), "Такси домой"));
+    assertEquals(List.of("Такси домой", "Такси в аэропорт"), search(restored, "такси"));
+
+    // Операции без номеров, как в старых файлах данных
+    Wallet legacy = new Wallet();
+    legacy.setOperations(
+        new ArrayList<>(
+            List.of(
+                new Expense(10, legacy.getCategory("Еда"), "хлеб"),
+                new Expense(20, legacy.getCategory("Еда"), "хлеб и сыр"))));
+    assertEquals(2, search(legacy, "хлеб").size());
+    assertEquals(List.of("хлеб и сыр"), search(legacy, "сыр"));
+  }
+
+  @Test
+  void testReportCacheInvalidatedByVersion() {
+    int[] renders = {0};
+    java.util.function.Supplier<String> render = () -> "отчет " + ++renders[0];
+
+    assertEquals("отчет 1", wallet.cachedReport("balance", render));
+    assertEquals("отчет 1", wallet.cachedReport("balance", render), "Повтор берется из кэша");
+    assertEquals(1, renders[0]);
+
+    long version = wallet.getVersion();
+    wallet.addOperation(new Income(100, wallet.getCategory("Зарплата"), "Аванс"));
+    assertTrue(wallet.getVersion() > version, "Версия растет при изменении");
+    assertEquals("отчет 2", wallet.cachedReport("balance", render), "Устаревший отчет перестроен");
+
+    wallet.setBudget("Еда", 500);
+    assertEquals("отчет 3", wallet.cachedReport("balance", render));
+    assertEquals("отчет 4", wallet.cachedReport("detailed", render), "Ключи кэшируются отдельно");
+    assertEquals("отчет 3", wallet.cachedReport("balance", render));
+  }
+
+  @Test
+  void testParallelSummaryMatchesSequentialSums() {
+    Random random = new Random(7);
+    List<Category> categories = wallet.getCategories();
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+    int size = SummaryAggregator.PARALLEL_THRESHOLD * 2 + 123;
+    for (int i = 0; i < size; i++) {
+      Category category = categories.get(random.nextInt(categories.size()));
+      double amount = (1 + random.nextInt(100_000)) / 100.0;
+      LocalDateTime dateTime = start.plusMinutes(i * 7L);
+      wallet.addOperation(
+          random.nextBoolean()
+              ? new Income(amount, category, "", dateTime)
+              : new Expense(amount, category, "", dateTime));
+    }
+
+    LocalDate from = LocalDate.of(2024, 2, 1);
+    LocalDate to = LocalDate.of(2025, 1, 31);
+    double income = 0;
+    double expense = 0;
+    double foodExpense = 0;
+    int incomeCount = 0;
+    for (Operation op : wallet.getOperations()) {
+      LocalDate date = op.getDateTime().toLocalDate();
+      if (date.isBefore(from) || date.isAfter(to)) {
+        continue;
+      }
+      if (op instanceof Income) {
+        income += op.getAmount();
+        incomeCount++;
+      } else {
+        expense += op.getAmount();
+        if (op.getCategory().getName().equals("Еда")) {
+          foodExpense += op.getAmount();
+        }
+      }
+    }
+
+    WalletSummary summary = wallet.summarize(from, to);
+    assertTrue(
+        summary.getIncomeCount() + summary.getExpenseCount()
+            >= SummaryAggregator.PARALLEL_THRESHOLD,
+        "Период достаточно велик для параллельного подсчета");
+    assertEquals(income, summary.getTotalIncome(), 1e-3);
+    assertEquals(expense, summary.getTotalExpense(), 1e-3);
+    assertEquals(incomeCount, summary.getIncomeCount());
+    assertEquals(foodExpense, summary.getExpense("еда"), 1e-3);
+    assertEquals(expense, wallet.getTotalExpenseByPeriod(from, to), 1e-3);
+
+    WalletSummary all = wallet.summarize(null, null);
+    assertEquals(wallet.getTotalIncome(), all.getTotalIncome(), 1e-3);
+    assertEquals(
+        wallet.getTopExpenseCategories(3).keySet(),
+        all.getExpenseByCategories().keySet().stream().limit(3).collect(Collectors.toSet()),
+        "Рейтинг категорий совпадает с агрегатами кошелька");
+  }
 }
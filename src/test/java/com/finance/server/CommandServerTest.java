@@ -0,0 +1,171 @@
+package com.finance.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.service.DataStorage;
+import com.finance.service.UserRegistry;
+
+class CommandServerTest {
+  private UserRegistry registry;
+  private CommandServer server;
+  private int port;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cleanup();
+    registry = new UserRegistry(new DataStorage());
+    server = new CommandServer(registry, new InetSocketAddress("localhost", 0), 4);
+    port = server.start();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    server.close();
+    cleanup();
+  }
+
+  private static void cleanup() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    Files.deleteIfExists(Paths.get("settlements.log"));
+  }
+
+  /** Ответ на команду: строки вывода без экранирования и признак успеха. */
+  private static final class Response {
+    final List<String> lines = new ArrayList<>();
+    boolean ok;
+
+    String text() {
+      return String.join("\n", lines);
+    }
+  }
+
+  private static final class Client implements AutoCloseable {
+    private final Socket socket;
+    private final OutputStream out;
+    private final BufferedReader in;
+
+    Client(int port) throws IOException {
+      socket = new Socket("localhost", port);
+      out = socket.getOutputStream();
+      in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    void send(String... commands) throws IOException {
+      StringBuilder text = new StringBuilder();
+      for (String command : commands) {
+        text.append(command).append('\n');
+      }
+      out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+
+    Response read() throws IOException {
+      Response response = new Response();
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.equals(".OK") || line.equals(".ERR")) {
+          response.ok = line.equals(".OK");
+          return response;
+        }
+        response.lines.add(line.startsWith(".") ? line.substring(1) : line);
+      }
+      throw new IOException("Соединение закрыто");
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  @Test
+  void testPipelinedCommandsAnswerInOrder() throws Exception {
+    try (Client client = new Client(port)) {
+      client.send(
+          "register anna password123",
+          "login anna password123",
+          "add_income Зарплата 1000 аванс",
+          "add_expense Еда 250 обед",
+          "balance",
+          "transfer nobody 10");
+
+      assertTrue(client.read().ok, "Регистрация");
+      assertTrue(client.read().text().contains("Добро пожаловать, anna"));
+      assertTrue(client.read().ok);
+      assertTrue(client.read().ok);
+      Response balance = client.read();
+      assertTrue(balance.ok);
+      assertTrue(
+          balance.text().contains("750"), "Баланс после дохода и расхода: " + balance.text());
+      Response transfer = client.read();
+      assertFalse(transfer.ok, "Перевод несуществующему пользователю - ошибка");
+      assertTrue(transfer.text().contains("❌"));
+    }
+    assertEquals(750, registry.find("anna").getWallet().getBalance(), 1e-9);
+  }
+
+  @Test
+  void testConnectionsAreSeparateSessions() throws Exception {
+    try (Client anna = new Client(port);
+        Client boris = new Client(port)) {
+      anna.send("register anna password123", "login anna password123");
+      boris.send("register boris password123", "balance");
+      anna.read();
+      anna.read();
+      boris.read();
+      assertTrue(boris.read().text().contains("Требуется авторизация"), "Вход anna не виден boris");
+
+      anna.send("add_income Зарплата 100", "transfer boris 40 долг");
+      assertTrue(anna.read().ok);
+      assertTrue(anna.read().ok);
+      boris.send("login boris password123", "balance");
+      boris.read();
+      assertTrue(boris.read().text().contains("40"));
+    }
+  }
+
+  @Test
+  void testExitClosesConnectionAndSession() throws Exception {
+    try (Client client = new Client(port)) {
+      client.send("register anna password123", "login anna password123", "exit", "balance");
+      client.read();
+      client.read();
+      assertTrue(client.read().ok);
+      assertNull(client.in.readLine(), "После exit сервер закрывает соединение");
+    }
+    for (int i = 0; i < 100 && registry.getSessionCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, registry.getSessionCount());
+  }
+
+  @Test
+  void testLoadGeneratorRun() {
+    LoadGenerator.Report report = LoadGenerator.run("localhost", port, 4, 200, 8);
+
+    assertEquals(800, report.getCommands());
+    assertEquals(0, report.getErrors());
+    assertTrue(report.getThroughput() > 0);
+    assertTrue(report.getLatencyMicros(0.5) <= report.getLatencyMicros(0.99));
+    assertEquals(4, registry.getUsers().size());
+  }
+}
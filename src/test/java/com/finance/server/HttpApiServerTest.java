@@ -0,0 +1,163 @@
+package com.finance.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.finance.core.Category;
+import com.finance.core.Expense;
+import com.finance.core.Wallet;
+import com.finance.service.DataStorage;
+import com.finance.service.UserRegistry;
+
+class HttpApiServerTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private UserRegistry registry;
+  private HttpApiServer server;
+  private HttpClient http;
+  private URI base;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cleanup();
+    registry = new UserRegistry(new DataStorage());
+    server = new HttpApiServer(registry, new InetSocketAddress("localhost", 0), 4, 64);
+    base = URI.create("http://localhost:" + server.start());
+    http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    server.close();
+    cleanup();
+  }
+
+  private static void cleanup() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    Files.deleteIfExists(Paths.get("settlements.log"));
+  }
+
+  private HttpResponse<String> call(String method, String path, String token, String json)
+      throws Exception {
+    HttpRequest.Builder request =
+        HttpRequest.newBuilder(base.resolve(path))
+            .method(
+                method,
+                json == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(json));
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+    return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private JsonNode json(HttpResponse<String> response) throws Exception {
+    return MAPPER.readTree(response.body());
+  }
+
+  private String login(String login) throws Exception {
+    String credentials = "{\"login\":\"" + login + "\",\"password\":\"password123\"}";
+    assertEquals(201, call("POST", "/api/register", null, credentials).statusCode());
+    HttpResponse<String> response = call("POST", "/api/login", null, credentials);
+    assertEquals(200, response.statusCode());
+    return json(response).get("token").asText();
+  }
+
+  @Test
+  void testOperationsBudgetsAndStats() throws Exception {
+    String token = login("anna");
+
+    HttpResponse<String> income =
+        call(
+            "POST",
+            "/api/income",
+            token,
+            "{\"category\":\"Зарплата\",\"amount\":1000,\"description\":\"аванс\"}");
+    assertEquals(201, income.statusCode());
+    assertEquals(1000, json(income).get("balance").asDouble(), 1e-9);
+    call("POST", "/api/budgets", token, "{\"category\":\"Еда\",\"limit\":200}");
+    HttpResponse<String> expense =
+        call("POST", "/api/expense", token, "{\"category\":\"Еда\",\"amount\":250}");
+    assertEquals(201, expense.statusCode());
+    assertTrue(json(expense).get("notifications").size() > 0, "Оповещение о превышении бюджета");
+
+    JsonNode balance = json(call("GET", "/api/balance", token, null));
+    assertEquals(750, balance.get("balance").asDouble(), 1e-9);
+    JsonNode budgets = json(call("GET", "/api/budgets", token, null));
+    assertEquals("Еда", budgets.get(0).get("category").asText());
+    assertTrue(budgets.get(0).get("exceeded").asBoolean());
+    JsonNode stats = json(call("GET", "/api/stats", token, null));
+    assertEquals(1000, stats.get("totalIncome").asDouble(), 1e-9);
+    assertEquals(250, stats.get("expense").get("Еда").asDouble(), 1e-9);
+    assertEquals(
+        204, call("DELETE", "/api/budgets?category=%D0%95%D0%B4%D0%B0", token, null).statusCode());
+    assertEquals(0, json(call("GET", "/api/budgets", token, null)).size());
+  }
+
+  @Test
+  void testTransfersAndExport() throws Exception {
+    String anna = login("anna");
+    login("boris");
+    call("POST", "/api/income", anna, "{\"category\":\"Зарплата\",\"amount\":500}");
+
+    HttpResponse<String> transfer =
+        call("POST", "/api/transfers", anna, "{\"to\":\"boris\",\"amount\":120,\"key\":\"k1\"}");
+    assertEquals(201, transfer.statusCode());
+    HttpResponse<String> repeat =
+        call("POST", "/api/transfers", anna, "{\"to\":\"boris\",\"amount\":120,\"key\":\"k1\"}");
+    assertEquals(json(transfer).get("id").asLong(), json(repeat).get("id").asLong());
+    assertEquals(1, json(call("GET", "/api/transfers?with=boris", anna, null)).size());
+    assertEquals(120, registry.find("boris").getWallet().getBalance(), 1e-9);
+
+    // Большой ответ уходит частями
+    Wallet wallet = registry.find("anna").getWallet();
+    wallet.addCategory(new Category("Еда", ""));
+    for (int i = 0; i < 100; i++) {
+      wallet.addOperation(new Expense(1, wallet.getCategory("Еда"), "обед ".repeat(40)));
+    }
+    HttpResponse<String> export = call("GET", "/api/export", anna, null);
+    assertEquals(200, export.statusCode());
+    assertTrue(export.body().length() > JsonResponse.BUFFERED_LIMIT);
+    assertEquals(102, json(export).get("operations").size());
+  }
+
+  @Test
+  void testErrors() throws Exception {
+    assertEquals(401, call("GET", "/api/balance", null, null).statusCode());
+    assertEquals(401, call("GET", "/api/balance", "no-such-token", null).statusCode());
+    assertEquals(405, call("PUT", "/api/balance", null, "{}").statusCode());
+    assertEquals(404, call("GET", "/api/balance/lost", null, null).statusCode());
+    String token = login("anna");
+    HttpResponse<String> response =
+        call("POST", "/api/expense", token, "{\"category\":\"Еда\",\"amount\":\"много\"}");
+    assertEquals(400, response.statusCode());
+    assertTrue(json(response).get("error").asText().contains("amount"));
+    assertEquals(400, call("POST", "/api/transfers", token, "{\"to\":\"x\",").statusCode());
+    assertEquals(204, call("POST", "/api/logout", token, null).statusCode());
+    assertEquals(401, call("GET", "/api/balance", token, null).statusCode());
+  }
+
+  @Test
+  void testBenchmarkRun() {
+    LoadGenerator.Report report = HttpBenchmark.run(base.toString(), 2, 50);
+
+    assertEquals(100, report.getCommands());
+    assertEquals(0, report.getErrors());
+    assertTrue(report.getThroughput() > 0);
+  }
+}
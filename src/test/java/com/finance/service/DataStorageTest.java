@@ -4,7 +4,10 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.junit.jupiter.api.*;
@@ -111,6 +114,36 @@ class DataStorageTest {
     assertTrue(csvFile.length() > 0, "CSV файл не должен быть пустым");
   }
 
+  @Test
+  @Order(3)
+  void testCsvRoundTripKeepsDescriptionsAndAmounts() throws Exception {
+    // Описания с запятыми, кавычками, переводом строки и токеном, похожим на дату
+    Wallet wallet = new Wallet();
+    String tricky = "обед, 2024-01-01T10:00 \"кафе\"\nвторая строка";
+    wallet.addOperation(
+        new Expense(
+            1200.5, wallet.getCategory("Еда"), tricky, LocalDateTime.of(2024, 3, 1, 12, 30)));
+    wallet.addOperation(
+        new Income(50000, wallet.getCategory("Зарплата"), "", LocalDateTime.of(2024, 3, 2, 9, 0)));
+
+    // Запятая как десятичный разделитель в локали по умолчанию не должна попасть в файл
+    Locale previous = Locale.getDefault();
+    Locale.setDefault(Locale.GERMANY);
+    try {
+      dataStorage.exportToCSV(wallet, "test_exports/round_trip");
+    } finally {
+      Locale.setDefault(previous);
+    }
+
+    List<Operation> read = dataStorage.readOperationsCSV("test_exports/round_trip");
+    assertEquals(2, read.size(), "Должны прочитаться обе операции");
+    assertEquals(1200.5, read.get(0).getAmount(), 0.001, "Сумма не должна искажаться");
+    assertEquals(tricky, read.get(0).getDescription(), "Описание должно сохраниться целиком");
+    assertEquals(
+        LocalDateTime.of(2024, 3, 1, 12, 30), read.get(0).getDateTime(), "Дата должна сохраниться");
+    assertEquals("", read.get(1).getDescription(), "Пустое описание остается пустым");
+  }
+
   @Test
   @Order(4)
   void testExportBudgetsToCSV() {
@@ -177,6 +210,21 @@ class DataStorageTest {
           assertEquals(10000.0, importedBudget.getLimit(), 0.01, "Лимит бюджета должен быть 10000");
           assertEquals(
               3000.0, importedBudget.getSpent(), 0.01, "Потраченная сумма должна быть 3000");
+
+          // Проверяем важность правил оповещений
+          List<AlertRule> rules = testWallet.getAlertRules().getRules();
+          List<AlertRule> importedRules = importedWallet.getAlertRules().getRules();
+          assertEquals(rules.size(), importedRules.size());
+          for (int i = 0; i < rules.size(); i++) {
+            assertEquals(
+                rules.get(i).getSeverity(),
+                importedRules.get(i).getSeverity(),
+                "Важность правила " + rules.get(i).getMessage());
+          }
+          assertTrue(
+              importedRules.stream()
+                  .anyMatch(rule -> rule.getSeverity() == NotificationBuffer.Severity.CRITICAL),
+              "Правило с важностью CRITICAL сохраняется");
         });
   }
 
@@ -264,4 +312,13 @@ class DataStorageTest {
     File csvFile = new File("test_exports/no_budgets_budgets.csv");
     assertTrue(csvFile.exists());
   }
+
+  @Test
+  @Order(12)
+  void testArchiveDirectoryStaysUnderArchive() {
+    assertTrue(dataStorage.archiveDirectory("alice").endsWith("archive/alice"));
+    assertThrows(IllegalArgumentException.class, () -> dataStorage.archiveDirectory("../alice"));
+    assertThrows(IllegalArgumentException.class, () -> dataStorage.archiveDirectory("a/../.."));
+    assertThrows(IllegalArgumentException.class, () -> dataStorage.archiveDirectory("/etc"));
+  }
 }
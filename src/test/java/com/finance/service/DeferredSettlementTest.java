@@ -0,0 +1,149 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.core.User;
+import com.finance.exception.FinanceException;
+
+class DeferredSettlementTest {
+  private static final String PASSWORD = "password123";
+  private static final int USERS = 6;
+
+  private UserRegistry registry;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cleanup();
+    registry = new UserRegistry(new DataStorage());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    cleanup();
+  }
+
+  private static void cleanup() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    Files.deleteIfExists(Paths.get("settlements.log"));
+  }
+
+  private FinanceManager session(String login) {
+    return new FinanceManager(registry, registry.openSession(login, PASSWORD));
+  }
+
+  private double balance(String login) {
+    return registry.find(login).getWallet().getBalance();
+  }
+
+  @Test
+  void testSettlementPostsOneNetOperationPerUser() {
+    double[] expected = new double[USERS];
+    for (int u = 0; u < USERS; u++) {
+      registry.register("user" + u, PASSWORD);
+      session("user" + u).addIncome("Зарплата", 1000, "");
+      expected[u] = 1000;
+    }
+    Random random = new Random(11);
+    for (int i = 0; i < 500; i++) {
+      int from = random.nextInt(USERS);
+      int to = (from + 1 + random.nextInt(USERS - 1)) % USERS;
+      double amount = 1 + random.nextInt(20);
+      session("user" + from).transferDeferred("user" + to, amount, "");
+      expected[from] -= amount;
+      expected[to] += amount;
+    }
+    for (int u = 0; u < USERS; u++) {
+      assertEquals(1000, balance("user" + u), 1e-9, "До взаимозачета кошельки не меняются");
+    }
+
+    DeferredSettlement.Result result = session("user0").settle();
+
+    assertEquals(500, result.getTransfers());
+    assertTrue(result.getPostings() <= USERS);
+    assertTrue(result.getNetVolume() < result.getTurnover(), "Встречные суммы взаимно гасятся");
+    double total = 0;
+    for (int u = 0; u < USERS; u++) {
+      User user = registry.find("user" + u);
+      assertEquals(expected[u], balance("user" + u), 1e-6);
+      assertTrue(user.getWallet().getOperations().size() <= 2, "Доход и не больше одного итога");
+      total += balance("user" + u);
+    }
+    assertEquals(USERS * 1000, total, 1e-6);
+    assertNull(session("user0").settle(), "Новое окно пустое");
+    assertEquals(500, registry.getSettlement().getLog().readWindow(result.getWindow()).size());
+  }
+
+  @Test
+  void testPendingTransfersReserveBalance() {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    FinanceManager anna = session("anna");
+    anna.addIncome("Зарплата", 100, "");
+
+    anna.transferDeferred("boris", 80, "аренда");
+
+    assertThrows(FinanceException.class, () -> anna.transferDeferred("boris", 30, ""));
+    assertThrows(FinanceException.class, () -> anna.transfer("boris", 30, "сразу"));
+    anna.transfer("boris", 20, "сразу");
+    anna.settle();
+    assertEquals(0, balance("anna"), 1e-9);
+    assertEquals(100, balance("boris"), 1e-9);
+  }
+
+  @Test
+  void testPendingWindowSurvivesRestart() {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    session("anna").addIncome("Зарплата", 100, "");
+    session("anna").transferDeferred("boris", 60, "");
+    registry.save();
+
+    UserRegistry restarted = new UserRegistry(new DataStorage());
+    FinanceManager anna = new FinanceManager(restarted, restarted.openSession("anna", PASSWORD));
+    assertThrows(
+        FinanceException.class,
+        () -> anna.transfer("boris", 50, ""),
+        "Резерв восстанавливается из журнала");
+    DeferredSettlement.Result result = anna.settle();
+
+    assertEquals(1, result.getTransfers());
+    assertEquals(40, restarted.find("anna").getWallet().getBalance(), 1e-9);
+    assertEquals(60, restarted.find("boris").getWallet().getBalance(), 1e-9);
+  }
+
+  @Test
+  void testSettledWindowIsNotPostedAgainAfterRestart() throws Exception {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    session("anna").addIncome("Зарплата", 100, "");
+    session("anna").transferDeferred("boris", 60, "");
+    registry.getSettlement().getLog().close();
+    Path log = Paths.get("settlements.log");
+    byte[] beforeSettle = Files.readAllBytes(log);
+    registry = new UserRegistry(new DataStorage());
+
+    session("anna").settle();
+    registry.getSettlement().getLog().close();
+    // Кошельки сохранены, а отметка о закрытии окна в журнал не попала
+    Files.write(log, beforeSettle);
+
+    UserRegistry restarted = new UserRegistry(new DataStorage());
+    FinanceManager anna = new FinanceManager(restarted, restarted.openSession("anna", PASSWORD));
+    assertEquals(0, restarted.getSettlement().getStatus().getTransfers(), "Окно уже проведено");
+    assertNull(anna.settle());
+    assertEquals(40, restarted.find("anna").getWallet().getBalance(), 1e-9);
+    assertEquals(60, restarted.find("boris").getWallet().getBalance(), 1e-9);
+    anna.transfer("boris", 40, "резерв снят");
+    restarted.getSettlement().getLog().close();
+  }
+}
@@ -3,7 +3,9 @@ package com.finance.service;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.List;
@@ -12,6 +14,7 @@ import java.util.Map;
 import org.junit.jupiter.api.*;
 
 import com.finance.core.*;
+import com.finance.exception.FinanceException;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class FinanceManagerTest {
@@ -35,6 +38,7 @@ public class FinanceManagerTest {
   private void cleanupFiles() {
     try {
       Files.deleteIfExists(Paths.get("users_data.dat"));
+      Files.deleteIfExists(Paths.get("transfers.log"));
       File exportsDir = new File("exports");
       if (exportsDir.exists() && exportsDir.isDirectory()) {
         for (File file : exportsDir.listFiles()) {
@@ -139,6 +143,101 @@ public class FinanceManagerTest {
     assertEquals(5000, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
   }
 
+  @Test
+  void testTransferWithIdempotencyKeyAppliedOnce() {
+    String user1 = getUniqueUsername("k1");
+    String user2 = getUniqueUsername("k2");
+    financeManager.register(user1, TEST_PASS);
+    financeManager.register(user2, TEST_PASS);
+    financeManager.login(user1, TEST_PASS);
+    financeManager.addIncome("Зарплата", 10000, "");
+
+    Transfer first = financeManager.transfer(user2, 3000, "Аренда", "rent-1");
+    Transfer retried = financeManager.transfer(user2, 3000, "Аренда", "rent-1");
+
+    assertEquals(first.getId(), retried.getId(), "Повтор возвращает записанный перевод");
+    assertEquals(7000, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
+    assertThrows(
+        FinanceException.class,
+        () -> financeManager.transfer(user2, 500, "Другое", "rent-1"),
+        "Ключ нельзя использовать для другого перевода");
+    List<Operation> operations = financeManager.getCurrentUser().getWallet().getOperations();
+    assertEquals(
+        first.getFromOperationId(),
+        operations.get(operations.size() - 1).getId(),
+        "Перевод связан с операцией расхода отправителя");
+
+    StringWriter out = new StringWriter();
+    financeManager.showTransfers(user2, out);
+    assertTrue(out.toString().contains("№" + first.getId()), out.toString());
+    assertTrue(out.toString().contains("Аренда"));
+  }
+
+  @Test
+  void testTransferBatchFromCsv() throws Exception {
+    String payer = getUniqueUsername("pay");
+    String first = getUniqueUsername("e1");
+    String second = getUniqueUsername("e2");
+    financeManager.register(payer, TEST_PASS);
+    financeManager.register(first, TEST_PASS);
+    financeManager.register(second, TEST_PASS);
+    financeManager.login(payer, TEST_PASS);
+    financeManager.addIncome("Зарплата", 10000, "");
+    Path csv = Files.createTempFile("payroll", ".csv");
+    try {
+      Files.writeString(
+          csv,
+          "Получатель,Сумма,Описание,Ключ\n"
+              + first
+              + ",3000,\"Зарплата, март\",p-1\n"
+              + second
+              + ",2500,Зарплата,p-2\n"
+              + first
+              + ",500,Премия\n");
+
+      List<Transfer> transfers = financeManager.transferBatch(csv.toString());
+
+      assertEquals(3, transfers.size());
+      assertEquals("Зарплата, март", transfers.get(0).getDescription());
+      assertEquals(4000, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
+      assertEquals(3500, financeManager.getRegistry().find(first).getWallet().getBalance(), 0.01);
+
+      // Повтор файла: части с ключами уже выполнены, без ключа - выполняется снова
+      assertEquals(1, financeManager.transferBatch(csv.toString()).size());
+      assertEquals(3500, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
+    } finally {
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  @Test
+  void testTransferBatchIsAllOrNothing() {
+    String payer = getUniqueUsername("pay");
+    String employee = getUniqueUsername("emp");
+    financeManager.register(payer, TEST_PASS);
+    financeManager.register(employee, TEST_PASS);
+    financeManager.login(payer, TEST_PASS);
+    financeManager.addIncome("Зарплата", 1000, "");
+
+    assertThrows(
+        FinanceException.class,
+        () ->
+            financeManager.transferBatch(
+                List.of(
+                    new TransferLeg(employee, 100, "", null),
+                    new TransferLeg("нет_такого", 100, "", null))));
+    assertThrows(
+        FinanceException.class,
+        () ->
+            financeManager.transferBatch(
+                List.of(
+                    new TransferLeg(employee, 600, "", null),
+                    new TransferLeg(employee, 600, "", null))),
+        "Баланс проверяется для всего пакета");
+    assertEquals(1000, financeManager.getCurrentUser().getWallet().getBalance(), 0.01);
+    assertEquals(0, financeManager.getRegistry().find(employee).getWallet().getOperations().size());
+  }
+
   @Test
   void testSetBudgetSuccess() {
     String user = getUniqueUsername("bud");
@@ -261,6 +360,32 @@ public class FinanceManagerTest {
     assertDoesNotThrow(() -> financeManager.showBalance());
   }
 
+  @Test
+  void testCachedReportsFollowWalletChanges() {
+    String user = getUniqueUsername("cache");
+    financeManager.register(user, TEST_PASS);
+    financeManager.login(user, TEST_PASS);
+    financeManager.addIncome("Зарплата", 50000, "");
+
+    StringWriter first = new StringWriter();
+    StringWriter repeat = new StringWriter();
+    financeManager.showBalance(first);
+    financeManager.showBalance(repeat);
+    assertEquals(first.toString(), repeat.toString(), "Повторный отчет совпадает с первым");
+
+    financeManager.addExpense("Еда", 15000, "");
+    StringWriter changed = new StringWriter();
+    financeManager.showBalance(changed);
+    assertNotEquals(first.toString(), changed.toString(), "После расхода отчет перестроен");
+    assertTrue(changed.toString().contains("15"), "В отчете новый расход");
+
+    StringWriter stats = new StringWriter();
+    financeManager.showStatistics(List.of("Еда"), null, null, stats);
+    StringWriter otherStats = new StringWriter();
+    financeManager.showStatistics(List.of("Зарплата"), null, null, otherStats);
+    assertNotEquals(stats.toString(), otherStats.toString(), "Параметры входят в ключ кэша");
+  }
+
   @Test
   void testShowStatistics() {
     String user = getUniqueUsername("sts");
@@ -322,6 +447,108 @@ public class FinanceManagerTest {
     assertTrue(csvFile.exists() || csvFile.getParentFile().exists());
   }
 
+  @Test
+  void testRepeatedImportSkipsDuplicates() throws Exception {
+    String user = getUniqueUsername("dedup");
+    financeManager.register(user, TEST_PASS);
+    financeManager.login(user, TEST_PASS);
+    financeManager.addIncome("Зарплата", 50000, "аванс");
+    financeManager.addExpense("Еда", 1200.5, "обед, ужин");
+    financeManager.exportToFile("test_dedup", "csv");
+    financeManager.exportToFile("test_dedup", "json");
+    Wallet wallet = financeManager.getCurrentUser().getWallet();
+
+    financeManager.importFromFile("test_dedup.csv", "csv", true);
+    financeManager.importFromFile("test_dedup", "json", true);
+    assertEquals(2, wallet.getOperations().size(), "Повторный импорт не дублирует операции");
+    assertEquals(48799.5, wallet.getBalance(), 1e-9);
+
+    // Другой пользователь получает операции один раз, даже если импортирует файл дважды
+    financeManager.logout();
+    String other = getUniqueUsername("dedup2");
+    financeManager.register(other, TEST_PASS);
+    financeManager.login(other, TEST_PASS);
+    financeManager.getAndClearNotifications();
+    financeManager.importFromFile("test_dedup.csv", "csv", true);
+    financeManager.importFromFile("test_dedup.csv", "csv", true);
+    Wallet otherWallet = financeManager.getCurrentUser().getWallet();
+    assertEquals(2, otherWallet.getOperations().size());
+    assertEquals("обед, ужин", otherWallet.getOperations().get(1).getDescription());
+    List<String> notifications = financeManager.getAndClearNotifications();
+    assertTrue(notifications.stream().anyMatch(n -> n.contains("пропущено повторов: 2")));
+    assertThrows(
+        FinanceException.class, () -> financeManager.importFromFile("no_such", "csv", true));
+  }
+
+  @Test
+  void testExportPivot() throws Exception {
+    String user = getUniqueUsername("pivot");
+    financeManager.register(user, TEST_PASS);
+    financeManager.login(user, TEST_PASS);
+    financeManager.addIncome("Зарплата", 50000, "");
+    financeManager.addExpense("Еда", 3000.5, "");
+
+    financeManager.exportPivot(CategoryPivot.Granularity.MONTH, null, null, "test_pivot", "csv");
+    List<String> csv = Files.readAllLines(Paths.get("exports/test_pivot.csv"));
+    String month = LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("MM.yyyy"));
+    assertEquals("Категория,Тип," + month + ",Итого", csv.get(0));
+    assertTrue(csv.contains("Еда,Расход,3000.50,3000.50"), "Строка расходов: " + csv);
+    assertTrue(csv.contains("Зарплата,Доход,50000.00,50000.00"), "Строка доходов: " + csv);
+
+    financeManager.exportPivot(CategoryPivot.Granularity.QUARTER, null, null, "test_pivot", "json");
+    String json = Files.readString(Paths.get("exports/test_pivot.json"));
+    assertTrue(json.contains("\"granularity\" : \"QUARTER\""), json);
+    assertTrue(json.contains("\"totalExpense\" : 3000.5"), json);
+
+    assertThrows(
+        com.finance.exception.FinanceException.class,
+        () ->
+            financeManager.exportPivot(
+                CategoryPivot.Granularity.MONTH, null, null, "test_pivot", "xml"));
+  }
+
+  @Test
+  void testArchiveOperations() throws Exception {
+    String user = getUniqueUsername("archive");
+    financeManager.register(user, TEST_PASS);
+    financeManager.login(user, TEST_PASS);
+    financeManager.addIncome("Зарплата", 50000, "аванс");
+    financeManager.addExpense("Еда", 3000, "");
+    Path archiveDir = Paths.get("archive", user);
+    try {
+      financeManager.archiveOperations(LocalDate.now().plusDays(1));
+      Wallet wallet = financeManager.getCurrentUser().getWallet();
+      assertTrue(wallet.getOperations().isEmpty());
+      assertEquals(47000, wallet.getBalance(), 0.01);
+
+      StringWriter status = new StringWriter();
+      financeManager.showArchive(status);
+      assertTrue(status.toString().contains("Операций в архиве: 2"), status.toString());
+      StringWriter found = new StringWriter();
+      financeManager.searchOperations("аванс", found);
+      assertTrue(found.toString().contains("Зарплата"), "Поиск находит архивную операцию");
+      StringWriter report = new StringWriter();
+      financeManager.showDetailedReport(report);
+      assertTrue(report.toString().contains("Всего операций: 2"), report.toString());
+
+      // Бинарная выгрузка содержит архивные операции и не ссылается на каталог архива
+      financeManager.exportToFile("test_archive_export", "binary");
+      String other = getUniqueUsername("archive");
+      financeManager.register(other, TEST_PASS);
+      financeManager.login(other, TEST_PASS);
+      financeManager.importFromFile("test_archive_export", "binary");
+      Wallet imported = financeManager.getCurrentUser().getWallet();
+      assertNull(imported.getArchive());
+      assertEquals(2, imported.getOperations().size());
+      assertEquals(47000, imported.getBalance(), 0.01);
+    } finally {
+      Files.deleteIfExists(Paths.get("exports/test_archive_export.dat"));
+      try (java.util.stream.Stream<Path> files = Files.walk(archiveDir)) {
+        files.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
   @Test
   void testShowDetailedReport() {
     String user = getUniqueUsername("rep");
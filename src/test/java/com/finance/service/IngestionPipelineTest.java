@@ -0,0 +1,203 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.exception.FinanceException;
+
+class IngestionPipelineTest {
+  private static final String PASSWORD = "password123";
+
+  private UserRegistry registry;
+  private IngestionPipeline pipeline;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cleanup();
+    registry = new UserRegistry(new DataStorage());
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    if (pipeline != null) {
+      pipeline.close();
+    }
+    cleanup();
+  }
+
+  private static void cleanup() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    Files.deleteIfExists(Paths.get("settlements.log"));
+  }
+
+  private double balance(String login) {
+    return registry.find(login).getWallet().getBalance();
+  }
+
+  @Test
+  void testProducersAreProcessedInOrderWithBatchedSaves() throws Exception {
+    List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+    pipeline =
+        new IngestionPipeline(
+            registry,
+            64,
+            IngestionPipeline.Overflow.BLOCK,
+            IngestionPipeline.WaitStrategy.YIELDING,
+            entry -> sequences.add(entry.getSequence()));
+    pipeline.start();
+
+    int perProducer = 2000;
+    List<Thread> producers = new ArrayList<>();
+    for (String login : new String[] {"anna", "boris"}) {
+      Thread producer =
+          new Thread(
+              () -> {
+                for (int i = 0; i < perProducer; i++) {
+                  pipeline.publish(
+                      login, i % 2 == 0, i % 2 == 0 ? "Зарплата" : "Еда", 2 - i % 2, "");
+                }
+              });
+      producers.add(producer);
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    pipeline.flush();
+
+    assertEquals(2 * perProducer, pipeline.getProcessedCount());
+    assertEquals(perProducer / 2, balance("anna"), 1e-9);
+    assertEquals(perProducer / 2, balance("boris"), 1e-9);
+    assertEquals(perProducer, registry.find("anna").getWallet().getOperations().size());
+    for (int i = 0; i < sequences.size(); i++) {
+      assertEquals(i, sequences.get(i), "Результаты передаются в порядке публикации");
+    }
+    assertTrue(pipeline.getSaveCount() < 2 * perProducer, "Сохранение одно на пачку");
+  }
+
+  @Test
+  void testInvalidOperationsAreReportedWithNotifications() {
+    List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    List<String> notifications = Collections.synchronizedList(new ArrayList<>());
+    pipeline =
+        new IngestionPipeline(
+            registry,
+            16,
+            IngestionPipeline.Overflow.BLOCK,
+            IngestionPipeline.WaitStrategy.SLEEPING,
+            entry -> {
+              if (entry.getError() != null) {
+                errors.add(entry.getError());
+              }
+              notifications.addAll(entry.getNotifications());
+            });
+    pipeline.start();
+    registry.find("anna").getWallet().setBudget("Еда", 100);
+
+    pipeline.publish("nobody", true, "Зарплата", 10, "");
+    pipeline.publish("anna", true, "Зарплата", -5, "");
+    pipeline.publish("anna", false, " ", 5, "");
+    pipeline.publish("anna", false, "Еда", 150, "обед");
+    pipeline.flush();
+
+    assertEquals(3, errors.size());
+    assertTrue(errors.get(0).contains("не найден"));
+    assertEquals(-150, balance("anna"), 1e-9);
+    assertTrue(notifications.stream().anyMatch(n -> n.contains("Превышен бюджет")));
+  }
+
+  @Test
+  void testReplayedFeedIsNotAppliedTwice() {
+    List<Boolean> duplicates = Collections.synchronizedList(new ArrayList<>());
+    pipeline =
+        new IngestionPipeline(
+            registry,
+            16,
+            IngestionPipeline.Overflow.BLOCK,
+            IngestionPipeline.WaitStrategy.SLEEPING,
+            entry -> duplicates.add(entry.isDuplicate()));
+    pipeline.start();
+
+    for (int replay = 0; replay < 2; replay++) {
+      for (int i = 0; i < 20; i++) {
+        pipeline.publish("anna", true, "Зарплата", 10, "выписка", "bank-" + i);
+      }
+    }
+    pipeline.flush();
+
+    assertEquals(200, balance("anna"), 1e-9);
+    assertEquals(20, duplicates.stream().filter(d -> d).count());
+    assertTrue(duplicates.subList(20, 40).stream().allMatch(d -> d), "Повторы - второй проход");
+  }
+
+  @Test
+  void testListenerFailuresAreCountedAndDoNotStopIngestion() {
+    pipeline =
+        new IngestionPipeline(
+            registry,
+            16,
+            IngestionPipeline.Overflow.BLOCK,
+            IngestionPipeline.WaitStrategy.SLEEPING,
+            entry -> {
+              if (entry.getSequence() % 2 == 0) {
+                throw new IllegalStateException("сбой слушателя");
+              }
+            });
+    pipeline.start();
+
+    for (int i = 0; i < 10; i++) {
+      pipeline.publish("anna", true, "Зарплата", 10, "");
+    }
+    pipeline.flush();
+
+    assertEquals(5, pipeline.getFailureCount());
+    assertEquals(10, pipeline.getProcessedCount());
+    assertEquals(100, balance("anna"), 1e-9, "Операции без идентификатора записываются все");
+  }
+
+  @Test
+  void testFullBufferRejectsOrBlocksProducers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    pipeline =
+        new IngestionPipeline(
+            registry,
+            4,
+            IngestionPipeline.Overflow.REJECT,
+            IngestionPipeline.WaitStrategy.SLEEPING,
+            entry -> {
+              try {
+                release.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    pipeline.start();
+
+    for (int i = 0; i < 4; i++) {
+      pipeline.publish("anna", true, "Зарплата", 1, "");
+    }
+    assertThrows(FinanceException.class, () -> pipeline.publish("anna", true, "Зарплата", 1, ""));
+    assertEquals(1, pipeline.getRejectedCount());
+
+    release.countDown();
+    pipeline.flush();
+    assertEquals(4, balance("anna"), 1e-9);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new IngestionPipeline(registry, 10, IngestionPipeline.Overflow.BLOCK, null, null));
+  }
+}
@@ -0,0 +1,73 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.jupiter.api.Test;
+
+class ReportWriterTest {
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  void testLayoutMatchesPrintfPadding() {
+    ReportWriter.Layout layout =
+        ReportWriter.layout().text("   ").left(20).text(" ").right(15).newline().build();
+    StringWriter out = new StringWriter();
+    ReportWriter report = new ReportWriter().reset(out);
+
+    report.row(layout).cell("Еда").moneyCell(1234.5);
+    report.row(layout).cell("Очень длинное название категории").moneyCell(-10);
+    report.flush();
+
+    String expected =
+        String.format("   %-20s %15s", "Еда", "1,234.5")
+            + NL
+            + String.format("   %-20s %15s", "Очень длинное название категории", "-10.0")
+            + NL;
+    assertEquals(expected, out.toString());
+  }
+
+  @Test
+  void testWritesInLargeChunks() {
+    CountingWriter out = new CountingWriter();
+    ReportWriter report = new ReportWriter().reset(out);
+    for (int i = 0; i < 10_000; i++) {
+      report.text("Операция ").text(i).text(": ").money(i * 1.5).newline();
+    }
+    report.flush();
+
+    assertTrue(out.writes < 100, "Ожидалась запись крупными блоками, вызовов: " + out.writes);
+    assertTrue(out.content.toString().endsWith("Операция 9999: 14,998.5" + NL));
+  }
+
+  @Test
+  void testReuseAfterReset() {
+    ReportWriter report = new ReportWriter();
+    StringWriter first = new StringWriter();
+    report.reset(first).line("первый").flush();
+    StringWriter second = new StringWriter();
+    report.reset(second).line("второй").flush();
+
+    assertEquals("первый" + NL, first.toString());
+    assertEquals("второй" + NL, second.toString());
+  }
+
+  private static final class CountingWriter extends Writer {
+    private final StringBuilder content = new StringBuilder();
+    private int writes;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      writes++;
+      content.append(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,163 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.core.Income;
+import com.finance.core.Operation;
+import com.finance.core.User;
+import com.finance.core.Wallet;
+import com.finance.exception.FinanceException;
+
+class TransferStressTest {
+  private static final String PASSWORD = "password123";
+  private static final int USERS = 12;
+  private static final int THREADS = 8;
+  private static final int TRANSFERS_PER_THREAD = 300;
+  private static final double START_BALANCE = 500;
+
+  private UserRegistry registry;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    registry = new UserRegistry(new DataStorage());
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    executor.shutdownNow();
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+  }
+
+  @Test
+  void testRandomTransfersConserveMoney() throws Exception {
+    for (int u = 0; u < USERS; u++) {
+      registry.register("user" + u, PASSWORD);
+      FinanceManager manager =
+          new FinanceManager(registry, registry.openSession("user" + u, PASSWORD));
+      manager.addIncome("Зарплата", START_BALANCE, "");
+    }
+    AtomicInteger completed = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      long seed = t;
+      tasks.add(
+          () -> {
+            Random random = new Random(seed);
+            for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+              int from = random.nextInt(USERS);
+              int to = (from + 1 + random.nextInt(USERS - 1)) % USERS;
+              FinanceManager manager =
+                  new FinanceManager(registry, registry.openSession("user" + from, PASSWORD));
+              try {
+                // Крупные суммы регулярно упираются в баланс и должны отклоняться целиком
+                manager.transfer("user" + to, 1 + random.nextInt(200), "нагрузка");
+                completed.incrementAndGet();
+              } catch (FinanceException e) {
+                rejected.incrementAndGet();
+              } finally {
+                manager.logout();
+              }
+            }
+            return null;
+          });
+    }
+
+    for (Future<Void> future : executor.invokeAll(tasks, 120, TimeUnit.SECONDS)) {
+      assertFalse(future.isCancelled(), "Переводы не должны взаимоблокироваться");
+      future.get();
+    }
+
+    assertEquals(THREADS * TRANSFERS_PER_THREAD, completed.get() + rejected.get());
+    assertTrue(completed.get() > 0 && rejected.get() > 0, completed + " / " + rejected);
+    double total = 0;
+    int operations = 0;
+    for (User user : registry.getUsers()) {
+      Wallet wallet = user.getWallet();
+      assertTrue(wallet.getBalance() >= 0, "Баланс не уходит в минус: " + user.getLogin());
+      double balance = 0;
+      for (Operation op : wallet.getOperations()) {
+        balance += op instanceof Income ? op.getAmount() : -op.getAmount();
+      }
+      assertEquals(balance, wallet.getBalance(), 1e-6, "Баланс совпадает с операциями");
+      total += wallet.getBalance();
+      operations += wallet.getOperations().size();
+    }
+    assertEquals(USERS * START_BALANCE, total, 1e-6, "Сумма денег во всех кошельках сохраняется");
+    assertEquals(USERS + 2 * completed.get(), operations, "Перевод - ровно две операции");
+  }
+
+  @Test
+  void testDisjointPairsDoNotBlockEachOther() throws Exception {
+    List<User> users = usersOnDistinctStripes(4);
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> holder =
+        executor.submit(
+            () -> {
+              try (UserRegistry.UserLock lock = registry.lock(users.get(0), users.get(1))) {
+                locked.countDown();
+                release.await();
+              }
+              return null;
+            });
+    assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+    Future<?> disjoint =
+        executor.submit(
+            () -> {
+              try (UserRegistry.UserLock lock = registry.lock(users.get(3), users.get(2))) {
+                return null;
+              }
+            });
+    disjoint.get(10, TimeUnit.SECONDS);
+    Future<?> overlapping =
+        executor.submit(
+            () -> {
+              try (UserRegistry.UserLock lock = registry.lock(users.get(1), users.get(2))) {
+                return null;
+              }
+            });
+    Thread.sleep(100);
+    assertFalse(overlapping.isDone(), "Пересекающаяся пара ждет освобождения кошелька");
+
+    release.countDown();
+    holder.get(10, TimeUnit.SECONDS);
+    overlapping.get(10, TimeUnit.SECONDS);
+  }
+
+  private List<User> usersOnDistinctStripes(int count) {
+    List<User> users = new ArrayList<>();
+    List<Integer> stripes = new ArrayList<>();
+    for (int i = 0; users.size() < count; i++) {
+      String login = "stripe" + i;
+      if (!stripes.contains(UserRegistry.stripeOf(login))) {
+        stripes.add(UserRegistry.stripeOf(login));
+        users.add(registry.register(login, PASSWORD));
+      }
+    }
+    return users;
+  }
+}
@@ -0,0 +1,243 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.exception.FinanceException;
+
+class UserRegistryTest {
+  private static final String PASSWORD = "password123";
+  private static final int THREADS = 4;
+
+  private UserRegistry registry;
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    registry = new UserRegistry(new DataStorage());
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    executor.shutdownNow();
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+  }
+
+  private FinanceManager session(String login) {
+    return new FinanceManager(registry, registry.openSession(login, PASSWORD));
+  }
+
+  private <T> List<T> runAll(List<Callable<T>> tasks) throws Exception {
+    List<T> results = new ArrayList<>();
+    for (Future<T> future : executor.invokeAll(tasks, 60, TimeUnit.SECONDS)) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  @Test
+  void testConcurrentSessionsOfDifferentUsers() throws Exception {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int u = 0; u < THREADS; u++) {
+      String login = "user" + u;
+      registry.register(login, PASSWORD);
+      tasks.add(
+          () -> {
+            FinanceManager manager = session(login);
+            for (int i = 0; i < 200; i++) {
+              manager.addIncome("Зарплата", 10, "");
+              manager.addExpense("Еда", 4, "");
+            }
+            manager.logout();
+            return null;
+          });
+    }
+    runAll(tasks);
+
+    for (int u = 0; u < THREADS; u++) {
+      assertEquals(1200, registry.find("user" + u).getWallet().getBalance(), 1e-6);
+    }
+    assertEquals(0, registry.getSessionCount(), "Все сеансы закрыты");
+    UserRegistry reloaded = new UserRegistry(new DataStorage());
+    assertEquals(THREADS, reloaded.size(), "Сохраненный файл читается после параллельной работы");
+    assertEquals(1200, reloaded.find("user0").getWallet().getBalance(), 1e-6);
+  }
+
+  @Test
+  void testLoginCannotBeAPath() {
+    for (String login : new String[] {"../alice", "a/b/c", "a\\b", "al..ice"}) {
+      assertThrows(FinanceException.class, () -> registry.register(login, PASSWORD), login);
+    }
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  void testSessionsOfSameUserShareWallet() throws Exception {
+    registry.register("alice", PASSWORD);
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      tasks.add(
+          () -> {
+            FinanceManager manager = session("alice");
+            for (int i = 0; i < 250; i++) {
+              manager.addIncome("Зарплата", 1, "");
+            }
+            return null;
+          });
+    }
+    runAll(tasks);
+
+    assertEquals(1000, registry.find("alice").getWallet().getBalance(), 1e-6);
+    assertEquals(1000, registry.find("alice").getWallet().getOperations().size());
+    assertEquals(THREADS, registry.getSessionCount());
+  }
+
+  @Test
+  void testConcurrentRegistrationOfSameLogin() throws Exception {
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      tasks.add(
+          () -> {
+            try {
+              registry.register("bob", PASSWORD);
+              return true;
+            } catch (FinanceException e) {
+              return false;
+            }
+          });
+    }
+
+    long registered = runAll(tasks).stream().filter(ok -> ok).count();
+
+    assertEquals(1, registered, "Логин регистрируется один раз");
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void testConcurrentTransfersKeepMoney() throws Exception {
+    registry.register("alice", PASSWORD);
+    registry.register("bob", PASSWORD);
+    session("alice").addIncome("Зарплата", 1000, "");
+    session("bob").addIncome("Зарплата", 1000, "");
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      String from = t % 2 == 0 ? "alice" : "bob";
+      String to = t % 2 == 0 ? "bob" : "alice";
+      tasks.add(
+          () -> {
+            FinanceManager manager = session(from);
+            for (int i = 0; i < 100; i++) {
+              manager.transfer(to, 1, "");
+            }
+            return null;
+          });
+    }
+    runAll(tasks);
+
+    double total =
+        registry.find("alice").getWallet().getBalance()
+            + registry.find("bob").getWallet().getBalance();
+    assertEquals(2000, total, 1e-6, "Встречные переводы не теряют и не создают деньги");
+  }
+
+  @Test
+  void testSessionLookupAndClose() {
+    registry.register("carol", PASSWORD);
+    Session session = registry.openSession("carol", PASSWORD);
+
+    assertSame(session, registry.findSession(session.getId()));
+    assertEquals("carol", session.getLogin());
+    FinanceManager manager = new FinanceManager(registry, session);
+    assertTrue(manager.isAuthenticated());
+
+    registry.closeSession(session);
+    assertFalse(session.isOpen());
+    assertNull(registry.findSession(session.getId()));
+    assertThrows(FinanceException.class, () -> manager.addIncome("Зарплата", 1, ""));
+    assertThrows(FinanceException.class, () -> registry.openSession("carol", "wrong"));
+  }
+
+  @Test
+  void testFailedLedgerWriteUndoesTransfer() {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    FinanceManager anna = session("anna");
+    anna.addIncome("Зарплата", 100, "");
+    anna.setBudget("Прочее", 500);
+
+    // Описание длиннее предела записи журнала: перевод не фиксируется
+    FinanceException error =
+        assertThrows(
+            FinanceException.class, () -> anna.transfer("boris", 30, "x".repeat(70_000), "k1"));
+    assertTrue(error.getMessage().contains("не выполнен"));
+    assertEquals(100, registry.find("anna").getWallet().getBalance(), 1e-9);
+    assertEquals(0, registry.find("boris").getWallet().getBalance(), 1e-9);
+    assertEquals(1, registry.find("anna").getWallet().getOperations().size());
+    assertEquals(0, registry.find("anna").getWallet().getBudget("Прочее").getSpent(), 1e-9);
+
+    // Ключ не занят: повтор выполняет перевод один раз
+    anna.transfer("boris", 30, "долг", "k1");
+    anna.transfer("boris", 30, "долг", "k1");
+    assertEquals(70, registry.find("anna").getWallet().getBalance(), 1e-9);
+    assertEquals(30, registry.find("boris").getWallet().getBalance(), 1e-9);
+  }
+
+  @Test
+  void testTransferLoggedButNotSavedIsRecoveredOnRestart() throws Exception {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    session("anna").addIncome("Зарплата", 100, "");
+    byte[] beforeTransfer = Files.readAllBytes(Paths.get("users_data.dat"));
+    session("anna").transfer("boris", 40, "долг", "k1");
+    // Сбой после записи журнала, до сохранения кошельков
+    Files.write(Paths.get("users_data.dat"), beforeTransfer);
+
+    UserRegistry restarted = new UserRegistry(new DataStorage());
+    assertEquals(60, restarted.find("anna").getWallet().getBalance(), 1e-9);
+    assertEquals(40, restarted.find("boris").getWallet().getBalance(), 1e-9);
+
+    UserRegistry again = new UserRegistry(new DataStorage());
+    assertEquals(
+        60, again.find("anna").getWallet().getBalance(), 1e-9, "Перевод проведен один раз");
+    assertEquals(2, again.find("anna").getWallet().getOperations().size());
+  }
+
+  @Test
+  void testReplaceImportDoesNotReapplyLoggedTransfers() throws Exception {
+    registry.register("anna", PASSWORD);
+    registry.register("boris", PASSWORD);
+    FinanceManager anna = session("anna");
+    anna.addIncome("Зарплата", 100, "");
+    anna.exportToFile("test_registry_backup", "binary");
+    anna.transfer("boris", 40, "долг");
+    // Кошелек из выгрузки до перевода: номера его операций меньше номеров операций перевода
+    anna.importFromFile("test_registry_backup", "binary");
+    assertEquals(100, registry.find("anna").getWallet().getBalance(), 1e-9);
+
+    UserRegistry restarted = new UserRegistry(new DataStorage());
+    try {
+      assertEquals(100, restarted.find("anna").getWallet().getBalance(), 1e-9);
+      assertEquals(1, restarted.find("anna").getWallet().getOperations().size());
+      assertEquals(40, restarted.find("boris").getWallet().getBalance(), 1e-9);
+    } finally {
+      Files.deleteIfExists(Paths.get("exports/test_registry_backup.dat"));
+    }
+  }
+}
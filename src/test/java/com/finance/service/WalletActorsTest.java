@@ -0,0 +1,257 @@
+package com.finance.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.finance.core.Expense;
+import com.finance.core.Income;
+import com.finance.core.Transfer;
+import com.finance.core.TransferLedger;
+import com.finance.core.Wallet;
+import com.finance.exception.FinanceException;
+
+class WalletActorsTest {
+  private static final String PASSWORD = "password123";
+  private static final int USERS = 10;
+
+  private UserRegistry registry;
+  private WalletActors actors;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cleanup();
+    registry = new UserRegistry(new DataStorage());
+    actors = new WalletActors(registry, 4);
+    for (int u = 0; u < USERS; u++) {
+      registry.register("user" + u, PASSWORD);
+    }
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    actors.close();
+    cleanup();
+  }
+
+  private static void cleanup() throws Exception {
+    Files.deleteIfExists(Paths.get("users_data.dat"));
+    Files.deleteIfExists(Paths.get("transfers.log"));
+    Files.deleteIfExists(Paths.get("settlements.log"));
+  }
+
+  private double balance(String login) {
+    return registry.find(login).getWallet().getBalance();
+  }
+
+  @Test
+  void testCommandsAreBatchedPerUser() throws Exception {
+    int perUser = 500;
+    ExecutorService clients = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<CompletableFuture<?>>>> submitted = new ArrayList<>();
+      for (int u = 0; u < USERS; u++) {
+        String login = "user" + u;
+        submitted.add(
+            clients.submit(
+                () -> {
+                  List<CompletableFuture<?>> results = new ArrayList<>();
+                  for (int i = 0; i < perUser; i++) {
+                    results.add(
+                        i % 2 == 0
+                            ? actors.addIncome(login, "Зарплата", 3, "")
+                            : actors.addExpense(login, "Еда", 1, ""));
+                  }
+                  return results;
+                }));
+      }
+      for (Future<List<CompletableFuture<?>>> future : submitted) {
+        CompletableFuture.allOf(future.get().toArray(new CompletableFuture[0])).join();
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+
+    for (int u = 0; u < USERS; u++) {
+      assertEquals(perUser, balance("user" + u), 1e-9);
+      assertEquals(perUser, registry.find("user" + u).getWallet().getOperations().size());
+    }
+    assertEquals(USERS * perUser, actors.getMessageCount());
+    assertTrue(actors.getBatchCount() < actors.getMessageCount(), "Команды выполняются пакетами");
+    assertTrue(actors.getSaveCount() <= actors.getBatchCount(), "Сохранения объединяются");
+    double read = actors.read("user0", wallet -> wallet.getBalance()).join();
+    assertEquals(perUser, read, 1e-9);
+  }
+
+  @Test
+  void testTwoPhaseTransfersConserveMoney() {
+    for (int u = 0; u < USERS; u++) {
+      actors.addIncome("user" + u, "Зарплата", 100, "").join();
+    }
+    Random random = new Random(5);
+    List<CompletableFuture<Transfer>> transfers = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      int from = random.nextInt(USERS);
+      int to = (from + 1 + random.nextInt(USERS - 1)) % USERS;
+      transfers.add(actors.transfer("user" + from, "user" + to, 1 + random.nextInt(30), "", null));
+    }
+    int completed = 0;
+    for (CompletableFuture<Transfer> transfer : transfers) {
+      try {
+        assertTrue(transfer.join().getId() > 0, "Перевод записан в журнал");
+        completed++;
+      } catch (CompletionException e) {
+        assertInstanceOf(FinanceException.class, e.getCause());
+      }
+    }
+
+    double total = 0;
+    for (int u = 0; u < USERS; u++) {
+      assertTrue(balance("user" + u) >= 0, "Баланс не уходит в минус");
+      total += balance("user" + u);
+    }
+    assertEquals(USERS * 100, total, 1e-6);
+    assertEquals(completed, registry.getDataStorage().getTransferLedger().size());
+  }
+
+  @Test
+  void testTransferKeyAndErrors() {
+    actors.addIncome("user0", "Зарплата", 100, "").join();
+
+    Transfer first = actors.transfer("user0", "user1", 30, "долг", "k1").join();
+    Transfer repeat = actors.transfer("user0", "user1", 30, "долг", "k1").join();
+
+    assertEquals(first.getId(), repeat.getId());
+    assertEquals(70, balance("user0"), 1e-9);
+    assertEquals(30, balance("user1"), 1e-9);
+    CompletionException error =
+        assertThrows(
+            CompletionException.class,
+            () -> actors.transfer("user0", "user1", 500, "", null).join());
+    assertInstanceOf(FinanceException.class, error.getCause());
+    assertThrows(
+        CompletionException.class, () -> actors.transfer("user0", "user1", 10, "", "k1").join());
+    assertThrows(
+        CompletionException.class, () -> actors.transfer("user0", "nobody", 10, "", null).join());
+    assertThrows(CompletionException.class, () -> actors.addExpense("nobody", "Еда", 1, "").join());
+  }
+
+  @Test
+  void testFailedLedgerWriteRefundsTransfer() {
+    actors.addIncome("user0", "Зарплата", 100, "").join();
+    // Описание длиннее 65535 байт не записывается в журнал переводов
+    String tooLong = "x".repeat(70_000);
+
+    CompletionException error =
+        assertThrows(
+            CompletionException.class,
+            () -> actors.transfer("user0", "user1", 30, tooLong, "k1").join());
+
+    assertInstanceOf(FinanceException.class, error.getCause());
+    assertTrue(error.getCause().getMessage().contains("возвращен"));
+    assertEquals(100, balance("user0"), 1e-9, "Сумма возвращена отправителю");
+    assertEquals(0, balance("user1"), 1e-9, "Зачисление отменено");
+    assertTrue(registry.find("user1").getWallet().getOperations().isEmpty());
+    assertEquals(0, registry.getDataStorage().getTransferLedger().size());
+
+    Transfer retry = actors.transfer("user0", "user1", 30, "долг", "k1").join();
+    assertEquals(1, retry.getId(), "Ключ свободен после неудачной записи");
+    assertEquals(30, balance("user1"), 1e-9);
+  }
+
+  @Test
+  void testKeyTakenBetweenPhasesUndoesCreditAndRefunds() throws Exception {
+    actors.addIncome("user0", "Зарплата", 100, "").join();
+    TransferLedger ledger = registry.getDataStorage().getTransferLedger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    actors.submit(
+        "user0",
+        wallet -> {
+          started.countDown();
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return null;
+        });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    CompletableFuture<Transfer> transfer = actors.transfer("user0", "user1", 30, "долг", "k1");
+    // Следующая команда отправителя выполняется сразу после списания и занимает тот же ключ
+    actors.submit(
+        "user0",
+        wallet -> {
+          Transfer other = new Transfer("user0", "user2", 5, "другой перевод");
+          other.link(
+              "k1", new Expense(5, wallet.getCategory("Прочее"), ""), new Income(5, null, ""));
+          return ledger.append(other);
+        });
+    release.countDown();
+
+    CompletionException error = assertThrows(CompletionException.class, transfer::join);
+    assertInstanceOf(FinanceException.class, error.getCause());
+    assertTrue(error.getCause().getMessage().contains("возвращен"));
+    assertEquals(100, balance("user0"), 1e-9, "Сумма возвращена отправителю");
+    assertEquals(0, balance("user1"), 1e-9, "Зачисление отменено");
+    assertTrue(registry.find("user1").getWallet().getOperations().isEmpty());
+    assertTrue(registry.find("user0").getWallet().getPendingTransfers().isEmpty());
+  }
+
+  @Test
+  void testTransferInterruptedBetweenPhasesIsFinishedOnRestart() {
+    actors.addIncome("user0", "Зарплата", 100, "").join();
+    actors.addIncome("user2", "Зарплата", 100, "").join();
+    TransferLedger ledger = registry.getDataStorage().getTransferLedger();
+    Wallet sender = registry.find("user0").getWallet();
+    Wallet otherSender = registry.find("user2").getWallet();
+    Wallet recipient = registry.find("user1").getWallet();
+    try (UserRegistry.UserLock lock =
+        registry.lock(registry.find("user0"), registry.find("user1"), registry.find("user2"))) {
+      // Сбой после сохранения списания, до зачисления
+      Transfer lost = new Transfer("user0", "user1", 30, "до зачисления");
+      Expense lostExpense = FinanceManager.transferExpense(lost, sender);
+      sender.addOperation(lostExpense);
+      lost.linkExpense(null, lostExpense);
+      sender.addPendingTransfer(lost);
+      // Сбой после записи в журнал, до отметки у отправителя
+      Transfer logged = new Transfer("user2", "user1", 20, "до отметки");
+      Expense loggedExpense = FinanceManager.transferExpense(logged, otherSender);
+      otherSender.addOperation(loggedExpense);
+      logged.linkExpense(null, loggedExpense);
+      otherSender.addPendingTransfer(logged);
+      Income income = FinanceManager.transferIncome(logged, recipient);
+      recipient.addOperation(income);
+      logged.link(null, loggedExpense, income);
+      ledger.append(logged);
+      recipient.setLastTransferId(logged.getId());
+      registry.save();
+    }
+
+    UserRegistry restarted = new UserRegistry(new DataStorage());
+    assertEquals(100, restarted.find("user0").getWallet().getBalance(), 1e-9, "Сумма возвращена");
+    assertEquals(80, restarted.find("user2").getWallet().getBalance(), 1e-9, "Списание одно");
+    assertEquals(20, restarted.find("user1").getWallet().getBalance(), 1e-9);
+    for (String login : new String[] {"user0", "user1", "user2"}) {
+      assertTrue(restarted.find(login).getWallet().getPendingTransfers().isEmpty());
+    }
+    UserRegistry again = new UserRegistry(new DataStorage());
+    assertEquals(100, again.find("user0").getWallet().getBalance(), 1e-9);
+    assertEquals(80, again.find("user2").getWallet().getBalance(), 1e-9);
+  }
+}